@@ -0,0 +1,287 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * <p>Title: BinaryFormat</p>
+ * <p>Description: Static helpers shared by the binary persistence formats: unsigned LEB128 varints, length prefixed UTF-8 strings,
+ * and Java serialization of binding values to and from byte buffers.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BinaryFormat</code></p>
+ */
+public final class BinaryFormat {
+	/** The charset of encoded strings */
+	public static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private BinaryFormat() {
+	}
+	
+	/**
+	 * Writes an unsigned varint
+	 * @param out The output to write to
+	 * @param value The value, treated as unsigned
+	 * @throws IOException thrown on any IO error
+	 */
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		while((value & ~0x7F)!=0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+	
+	/**
+	 * Writes an unsigned variable length long
+	 * @param out The output to write to
+	 * @param value The value, treated as unsigned
+	 * @throws IOException thrown on any IO error
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		while((value & ~0x7FL)!=0L) {
+			out.write((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+	
+	/**
+	 * Reads an unsigned varint
+	 * @param in The buffer to read from
+	 * @return the value
+	 */
+	public static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		for(int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if(b >= 0) return value;
+		}
+	}
+	
+	/**
+	 * Reads an unsigned variable length long
+	 * @param in The buffer to read from
+	 * @return the value
+	 */
+	public static long readVarLong(ByteBuffer in) {
+		long value = 0L;
+		for(int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0) return value;
+		}
+	}
+	
+	/**
+	 * Reads an unsigned varint
+	 * @param in The input to read from
+	 * @return the value
+	 * @throws IOException thrown on any IO error
+	 */
+	public static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for(int shift = 0; ; shift += 7) {
+			byte b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if(b >= 0) return value;
+		}
+	}
+	
+	/**
+	 * Reads an unsigned variable length long
+	 * @param in The input to read from
+	 * @return the value
+	 * @throws IOException thrown on any IO error
+	 */
+	public static long readVarLong(DataInput in) throws IOException {
+		long value = 0L;
+		for(int shift = 0; ; shift += 7) {
+			byte b = in.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0) return value;
+		}
+	}
+	
+	/**
+	 * Writes a varint length prefixed UTF-8 string
+	 * @param out The output to write to
+	 * @param value The string
+	 * @throws IOException thrown on any IO error
+	 */
+	public static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Reads a varint length prefixed UTF-8 string
+	 * @param in The buffer to read from
+	 * @return the string
+	 */
+	public static String readString(ByteBuffer in) {
+		int length = readVarInt(in);
+		if(in.hasArray()) {
+			String value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+			in.position(in.position() + length);
+			return value;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	/**
+	 * Reads a varint length prefixed UTF-8 string
+	 * @param in The input to read from
+	 * @return the string
+	 * @throws IOException thrown on any IO error
+	 */
+	public static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	/**
+	 * Java serializes a value
+	 * @param value The value to serialize
+	 * @param sizeHint The expected serialized size
+	 * @return the serialized bytes
+	 * @throws IOException thrown if the value cannot be serialized
+	 */
+	public static byte[] serialize(Object value, int sizeHint) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(32, sizeHint));
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(value);
+		oos.close();
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Deserializes a value from the remaining bytes of a buffer, resolving classes through the thread's context class loader first.
+	 * The buffer's position is not changed.
+	 * @param buffer The buffer holding the serialized bytes
+	 * @return the deserialized value
+	 * @throws IOException thrown if the bytes cannot be read
+	 * @throws ClassNotFoundException thrown if the value's class cannot be found
+	 */
+	public static Object deserialize(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+		ObjectInputStream ois = objectInput(buffer);
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+	
+	/**
+	 * Opens an object stream over the remaining bytes of a buffer, resolving classes through the thread's context class loader first.
+	 * The buffer's position is not changed.
+	 * @param buffer The buffer holding the object stream
+	 * @return the object stream
+	 * @throws IOException thrown if the stream header cannot be read
+	 */
+	public static ObjectInputStream objectInput(ByteBuffer buffer) throws IOException {
+		return new ContextClassLoaderObjectInputStream(new ByteBufferInputStream(buffer.duplicate()));
+	}
+	
+	/**
+	 * <p>Title: ByteBufferInputStream</p>
+	 * <p>Description: An InputStream reading the remaining bytes of a ByteBuffer</p> 
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		/** The buffer to read */
+		private final ByteBuffer buffer;
+		
+		/**
+		 * Creates a new ByteBufferInputStream
+		 * @param buffer The buffer to read
+		 */
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len==0) return 0;
+			if(!buffer.hasRemaining()) return -1;
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return buffer.remaining();
+		}
+	}
+	
+	/**
+	 * <p>Title: ContextClassLoaderObjectInputStream</p>
+	 * <p>Description: An ObjectInputStream that resolves classes through the thread's context class loader first</p> 
+	 */
+	private static class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+		/**
+		 * Creates a new ContextClassLoaderObjectInputStream
+		 * @param in The stream to read from
+		 * @throws IOException thrown if the stream header cannot be read
+		 */
+		ContextClassLoaderObjectInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+		
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+			if(classLoader!=null) {
+				try {
+					return Class.forName(desc.getName(), false, classLoader);
+				} catch (ClassNotFoundException e) {
+					// fall back to the default resolution
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+}
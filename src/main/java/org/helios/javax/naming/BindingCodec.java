@@ -0,0 +1,64 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * <p>Title: BindingCodec</p>
+ * <p>Description: Encodes binding values of one exact class in the compact context serialization format written by {@link SerializedContext}.
+ * Values without a registered codec are Java serialized. Codecs are registered with {@link BindingCodecs#register(BindingCodec)} and must be
+ * registered on both the writing and the reading side.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingCodec</code></p>
+ * @param <T> The class of the values this codec encodes
+ */
+public interface BindingCodec<T> {
+	/**
+	 * Returns the class of the values this codec encodes. Subclasses of it are not encoded by this codec.
+	 * @return the value class
+	 */
+	public Class<T> getType();
+	
+	/**
+	 * Writes a value
+	 * @param out The output to write to
+	 * @param value The value, never null
+	 * @throws IOException thrown on any IO error
+	 */
+	public void write(DataOutput out, T value) throws IOException;
+	
+	/**
+	 * Reads a value
+	 * @param in The input to read from
+	 * @return the value
+	 * @throws IOException thrown on any IO error
+	 */
+	public T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,141 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Title: BindingCodecs</p>
+ * <p>Description: The registry of {@link BindingCodec}s keyed by the name of the class they encode. Codecs for strings, boxed primitives
+ * and byte arrays are registered by default. Integral values are written as zig-zag varints.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingCodecs</code></p>
+ */
+public final class BindingCodecs {
+	/** The registered codecs keyed by value class name */
+	private static final ConcurrentMap<String, BindingCodec<?>> CODECS = new ConcurrentHashMap<String, BindingCodec<?>>();
+	
+	static {
+		register(new BindingCodec<String>() {
+			public Class<String> getType() { return String.class; }
+			public void write(DataOutput out, String value) throws IOException { BinaryFormat.writeString(out, value); }
+			public String read(DataInput in) throws IOException { return BinaryFormat.readString(in); }
+		});
+		register(new BindingCodec<Integer>() {
+			public Class<Integer> getType() { return Integer.class; }
+			public void write(DataOutput out, Integer value) throws IOException { BinaryFormat.writeVarInt(out, (value << 1) ^ (value >> 31)); }
+			public Integer read(DataInput in) throws IOException { int v = BinaryFormat.readVarInt(in); return (v >>> 1) ^ -(v & 1); }
+		});
+		register(new BindingCodec<Long>() {
+			public Class<Long> getType() { return Long.class; }
+			public void write(DataOutput out, Long value) throws IOException { BinaryFormat.writeVarLong(out, (value << 1) ^ (value >> 63)); }
+			public Long read(DataInput in) throws IOException { long v = BinaryFormat.readVarLong(in); return (v >>> 1) ^ -(v & 1L); }
+		});
+		register(new BindingCodec<Short>() {
+			public Class<Short> getType() { return Short.class; }
+			public void write(DataOutput out, Short value) throws IOException { out.writeShort(value); }
+			public Short read(DataInput in) throws IOException { return in.readShort(); }
+		});
+		register(new BindingCodec<Byte>() {
+			public Class<Byte> getType() { return Byte.class; }
+			public void write(DataOutput out, Byte value) throws IOException { out.writeByte(value); }
+			public Byte read(DataInput in) throws IOException { return in.readByte(); }
+		});
+		register(new BindingCodec<Boolean>() {
+			public Class<Boolean> getType() { return Boolean.class; }
+			public void write(DataOutput out, Boolean value) throws IOException { out.writeBoolean(value); }
+			public Boolean read(DataInput in) throws IOException { return in.readBoolean(); }
+		});
+		register(new BindingCodec<Character>() {
+			public Class<Character> getType() { return Character.class; }
+			public void write(DataOutput out, Character value) throws IOException { out.writeChar(value); }
+			public Character read(DataInput in) throws IOException { return in.readChar(); }
+		});
+		register(new BindingCodec<Double>() {
+			public Class<Double> getType() { return Double.class; }
+			public void write(DataOutput out, Double value) throws IOException { out.writeDouble(value); }
+			public Double read(DataInput in) throws IOException { return in.readDouble(); }
+		});
+		register(new BindingCodec<Float>() {
+			public Class<Float> getType() { return Float.class; }
+			public void write(DataOutput out, Float value) throws IOException { out.writeFloat(value); }
+			public Float read(DataInput in) throws IOException { return in.readFloat(); }
+		});
+		register(new BindingCodec<byte[]>() {
+			public Class<byte[]> getType() { return byte[].class; }
+			public void write(DataOutput out, byte[] value) throws IOException { BinaryFormat.writeVarInt(out, value.length); out.write(value); }
+			public byte[] read(DataInput in) throws IOException { byte[] value = new byte[BinaryFormat.readVarInt(in)]; in.readFully(value); return value; }
+		});
+	}
+	
+	private BindingCodecs() {
+	}
+	
+	/**
+	 * Registers a codec, replacing any codec already registered for the same class
+	 * @param codec The codec to register
+	 * @return the replaced codec, or null if there was none
+	 */
+	public static BindingCodec<?> register(BindingCodec<?> codec) {
+		if(codec==null) throw new IllegalArgumentException("The codec was null");
+		return CODECS.put(codec.getType().getName(), codec);
+	}
+	
+	/**
+	 * Removes the codec registered for a class
+	 * @param type The value class
+	 * @return the removed codec, or null if there was none
+	 */
+	public static BindingCodec<?> unregister(Class<?> type) {
+		return CODECS.remove(type.getName());
+	}
+	
+	/**
+	 * Returns the codec registered for a class name
+	 * @param className The value class name
+	 * @return the codec, or null if none is registered
+	 */
+	public static BindingCodec<?> forClass(String className) {
+		return CODECS.get(className);
+	}
+	
+	/**
+	 * Writes a value with its codec
+	 * @param codec The codec
+	 * @param out The output to write to
+	 * @param value The value, which must be of the codec's type
+	 * @throws IOException thrown on any IO error
+	 */
+	@SuppressWarnings("unchecked")
+	static void write(BindingCodec<?> codec, DataOutput out, Object value) throws IOException {
+		((BindingCodec<Object>)codec).write(out, value);
+	}
+}
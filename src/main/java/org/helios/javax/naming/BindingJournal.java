@@ -0,0 +1,925 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import javax.naming.CompositeName;
+import javax.naming.Context;
+import javax.naming.ContextNotEmptyException;
+import javax.naming.InterruptedNamingException;
+import javax.naming.Name;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.NotContextException;
+import javax.naming.OperationNotSupportedException;
+
+/**
+ * <p>Title: BindingJournal</p>
+ * <p>Description: An append-only write-ahead journal of the binding mutations of a context tree. It uses group commit, 
+ * so concurrent mutations share one <code>write</code> and, depending on the {@link SyncPolicy}, one <code>force</code>.</p>
+ * <p>A journal directory holds numbered journal segments and at most one current snapshot. Compaction rotates to a new segment 
+ * and writes a {@link ContextSnapshot} that covers every earlier segment, after which the earlier segments are deleted. 
+ * The snapshot is written while mutations continue into the new segment, so it may already contain some of that segment's mutations. 
+ * Every journaled operation is therefore replayed idempotently: binds are replayed as rebinds, a renamed binding is replayed as a 
+ * rebind of the new name with the value followed by an unbind of the old name, and removing something that is not there is ignored.</p>
+ * <p>Replay streams each segment one record at a time, so its memory use is bounded by the largest record. A torn record at the end of
+ * a segment, left by a crash during a write, is truncated away.</p>
+ * <p>A mutation is applied in memory and its record appended under the journal's monitor, and the mutating thread then waits for the record 
+ * to commit. Each record carries an undo action, and if its write (or, for {@link SyncPolicy#ALWAYS}, its force) fails, the journal 
+ * fails and every uncommitted mutation is undone, newest first, before any of their callers return, so memory never keeps a 
+ * mutation the journal does not.</p>
+ * <p>Values are journaled in their snapshot encoding. A value that is not serializable cannot be recovered, so binding one is journaled 
+ * as an unbind, just as snapshots skip it.</p>
+ * <p>Record format: <code>length:int crc32:int op:byte atomCount:varint atom:string* [operands]</code></p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingJournal</code></p>
+ */
+public class BindingJournal {
+	/** The journal directory */
+	protected final File directory;
+	/** The fsync policy */
+	protected final SyncPolicy policy;
+	/** The root context being journaled */
+	protected final JMXNamingBindingContext context;
+	/** The current segment's channel. Guarded by this journal. */
+	protected FileChannel channel;
+	/** The current segment number. Guarded by this journal. */
+	protected long segment;
+	/** The number of bytes written to the current segment. Guarded by this journal. */
+	protected long segmentBytes = 0L;
+	/** The records appended but not yet written. Guarded by this journal. */
+	protected List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+	/** The undo actions of the appended records that have not committed yet, oldest first. Guarded by this journal. */
+	protected final ArrayDeque<Uncommitted> uncommitted = new ArrayDeque<Uncommitted>();
+	/** The sequence number of the last appended record. Guarded by this journal. */
+	protected long appended = 0L;
+	/** The sequence number of the last written record. Guarded by this journal. */
+	protected long written = 0L;
+	/** The sequence number of the last forced record. Guarded by this journal. */
+	protected long durable = 0L;
+	/** Indicates if a thread is writing a batch. Guarded by this journal. */
+	protected boolean flushing = false;
+	/** The first write failure. Once set, the journal rejects further mutations. Guarded by this journal. */
+	protected IOException failure = null;
+	/** Indicates if the journal has been closed. Guarded by this journal. */
+	protected boolean closed = false;
+	/** The number of forces issued. Guarded by this journal. */
+	protected long forces = 0L;
+	/** Indicates if a compaction is running */
+	protected final AtomicBoolean compacting = new AtomicBoolean(false);
+	/** The scheduler of interval syncs and periodic compactions, or null if neither is configured */
+	protected final ScheduledExecutorService scheduler;
+	
+	/** The op code of a bind */
+	public static final byte OP_BIND = 1;
+	/** The op code of a rebind */
+	public static final byte OP_REBIND = 2;
+	/** The op code of an unbind */
+	public static final byte OP_UNBIND = 3;
+	/** The op code of a rename */
+	public static final byte OP_RENAME = 4;
+	/** The op code of a subcontext creation */
+	public static final byte OP_CREATE_SUBCONTEXT = 5;
+	/** The op code of a subcontext destruction */
+	public static final byte OP_DESTROY_SUBCONTEXT = 6;
+	/** The file name prefix of journal segments */
+	public static final String SEGMENT_PREFIX = "journal-";
+	/** The file name suffix of journal segments */
+	public static final String SEGMENT_SUFFIX = ".log";
+	/** The file name prefix of snapshots */
+	public static final String SNAPSHOT_PREFIX = "snapshot-";
+	/** The file name suffix of snapshots */
+	public static final String SNAPSHOT_SUFFIX = ".bin";
+	
+	/** The length of a record header */
+	private static final int HEADER_LENGTH = 8;
+	/** The serial number of journal threads */
+	private static final AtomicInteger serial = new AtomicInteger(0);
+	
+	/**
+	 * <p>Title: SyncPolicy</p>
+	 * <p>Description: Enumerates when journal writes are forced to the storage device</p> 
+	 */
+	public static enum SyncPolicy {
+		/** Every mutation waits until its record has been forced. Concurrent mutations share one force. */
+		ALWAYS,
+		/** Mutations wait until their record has been written, and writes are forced on a fixed interval */
+		INTERVAL,
+		/** Mutations wait until their record has been written, and forcing is left to the operating system */
+		NEVER;
+	}
+	
+	/**
+	 * Opens a journal directory: restores the latest snapshot, replays the journal segments it does not cover, 
+	 * and attaches a new journal, appending to the last segment, to the recovered root context
+	 * @param directory The journal directory, created if it does not exist
+	 * @param policy The fsync policy
+	 * @param syncInterval The interval in ms between forces for {@link SyncPolicy#INTERVAL}
+	 * @param compactionInterval The interval in ms between periodic compactions, or zero for none
+	 * @return the journal. The recovered tree is available from {@link #getContext()}.
+	 * @throws NamingException thrown if the directory cannot be opened or replayed
+	 */
+	public static BindingJournal open(File directory, SyncPolicy policy, long syncInterval, long compactionInterval) throws NamingException {
+		if(directory==null) throw new NamingException("Journal directory was null");
+		if(policy==null) throw new NamingException("Sync policy was null");
+		if(!directory.isDirectory() && !directory.mkdirs()) throw new NamingException("Failed to create journal directory [" + directory + "]");
+		TreeSet<Long> snapshots = numbered(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		TreeSet<Long> segments = numbered(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		long covered = snapshots.isEmpty() ? 0L : snapshots.last();
+		JMXNamingBindingContext root = snapshots.isEmpty() ? new JMXNamingBindingContext() : ContextSnapshot.restore(file(directory, SNAPSHOT_PREFIX, covered, SNAPSHOT_SUFFIX));
+		long next = covered;
+		for(Long number: segments) {
+			if(number < covered) continue;
+			replay(file(directory, SEGMENT_PREFIX, number, SEGMENT_SUFFIX), root);
+			next = number;
+		}
+		deleteBefore(directory, covered);
+		BindingJournal journal = new BindingJournal(directory, policy, root, next, syncInterval, compactionInterval);
+		root.journal = journal;
+		return journal;
+	}
+	
+	/**
+	 * Creates a new BindingJournal
+	 * @param directory The journal directory
+	 * @param policy The fsync policy
+	 * @param context The root context being journaled
+	 * @param segment The number of the segment to append to
+	 * @param syncInterval The interval in ms between forces for {@link SyncPolicy#INTERVAL}
+	 * @param compactionInterval The interval in ms between periodic compactions, or zero for none
+	 * @throws NamingException thrown if the segment cannot be opened
+	 */
+	protected BindingJournal(File directory, SyncPolicy policy, JMXNamingBindingContext context, long segment, long syncInterval, long compactionInterval) throws NamingException {
+		this.directory = directory;
+		this.policy = policy;
+		this.context = context;
+		this.segment = segment;
+		try {
+			channel = openSegment(segment);
+			segmentBytes = channel.size();
+		} catch (IOException e) {
+			throw namingException("Failed to open journal segment [" + segment + "]", e);
+		}
+		boolean syncs = policy==SyncPolicy.INTERVAL && syncInterval > 0;
+		if(syncs || compactionInterval > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JMXNamingJournal#" + serial.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			if(syncs) {
+				scheduler.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						sync();
+					}
+				}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+			}
+			if(compactionInterval > 0) {
+				scheduler.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						try {
+							compact();
+						} catch (Exception e) {
+							// retried on the next interval
+						}
+					}
+				}, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+			}
+		} else {
+			scheduler = null;
+		}
+	}
+	
+	// =================================================
+	//		Record encoding
+	// =================================================
+	
+	/**
+	 * Encodes a bind or rebind. A value that is not serializable is encoded as an unbind.
+	 * @param op {@link #OP_BIND} or {@link #OP_REBIND}
+	 * @param path The atoms of the full name from the root context
+	 * @param value The bound value, possibly null
+	 * @return the encoded record
+	 * @throws NamingException thrown if the value cannot be encoded
+	 */
+	public ByteBuffer encodeBinding(byte op, String[] path, Object value) throws NamingException {
+		return encodeEntry(op, path, JMXNamingBindingContext.wrap(value));
+	}
+	
+	/**
+	 * Encodes a bind or rebind of a stored binding. A value that is not serializable is encoded as an unbind.
+	 * @param op {@link #OP_BIND} or {@link #OP_REBIND}
+	 * @param path The atoms of the full name from the root context
+	 * @param entry The stored form of the binding
+	 * @return the encoded record
+	 * @throws NamingException thrown if the value cannot be encoded
+	 */
+	public ByteBuffer encodeEntry(byte op, String[] path, Object entry) throws NamingException {
+		try {
+			byte tag = ContextSnapshot.tagOf(entry);
+			byte[] value = ContextSnapshot.encode(entry, tag);
+			if(value==null) return encode(OP_UNBIND, path);
+			RecordOutput out = new RecordOutput(op, path, value.length);
+			ContextSnapshot.writeValue(out.data, tag, value);
+			return out.toRecord();
+		} catch (IOException e) {
+			throw namingException("Failed to encode journal record", e);
+		}
+	}
+	
+	/**
+	 * Encodes a rename
+	 * @param oldPath The atoms of the old full name
+	 * @param newPath The atoms of the new full name
+	 * @param entry The stored form of the renamed binding, or null if a subcontext is renamed
+	 * @return the encoded record
+	 * @throws NamingException thrown if the value cannot be encoded
+	 */
+	public ByteBuffer encodeRename(String[] oldPath, String[] newPath, Object entry) throws NamingException {
+		try {
+			byte tag = 0;
+			byte[] value = null;
+			if(entry!=null) {
+				tag = ContextSnapshot.tagOf(entry);
+				value = ContextSnapshot.encode(entry, tag);
+				// an unrecoverable value leaves nothing to rename
+				if(value==null) return encode(OP_UNBIND, oldPath);
+			}
+			RecordOutput out = new RecordOutput(OP_RENAME, oldPath, value==null ? 0 : value.length);
+			writePath(out.data, newPath);
+			out.data.writeBoolean(value!=null);
+			if(value!=null) ContextSnapshot.writeValue(out.data, tag, value);
+			return out.toRecord();
+		} catch (IOException e) {
+			throw namingException("Failed to encode journal record", e);
+		}
+	}
+	
+	/**
+	 * Encodes an operation with no operands
+	 * @param op {@link #OP_UNBIND}, {@link #OP_CREATE_SUBCONTEXT} or {@link #OP_DESTROY_SUBCONTEXT}
+	 * @param path The atoms of the full name from the root context
+	 * @return the encoded record
+	 * @throws NamingException thrown if the record cannot be encoded
+	 */
+	public ByteBuffer encode(byte op, String[] path) throws NamingException {
+		try {
+			return new RecordOutput(op, path, 0).toRecord();
+		} catch (IOException e) {
+			throw namingException("Failed to encode journal record", e);
+		}
+	}
+	
+	/**
+	 * Writes the atoms of a name
+	 * @param out The output to write to
+	 * @param path The atoms
+	 * @throws IOException thrown on any IO error
+	 */
+	protected static void writePath(DataOutputStream out, String[] path) throws IOException {
+		BinaryFormat.writeVarInt(out, path.length);
+		for(String atom: path) {
+			BinaryFormat.writeString(out, atom);
+		}
+	}
+	
+	/**
+	 * Reads the atoms of a name
+	 * @param in The buffer to read from
+	 * @return the name
+	 * @throws NamingException thrown if the name is invalid
+	 */
+	protected static Name readPath(ByteBuffer in) throws NamingException {
+		int size = BinaryFormat.readVarInt(in);
+		Name name = new CompositeName();
+		for(int i = 0; i < size; i++) {
+			name.add(BinaryFormat.readString(in));
+		}
+		return name;
+	}
+	
+	/**
+	 * <p>Title: RecordOutput</p>
+	 * <p>Description: Builds one journal record, reserving room for the header</p> 
+	 */
+	private static class RecordOutput {
+		/** The record bytes */
+		final ByteArrayOutputStream bytes;
+		/** The payload output */
+		final DataOutputStream data;
+		
+		/**
+		 * Creates a new RecordOutput and writes the op code and name
+		 * @param op The op code
+		 * @param path The atoms of the full name
+		 * @param sizeHint The expected size of the operands
+		 * @throws IOException thrown on any IO error
+		 */
+		RecordOutput(byte op, String[] path, int sizeHint) throws IOException {
+			bytes = new ByteArrayOutputStream(64 + sizeHint);
+			data = new DataOutputStream(bytes);
+			data.writeLong(0L);
+			data.writeByte(op);
+			writePath(data, path);
+		}
+		
+		/**
+		 * Completes the record header
+		 * @return the record
+		 * @throws IOException thrown on any IO error
+		 */
+		ByteBuffer toRecord() throws IOException {
+			data.flush();
+			byte[] record = bytes.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(record, HEADER_LENGTH, record.length - HEADER_LENGTH);
+			ByteBuffer buffer = ByteBuffer.wrap(record);
+			buffer.putInt(0, record.length - HEADER_LENGTH);
+			buffer.putInt(4, (int)crc.getValue());
+			return buffer;
+		}
+	}
+	
+	// =================================================
+	//		Group commit
+	// =================================================
+	
+	/**
+	 * Verifies that the journal can accept a mutation. Callers hold this journal's monitor, 
+	 * so a mutation is only applied if its record will be appended.
+	 * @throws NamingException thrown if the journal is closed or has failed
+	 */
+	public void checkWritable() throws NamingException {
+		if(closed) throw new NamingException("The journal [" + directory + "] is closed");
+		if(failure!=null) throw namingException("The journal [" + directory + "] has failed", failure);
+	}
+	
+	/**
+	 * Appends a record. Callers hold this journal's monitor across applying the mutation and appending its record, 
+	 * so records are appended in the order the mutations were applied.
+	 * @param record The encoded record
+	 * @param undo The action that reverts the applied mutation if the record fails to commit. It is run under this journal's monitor.
+	 * @return the record's sequence number, to pass to {@link #await(long)}
+	 */
+	public long append(ByteBuffer record, Runnable undo) {
+		pending.add(record);
+		appended++;
+		uncommitted.addLast(new Uncommitted(appended, undo));
+		return appended;
+	}
+	
+	/**
+	 * Waits until a record is written, and for {@link SyncPolicy#ALWAYS} forced. The first waiter to find no write in progress 
+	 * writes every pending record in one gathering write, so mutations that arrive while a force is running are committed together by the next one.
+	 * The wait is not interruptible, so that a caller always learns whether its mutation committed. The interrupt status is restored on return.
+	 * @param sequence The record's sequence number
+	 * @throws NamingException thrown if the record could not be committed, in which case its mutation has been undone
+	 */
+	public void await(long sequence) throws NamingException {
+		boolean force = policy==SyncPolicy.ALWAYS;
+		boolean interrupted = false;
+		try {
+			for(;;) {
+				List<ByteBuffer> batch;
+				long upto;
+				FileChannel target;
+				synchronized(this) {
+					while(flushing && (force ? durable : written) < sequence && failure==null) {
+						try {
+							wait();
+						} catch (InterruptedException ie) {
+							interrupted = true;
+						}
+					}
+					if((force ? durable : written) >= sequence) return;
+					if(failure!=null) throw namingException("The journal [" + directory + "] has failed", failure);
+					flushing = true;
+					batch = pending;
+					pending = new ArrayList<ByteBuffer>();
+					upto = appended;
+					// rotation waits for the flush to finish, so the channel cannot change under us
+					target = channel;
+				}
+				IOException error = null;
+				long bytes = 0L;
+				try {
+					bytes = writeBatch(target, batch);
+					if(force) target.force(false);
+				} catch (IOException e) {
+					error = e;
+				}
+				synchronized(this) {
+					flushing = false;
+					if(error==null) {
+						segmentBytes += bytes;
+						written = upto;
+						if(force) {
+							durable = upto;
+							forces++;
+						}
+						committed(upto);
+						notifyAll();
+					} else {
+						failed(error);
+					}
+				}
+			}
+		} finally {
+			if(interrupted) Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Discards the undo actions of the records that have committed. Caller holds this journal's monitor.
+	 * @param upto The sequence number of the last committed record
+	 */
+	protected void committed(long upto) {
+		while(!uncommitted.isEmpty() && uncommitted.peekFirst().sequence <= upto) {
+			uncommitted.pollFirst();
+		}
+	}
+	
+	/**
+	 * Fails the journal, undoing every mutation whose record has not committed, newest first, and waking every waiter. 
+	 * Caller holds this journal's monitor.
+	 * @param error The write failure
+	 */
+	protected void failed(IOException error) {
+		if(failure==null) failure = error;
+		pending = new ArrayList<ByteBuffer>();
+		while(!uncommitted.isEmpty()) {
+			try {
+				uncommitted.pollLast().undo.run();
+			} catch (RuntimeException e) {
+				// keep undoing the older mutations
+			}
+		}
+		notifyAll();
+	}
+	
+	/**
+	 * <p>Title: Uncommitted</p>
+	 * <p>Description: The undo action of an appended record that has not committed yet</p> 
+	 */
+	private static class Uncommitted {
+		/** The record's sequence number */
+		final long sequence;
+		/** The action that reverts the record's mutation */
+		final Runnable undo;
+		
+		/**
+		 * Creates a new Uncommitted
+		 * @param sequence The record's sequence number
+		 * @param undo The action that reverts the record's mutation
+		 */
+		Uncommitted(long sequence, Runnable undo) {
+			this.sequence = sequence;
+			this.undo = undo;
+		}
+	}
+	
+	/**
+	 * Writes a batch of records in one gathering write
+	 * @param channel The channel to write to
+	 * @param batch The records
+	 * @return the number of bytes written
+	 * @throws IOException thrown on any IO error
+	 */
+	protected static long writeBatch(FileChannel channel, List<ByteBuffer> batch) throws IOException {
+		if(batch.isEmpty()) return 0L;
+		ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch.size()]);
+		long remaining = 0L;
+		for(ByteBuffer buffer: buffers) {
+			remaining += buffer.remaining();
+		}
+		long total = remaining;
+		while(remaining > 0) {
+			remaining -= channel.write(buffers);
+		}
+		return total;
+	}
+	
+	/**
+	 * Forces everything written so far. Called on the sync interval for {@link SyncPolicy#INTERVAL}.
+	 */
+	public void sync() {
+		FileChannel target;
+		long upto;
+		synchronized(this) {
+			if(closed || durable==written) return;
+			target = channel;
+			upto = written;
+		}
+		try {
+			target.force(false);
+		} catch (IOException e) {
+			// rotated or closed, both of which force
+			return;
+		}
+		synchronized(this) {
+			if(upto > durable) durable = upto;
+			forces++;
+		}
+	}
+	
+	/**
+	 * Writes and forces every pending record. Caller holds this journal's monitor.
+	 * @throws IOException thrown on any IO error
+	 * @throws InterruptedNamingException thrown if interrupted waiting for a write in progress
+	 */
+	protected void drain() throws IOException, InterruptedNamingException {
+		try {
+			while(flushing) wait();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedNamingException("Interrupted waiting for the journal");
+		}
+		if(failure!=null) throw failure;
+		try {
+			segmentBytes += writeBatch(channel, pending);
+			pending = new ArrayList<ByteBuffer>();
+			channel.force(false);
+		} catch (IOException e) {
+			failed(e);
+			throw e;
+		}
+		forces++;
+		written = durable = appended;
+		committed(appended);
+		notifyAll();
+	}
+	
+	// =================================================
+	//		Compaction, replay and lifecycle
+	// =================================================
+	
+	/**
+	 * Folds the journal into a snapshot. The journal rotates to a new segment, a snapshot of the tree is written 
+	 * while mutations continue into the new segment, and the segments the snapshot covers are deleted. 
+	 * Nothing is done if the current segment is empty or a compaction is already running.
+	 * @throws NamingException thrown if the snapshot cannot be written
+	 */
+	public void compact() throws NamingException {
+		if(!compacting.compareAndSet(false, true)) return;
+		try {
+			long covered;
+			synchronized(this) {
+				checkWritable();
+				if(segmentBytes==0L && pending.isEmpty()) return;
+				try {
+					drain();
+					channel.close();
+					segment++;
+					segmentBytes = 0L;
+					channel = openSegment(segment);
+				} catch (IOException e) {
+					if(failure==null) failed(e);
+					throw namingException("Failed to rotate journal [" + directory + "]", e);
+				}
+				covered = segment;
+			}
+			// the snapshot is forced, and its directory entry with it, before the segments it covers are deleted
+			ContextSnapshot.write(context, file(directory, SNAPSHOT_PREFIX, covered, SNAPSHOT_SUFFIX));
+			deleteBefore(directory, covered);
+		} finally {
+			compacting.set(false);
+		}
+	}
+	
+	/**
+	 * Writes and forces every pending record, closes the journal and detaches it from the context. 
+	 * Later mutations of the context are not journaled.
+	 * @throws NamingException thrown if the pending records cannot be written
+	 */
+	public void close() throws NamingException {
+		if(scheduler!=null) scheduler.shutdownNow();
+		synchronized(this) {
+			if(closed) return;
+			try {
+				if(failure==null) drain();
+			} catch (IOException e) {
+				throw namingException("Failed to flush journal [" + directory + "]", e);
+			} finally {
+				closed = true;
+				if(context.journal==this) context.journal = null;
+				try { channel.close(); } catch (Exception e) { /* No Op */ }
+				notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Replays one journal segment into a context tree, streaming one record at a time. 
+	 * A torn or corrupt record ends the segment and is truncated away.
+	 * @param segment The segment file
+	 * @param root The root context to replay into
+	 * @throws NamingException thrown if the segment cannot be read
+	 */
+	protected static void replay(File segment, JMXNamingBindingContext root) throws NamingException {
+		long length = segment.length();
+		long position = 0L;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment), 64 * 1024));
+			CRC32 crc = new CRC32();
+			while(position < length) {
+				if(length - position < HEADER_LENGTH) break;
+				int size = in.readInt();
+				int checksum = in.readInt();
+				if(size <= 0 || size > length - position - HEADER_LENGTH) break;
+				byte[] payload = new byte[size];
+				in.readFully(payload);
+				crc.reset();
+				crc.update(payload, 0, size);
+				if((int)crc.getValue()!=checksum) break;
+				apply(ByteBuffer.wrap(payload), root);
+				position += HEADER_LENGTH + size;
+			}
+		} catch (EOFException e) {
+			// torn record
+		} catch (IOException e) {
+			throw namingException("Failed to replay journal segment [" + segment + "]", e);
+		} finally {
+			if(in!=null) try { in.close(); } catch (Exception e) { /* No Op */ }
+		}
+		if(position < length) {
+			truncate(segment, position);
+		}
+	}
+	
+	/**
+	 * Applies one journal record idempotently
+	 * @param in The record payload
+	 * @param root The root context to apply it to
+	 * @throws NamingException thrown if the record cannot be decoded or applied
+	 */
+	protected static void apply(ByteBuffer in, JMXNamingBindingContext root) throws NamingException {
+		byte op = in.get();
+		Name name = readPath(in);
+		try {
+			switch(op) {
+				case OP_BIND:
+				case OP_REBIND:
+					root.rebind(name, readValue(in));
+					break;
+				case OP_UNBIND:
+					root.unbind(name);
+					break;
+				case OP_RENAME:
+					Name newName = readPath(in);
+					if(in.get()!=0) {
+						root.rebind(newName, readValue(in));
+						root.unbind(name);
+					} else if(isContext(root, name) && !isBound(root, newName)) {
+						root.rename(name, newName);
+					}
+					break;
+				case OP_CREATE_SUBCONTEXT:
+					if(!isBound(root, name)) root.createSubcontext(name);
+					break;
+				case OP_DESTROY_SUBCONTEXT:
+					if(isContext(root, name)) root.destroySubcontext(name);
+					break;
+				default:
+					throw new NamingException("Unknown journal op [" + op + "]");
+			}
+		} catch (NameNotFoundException e) {
+			// the record's context was destroyed later in the journal, or before the snapshot was taken
+		} catch (NotContextException e) {
+			// the record's context was replaced by a binding before the snapshot was taken
+		} catch (ContextNotEmptyException e) {
+			// the destroyed context was repopulated before the snapshot was taken
+		} catch (OperationNotSupportedException e) {
+			// the record's name was rebound to a subcontext before the snapshot was taken
+		}
+	}
+	
+	/**
+	 * Reads and decodes a value
+	 * @param in The buffer to read from
+	 * @return the decoded value
+	 * @throws NamingException thrown if the value cannot be decoded
+	 */
+	protected static Object readValue(ByteBuffer in) throws NamingException {
+		byte tag = in.get();
+		int length = BinaryFormat.readVarInt(in);
+		ByteBuffer bytes = ContextSnapshot.slice(in, in.position(), length);
+		in.position(in.position() + length);
+		try {
+			return ContextSnapshot.decode(tag, bytes);
+		} catch (Exception e) {
+			throw namingException("Failed to decode journaled value", e);
+		}
+	}
+	
+	/**
+	 * Determines if a name is bound
+	 * @param root The root context
+	 * @param name The name
+	 * @return true if the name is bound
+	 */
+	private static boolean isBound(JMXNamingBindingContext root, Name name) {
+		try {
+			root.resolve(name);
+			return true;
+		} catch (NamingException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Determines if a name is bound to a context
+	 * @param root The root context
+	 * @param name The name
+	 * @return true if the name is bound to a context
+	 */
+	private static boolean isContext(JMXNamingBindingContext root, Name name) {
+		try {
+			return root.resolve(name) instanceof Context;
+		} catch (NamingException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Opens a segment for appending. A newly created segment is made durable by forcing the directory.
+	 * @param number The segment number
+	 * @return the segment's channel
+	 * @throws IOException thrown if the segment cannot be opened
+	 */
+	protected FileChannel openSegment(long number) throws IOException {
+		File file = file(directory, SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+		boolean created = !file.exists();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		if(created) {
+			try {
+				ContextSnapshot.forceDirectory(directory);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		}
+		return channel;
+	}
+	
+	/**
+	 * Truncates a segment after its last intact record
+	 * @param segment The segment file
+	 * @param length The length to keep
+	 * @throws NamingException thrown if the segment cannot be truncated
+	 */
+	private static void truncate(File segment, long length) throws NamingException {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(segment, "rw");
+			raf.setLength(length);
+		} catch (IOException e) {
+			throw namingException("Failed to truncate journal segment [" + segment + "]", e);
+		} finally {
+			if(raf!=null) try { raf.close(); } catch (Exception e) { /* No Op */ }
+		}
+	}
+	
+	/**
+	 * Returns a numbered journal file
+	 * @param directory The journal directory
+	 * @param prefix The file name prefix
+	 * @param number The file number
+	 * @param suffix The file name suffix
+	 * @return the file
+	 */
+	protected static File file(File directory, String prefix, long number, String suffix) {
+		return new File(directory, String.format("%s%016d%s", prefix, number, suffix));
+	}
+	
+	/**
+	 * Lists the numbers of the journal files with the passed prefix and suffix
+	 * @param directory The journal directory
+	 * @param prefix The file name prefix
+	 * @param suffix The file name suffix
+	 * @return the sorted file numbers
+	 */
+	protected static TreeSet<Long> numbered(File directory, String prefix, String suffix) {
+		TreeSet<Long> numbers = new TreeSet<Long>();
+		String[] names = directory.list();
+		if(names==null) return numbers;
+		for(String name: names) {
+			if(name.startsWith(prefix) && name.endsWith(suffix)) {
+				try {
+					numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+				} catch (NumberFormatException e) {
+					// not a journal file
+				}
+			}
+		}
+		return numbers;
+	}
+	
+	/**
+	 * Deletes the segments and snapshots numbered before the passed number
+	 * @param directory The journal directory
+	 * @param number The first number to keep
+	 */
+	protected static void deleteBefore(File directory, long number) {
+		for(Long n: numbered(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX).headSet(number)) {
+			file(directory, SEGMENT_PREFIX, n, SEGMENT_SUFFIX).delete();
+		}
+		for(Long n: numbered(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headSet(number)) {
+			file(directory, SNAPSHOT_PREFIX, n, SNAPSHOT_SUFFIX).delete();
+		}
+	}
+	
+	/**
+	 * Creates a NamingException with a root cause
+	 * @param message The message
+	 * @param cause The root cause
+	 * @return the NamingException
+	 */
+	private static NamingException namingException(String message, Throwable cause) {
+		NamingException ne = new NamingException(message);
+		ne.setRootCause(cause);
+		return ne;
+	}
+	
+	/**
+	 * Returns the root context being journaled
+	 * @return the root context
+	 */
+	public JMXNamingBindingContext getContext() {
+		return context;
+	}
+	
+	/**
+	 * Returns the fsync policy
+	 * @return the fsync policy
+	 */
+	public SyncPolicy getPolicy() {
+		return policy;
+	}
+	
+	/**
+	 * Returns the number of records appended since the journal was opened
+	 * @return the append count
+	 */
+	public synchronized long getAppendCount() {
+		return appended;
+	}
+	
+	/**
+	 * Returns the number of forces issued since the journal was opened. 
+	 * With group commit this is typically far lower than the append count under concurrent load.
+	 * @return the force count
+	 */
+	public synchronized long getForceCount() {
+		return forces;
+	}
+}
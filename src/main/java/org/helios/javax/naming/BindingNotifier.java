@@ -0,0 +1,233 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+
+/**
+ * <p>Title: BindingNotifier</p>
+ * <p>Description: The notification broadcaster for one {@link JMXNamingBindingContext}.
+ * Binding changes are queued by the mutating thread and emitted later on a bounded thread pool shared by all contexts,
+ * so a caller of <code>bind</code> never blocks on a slow listener. Changes queued while a delivery is pending are 
+ * coalesced into one notification per run of consecutive changes of the same type, so notifications are emitted in the order 
+ * the changes were made, with the affected names carried in the notification's user data. If the shared pool is saturated, the 
+ * changes stay queued and a shared timer thread retries the hand-off to the pool, so listener code only ever runs on pool threads.</p>
+ * <p>For {@link JMXNamingBindingContext#NOTIF_TYPE_NEW_BINDING} and {@link JMXNamingBindingContext#NOTIF_TYPE_REMOVED_BINDING}
+ * the user data is a <code>String[]</code> of atomic names. For {@link JMXNamingBindingContext#NOTIF_TYPE_RENAMED_BINDING}
+ * it is a <code>String[][]</code> of <code>{oldName, newName}</code> pairs.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingNotifier</code></p>
+ */
+public class BindingNotifier extends NotificationBroadcasterSupport implements Runnable {
+	/** The context this notifier emits for */
+	protected final JMXNamingBindingContext context;
+	/** The queued changes not yet emitted */
+	protected final ConcurrentLinkedQueue<String[]> pending = new ConcurrentLinkedQueue<String[]>();
+	/** Indicates if a delivery task is scheduled or running */
+	protected final AtomicBoolean scheduled = new AtomicBoolean(false);
+	/** The notification sequence number */
+	protected final AtomicLong sequence = new AtomicLong(0L);
+	
+	/** The system property that specifies the number of notification threads shared by all contexts */
+	public static final String NOTIFIER_THREADS = "org.helios.jmx.naming.notifier.threads";
+	/** The default number of notification threads */
+	public static final int DEFAULT_NOTIFIER_THREADS = 2;
+	/** The system property that specifies the capacity of the shared notification task queue */
+	public static final String NOTIFIER_QUEUE_SIZE = "org.helios.jmx.naming.notifier.queue";
+	/** The default capacity of the shared notification task queue */
+	public static final int DEFAULT_NOTIFIER_QUEUE_SIZE = 4096;
+	/** The maximum number of changes coalesced into one notification */
+	public static final int MAX_BATCH = 1024;
+	/** The delay in ms before a delivery task rejected by the saturated pool is handed off again */
+	public static final long RETRY_DELAY = 10L;
+	
+	/** The bounded thread pool shared by all context notifiers */
+	private static final ThreadPoolExecutor executor;
+	/** The timer that retries hand-offs rejected by the saturated pool. It never runs listener code. */
+	private static final ScheduledThreadPoolExecutor retryTimer;
+	
+	static {
+		int threads = Integer.getInteger(NOTIFIER_THREADS, DEFAULT_NOTIFIER_THREADS);
+		int queueSize = Integer.getInteger(NOTIFIER_QUEUE_SIZE, DEFAULT_NOTIFIER_QUEUE_SIZE);
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			final AtomicInteger serial = new AtomicInteger(0);
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "JMXNamingNotifier#" + serial.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		retryTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "JMXNamingNotifierRetry");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * Creates a new BindingNotifier
+	 * @param context The context this notifier emits for
+	 */
+	public BindingNotifier(JMXNamingBindingContext context) {
+		super(StandardMBeanFeatures.getNotificationInfos());
+		this.context = context;
+	}
+	
+	/**
+	 * Queues a binding change for asynchronous emission. Never blocks.
+	 * @param type The change type
+	 * @param names The affected atomic names. For a rename, the old and the new name.
+	 * For an add or remove, any number of names which will be emitted together.
+	 */
+	public void enqueue(String type, String...names) {
+		String[] change = new String[names.length+1];
+		change[0] = type;
+		System.arraycopy(names, 0, change, 1, names.length);
+		pending.offer(change);
+		schedule();
+	}
+	
+	/**
+	 * Schedules a delivery task if changes are queued and none is scheduled
+	 */
+	protected void schedule() {
+		if(!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+			handOff();
+		}
+	}
+	
+	/**
+	 * Hands the delivery task to the shared pool. Called by the thread that set {@link #scheduled}. If the pool is saturated, 
+	 * the changes stay queued and the retry timer owns the next hand-off, so the calling thread never delivers.
+	 */
+	protected void handOff() {
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException re) {
+			retryTimer.schedule(new Runnable() {
+				public void run() {
+					handOff();
+				}
+			}, RETRY_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Drains the queued changes and emits them as coalesced notifications
+	 * {@inheritDoc}
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			deliver();
+		} finally {
+			scheduled.set(false);
+		}
+		schedule();
+	}
+	
+	/**
+	 * Drains the queued changes, emitting one notification per run of consecutive changes of the same type. 
+	 * Called by the thread that set {@link #scheduled}.
+	 */
+	protected void deliver() {
+		List<String[]> run = new ArrayList<String[]>();
+		while(!pending.isEmpty()) {
+			String[] change = null;
+			for(int i = 0; i < MAX_BATCH && (change = pending.poll())!=null; i++) {
+				if(!run.isEmpty() && !run.get(0)[0].equals(change[0])) {
+					emit(run.get(0)[0], run);
+					run = new ArrayList<String[]>();
+				}
+				run.add(change);
+			}
+			if(!run.isEmpty()) {
+				emit(run.get(0)[0], run);
+				run = new ArrayList<String[]>();
+			}
+		}
+	}
+	
+	/**
+	 * Emits one notification for a batch of changes of the same type
+	 * @param type The change type
+	 * @param changes The changes
+	 */
+	protected void emit(String type, List<String[]> changes) {
+		Object source = context.objectName==null ? context : context.objectName;
+		int size = changes.size();
+		Object userData = null;
+		String message = null;
+		if(JMXNamingBindingContext.NOTIF_TYPE_RENAMED_BINDING.equals(type)) {
+			String[][] renames = new String[size][];
+			for(int i = 0; i < size; i++) {
+				String[] change = changes.get(i);
+				renames[i] = new String[]{change[1], change[2]};
+			}
+			userData = renames;
+			message = size + " binding(s) renamed in context [" + source + "]";
+		} else {
+			int count = 0;
+			for(String[] change: changes) {
+				count += change.length-1;
+			}
+			String[] names = new String[count];
+			int index = 0;
+			for(String[] change: changes) {
+				System.arraycopy(change, 1, names, index, change.length-1);
+				index += change.length-1;
+			}
+			userData = names;
+			message = count + " binding(s) " + (JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING.equals(type) ? "bound" : "removed") + " in context [" + source + "]";
+		}
+		Notification notif = new Notification(type, source, sequence.incrementAndGet(), System.currentTimeMillis(), message);
+		notif.setUserData(userData);
+		try {
+			sendNotification(notif);
+		} catch (Exception e) {
+			// a failing listener must not stop delivery of the remaining batches
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.Serializable;
+
+import javax.naming.NameClassPair;
+
+/**
+ * <p>Title: BindingPage</p>
+ * <p>Description: One page of the names bound in a context, as returned by the <code>listPage</code> MBean operation of 
+ * {@link JMXNamingBindingContext}. Pass the page's cursor to the next call to get the next page.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingPage</code></p>
+ */
+public class BindingPage implements Serializable {
+	/**  */
+	private static final long serialVersionUID = 7416260245519380372L;
+	/** The names and class names on this page */
+	private final NameClassPair[] pairs;
+	/** The cursor of the next page, or null if this is the last page */
+	private final String cursor;
+	
+	/**
+	 * Creates a new BindingPage
+	 * @param pairs The names and class names on this page
+	 * @param cursor The cursor of the next page, or null if this is the last page
+	 */
+	public BindingPage(NameClassPair[] pairs, String cursor) {
+		this.pairs = pairs;
+		this.cursor = cursor;
+	}
+
+	/**
+	 * Returns the names and class names on this page
+	 * @return the names and class names
+	 */
+	public NameClassPair[] getPairs() {
+		return pairs;
+	}
+
+	/**
+	 * Returns the cursor of the next page
+	 * @return the cursor, or null if this is the last page
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+	
+	/**
+	 * Indicates if there are more pages
+	 * @return true if there are more pages
+	 */
+	public boolean hasMore() {
+		return cursor!=null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BindingPage [size=" + pairs.length + ", cursor=" + cursor + "]";
+	}
+}
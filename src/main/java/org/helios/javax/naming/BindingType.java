@@ -0,0 +1,161 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanAttributeInfo;
+
+/**
+ * <p>Title: BindingType</p>
+ * <p>Description: Interned, shared attribute metadata for bindings of one value type and access mode.
+ * Bindings only store their name and value; the {@link MBeanAttributeInfo} for a binding is materialized from its
+ * BindingType when an MBeanInfo snapshot is built.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingType</code></p>
+ */
+public final class BindingType {
+	/** The binding value type name */
+	private final String type;
+	/** Indicates if bindings of this type are readable */
+	private final boolean readable;
+	/** Indicates if bindings of this type are writable */
+	private final boolean writable;
+	
+	/** The description shared by all binding attribute infos */
+	public static final String BINDING_DESCRIPTION = "A JNDI Binding";
+	
+	/** The interned binding types keyed by type name, one map per access mode indexed by {@link #mode(boolean, boolean)} */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static final ConcurrentMap<String, BindingType>[] interned = new ConcurrentMap[]{
+		new ConcurrentHashMap<String, BindingType>(), new ConcurrentHashMap<String, BindingType>(),
+		new ConcurrentHashMap<String, BindingType>(), new ConcurrentHashMap<String, BindingType>()
+	};
+	
+	/**
+	 * Returns the interned read/write BindingType for the passed type name
+	 * @param type The value type name
+	 * @return the shared BindingType
+	 */
+	public static BindingType of(String type) {
+		return of(type, true, true);
+	}
+	
+	/**
+	 * Returns the interned BindingType for the passed type name and access mode
+	 * @param type The value type name
+	 * @param readable true if bindings of this type are readable
+	 * @param writable true if bindings of this type are writable
+	 * @return the shared BindingType
+	 */
+	public static BindingType of(String type, boolean readable, boolean writable) {
+		ConcurrentMap<String, BindingType> types = interned[mode(readable, writable)];
+		BindingType bindingType = types.get(type);
+		if(bindingType==null) {
+			bindingType = new BindingType(type.intern(), readable, writable);
+			BindingType prior = types.putIfAbsent(bindingType.type, bindingType);
+			if(prior!=null) bindingType = prior;
+		}
+		return bindingType;
+	}
+	
+	/**
+	 * Returns the index of the interned map for an access mode
+	 * @param readable true if readable
+	 * @param writable true if writable
+	 * @return the map index
+	 */
+	private static int mode(boolean readable, boolean writable) {
+		return (readable ? 2 : 0) + (writable ? 1 : 0);
+	}
+	
+	/**
+	 * Creates a new BindingType
+	 * @param type The value type name
+	 * @param readable true if bindings of this type are readable
+	 * @param writable true if bindings of this type are writable
+	 */
+	private BindingType(String type, boolean readable, boolean writable) {
+		this.type = type;
+		this.readable = readable;
+		this.writable = writable;
+	}
+	
+	/**
+	 * Creates an MBeanAttributeInfo for a binding of this type
+	 * @param name The binding name
+	 * @return the attribute info
+	 */
+	public MBeanAttributeInfo toAttributeInfo(String name) {
+		return new MBeanAttributeInfo(name, type, BINDING_DESCRIPTION, readable, writable, false);
+	}
+	
+	/**
+	 * Determines if an attribute info built earlier describes a binding of this type, so that it can be reused
+	 * @param info The attribute info, possibly null
+	 * @param name The binding name
+	 * @return true if the info was built by this type for the named binding
+	 */
+	public boolean describes(MBeanAttributeInfo info, String name) {
+		// the type name is interned and infos built by a BindingType share it
+		return info!=null && info.getType()==type && info.isReadable()==readable && info.isWritable()==writable && info.getName().equals(name);
+	}
+
+	/**
+	 * Returns the binding value type name
+	 * @return the type name
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Indicates if bindings of this type are readable
+	 * @return true if readable
+	 */
+	public boolean isReadable() {
+		return readable;
+	}
+
+	/**
+	 * Indicates if bindings of this type are writable
+	 * @return true if writable
+	 */
+	public boolean isWritable() {
+		return writable;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BindingType [" + type + (readable ? " r" : "") + (writable ? "w" : "") + "]";
+	}
+}
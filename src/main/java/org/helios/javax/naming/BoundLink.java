@@ -0,0 +1,250 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.naming.CompositeName;
+import javax.naming.LinkLoopException;
+import javax.naming.LinkRef;
+import javax.naming.Name;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.NotContextException;
+
+/**
+ * <p>Title: BoundLink</p>
+ * <p>Description: A {@link LinkRef} as bound to an atomic name in a context. Looking it up follows the link, and any links the link 
+ * leads to, until a value, reference or context is reached. Link names starting with <code>./</code> are relative to the context 
+ * the link is bound in; all others are relative to the root context of the tree.</p>
+ * <p>The target is memoized together with the modification count of every context read while following the chain, so once warm 
+ * a chain of any length costs one check per context involved, and any change to one of those contexts forces the chain to be followed again.
+ * Links are followed iteratively and a chain that revisits a link fails with a {@link LinkLoopException}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BoundLink</code></p>
+ */
+public class BoundLink extends ReferenceResolver.BoundReference {
+	/** The memoized target, or null if the link has not been followed */
+	private volatile Target target = null;
+	
+	/**
+	 * Creates a new BoundLink
+	 * @param context The context the link is bound in
+	 * @param name The atomic name the link is bound to
+	 * @param link The bound link
+	 */
+	BoundLink(JMXNamingBindingContext context, String name, LinkRef link) {
+		super(context, name, link);
+	}
+	
+	/**
+	 * Returns the object at the end of the link chain, resolving it if it is a reference
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.ReferenceResolver.BoundReference#getObject()
+	 */
+	@Override
+	public Object getObject() throws NamingException {
+		return JMXNamingBindingContext.resolved(getTarget());
+	}
+	
+	/**
+	 * Returns the bound link
+	 * @return the bound link
+	 */
+	public LinkRef getLink() {
+		return (LinkRef)reference;
+	}
+	
+	/**
+	 * Returns the target at the end of the link chain in the form returned by a local lookup, following the chain unless the memoized target is still current
+	 * @return the link target
+	 * @throws NamingException thrown if the chain cannot be followed or loops
+	 */
+	public Object getTarget() throws NamingException {
+		Target t = target;
+		if(t!=null && t.isCurrent()) return t.value;
+		Map<JMXNamingBindingContext, Long> reads = new IdentityHashMap<JMXNamingBindingContext, Long>();
+		Object value = follow(reads);
+		target = new Target(value, reads);
+		return value;
+	}
+	
+	/**
+	 * Returns the context at the end of the link chain
+	 * @return the target context
+	 * @throws NotContextException thrown if the link does not lead to a context
+	 * @throws NamingException thrown if the chain cannot be followed or loops
+	 */
+	public JMXNamingBindingContext getTargetContext() throws NamingException {
+		Object value = getTarget();
+		if(value instanceof JMXNamingBindingContext) return (JMXNamingBindingContext)value;
+		throw new NotContextException("The link [" + name + "] in context [" + context.getNameInNamespace() + "] does not lead to a context");
+	}
+	
+	/**
+	 * Follows the link chain from this link
+	 * @param reads Collects the contexts read and their modification counts, taken before each read
+	 * @return the link target
+	 * @throws NamingException thrown if the chain cannot be followed or loops
+	 */
+	protected Object follow(Map<JMXNamingBindingContext, Long> reads) throws NamingException {
+		Map<BoundLink, Boolean> visited = new IdentityHashMap<BoundLink, Boolean>();
+		ArrayDeque<String> atoms = new ArrayDeque<String>();
+		visited.put(this, Boolean.TRUE);
+		JMXNamingBindingContext ctx = splice(atoms);
+		while(!atoms.isEmpty()) {
+			String atom = atoms.pollFirst();
+			if(!reads.containsKey(ctx)) reads.put(ctx, ctx.modificationCount.get());
+			ctx.loadSnapshot();
+			JMXNamingBindingContext child = ctx.children.get(atom);
+			if(child!=null) {
+				ctx = child;
+				continue;
+			}
+			Object entry = ctx.bindings.get(atom);
+			if(entry==null) throw new NameNotFoundException("The link [" + name + "] target [" + atom + "] is not bound in context [" + ctx.getNameInNamespace() + "]");
+			Object value = ctx.bound(atom, entry);
+			if(value instanceof BoundLink) {
+				BoundLink next = (BoundLink)value;
+				if(visited.put(next, Boolean.TRUE)!=null) {
+					throw new LinkLoopException("The link [" + name + "] in context [" + context.getNameInNamespace() + "] loops through [" + atom + "] in context [" + ctx.getNameInNamespace() + "]");
+				}
+				ctx = next.splice(atoms);
+				continue;
+			}
+			if(!atoms.isEmpty()) throw new NotContextException("The link [" + name + "] target [" + atom + "] in context [" + ctx.getNameInNamespace() + "] is not a context");
+			return value;
+		}
+		return ctx;
+	}
+	
+	/**
+	 * Prepends the components of this link's name to the atoms still to be resolved
+	 * @param atoms The atoms still to be resolved
+	 * @return the context the link name is relative to
+	 * @throws NamingException thrown if the link name is invalid
+	 */
+	protected JMXNamingBindingContext splice(ArrayDeque<String> atoms) throws NamingException {
+		Name linkName = new CompositeName(getLink().getLinkName());
+		boolean relative = !linkName.isEmpty() && ".".equals(linkName.get(0));
+		for(int i = linkName.size()-1; i >= (relative ? 1 : 0); i--) {
+			atoms.addFirst(linkName.get(i));
+		}
+		return relative ? context : context.rootContext;
+	}
+	
+	/**
+	 * <p>Title: Target</p>
+	 * <p>Description: A memoized link target and the modification counts it was resolved at</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.BoundLink.Target</code></p>
+	 */
+	private static final class Target {
+		/** The link target */
+		final Object value;
+		/** The contexts read while following the chain */
+		final JMXNamingBindingContext[] contexts;
+		/** The modification counts of the contexts, taken before they were read */
+		final long[] counts;
+		
+		/**
+		 * Creates a new Target
+		 * @param value The link target
+		 * @param reads The contexts read and their modification counts
+		 */
+		Target(Object value, Map<JMXNamingBindingContext, Long> reads) {
+			this.value = value;
+			contexts = new JMXNamingBindingContext[reads.size()];
+			counts = new long[reads.size()];
+			int i = 0;
+			for(Map.Entry<JMXNamingBindingContext, Long> entry: reads.entrySet()) {
+				contexts[i] = entry.getKey();
+				counts[i] = entry.getValue();
+				i++;
+			}
+		}
+		
+		/**
+		 * Determines if none of the contexts read have been modified since
+		 * @return true if the target is current
+		 */
+		boolean isCurrent() {
+			for(int i = 0; i < contexts.length; i++) {
+				if(contexts[i].modificationCount.get()!=counts[i]) return false;
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * <p>Title: LinkedName</p>
+	 * <p>Description: The result of a lookup whose intermediate component is a link: the rest of the name is resolved from the link's 
+	 * target context on each use, so the lookup cache can hold it without tracking the contexts the link leads to.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.BoundLink.LinkedName</code></p>
+	 */
+	public static final class LinkedName {
+		/** The intermediate link */
+		private final BoundLink link;
+		/** The rest of the name, relative to the link's target context */
+		private final Name remaining;
+		
+		/**
+		 * Creates a new LinkedName
+		 * @param link The intermediate link
+		 * @param remaining The rest of the name, relative to the link's target context
+		 */
+		LinkedName(BoundLink link, Name remaining) {
+			this.link = link;
+			this.remaining = remaining;
+		}
+		
+		/**
+		 * Looks up the rest of the name from the link's target context
+		 * @return the named object
+		 * @throws NamingException thrown if the link or the rest of the name cannot be resolved
+		 */
+		public Object lookup() throws NamingException {
+			return link.getTargetContext().lookup(remaining);
+		}
+		
+		/**
+		 * Looks up the rest of the name from the link's target context, not following a terminal link
+		 * @return the named object or terminal link
+		 * @throws NamingException thrown if the link or the rest of the name cannot be resolved
+		 */
+		public Object lookupLink() throws NamingException {
+			return link.getTargetContext().lookupLink(remaining);
+		}
+	}
+}
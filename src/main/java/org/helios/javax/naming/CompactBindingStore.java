@@ -0,0 +1,607 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Title: CompactBindingStore</p>
+ * <p>Description: A memory compact binding store for very large contexts. Names and values are held side by side in one
+ * open addressing (linear probing) array, so a binding costs two array slots instead of a hash map node.</p>
+ * <p>Reads are lock-free. Writes are serialized on the store's monitor, which trades write concurrency for footprint.
+ * Growing the table is incremental: while a resize is in progress every write also migrates a fixed number of slots
+ * from the old table to the new one, and readers consult the new table first and the old table second.
+ * Migration copies rather than moves, and writes during a resize update both tables, so the old table never loses an entry a reader or iterator expects.</p>
+ * <p>Null keys and values are not supported.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.CompactBindingStore</code></p>
+ */
+public class CompactBindingStore extends AbstractMap<String, Object> implements ConcurrentMap<String, Object> {
+	/** The current table state */
+	protected volatile State state;
+	/** The number of live bindings */
+	protected volatile int size = 0;
+	/** The next old table slot to migrate. Guarded by the store monitor. */
+	protected int migrateIndex = 0;
+	/** The number of used slots (live and deleted) in the write table. Guarded by the store monitor. */
+	protected int usedSlots = 0;
+	/** The entry set view */
+	protected final Set<Map.Entry<String, Object>> entrySet = new EntrySet();
+
+	/** The key slot marker for a deleted binding */
+	private static final Object DELETED = new Object();
+	/** The default initial capacity */
+	public static final int DEFAULT_CAPACITY = 64;
+	/** The number of old table slots migrated by each write during a resize */
+	public static final int MIGRATE_CHUNK = 64;
+	/** The maximum fraction of used slots before a resize starts */
+	public static final float LOAD_FACTOR = 0.75f;
+
+	/**
+	 * Creates a new CompactBindingStore with the default capacity
+	 */
+	public CompactBindingStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new CompactBindingStore
+	 * @param capacity The initial capacity, rounded up to a power of two
+	 */
+	public CompactBindingStore(int capacity) {
+		int cap = 2;
+		while(cap < capacity) cap <<= 1;
+		state = new State(new Table(cap), null);
+	}
+
+	/**
+	 * <p>Title: Table</p>
+	 * <p>Description: One open addressing table. Slot <code>2i</code> holds a key and slot <code>2i+1</code> its value.
+	 * Inserts write the value before the key and deletes clear the value before marking the key. A slot only changes keys through
+	 * a delete, and every delete bumps the table's deletion count first, so a reader that finds a key, reads the value and sees the 
+	 * same deletion count before and after has read that key's value, even if the key left and came back to the slot meanwhile.</p>
+	 */
+	protected static final class Table {
+		/** The interleaved key and value slots */
+		final AtomicReferenceArray<Object> slots;
+		/** The capacity mask */
+		final int mask;
+		/** The number of deletes from this table, bumped before each delete writes its slots. Written holding the store monitor. */
+		volatile int deletions = 0;
+
+		/**
+		 * Creates a new Table
+		 * @param capacity The capacity, a power of two
+		 */
+		Table(int capacity) {
+			slots = new AtomicReferenceArray<Object>(capacity << 1);
+			mask = capacity - 1;
+		}
+
+		/**
+		 * Returns the capacity of this table
+		 * @return the capacity
+		 */
+		int capacity() {
+			return mask + 1;
+		}
+
+		/**
+		 * Lock-free lookup of a key's value
+		 * @param key The key
+		 * @param hash The spread hash of the key
+		 * @return the value or null if the key is not live in this table
+		 */
+		Object get(Object key, int hash) {
+			for(;;) {
+				int index = hash & mask;
+				int stamp = deletions;
+				boolean retry = false;
+				for(int probes = 0; probes <= mask; probes++) {
+					Object k = slots.get(index << 1);
+					if(k==null) return null;
+					if(k!=DELETED && (k==key || k.equals(key))) {
+						Object v = slots.get((index << 1) + 1);
+						if(deletions==stamp) return v;
+						// a delete ran while we read, so the slot may have been recycled
+						retry = true;
+						break;
+					}
+					index = (index + 1) & mask;
+				}
+				if(!retry) return null;
+			}
+		}
+
+		/**
+		 * Returns the slot index of a key. Caller must hold the store monitor.
+		 * @param key The key
+		 * @param hash The spread hash of the key
+		 * @return the slot index or -1 if the key is not live in this table
+		 */
+		int indexOf(Object key, int hash) {
+			int index = hash & mask;
+			for(int probes = 0; probes <= mask; probes++) {
+				Object k = slots.get(index << 1);
+				if(k==null) return -1;
+				if(k!=DELETED && k.equals(key)) return index;
+				index = (index + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Inserts a key known not to be live in this table. Caller must hold the store monitor.
+		 * @param key The key
+		 * @param value The value
+		 * @param hash The spread hash of the key
+		 * @return true if an empty slot was consumed, false if a deleted slot was reused
+		 */
+		boolean insert(String key, Object value, int hash) {
+			int index = hash & mask;
+			for(;;) {
+				Object k = slots.get(index << 1);
+				if(k==null || k==DELETED) {
+					slots.set((index << 1) + 1, value);
+					slots.set(index << 1, key);
+					return k==null;
+				}
+				index = (index + 1) & mask;
+			}
+		}
+
+		/**
+		 * Deletes the binding at a slot. Caller must hold the store monitor.
+		 * @param index The slot index
+		 */
+		void delete(int index) {
+			deletions++;
+			slots.set((index << 1) + 1, null);
+			slots.set(index << 1, DELETED);
+		}
+	}
+
+	/**
+	 * <p>Title: State</p>
+	 * <p>Description: The immutable pairing of the current table and, during a resize, the table being migrated to</p>
+	 */
+	protected static final class State {
+		/** The current table */
+		final Table current;
+		/** The table being migrated to, or null if no resize is in progress */
+		final Table next;
+
+		/**
+		 * Creates a new State
+		 * @param current The current table
+		 * @param next The table being migrated to, or null
+		 */
+		State(Table current, Table next) {
+			this.current = current;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * Spreads a key's hash code so that linear probing is not defeated by clustered string hashes
+	 * @param key The key
+	 * @return the spread hash
+	 */
+	protected static int hash(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public Object get(Object key) {
+		if(key==null) return null;
+		int hash = hash(key);
+		for(;;) {
+			State s = state;
+			if(s.next==null) return s.current.get(key, hash);
+			Object value = s.next.get(key, hash);
+			if(value!=null) return value;
+			value = s.current.get(key, hash);
+			// the old table stops tracking writes once the resize completes
+			if(state==s) return value;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key)!=null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#size()
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size==0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public synchronized Object put(String key, Object value) {
+		checkNotNull(key, value);
+		return write(key, value, hash(key));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ConcurrentMap#putIfAbsent(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public synchronized Object putIfAbsent(String key, Object value) {
+		checkNotNull(key, value);
+		int hash = hash(key);
+		Object prior = locked(key, hash);
+		if(prior!=null) return prior;
+		return write(key, value, hash);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ConcurrentMap#replace(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public synchronized Object replace(String key, Object value) {
+		checkNotNull(key, value);
+		int hash = hash(key);
+		if(locked(key, hash)==null) return null;
+		return write(key, value, hash);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ConcurrentMap#replace(java.lang.Object, java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean replace(String key, Object oldValue, Object newValue) {
+		checkNotNull(key, newValue);
+		int hash = hash(key);
+		Object prior = locked(key, hash);
+		if(prior==null || !prior.equals(oldValue)) return false;
+		write(key, newValue, hash);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#remove(java.lang.Object)
+	 */
+	@Override
+	public synchronized Object remove(Object key) {
+		if(key==null) return null;
+		return delete(key, hash(key));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.ConcurrentMap#remove(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean remove(Object key, Object value) {
+		if(key==null || value==null) return false;
+		int hash = hash(key);
+		Object prior = locked(key, hash);
+		if(prior==null || !prior.equals(value)) return false;
+		delete(key, hash);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#clear()
+	 */
+	@Override
+	public synchronized void clear() {
+		state = new State(new Table(DEFAULT_CAPACITY), null);
+		migrateIndex = 0;
+		usedSlots = 0;
+		size = 0;
+	}
+
+	/**
+	 * Returns a weakly consistent view of the bindings. An iterator created during a resize walks the old table and then
+	 * the bindings of the new table that are not in the old one, so creating it never takes the store monitor.
+	 * {@inheritDoc}
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		return entrySet;
+	}
+
+	/**
+	 * Returns the number of slots in the current table
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return state.current.capacity();
+	}
+
+	/**
+	 * Validates that a key and value are not null
+	 * @param key The key
+	 * @param value The value
+	 */
+	private static void checkNotNull(String key, Object value) {
+		if(key==null) throw new NullPointerException("Key was null");
+		if(value==null) throw new NullPointerException("Value was null");
+	}
+
+	/**
+	 * Returns the live value of a key. Caller must hold the store monitor.
+	 * @param key The key
+	 * @param hash The spread hash of the key
+	 * @return the value or null if the key is not bound
+	 */
+	private Object locked(Object key, int hash) {
+		State s = state;
+		if(s.next!=null) {
+			int index = s.next.indexOf(key, hash);
+			if(index!=-1) return s.next.slots.get((index << 1) + 1);
+		}
+		int index = s.current.indexOf(key, hash);
+		return index==-1 ? null : s.current.slots.get((index << 1) + 1);
+	}
+
+	/**
+	 * Binds a key to a value, migrating a chunk of any resize in progress first. Caller must hold the store monitor.
+	 * @param key The key
+	 * @param value The value
+	 * @param hash The spread hash of the key
+	 * @return the prior value or null if the key was not bound
+	 */
+	private Object write(String key, Object value, int hash) {
+		migrate(MIGRATE_CHUNK);
+		State s = state;
+		Object prior = null;
+		if(s.next!=null) {
+			// keep the old table's copy in step for readers that fall through to it
+			int oldIndex = s.current.indexOf(key, hash);
+			if(oldIndex!=-1) {
+				prior = s.current.slots.get((oldIndex << 1) + 1);
+				s.current.slots.set((oldIndex << 1) + 1, value);
+			}
+		}
+		Table target = s.next==null ? s.current : s.next;
+		int index = target.indexOf(key, hash);
+		if(index!=-1) {
+			prior = target.slots.get((index << 1) + 1);
+			target.slots.set((index << 1) + 1, value);
+		} else {
+			if(target.insert(key, value, hash)) usedSlots++;
+			if(prior==null) size++;
+			if(s.next==null && usedSlots > target.capacity() * LOAD_FACTOR) {
+				startResize(target);
+			}
+		}
+		return prior;
+	}
+
+	/**
+	 * Unbinds a key, migrating a chunk of any resize in progress first. Caller must hold the store monitor.
+	 * @param key The key
+	 * @param hash The spread hash of the key
+	 * @return the prior value or null if the key was not bound
+	 */
+	private Object delete(Object key, int hash) {
+		migrate(MIGRATE_CHUNK);
+		State s = state;
+		Object prior = null;
+		if(s.next!=null) {
+			int index = s.next.indexOf(key, hash);
+			if(index!=-1) {
+				prior = s.next.slots.get((index << 1) + 1);
+				s.next.delete(index);
+			}
+		}
+		int index = s.current.indexOf(key, hash);
+		if(index!=-1) {
+			if(prior==null) prior = s.current.slots.get((index << 1) + 1);
+			s.current.delete(index);
+		}
+		if(prior!=null) size--;
+		return prior;
+	}
+
+	/**
+	 * Starts a resize of the passed table. Caller must hold the store monitor.
+	 * The new table doubles the capacity unless most used slots are deleted ones, in which case it only purges them.
+	 * @param table The full table
+	 */
+	private void startResize(Table table) {
+		int capacity = table.capacity();
+		int newCapacity = size * 2 > capacity * LOAD_FACTOR ? capacity << 1 : capacity;
+		state = new State(table, new Table(newCapacity));
+		migrateIndex = 0;
+		usedSlots = size;
+	}
+
+	/**
+	 * Migrates up to the passed number of old table slots to the new table, completing the resize when all slots are done.
+	 * Caller must hold the store monitor.
+	 * @param chunk The maximum number of slots to migrate
+	 */
+	private void migrate(int chunk) {
+		State s = state;
+		if(s.next==null) return;
+		int capacity = s.current.capacity();
+		int end = (int)Math.min((long)capacity, (long)migrateIndex + chunk);
+		for(int index = migrateIndex; index < end; index++) {
+			Object k = s.current.slots.get(index << 1);
+			if(k==null || k==DELETED) continue;
+			Object v = s.current.slots.get((index << 1) + 1);
+			if(v==null) continue;
+			int hash = hash(k);
+			if(s.next.indexOf(k, hash)==-1) {
+				s.next.insert((String)k, v, hash);
+			}
+		}
+		migrateIndex = end;
+		if(end==capacity) {
+			state = new State(s.next, null);
+		}
+	}
+
+	/**
+	 * <p>Title: EntrySet</p>
+	 * <p>Description: The weakly consistent entry set view</p>
+	 */
+	private class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+		@Override
+		public Iterator<Map.Entry<String, Object>> iterator() {
+			State s = state;
+			return new EntryIterator(s.current, s.next);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return size==0;
+		}
+	}
+
+	/**
+	 * <p>Title: EntryIterator</p>
+	 * <p>Description: A weakly consistent iterator over the live slots of the old table and then, if a resize was in progress, 
+	 * the live slots of the new table whose keys are not in the old one.</p>
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+		/** The table being iterated first */
+		final Table first;
+		/** The table a resize was migrating to, iterated second, or null */
+		Table second;
+		/** The table being iterated */
+		Table table;
+		/** The next slot index to examine */
+		int index = 0;
+		/** The next entry to return */
+		Map.Entry<String, Object> nextEntry = null;
+		/** The last entry returned */
+		Map.Entry<String, Object> lastEntry = null;
+
+		/**
+		 * Creates a new EntryIterator
+		 * @param first The table to iterate first
+		 * @param second The table a resize was migrating to, or null
+		 */
+		EntryIterator(Table first, Table second) {
+			this.first = first;
+			this.second = second;
+			this.table = first;
+			advance();
+		}
+
+		/**
+		 * Advances to the next live slot
+		 */
+		private void advance() {
+			nextEntry = null;
+			while(nextEntry==null) {
+				if(index==table.capacity()) {
+					if(second==null) return;
+					table = second;
+					second = null;
+					index = 0;
+					continue;
+				}
+				int stamp = table.deletions;
+				Object k = table.slots.get(index << 1);
+				if(k!=null && k!=DELETED) {
+					Object v = table.slots.get((index << 1) + 1);
+					if(table.deletions!=stamp) {
+						// a delete ran while we read, so the slot may have been recycled: read it again
+						continue;
+					}
+					// bindings copied or still present in the old table were returned by the first pass
+					if(v!=null && (table==first || first.get(k, hash(k))==null)) {
+						nextEntry = new AbstractMap.SimpleImmutableEntry<String, Object>((String)k, v);
+					}
+				}
+				index++;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextEntry!=null;
+		}
+
+		@Override
+		public Map.Entry<String, Object> next() {
+			if(nextEntry==null) throw new NoSuchElementException();
+			lastEntry = nextEntry;
+			advance();
+			return lastEntry;
+		}
+
+		@Override
+		public void remove() {
+			if(lastEntry==null) throw new IllegalStateException();
+			CompactBindingStore.this.remove(lastEntry.getKey(), lastEntry.getValue());
+			lastEntry = null;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.naming.Binding;
+import javax.naming.NameClassPair;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+/**
+ * <p>Title: ContextEnumeration</p>
+ * <p>Description: A lazy {@link NamingEnumeration} over the bindings and then the subcontexts of a {@link JMXNamingBindingContext}.
+ * Nothing is copied up front: each element is built when it is reached, from weakly consistent iterators over the context's indexes, 
+ * so enumerating a huge context takes constant memory. Every name bound for the whole enumeration is returned exactly once, and changes
+ * made while enumerating may or may not be seen. Since nothing records the names already returned, a name that is unbound and bound 
+ * again, or that moves between a binding and a subcontext, while the enumeration runs can be returned twice.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.ContextEnumeration</code></p>
+ * @param <T> The enumerated type
+ */
+public abstract class ContextEnumeration<T extends NameClassPair> implements NamingEnumeration<T> {
+	/** The enumerated context */
+	protected final JMXNamingBindingContext context;
+	/** The iterator over the context's bindings */
+	protected final Iterator<Map.Entry<String, Object>> bindings;
+	/** The iterator over the context's subcontexts */
+	protected final Iterator<Map.Entry<String, JMXNamingBindingContext>> children;
+	/** Indicates if the enumeration has been closed */
+	protected volatile boolean closed = false;
+	
+	/**
+	 * Creates a new ContextEnumeration
+	 * @param context The context to enumerate
+	 */
+	protected ContextEnumeration(JMXNamingBindingContext context) {
+		this.context = context;
+		bindings = context.bindings.entrySet().iterator();
+		children = context.children.entrySet().iterator();
+	}
+	
+	/**
+	 * Creates a lazy enumeration of the names and class names bound in a context
+	 * @param context The context to enumerate
+	 * @return the enumeration
+	 */
+	public static ContextEnumeration<NameClassPair> names(JMXNamingBindingContext context) {
+		return new ContextEnumeration<NameClassPair>(context) {
+			@Override
+			protected NameClassPair binding(String name, Object entry) {
+				return new NameClassPair(name, JMXNamingBindingContext.typeOf(entry).getType());
+			}
+			@Override
+			protected NameClassPair subcontext(String name, JMXNamingBindingContext child) {
+				return new NameClassPair(name, JMXNamingBindingContext.class.getName());
+			}
+		};
+	}
+	
+	/**
+	 * Creates a lazy enumeration of the bindings of a context. Each value is materialized and resolved as it is reached.
+	 * @param context The context to enumerate
+	 * @return the enumeration
+	 */
+	public static ContextEnumeration<Binding> bindings(JMXNamingBindingContext context) {
+		return new ContextEnumeration<Binding>(context) {
+			@Override
+			protected Binding binding(String name, Object entry) throws NamingException {
+				return new Binding(name, JMXNamingBindingContext.typeOf(entry).getType(), this.context.valueOf(name, entry));
+			}
+			@Override
+			protected Binding subcontext(String name, JMXNamingBindingContext child) {
+				return new Binding(name, child);
+			}
+		};
+	}
+	
+	/**
+	 * Builds the element for a binding
+	 * @param name The binding name
+	 * @param entry The stored form of the binding
+	 * @return the element
+	 * @throws NamingException thrown if the binding cannot be materialized or resolved
+	 */
+	protected abstract T binding(String name, Object entry) throws NamingException;
+	
+	/**
+	 * Builds the element for a subcontext
+	 * @param name The subcontext name
+	 * @param child The subcontext
+	 * @return the element
+	 */
+	protected abstract T subcontext(String name, JMXNamingBindingContext child);
+
+	/**
+	 * {@inheritDoc}
+	 * @see javax.naming.NamingEnumeration#hasMore()
+	 */
+	@Override
+	public boolean hasMore() {
+		return !closed && (bindings.hasNext() || children.hasNext());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see javax.naming.NamingEnumeration#next()
+	 */
+	@Override
+	public T next() throws NamingException {
+		if(closed) throw new NoSuchElementException("The enumeration is closed");
+		if(bindings.hasNext()) {
+			Map.Entry<String, Object> entry = bindings.next();
+			return binding(entry.getKey(), entry.getValue());
+		}
+		Map.Entry<String, JMXNamingBindingContext> entry = children.next();
+		return subcontext(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Enumeration#hasMoreElements()
+	 */
+	@Override
+	public boolean hasMoreElements() {
+		return hasMore();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Enumeration#nextElement()
+	 */
+	@Override
+	public T nextElement() {
+		try {
+			return next();
+		} catch (NamingException ne) {
+			NoSuchElementException ex = new NoSuchElementException(ne.getMessage());
+			ex.initCause(ne);
+			throw ex;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see javax.naming.NamingEnumeration#close()
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+}
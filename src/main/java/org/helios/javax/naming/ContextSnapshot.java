@@ -0,0 +1,573 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
+/**
+ * <p>Title: ContextSnapshot</p>
+ * <p>Description: Writes a context tree to a compact binary snapshot file and restores it through a read-only memory mapping.
+ * A restored tree is materialized lazily: a context's bindings index and subcontexts are read from the mapping the first time 
+ * the context is accessed, and each binding value is decoded the first time it is looked up.</p>
+ * <p>The file is written in post-order, so every context record follows the records of its subcontexts and can refer to them by offset:<pre>
+ * file     := MAGIC:int VERSION:byte record* rootOffset:long MAGIC:int
+ * record   := envCount:varint (key:string value)* bindingCount:varint (name:string type:string value)* childCount:varint (name:string offset:varlong)
+ * value    := tag:byte length:varint bytes
+ * </pre>
+ * Each record starts with the context's own environment overrides, so a subcontext can be created with its environment 
+ * without reading the rest of its record. Strings are varint length prefixed UTF-8.</p>
+ * <p>Bindings whose values are not serializable are skipped. Snapshots are limited to 2GB, the size of a single mapping.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.ContextSnapshot</code></p>
+ */
+public class ContextSnapshot {
+	/** The snapshot file magic number */
+	public static final int MAGIC = 0x4A4D584E;
+	/** The snapshot format version */
+	public static final byte VERSION = 1;
+	/** The value tag for a null value */
+	public static final byte TAG_NULL = 0;
+	/** The value tag for a UTF-8 encoded string */
+	public static final byte TAG_STRING = 1;
+	/** The value tag for a Java serialized value */
+	public static final byte TAG_SERIALIZED = 2;
+	/** The value tag for an environment property removed from an inheriting context */
+	public static final byte TAG_REMOVED = 3;
+	
+	/** The length of the file trailer */
+	private static final int TRAILER_LENGTH = 12;
+	
+	private ContextSnapshot() {
+	}
+	
+	/**
+	 * Writes a snapshot of the passed context and all its subcontexts. The snapshot is written and forced to a temporary file 
+	 * which then replaces the target file, and the directory is forced after the move, so an existing snapshot is never left 
+	 * partially overwritten and a snapshot this method returns for survives a crash. Mutations made while the snapshot
+	 * is written may or may not be included.
+	 * @param context The context to write. It becomes the root context of the restored tree, with its effective environment.
+	 * @param file The snapshot file
+	 * @return the number of bindings written
+	 * @throws NamingException thrown if the snapshot cannot be written
+	 */
+	public static long write(JMXNamingBindingContext context, File file) throws NamingException {
+		if(context==null) throw new NamingException("Context was null");
+		if(file==null) throw new NamingException("Snapshot file was null");
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			FileOutputStream fos = new FileOutputStream(tmp);
+			out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			long[] count = new long[1];
+			long rootOffset = writeRecord(out, context, context.getEnvironment(), count);
+			out.writeLong(rootOffset);
+			out.writeInt(MAGIC);
+			out.flush();
+			fos.getChannel().force(true);
+			out.close();
+			out = null;
+			if(tmp.length() > Integer.MAX_VALUE) throw new IOException("Snapshot exceeds the 2GB limit");
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			forceDirectory(file.getAbsoluteFile().getParentFile());
+			return count[0];
+		} catch (IOException e) {
+			NamingException ne = new NamingException("Failed to write snapshot [" + file + "]");
+			ne.setRootCause(e);
+			throw ne;
+		} finally {
+			if(out!=null) try { out.close(); } catch (Exception e) { /* No Op */ }
+			if(tmp.exists()) tmp.delete();
+		}
+	}
+	
+	/**
+	 * Forces a directory so that files created, renamed or deleted in it survive a crash. 
+	 * Platforms that cannot open a directory for reading do not need, or support, this and are skipped.
+	 * @param directory The directory to force
+	 * @throws IOException thrown if the directory was opened but could not be forced
+	 */
+	protected static void forceDirectory(File directory) throws IOException {
+		if(directory==null) return;
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+		} catch (IOException e) {
+			return;
+		}
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Writes a context record after the records of its subcontexts
+	 * @param out The output to write to
+	 * @param context The context to write
+	 * @param env The environment written at the head of the record
+	 * @param count The running count of bindings written
+	 * @return the offset of the record
+	 * @throws IOException thrown on any IO error
+	 * @throws NamingException thrown if a deferred binding cannot be materialized
+	 */
+	protected static long writeRecord(DataOutputStream out, JMXNamingBindingContext context, Map<?, ?> env, long[] count) throws IOException, NamingException {
+		context.loadSnapshot();
+		JMXNamingBindingContext[] children = context.children.values().toArray(new JMXNamingBindingContext[0]);
+		long[] offsets = new long[children.length];
+		for(int i = 0; i < children.length; i++) {
+			offsets[i] = writeRecord(out, children[i], children[i].environment, count);
+		}
+		long offset = out.size();
+		writeEnvironment(out, env);
+		Map.Entry<?, ?>[] bindings = context.bindings.entrySet().toArray(new Map.Entry<?, ?>[0]);
+		byte[][] encoded = new byte[bindings.length][];
+		byte[] tags = new byte[bindings.length];
+		int written = 0;
+		for(int i = 0; i < bindings.length; i++) {
+			Object entry = bindings[i].getValue();
+			tags[i] = tagOf(entry);
+			encoded[i] = encode(entry, tags[i]);
+			if(encoded[i]!=null) written++;
+		}
+		BinaryFormat.writeVarInt(out, written);
+		for(int i = 0; i < bindings.length; i++) {
+			if(encoded[i]==null) continue;
+			BinaryFormat.writeString(out, (String)bindings[i].getKey());
+			BinaryFormat.writeString(out, JMXNamingBindingContext.typeOf(bindings[i].getValue()).getType());
+			writeValue(out, tags[i], encoded[i]);
+		}
+		count[0] += written;
+		BinaryFormat.writeVarInt(out, children.length);
+		for(int i = 0; i < children.length; i++) {
+			BinaryFormat.writeString(out, children[i].contextName);
+			BinaryFormat.writeVarLong(out, offsets[i]);
+		}
+		return offset;
+	}
+	
+	/**
+	 * Writes an environment. Properties keyed by anything other than a string, or with non-serializable values, are skipped.
+	 * @param out The output to write to
+	 * @param env The environment
+	 * @throws IOException thrown on any IO error
+	 */
+	protected static void writeEnvironment(DataOutputStream out, Map<?, ?> env) throws IOException {
+		Map.Entry<?, ?>[] entries = env.entrySet().toArray(new Map.Entry<?, ?>[0]);
+		byte[][] encoded = new byte[entries.length][];
+		byte[] tags = new byte[entries.length];
+		int written = 0;
+		for(int i = 0; i < entries.length; i++) {
+			if(!(entries[i].getKey() instanceof String)) continue;
+			Object value = entries[i].getValue();
+			if(value==JMXNamingBindingContext.REMOVED_PROPERTY) {
+				tags[i] = TAG_REMOVED;
+				encoded[i] = new byte[0];
+			} else {
+				tags[i] = value instanceof String ? TAG_STRING : TAG_SERIALIZED;
+				encoded[i] = encodeValue(value, tags[i]);
+			}
+			if(encoded[i]!=null) written++;
+		}
+		BinaryFormat.writeVarInt(out, written);
+		for(int i = 0; i < entries.length; i++) {
+			if(encoded[i]==null) continue;
+			BinaryFormat.writeString(out, (String)entries[i].getKey());
+			writeValue(out, tags[i], encoded[i]);
+		}
+	}
+	
+	/**
+	 * Writes an encoded value
+	 * @param out The output to write to
+	 * @param tag The value tag
+	 * @param bytes The encoded value
+	 * @throws IOException thrown on any IO error
+	 */
+	protected static void writeValue(DataOutputStream out, byte tag, byte[] bytes) throws IOException {
+		out.writeByte(tag);
+		BinaryFormat.writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Determines the value tag of a stored binding
+	 * @param entry The stored form of the binding
+	 * @return the value tag
+	 * @throws NamingException thrown if a deferred binding cannot be materialized
+	 */
+	protected static byte tagOf(Object entry) throws NamingException {
+		if(entry instanceof MappedValue && !((MappedValue)entry).isMaterialized()) return ((MappedValue)entry).tag;
+		if(entry instanceof OffHeapStore.OffHeapValue) return TAG_SERIALIZED;
+		Object value = persistentValue(entry);
+		if(value==null) return TAG_NULL;
+		return value instanceof String ? TAG_STRING : TAG_SERIALIZED;
+	}
+	
+	/**
+	 * Encodes a stored binding. Values that are still serialized, either off-heap or in an unmaterialized mapping, are copied as is.
+	 * @param entry The stored form of the binding
+	 * @param tag The binding's value tag
+	 * @return the encoded value or null if the value is not serializable
+	 * @throws IOException thrown on any IO error
+	 * @throws NamingException thrown if a deferred binding cannot be materialized
+	 */
+	protected static byte[] encode(Object entry, byte tag) throws IOException, NamingException {
+		ByteBuffer raw = null;
+		if(entry instanceof MappedValue && !((MappedValue)entry).isMaterialized()) {
+			raw = ((MappedValue)entry).bytes();
+		} else if(entry instanceof OffHeapStore.OffHeapValue) {
+			raw = ((OffHeapStore.OffHeapValue)entry).bytes();
+		}
+		if(raw!=null) {
+			byte[] bytes = new byte[raw.remaining()];
+			raw.get(bytes);
+			return bytes;
+		}
+		return encodeValue(persistentValue(entry), tag);
+	}
+	
+	/**
+	 * Returns the value to persist for a stored binding. Deferred bindings such as a {@link LazyBinding} persist themselves,
+	 * so they are still deferred when restored. Every other binding persists its value.
+	 * @param entry The stored form of the binding, other than an off-heap or unmaterialized mapped value
+	 * @return the value to persist
+	 * @throws NamingException thrown if a mapped value cannot be decoded
+	 */
+	protected static Object persistentValue(Object entry) throws NamingException {
+		Object value = entry instanceof MappedValue ? ((MappedValue)entry).resolve() : entry;
+		if(value instanceof DeferredBinding) return value;
+		return JMXNamingBindingContext.unwrap(value);
+	}
+	
+	/**
+	 * Encodes a value
+	 * @param value The value
+	 * @param tag The value tag
+	 * @return the encoded value or null if the value is not serializable
+	 * @throws IOException thrown on any IO error
+	 */
+	protected static byte[] encodeValue(Object value, byte tag) throws IOException {
+		switch(tag) {
+			case TAG_NULL:
+				return new byte[0];
+			case TAG_STRING:
+				return ((String)value).getBytes(BinaryFormat.UTF8);
+			default:
+				try {
+					return BinaryFormat.serialize(value, 256);
+				} catch (NotSerializableException e) {
+					return null;
+				}
+		}
+	}
+	
+	/**
+	 * Restores a context tree from a snapshot file. Only the root context's environment is read eagerly.
+	 * @param file The snapshot file
+	 * @return the restored root context
+	 * @throws NamingException thrown if the file cannot be mapped or is not a snapshot
+	 */
+	public static JMXNamingBindingContext restore(File file) throws NamingException {
+		if(file==null) throw new NamingException("Snapshot file was null");
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) throw new IOException("Snapshot exceeds the 2GB limit");
+			if(size < 5 + TRAILER_LENGTH) throw new IOException("Snapshot is truncated");
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if(map.getInt(0)!=MAGIC || map.getInt((int)size - 4)!=MAGIC) throw new IOException("Not a snapshot file");
+			if(map.get(4)!=VERSION) throw new IOException("Unsupported snapshot version [" + map.get(4) + "]");
+			ByteBuffer in = map.duplicate();
+			in.position((int)map.getLong((int)size - TRAILER_LENGTH));
+			Hashtable<Object, Object> env = readEnvironment(in);
+			JMXNamingBindingContext root = new JMXNamingBindingContext(env);
+			root.pendingSnapshot = new Record(map, in.position());
+			return root;
+		} catch (IOException e) {
+			NamingException ne = new NamingException("Failed to restore snapshot [" + file + "]");
+			ne.setRootCause(e);
+			throw ne;
+		} catch (ClassNotFoundException e) {
+			NamingException ne = new NamingException("Failed to restore snapshot [" + file + "]");
+			ne.setRootCause(e);
+			throw ne;
+		} finally {
+			// the mapping remains valid after the channel is closed
+			if(raf!=null) try { raf.close(); } catch (Exception e) { /* No Op */ }
+		}
+	}
+	
+	/**
+	 * Reads an environment, decoding its values
+	 * @param in The buffer to read from
+	 * @return the environment
+	 * @throws IOException thrown if a value cannot be decoded
+	 * @throws ClassNotFoundException thrown if a value's class cannot be found
+	 */
+	protected static Hashtable<Object, Object> readEnvironment(ByteBuffer in) throws IOException, ClassNotFoundException {
+		int size = BinaryFormat.readVarInt(in);
+		Hashtable<Object, Object> env = new Hashtable<Object, Object>(Math.max(1, size * 2));
+		for(int i = 0; i < size; i++) {
+			String key = BinaryFormat.readString(in);
+			byte tag = in.get();
+			int length = BinaryFormat.readVarInt(in);
+			ByteBuffer bytes = slice(in, in.position(), length);
+			in.position(in.position() + length);
+			Object value = tag==TAG_REMOVED ? JMXNamingBindingContext.REMOVED_PROPERTY : decode(tag, bytes);
+			if(value!=null) env.put(key, value);
+		}
+		return env;
+	}
+	
+	/**
+	 * Decodes a value
+	 * @param tag The value tag
+	 * @param bytes The encoded value
+	 * @return the decoded value
+	 * @throws IOException thrown if the value cannot be decoded
+	 * @throws ClassNotFoundException thrown if the value's class cannot be found
+	 */
+	protected static Object decode(byte tag, ByteBuffer bytes) throws IOException, ClassNotFoundException {
+		switch(tag) {
+			case TAG_NULL:
+				return null;
+			case TAG_STRING:
+				byte[] utf8 = new byte[bytes.remaining()];
+				bytes.get(utf8);
+				return new String(utf8, BinaryFormat.UTF8);
+			case TAG_SERIALIZED:
+				return BinaryFormat.deserialize(bytes);
+			default:
+				throw new IOException("Unknown value tag [" + tag + "]");
+		}
+	}
+	
+	/**
+	 * Returns a read-only slice of a buffer
+	 * @param buffer The buffer
+	 * @param offset The offset of the slice
+	 * @param length The length of the slice
+	 * @return the slice
+	 */
+	protected static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer slice = buffer.asReadOnlyBuffer();
+		slice.limit(offset + length);
+		slice.position(offset);
+		return slice.slice();
+	}
+	
+	/**
+	 * <p>Title: Record</p>
+	 * <p>Description: The not yet materialized bindings and subcontexts of a restored context</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.ContextSnapshot.Record</code></p>
+	 */
+	public static final class Record {
+		/** The snapshot mapping */
+		private final ByteBuffer map;
+		/** The offset of the record's bindings, following its environment */
+		private final int offset;
+		
+		/**
+		 * Creates a new Record
+		 * @param map The snapshot mapping
+		 * @param offset The offset of the record's bindings
+		 */
+		Record(ByteBuffer map, int offset) {
+			this.map = map;
+			this.offset = offset;
+		}
+		
+		/**
+		 * Materializes the record into its context. Binding values stay encoded until looked up, 
+		 * and subcontexts are created with their environment but their own records pending.
+		 * The whole record is decoded before anything is applied, so a record that fails to decode 
+		 * leaves the context untouched and still pending.
+		 * @param context The context the record was restored into
+		 * @throws NamingException thrown if the record cannot be decoded
+		 */
+		synchronized void load(JMXNamingBindingContext context) throws NamingException {
+			if(context.pendingSnapshot!=this) return;
+			ByteBuffer in = map.duplicate();
+			in.position(offset);
+			String[] names;
+			Object[] entries;
+			List<JMXNamingBindingContext> children;
+			try {
+				int bindingCount = BinaryFormat.readVarInt(in);
+				names = new String[bindingCount];
+				entries = new Object[bindingCount];
+				for(int i = 0; i < bindingCount; i++) {
+					names[i] = BinaryFormat.readString(in);
+					String type = BinaryFormat.readString(in);
+					byte tag = in.get();
+					int length = BinaryFormat.readVarInt(in);
+					entries[i] = tag==TAG_NULL ? JMXNamingBindingContext.wrap(null) : new MappedValue(map, in.position(), length, tag, type);
+					in.position(in.position() + length);
+				}
+				int childCount = BinaryFormat.readVarInt(in);
+				children = new ArrayList<JMXNamingBindingContext>(childCount);
+				for(int i = 0; i < childCount; i++) {
+					String name = BinaryFormat.readString(in);
+					ByteBuffer childIn = map.duplicate();
+					childIn.position((int)BinaryFormat.readVarLong(in));
+					Hashtable<Object, Object> env = readEnvironment(childIn);
+					JMXNamingBindingContext child = context.newSubcontext(name, env);
+					child.pendingSnapshot = new Record(map, childIn.position());
+					children.add(child);
+				}
+			} catch (Exception e) {
+				NamingException ne = new NamingException("Failed to restore the snapshot record of context [" + context.contextName + "]");
+				ne.setRootCause(e);
+				throw ne;
+			}
+			for(int i = 0; i < names.length; i++) {
+				context.bindings.put(names[i], entries[i]);
+			}
+			for(JMXNamingBindingContext child: children) {
+				context.children.put(child.contextName, child);
+			}
+			context.bindingVersion.incrementAndGet();
+			context.pendingSnapshot = null;
+		}
+	}
+	
+	/**
+	 * <p>Title: MappedValue</p>
+	 * <p>Description: A binding value still encoded in a snapshot mapping. It is decoded once, on first lookup.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.ContextSnapshot.MappedValue</code></p>
+	 */
+	public static final class MappedValue implements DeferredBinding {
+		/** The snapshot mapping */
+		private final ByteBuffer map;
+		/** The offset of the encoded value */
+		private final int offset;
+		/** The length of the encoded value */
+		private final int length;
+		/** The value tag */
+		private final byte tag;
+		/** The value's class name */
+		private final String type;
+		/** The decoded value */
+		private volatile Object value = null;
+		/** Set once the value has been decoded */
+		private volatile boolean materialized = false;
+		
+		/**
+		 * Creates a new MappedValue
+		 * @param map The snapshot mapping
+		 * @param offset The offset of the encoded value
+		 * @param length The length of the encoded value
+		 * @param tag The value tag
+		 * @param type The value's class name
+		 */
+		MappedValue(ByteBuffer map, int offset, int length, byte tag, String type) {
+			this.map = map;
+			this.offset = offset;
+			this.length = length;
+			this.tag = tag;
+			this.type = type;
+		}
+
+		@Override
+		public Object resolve() throws NamingException {
+			if(materialized) return value;
+			synchronized(this) {
+				if(!materialized) {
+					try {
+						value = decode(tag, bytes());
+					} catch (Exception e) {
+						NamingException ne = new NamingException("Failed to decode snapshot value of type [" + type + "]");
+						ne.setRootCause(e);
+						throw ne;
+					}
+					materialized = true;
+				}
+			}
+			return value;
+		}
+
+		@Override
+		public String getBindingType() {
+			return type;
+		}
+
+		@Override
+		public void release() {
+			/* No Op. The mapping is released when the last value referencing it is collected. */
+		}
+		
+		/**
+		 * Indicates if the value has been decoded
+		 * @return true if the value has been decoded
+		 */
+		public boolean isMaterialized() {
+			return materialized;
+		}
+		
+		/**
+		 * Returns a read-only view of the encoded value
+		 * @return the encoded bytes
+		 */
+		ByteBuffer bytes() {
+			return slice(map, offset, length);
+		}
+		
+		@Override
+		public String toString() {
+			return "MappedValue [" + type + ", " + length + " bytes" + (materialized ? ", materialized" : "") + "]";
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.LimitExceededException;
+import javax.naming.NameClassPair;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+/**
+ * <p>Title: CursorRegistry</p>
+ * <p>Description: The open listing cursors of a context tree, held by its root {@link JMXNamingBindingContext}. Each cursor keeps a lazy
+ * enumeration of one context, so a remote client walking a huge context page by page costs the server one enumeration, not a copy 
+ * of the listing. Cursors are closed when their last page is returned, and cursors left idle for longer than the timeout are swept 
+ * on every page request and close. The number of open cursors is capped, so clients that abandon listings cannot pin an unbounded 
+ * number of enumerations between sweeps.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.CursorRegistry</code></p>
+ */
+public class CursorRegistry {
+	/** The open cursors keyed by token */
+	protected final ConcurrentMap<String, Cursor> cursors = new ConcurrentHashMap<String, Cursor>();
+	/** The cursor serial number, making every token unique */
+	protected final AtomicLong serial = new AtomicLong(0L);
+	/** The source of the unguessable part of tokens */
+	protected final SecureRandom random = new SecureRandom();
+	
+	/** The default idle timeout of a cursor in ms */
+	public static final int DEFAULT_TIMEOUT = 60000;
+	/** The default page size */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+	/** The maximum page size */
+	public static final int MAX_PAGE_SIZE = 10000;
+	/** The default maximum number of open cursors */
+	public static final int DEFAULT_LIMIT = 1024;
+	
+	/**
+	 * Returns the next page of a listing, opening a cursor for the first page
+	 * @param context The context being listed
+	 * @param token The cursor token of the previous page, or null for the first page
+	 * @param pageSize The maximum number of names on the page. Non-positive sizes select {@link #DEFAULT_PAGE_SIZE}, and sizes above {@link #MAX_PAGE_SIZE} are reduced to it.
+	 * @param timeout The idle timeout in ms of newly opened cursors
+	 * @param limit The maximum number of open cursors
+	 * @return the page
+	 * @throws NamingException thrown if the token is unknown, has expired or belongs to another context, 
+	 * or a {@link LimitExceededException} if opening a cursor would exceed the limit
+	 */
+	public BindingPage page(JMXNamingBindingContext context, String token, int pageSize, long timeout, int limit) throws NamingException {
+		int size = pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+		sweep();
+		Cursor cursor;
+		if(token==null) {
+			// the count is approximate under concurrent opens, which can overshoot the limit by the number of racing threads
+			if(cursors.size() >= limit) throw new LimitExceededException("Too many open cursors. The limit is " + limit);
+			token = Long.toHexString(serial.incrementAndGet()) + "-" + Long.toHexString(random.nextLong());
+			cursor = new Cursor(context, ContextEnumeration.names(context), timeout);
+			cursors.put(token, cursor);
+		} else {
+			cursor = cursors.get(token);
+			if(cursor==null || cursor.context!=context) throw new NamingException("The cursor [" + token + "] is unknown or has expired");
+		}
+		synchronized(cursor) {
+			// a concurrent sweep or close may have closed the cursor since it was looked up
+			if(cursor.closed) throw new NamingException("The cursor [" + token + "] is unknown or has expired");
+			cursor.lastAccess = System.currentTimeMillis();
+			NameClassPair[] pairs = new NameClassPair[size];
+			int count = 0;
+			while(count < size && cursor.enumeration.hasMore()) {
+				pairs[count++] = cursor.enumeration.next();
+			}
+			boolean more = cursor.enumeration.hasMore();
+			if(!more) {
+				cursors.remove(token, cursor);
+				close(cursor);
+			}
+			if(count < size) {
+				NameClassPair[] trimmed = new NameClassPair[count];
+				System.arraycopy(pairs, 0, trimmed, 0, count);
+				pairs = trimmed;
+			}
+			return new BindingPage(pairs, more ? token : null);
+		}
+	}
+	
+	/**
+	 * Closes a cursor before its last page has been returned
+	 * @param token The cursor token
+	 * @return true if the cursor was open
+	 */
+	public boolean close(String token) {
+		sweep();
+		Cursor cursor = token==null ? null : cursors.remove(token);
+		if(cursor==null) return false;
+		close(cursor);
+		return true;
+	}
+	
+	/**
+	 * Closes the cursors that have been idle for longer than their timeout
+	 */
+	public void sweep() {
+		long now = System.currentTimeMillis();
+		for(Iterator<Cursor> iter = cursors.values().iterator(); iter.hasNext();) {
+			Cursor cursor = iter.next();
+			if(now - cursor.lastAccess > cursor.timeout) {
+				iter.remove();
+				close(cursor);
+			}
+		}
+	}
+	
+	/**
+	 * Closes the enumeration of a cursor removed from the registry
+	 * @param cursor The cursor
+	 */
+	protected static void close(Cursor cursor) {
+		synchronized(cursor) {
+			cursor.closed = true;
+			try {
+				cursor.enumeration.close();
+			} catch (NamingException e) {
+				// closing a context enumeration does not fail
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of open cursors
+	 * @return the number of open cursors
+	 */
+	public int getOpenCursors() {
+		return cursors.size();
+	}
+	
+	/**
+	 * <p>Title: Cursor</p>
+	 * <p>Description: An open listing cursor</p> 
+	 */
+	protected static class Cursor {
+		/** The context being listed */
+		final JMXNamingBindingContext context;
+		/** The enumeration of the context */
+		final NamingEnumeration<NameClassPair> enumeration;
+		/** The idle timeout in ms */
+		final long timeout;
+		/** The time of the last page request */
+		volatile long lastAccess = System.currentTimeMillis();
+		/** Indicates if the cursor has been closed. Guarded by the cursor monitor. */
+		boolean closed = false;
+		
+		/**
+		 * Creates a new Cursor
+		 * @param context The context being listed
+		 * @param enumeration The enumeration of the context
+		 * @param timeout The idle timeout in ms
+		 */
+		Cursor(JMXNamingBindingContext context, NamingEnumeration<NameClassPair> enumeration, long timeout) {
+			this.context = context;
+			this.enumeration = enumeration;
+			this.timeout = timeout;
+		}
+	}
+}
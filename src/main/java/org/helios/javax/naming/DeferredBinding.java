@@ -0,0 +1,58 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import javax.naming.NamingException;
+
+/**
+ * <p>Title: DeferredBinding</p>
+ * <p>Description: A stored binding whose value is materialized on demand rather than held directly in a context's bindings.
+ * The declared type is known without resolving the value, so listing a context and building its MBeanInfo never
+ * materializes a deferred binding.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.DeferredBinding</code></p>
+ */
+public interface DeferredBinding {
+	/**
+	 * Materializes the bound value
+	 * @return the bound value, possibly null
+	 * @throws NamingException thrown if the value cannot be materialized
+	 */
+	public Object resolve() throws NamingException;
+	
+	/**
+	 * Returns the class name of the bound value, without materializing it
+	 * @return the declared type name
+	 */
+	public String getBindingType();
+	
+	/**
+	 * Called when the binding is removed from its context, so any resources held for it can be accounted for or released.
+	 * A released binding must still resolve, since a concurrent reader may already hold it. 
+	 */
+	public void release();
+}
@@ -28,8 +28,23 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -39,16 +54,35 @@ import javax.management.DynamicMBean;
 import javax.management.InvalidAttributeValueException;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanRegistration;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.modelmbean.DescriptorSupport;
+import javax.naming.Binding;
+import javax.naming.CompositeName;
+import javax.naming.Context;
+import javax.naming.ContextNotEmptyException;
+import javax.naming.InvalidNameException;
+import javax.naming.LinkRef;
 import javax.naming.Name;
 import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameClassPair;
+import javax.naming.NameNotFoundException;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.NotContextException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.Reference;
+import javax.naming.Referenceable;
 import javax.naming.directory.InvalidAttributesException;
 
 /**
@@ -69,38 +103,64 @@ import javax.naming.directory.InvalidAttributesException;
  *  <li>Get all attributes</li>
  *  <li>Remove all attributes</li>
  *  <li>JMX Notifications For:<ul>
- *  	<li>Attribute Added</li>
- *  	<li>Attribute Removed</li>
- *  	<li>Attribute Renamed</li>
  *  	<li>NamingException</li>
- *  	<li>Context Added</li>
- *  	<li>Context Removed</li>
- *  	<li>Context Renamed</li>
  *  </ul></li>
- *  <li>NotificationBroadcasterSupport and shared ThreadPool.</li>
- *  <li>Serialization write replace into a simple Context</li>
- *  <li>Referenceable support</li>
- *  <li>Link support</li>
  *  <li></li>
  *  <li></li>
  * </ul>
  */
 
-public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration {
-	/** A map of the context environment */
+public class JMXNamingBindingContext implements Context, DynamicMBean, NotificationEmitter, MBeanRegistration, Serializable {
+	/**  */
+	private static final long serialVersionUID = 2840457735462128329L;
+	/** A map of this context's own environment overrides. Inherited properties are read through the parent chain. */
 	protected final Map<Object, Object> environment = new ConcurrentHashMap<Object, Object>();	
-	/** A map of context bindings keyed by the binding name */
-	protected final Map<String, Object> bindings = new ConcurrentHashMap<String, Object>();
+	/** The environment version, incremented whenever this context's own environment overrides change */
+	protected final AtomicLong environmentVersion = new AtomicLong(0L);
+	/** The most recently flattened environment snapshot */
+	protected volatile EnvironmentSnapshot envSnapshot = null;
+	/** A map of context bindings keyed by the binding name. Null values are stored as {@link NullValueBinding#INSTANCE}. */
+	protected final ConcurrentMap<String, Object> bindings;
 	/** The ObjectName of this DynamicMBean */
 	protected ObjectName objectName = null;
 	/** The MBeanServer where this MBean is registered */
 	protected MBeanServer server = null;
-	/** A map of AttributeInfos keyed by attribute name */
-	protected final Map<String, MBeanAttributeInfo> attrInfos = new ConcurrentHashMap<String, MBeanAttributeInfo>();	
 	/** The parent context */
 	protected final JMXNamingBindingContext parentContext;
+	/** The root context of the tree this context belongs to */
+	protected final JMXNamingBindingContext rootContext;
+	/** The resolved name lookup cache. Only ever set on a root context, and only when enabled through {@link #LOOKUP_CACHE} */
+	protected volatile LookupCache lookupCache = null;
+	/** The atomic name of this context in its parent context, or null for the root context */
+	protected volatile String contextName;
+	/** An index of the child contexts of this context keyed by their atomic names */
+	protected final ConcurrentMap<String, JMXNamingBindingContext> children = new ConcurrentHashMap<String, JMXNamingBindingContext>();
 	/** This context MBean's Descriptor */
 	protected final Descriptor descriptor = new DescriptorSupport();
+	/** The modification count, incremented after every change to this context's bindings or subcontexts. Memoized link targets are validated against it. */
+	protected final AtomicLong modificationCount = new AtomicLong(0L);
+	/** The binding version, incremented whenever the set of bindings (and therefore the MBeanInfo) changes */
+	protected final AtomicLong bindingVersion = new AtomicLong(0L);
+	/** The most recently built MBeanInfo snapshot */
+	protected volatile MBeanInfoSnapshot infoSnapshot = null;
+	/** The notification broadcaster, created when the first listener is registered */
+	protected volatile BindingNotifier notifier = null;
+	/** The write-ahead journal of this tree's mutations. Only ever set on a root context, by {@link BindingJournal#open(java.io.File, BindingJournal.SyncPolicy, long, long)} */
+	protected volatile BindingJournal journal = null;
+	/** The not yet materialized snapshot record of a restored context, or null once its bindings and subcontexts are in place */
+	protected volatile ContextSnapshot.Record pendingSnapshot = null;
+	/** The off-heap storage tier shared by the whole tree. Held by the root context, created when any context enables it through {@link #OFFHEAP_THRESHOLD} and then kept. */
+	protected volatile OffHeapStore offHeapStore = null;
+	/** This context's effective {@link #OFFHEAP_THRESHOLD}, or zero if values bound here stay on heap */
+	protected volatile int offHeapThreshold = 0;
+	/** The sorted index of this context's names, built on the first query when enabled through {@link #NAME_INDEX} */
+	protected volatile NameIndex nameIndex = null;
+	/** The open listing cursors of the tree. Only ever set on a root context, when the first cursor is opened. */
+	protected volatile CursorRegistry cursorRegistry = null;
+	/** The resolver of reference bindings, shared by every context in the tree */
+	protected final ReferenceResolver referenceResolver;
+	/** The reference bindings of this context that have been looked up, keyed by binding name. Created on the first such lookup. */
+	protected volatile ConcurrentMap<String, ReferenceResolver.BoundReference> references = null;
 	
 	
 	
@@ -118,139 +178,2080 @@ public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration
 	public static final String NOTIF_TYPE_REMOVED_BINDING = "jmx.naming.object.removed";
 	/** The JMX notification type for a bound value renamed */
 	public static final String NOTIF_TYPE_RENAMED_BINDING = "jmx.naming.object.renamed";
+	/** Constant that holds the name of the environment property that enables the resolved name lookup cache on a root context */
+	public static final String LOOKUP_CACHE = "java.naming.jmx.lookup.cache";
+	/** Constant that holds the name of the environment property that selects the binding store of new contexts. Set to {@link #COMPACT_BINDING_STORE} for very large contexts. */
+	public static final String BINDING_STORE = "java.naming.jmx.binding.store";
+	/** The {@link #BINDING_STORE} value that selects the open addressing {@link CompactBindingStore} */
+	public static final String COMPACT_BINDING_STORE = "compact";
+	/** Constant that holds the name of the environment property that specifies the minimum serialized size in bytes of a binding value stored off-heap */
+	public static final String OFFHEAP_THRESHOLD = "java.naming.jmx.offheap.threshold";
+	/** Constant that holds the name of the environment property that specifies how many deserialized off-heap values are cached on heap. Read from the root context, as the store is shared by the tree. */
+	public static final String OFFHEAP_CACHE_SIZE = "java.naming.jmx.offheap.cache";
+	/** Constant that holds the name of the environment property that enables caching the objects built from reference bindings. Also the type of a {@link javax.naming.RefAddr} overriding it for one reference. */
+	public static final String REFERENCE_CACHE = "java.naming.jmx.reference.cache";
+	/** Constant that holds the name of the environment property that enables the sorted name index answering {@link #findNames(String)} and {@link #findNameRange(String, String)} */
+	public static final String NAME_INDEX = "java.naming.jmx.name.index";
+	/** Constant that holds the name of the environment property that specifies the idle timeout in ms of listing cursors opened by {@link #listPage(String, int)} */
+	public static final String CURSOR_TIMEOUT = "java.naming.jmx.cursor.timeout";
+	/** Constant that holds the name of the environment property that specifies the maximum number of listing cursors open at once in a context tree */
+	public static final String CURSOR_LIMIT = "java.naming.jmx.cursor.limit";
+	/** The reserved attribute name of the context's MBeanInfo version */
+	public static final String ATTR_MBEANINFO_VERSION = "MBeanInfoVersion";
+	/** The reserved attribute name of the root lookup cache hit count */
+	public static final String ATTR_LOOKUP_CACHE_HITS = "LookupCacheHits";
+	/** The reserved attribute name of the root lookup cache miss count */
+	public static final String ATTR_LOOKUP_CACHE_MISSES = "LookupCacheMisses";
+	/** The reserved attribute name of the tree's live off-heap byte count */
+	public static final String ATTR_OFFHEAP_BYTES = "OffHeapBytes";
+	/** The reserved attribute name of the native memory retained by the tree's off-heap slabs */
+	public static final String ATTR_OFFHEAP_RETAINED_BYTES = "OffHeapRetainedBytes";
+	/** The reserved attribute name of the tree's off-heap deserialization count */
+	public static final String ATTR_OFFHEAP_DESERIALIZATIONS = "OffHeapDeserializations";
 	
 	
+	/** The name parser shared by all contexts */
+	private static final NameParser NAME_PARSER = new CompositeNameParser();
+	/** The shared attribute metadata for null bindings */
+	private static final BindingType NULL_BINDING_TYPE = BindingType.of(Void.class.getName());
+	/** The environment override value marking a property removed from an inheriting context */
+	static final Object REMOVED_PROPERTY = new Object();
+	
 	static {
 		
 	}
 	
 	/**
-	 * Creates a new JMXNamingBindingContext with the specified parent
-	 * @param parentContext the parent JMXNamingBindingContext context
+	 * Creates a new JMXNamingBindingContext with the specified parent
+	 * @param parentContext the parent JMXNamingBindingContext context
+	 * @param contextName the atomic name of this context in its parent
+	 */
+	protected JMXNamingBindingContext(JMXNamingBindingContext parentContext, String contextName) {
+		this(parentContext, contextName, null);
+	}
+	
+	/**
+	 * Creates a new JMXNamingBindingContext with the specified parent and initial environment overrides
+	 * @param parentContext the parent JMXNamingBindingContext context
+	 * @param contextName the atomic name of this context in its parent
+	 * @param env the initial environment overrides of this context, or null
+	 */
+	protected JMXNamingBindingContext(JMXNamingBindingContext parentContext, String contextName, Map<?, ?> env) {
+		this.parentContext = parentContext; 
+		this.rootContext = parentContext==null ? this : parentContext.rootContext;
+		this.referenceResolver = parentContext==null ? new ReferenceResolver() : parentContext.referenceResolver;
+		this.contextName = contextName;
+		if(env!=null) {
+			for(Map.Entry<?, ?> entry: env.entrySet()) {
+				if(entry.getKey()!=null && entry.getValue()!=null) {
+					environment.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		initEnvironment();
+		bindings = createBindingStore();
+		configureOffHeapStore();
+		if(env!=null) {
+			for(Object propName: env.keySet()) {
+				if(propName instanceof String) environmentChanged((String)propName);
+			}
+		}
+	}
+	
+	/**
+	 * Creates a new JMXNamingBindingContext with the specified parent
+	 * @param parentContext the parent JMXNamingBindingContext context
+	 */
+	public JMXNamingBindingContext(JMXNamingBindingContext parentContext) {
+		this(parentContext, null);
+	}
+	
+	/**
+	 * Creates a new JMXNamingBindingContext with no parent (i.e. the root context)
+	 */
+	public JMXNamingBindingContext() {
+		this((JMXNamingBindingContext)null); 
+	}
+	
+	/**
+	 * Creates a new root JMXNamingBindingContext with the specified initial environment
+	 * @param env the initial environment, or null
+	 */
+	public JMXNamingBindingContext(Hashtable<?, ?> env) {
+		this(null, null, env);
+	}
+	
+	/**
+	 * Creates the binding store for this context as selected by the effective {@link #BINDING_STORE} environment property.
+	 * The store is fixed for the life of the context, so changing the property only affects contexts created afterwards.
+	 * @return the binding store
+	 */
+	protected ConcurrentMap<String, Object> createBindingStore() {
+		if(COMPACT_BINDING_STORE.equals(getEnvironmentProperty(BINDING_STORE))) {
+			return new CompactBindingStore();
+		}
+		return new ConcurrentHashMap<String, Object>();
+	}
+	
+	/**
+	 * Applies the effective {@link #OFFHEAP_THRESHOLD} of this context, creating the tree's shared off-heap store if it enables the tier, 
+	 * and at the root applies {@link #OFFHEAP_CACHE_SIZE} to the store. Once created the store is kept, so values already off-heap 
+	 * still resolve after the tier is disabled.
+	 */
+	protected void configureOffHeapStore() {
+		int threshold = intEnvironmentProperty(OFFHEAP_THRESHOLD, 0);
+		if(threshold > 0) offHeapStore();
+		offHeapThreshold = threshold;
+		if(parentContext==null) {
+			OffHeapStore store = offHeapStore;
+			if(store!=null) store.configure(intEnvironmentProperty(OFFHEAP_CACHE_SIZE, OffHeapStore.DEFAULT_CACHE_SIZE));
+		}
+	}
+	
+	/**
+	 * Reapplies the off-heap settings to this context and every subcontext already created beneath it, 
+	 * so a change inherited from an ancestor reaches them
+	 */
+	protected void configureOffHeapTree() {
+		configureOffHeapStore();
+		for(JMXNamingBindingContext child: children.values()) {
+			child.configureOffHeapTree();
+		}
+	}
+	
+	/**
+	 * Returns the tree's shared off-heap store, creating it at the root on first use
+	 * @return the off-heap store
+	 */
+	protected OffHeapStore offHeapStore() {
+		JMXNamingBindingContext root = rootContext;
+		OffHeapStore store = root.offHeapStore;
+		if(store==null) {
+			synchronized(root) {
+				store = root.offHeapStore;
+				if(store==null) {
+					store = new OffHeapStore(root.intEnvironmentProperty(OFFHEAP_CACHE_SIZE, OffHeapStore.DEFAULT_CACHE_SIZE));
+					root.offHeapStore = store;
+				}
+			}
+		}
+		return store;
+	}
+	
+	/**
+	 * Returns the effective value of an integer environment property
+	 * @param propName The property name
+	 * @param defaultValue The value to return if the property is not defined or is not a number
+	 * @return the property value
+	 */
+	protected int intEnvironmentProperty(String propName, int defaultValue) {
+		Object value = getEnvironmentProperty(propName);
+		if(value==null) return defaultValue;
+		if(value instanceof Number) return ((Number)value).intValue();
+		try {
+			return Integer.parseInt(value.toString().trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Initializes the environment for this context. 
+	 * Child contexts start with no overrides and read inherited properties through the parent chain.
+	 */
+	protected void initEnvironment() {
+		
+	}
+	
+	/**
+	 * Returns the effective value of an environment property, walking up the parent chain until a context defines it
+	 * @param propName The property name
+	 * @return the property value or null if no context in the chain defines it
+	 */
+	public Object getEnvironmentProperty(Object propName) {
+		for(JMXNamingBindingContext ctx = this; ctx!=null; ctx = ctx.parentContext) {
+			Object value = ctx.environment.get(propName);
+			if(value!=null) return value==REMOVED_PROPERTY ? null : value;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the flattened environment of this context. The snapshot is cached and only rebuilt when this context's 
+	 * overrides change or the parent's snapshot has been rebuilt, so a change in any ancestor invalidates it.
+	 * @return the flattened environment snapshot
+	 */
+	protected EnvironmentSnapshot environmentSnapshot() {
+		EnvironmentSnapshot parentSnapshot = parentContext==null ? null : parentContext.environmentSnapshot();
+		long version = environmentVersion.get();
+		EnvironmentSnapshot snapshot = envSnapshot;
+		if(snapshot!=null && snapshot.version==version && snapshot.parent==parentSnapshot) {
+			return snapshot;
+		}
+		// Captured before reading the overrides, so a concurrent change leaves the snapshot stale rather than wrongly current
+		Map<Object, Object> flattened = parentSnapshot==null ? new HashMap<Object, Object>(environment.size()) : new HashMap<Object, Object>(parentSnapshot.properties);
+		for(Map.Entry<Object, Object> entry: environment.entrySet()) {
+			if(entry.getValue()==REMOVED_PROPERTY) {
+				flattened.remove(entry.getKey());
+			} else {
+				flattened.put(entry.getKey(), entry.getValue());
+			}
+		}
+		snapshot = new EnvironmentSnapshot(version, parentSnapshot, Collections.unmodifiableMap(flattened));
+		envSnapshot = snapshot;
+		return snapshot;
+	}
+	
+	/**
+	 * <p>Title: EnvironmentSnapshot</p>
+	 * <p>Description: An immutable flattened view of a context's environment, tagged with the overrides version and the parent snapshot it was built from</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.JMXNamingBindingContext.EnvironmentSnapshot</code></p>
+	 */
+	protected static final class EnvironmentSnapshot {
+		/** The environment overrides version the snapshot was built from */
+		final long version;
+		/** The parent snapshot this snapshot was built from */
+		final EnvironmentSnapshot parent;
+		/** The flattened properties */
+		final Map<Object, Object> properties;
+		/** The flattened properties as a hashtable, created on first use */
+		private volatile Hashtable<Object, Object> hashtable = null;
+		
+		/**
+		 * Creates a new EnvironmentSnapshot
+		 * @param version The environment overrides version the snapshot was built from
+		 * @param parent The parent snapshot this snapshot was built from
+		 * @param properties The flattened properties
+		 */
+		EnvironmentSnapshot(long version, EnvironmentSnapshot parent, Map<Object, Object> properties) {
+			this.version = version;
+			this.parent = parent;
+			this.properties = properties;
+		}
+		
+		/**
+		 * Returns the flattened properties as a hashtable for the javax.naming SPIs that require one. The hashtable is shared 
+		 * by every caller of this snapshot, and like any environment passed to an object factory must not be modified.
+		 * @return the flattened properties hashtable
+		 */
+		Hashtable<Object, Object> hashtable() {
+			Hashtable<Object, Object> table = hashtable;
+			if(table==null) {
+				table = new Hashtable<Object, Object>(properties);
+				hashtable = table;
+			}
+			return table;
+		}
+	}
+	
+    // =================================================
+    //		Context Ops
+    // =================================================
+	
+    /**
+     * Adds a new environment property to the environment of this
+     * context.  If the property already exists, its value is overwritten.
+     * See class description for more details on environment properties.
+     *
+     * @param propName
+     *		the name of the environment property to add; may not be null
+     * @param propVal
+     *		the value of the property to add; may not be null
+     * @return	the previous value of the property, or null if the property was
+     *		not in the environment before
+     * @throws	NamingException if a naming exception is encountered
+     *
+     * @see #getEnvironment()
+     * @see #removeFromEnvironment(String)
+     */
+    public Object addToEnvironment(String propName, Object propVal) throws NamingException {
+    	if(propName==null) throw new NamingException("Environment key was null");
+    	if(propVal==null) throw new NamingException("Environment value was null");
+    	Object prior = getEnvironmentProperty(propName);
+    	environment.put(propName, propVal);
+    	environmentVersion.incrementAndGet();
+    	environmentChanged(propName);
+    	return prior;
+    }
+    
+    /**
+     * Closes this context.
+     * This method releases this context's resources immediately, instead of
+     * waiting for them to be released automatically by the garbage collector.
+     *
+     * <p> This method is idempotent:  invoking it on a context that has
+     * already been closed has no effect.  Invoking any other method
+     * on a closed context is not allowed, and results in undefined behaviour.
+     * 
+     * For JMXNamingBindingContext, this call has no effect when called locally,
+     * but if called on a remoted context, will close the underlying transport.
+     *
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public void close() throws NamingException {
+    	
+    }
+    
+    
+    /**
+     * Removes an environment property from the environment of this
+     * context.
+     *
+     * @param propName
+     *		the name of the environment property to remove; may not be null
+     * @return	the previous value of the property, or null if the property was
+     *		not in the environment
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public Object removeFromEnvironment(String propName) throws NamingException {
+    	if(propName==null) throw new NamingException("Environment key was null");
+    	Object prior = getEnvironmentProperty(propName);
+    	if(prior==null) return null;
+    	if(parentContext!=null && parentContext.getEnvironmentProperty(propName)!=null) {
+    		// mask the inherited value
+    		environment.put(propName, REMOVED_PROPERTY);
+    	} else {
+    		environment.remove(propName);
+    	}
+    	environmentVersion.incrementAndGet();
+    	environmentChanged(propName);
+    	return prior;
+    }
+    
+    /**
+     * Applies an environment property change to this context
+     * @param propName The name of the changed property
+     */
+    protected void environmentChanged(String propName) {
+    	if(LOOKUP_CACHE.equals(propName) && parentContext==null) {
+    		boolean enabled = Boolean.valueOf(String.valueOf(getEnvironmentProperty(LOOKUP_CACHE)));
+    		if(enabled && lookupCache==null) {
+    			lookupCache = new LookupCache();
+    		} else if(!enabled) {
+    			lookupCache = null;
+    		}
+    	} else if(OFFHEAP_THRESHOLD.equals(propName) || OFFHEAP_CACHE_SIZE.equals(propName)) {
+    		configureOffHeapTree();
+    	} else if(NAME_INDEX.equals(propName) && !isNameIndexEnabled()) {
+    		nameIndex = null;
+    	}
+    }
+    
+    /**
+     * Retrieves a copy of the environment in effect for this context,
+     * including the properties inherited from its ancestors.
+     *
+     * @return	the environment of this context; never null
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public Hashtable<?, ?> getEnvironment() throws NamingException {
+    	return new Hashtable<Object, Object>(environmentSnapshot().properties);
+    }
+    
+    /**
+     * Retrieves the full name of this context within the JMXNaming namespace.
+     *
+     * @return	this context's name in the namespace; the empty string for the root context
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public String getNameInNamespace() throws NamingException {
+    	Name fullName = new CompositeName();
+    	for(JMXNamingBindingContext ctx = this; ctx.parentContext!=null; ctx = ctx.parentContext) {
+    		fullName.add(0, ctx.contextName);
+    	}
+    	return fullName.toString();
+    }
+    
+    /**
+     * Retrieves the parser associated with the named context.
+     * All JMXNaming contexts share a composite name syntax.
+     *
+     * @param name the name of the context from which to get the parser
+     * @return	a name parser that can parse compound names into their atomic components
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public NameParser getNameParser(Name name) throws NamingException {
+    	return NAME_PARSER;
+    }
+    
+    /**
+     * Retrieves the parser associated with the named context.
+     * All JMXNaming contexts share a composite name syntax.
+     *
+     * @param name the name of the context from which to get the parser
+     * @return	a name parser that can parse compound names into their atomic components
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public NameParser getNameParser(String name) throws NamingException {
+    	return NAME_PARSER;
+    }
+    
+    /**
+     * Composes the name of this context with a name relative to this context.
+     *
+     * @param name a name relative to this context
+     * @param prefix the name of this context relative to one of its ancestors
+     * @return	the composition of <code>prefix</code> and <code>name</code>
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public Name composeName(Name name, Name prefix) throws NamingException {
+    	Name composed = (Name)prefix.clone();
+    	composed.addAll(name);
+    	return composed;
+    }
+    
+    /**
+     * Composes the name of this context with a name relative to this context.
+     *
+     * @param name a name relative to this context
+     * @param prefix the name of this context relative to one of its ancestors
+     * @return	the composition of <code>prefix</code> and <code>name</code>
+     * @throws	NamingException if a naming exception is encountered
+     */
+    public String composeName(String name, String prefix) throws NamingException {
+    	return composeName(new CompositeName(name), new CompositeName(prefix)).toString();
+    }
+    
+	/**
+	 * Adds a new attribute to this context
+	 * @param name the name to bind; may not be empty
+	 * @param value the object to bind; possibly null 
+     * @throws	NameAlreadyBoundException if name is already bound
+     * @throws	InvalidAttributesException if object did not supply all mandatory attributes
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void bind(String name, Object value) throws NameAlreadyBoundException, InvalidAttributesException, NamingException {
+		if(isAtomic(name)) {
+			bindLocal(name, value);
+		} else {
+			bind(new CompositeName(name), value);
+		}
+	}
+	
+	/**
+	 * Adds a new attribute to this context
+	 * @param name the name to bind; may not be empty
+	 * @param value the object to bind; possibly null 
+     * @throws	NameAlreadyBoundException if name is already bound
+     * @throws	InvalidAttributesException if object did not supply all mandatory attributes
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void bind(Name name, Object value) throws NameAlreadyBoundException, InvalidAttributesException, NamingException {
+		int last = lastIndex(name);
+		resolveContext(name, last).bindLocal(name.get(last), value);
+	}
+	
+	/**
+	 * Binds a value that is built by the passed factory on first lookup. The attribute metadata reports the declared type until then.
+	 * @param name the name to bind; may not be empty
+	 * @param type the declared type of the value
+	 * @param factory the factory that builds the value, exactly once
+	 * @throws NameAlreadyBoundException if name is already bound
+	 * @throws NamingException if a naming exception is encountered
+	 * @see LazyBinding
+	 */
+	public <T> void bindLazy(String name, Class<T> type, Callable<? extends T> factory) throws NamingException {
+		bind(name, new LazyBinding<T>(type, factory));
+	}
+	
+	/**
+	 * Binds a name to an object, overwriting any existing binding.
+	 * @param name the name to bind; may not be empty
+	 * @param value the object to bind; possibly null
+     * @throws	InvalidAttributesException if object did not supply all mandatory attributes
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void rebind(String name, Object value) throws InvalidAttributesException, NamingException {
+		if(isAtomic(name)) {
+			rebindLocal(name, value);
+		} else {
+			rebind(new CompositeName(name), value);
+		}
+	}
+	
+	/**
+	 * Binds a name to an object, overwriting any existing binding.
+	 * @param name the name to bind; may not be empty
+	 * @param value the object to bind; possibly null
+     * @throws	InvalidAttributesException if object did not supply all mandatory attributes
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void rebind(Name name, Object value) throws InvalidAttributesException, NamingException {
+		int last = lastIndex(name);
+		resolveContext(name, last).rebindLocal(name.get(last), value);
+	}
+	
+	/**
+	 * Unbinds the named object. This method is idempotent: unbinding a name that is not bound has no effect. 
+	 * @param name the name to unbind; may not be empty
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void unbind(String name) throws NamingException {
+		if(isAtomic(name)) {
+			unbindLocal(name);
+		} else {
+			unbind(new CompositeName(name));
+		}
+	}
+	
+	/**
+	 * Unbinds the named object. This method is idempotent: unbinding a name that is not bound has no effect.
+	 * @param name the name to unbind; may not be empty
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void unbind(Name name) throws NamingException {
+		int last = lastIndex(name);
+		resolveContext(name, last).unbindLocal(name.get(last));
+	}
+	
+	/**
+	 * Retrieves the named object.
+	 * @param name the name of the object to look up. If empty, returns this context.
+	 * @return the object bound to <tt>name</tt>
+	 * @throws NameNotFoundException if the name is not bound
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public Object lookup(String name) throws NamingException {
+		return resolved(lookupBound(name));
+	}
+	
+	/**
+	 * Retrieves the named object.
+	 * @param name the name of the object to look up. If empty, returns this context.
+	 * @return the object bound to <tt>name</tt>
+	 * @throws NameNotFoundException if the name is not bound
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public Object lookup(Name name) throws NamingException {
+		return resolved(lookupBound(name));
+	}
+	
+	/**
+	 * Retrieves the named object, following links except for the terminal atomic component of the name.
+	 * @param name the name of the object to look up
+	 * @return the object bound to <tt>name</tt>, not following the terminal link (if any)
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public Object lookupLink(String name) throws NamingException {
+		return linked(lookupBound(name));
+	}
+	
+	/**
+	 * Retrieves the named object, following links except for the terminal atomic component of the name.
+	 * @param name the name of the object to look up
+	 * @return the object bound to <tt>name</tt>, not following the terminal link (if any)
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public Object lookupLink(Name name) throws NamingException {
+		return linked(lookupBound(name));
+	}
+	
+	/**
+	 * Resolves a string name through the lookup cache, if enabled
+	 * @param name The name to resolve. If empty, resolves to this context.
+	 * @return the bound value or context, with references and links not yet resolved (see {@link #lookupLocal(String)})
+	 * @throws NamingException thrown if the name cannot be resolved
+	 */
+	protected Object lookupBound(String name) throws NamingException {
+		LookupCache cache = lookupCache;
+		if(cache==null) {
+			return resolve(name);
+		}
+		Object value = cache.get(name);
+		if(value==null) {
+			long epoch = cache.epoch();
+			value = resolve(name);
+			cache.put(name, value, epoch);
+		}
+		return value;
+	}
+	
+	/**
+	 * Resolves a name through the lookup cache, if enabled
+	 * @param name The name to resolve. If empty, resolves to this context.
+	 * @return the bound value or context, with references and links not yet resolved (see {@link #lookupLocal(String)})
+	 * @throws NamingException thrown if the name cannot be resolved
+	 */
+	protected Object lookupBound(Name name) throws NamingException {
+		LookupCache cache = lookupCache;
+		if(cache==null || name==null || name.isEmpty()) {
+			return resolve(name);
+		}
+		String key = name.toString();
+		Object value = cache.get(key);
+		if(value==null) {
+			long epoch = cache.epoch();
+			value = resolve(name);
+			cache.put(key, value, epoch);
+		}
+		return value;
+	}
+	
+	/**
+	 * Binds a new name to the object bound to an old name, and unbinds the old name.
+	 * Subcontexts can only be renamed within their parent context. 
+	 * @param oldName the name of the existing binding; may not be empty
+	 * @param newName the name of the new binding; may not be empty
+	 * @throws NameAlreadyBoundException if <tt>newName</tt> is already bound
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void rename(String oldName, String newName) throws NamingException {
+		if(isAtomic(oldName) && isAtomic(newName)) {
+			renameLocal(oldName, this, newName);
+		} else {
+			rename(new CompositeName(oldName), new CompositeName(newName));
+		}
+	}
+	
+	/**
+	 * Binds a new name to the object bound to an old name, and unbinds the old name.
+	 * Subcontexts can only be renamed within their parent context. 
+	 * @param oldName the name of the existing binding; may not be empty
+	 * @param newName the name of the new binding; may not be empty
+	 * @throws NameAlreadyBoundException if <tt>newName</tt> is already bound
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void rename(Name oldName, Name newName) throws NamingException {
+		int oldLast = lastIndex(oldName), newLast = lastIndex(newName);
+		resolveContext(oldName, oldLast).renameLocal(oldName.get(oldLast), resolveContext(newName, newLast), newName.get(newLast));
+	}
+	
+	/**
+	 * Enumerates the names bound in the named context, along with the class names of objects bound to them.
+	 * @param name the name of the context to list
+	 * @return an enumeration of the names and class names of the bindings in this context. 
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public NamingEnumeration<NameClassPair> list(String name) throws NamingException {
+		return list(new CompositeName(name));
+	}
+	
+	/**
+	 * Enumerates the names bound in the named context, along with the class names of objects bound to them.
+	 * @param name the name of the context to list
+	 * @return an enumeration of the names and class names of the bindings in this context. 
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public NamingEnumeration<NameClassPair> list(Name name) throws NamingException {
+		return ContextEnumeration.names(resolveContext(name, name.size()));
+	}
+	
+	/**
+	 * Enumerates the names bound in the named context, along with the objects bound to them.
+	 * @param name the name of the context to list
+	 * @return an enumeration of the bindings in this context. 
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public NamingEnumeration<Binding> listBindings(String name) throws NamingException {
+		return listBindings(new CompositeName(name));
+	}
+	
+	/**
+	 * Enumerates the names bound in the named context, along with the objects bound to them.
+	 * @param name the name of the context to list
+	 * @return an enumeration of the bindings in this context. 
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public NamingEnumeration<Binding> listBindings(Name name) throws NamingException {
+		return ContextEnumeration.bindings(resolveContext(name, name.size()));
+	}
+	
+	/**
+	 * Returns one page of the names bound in this context, along with the class names of the objects bound to them.
+	 * The first call opens a server side cursor over a lazy enumeration of this context, and each call returns the cursor of the next page,
+	 * so a remote client can walk a huge context with bounded memory on both sides. A cursor that is left idle for longer than 
+	 * {@link #CURSOR_TIMEOUT} expires, and no more than {@link #CURSOR_LIMIT} cursors can be open at once.
+	 * @param cursor the cursor returned with the previous page, or null to start a new listing
+	 * @param pageSize the maximum number of names on the page
+	 * @return the page
+	 * @throws NamingException if the cursor is unknown or has expired, or a {@link javax.naming.LimitExceededException} if too many cursors are open
+	 */
+	public BindingPage listPage(String cursor, int pageSize) throws NamingException {
+		loadSnapshot();
+		return cursorRegistry().page(this, cursor, pageSize, 
+				rootContext.intEnvironmentProperty(CURSOR_TIMEOUT, CursorRegistry.DEFAULT_TIMEOUT), 
+				rootContext.intEnvironmentProperty(CURSOR_LIMIT, CursorRegistry.DEFAULT_LIMIT));
+	}
+	
+	/**
+	 * Closes a listing cursor opened by {@link #listPage(String, int)} before its last page has been read
+	 * @param cursor the cursor returned with the last page read
+	 * @return true if the cursor was open
+	 */
+	public boolean closeCursor(String cursor) {
+		return cursorRegistry().close(cursor);
+	}
+	
+	/**
+	 * Finds the names bound in this context, including subcontexts, that match a glob such as <code>queue.orders.*</code>.
+	 * <code>*</code> matches any run of characters and <code>?</code> matches any one character.
+	 * With {@link #NAME_INDEX} enabled this takes time logarithmic in the size of the context plus the number of names starting with the 
+	 * glob's literal prefix. Otherwise every name is scanned.
+	 * @param glob the glob to match
+	 * @return the matching names, in order
+	 * @throws NamingException if the glob is null
+	 */
+	public String[] findNames(String glob) throws NamingException {
+		if(glob==null) throw new NamingException("Glob was null");
+		NameIndex index = nameIndex();
+		if(index!=null) return bound(index.glob(glob));
+		Pattern pattern = NameIndex.compile(glob);
+		List<String> result = new ArrayList<String>();
+		for(String name: names()) {
+			if(pattern.matcher(name).matches()) result.add(name);
+		}
+		return sorted(result);
+	}
+	
+	/**
+	 * Finds the names bound in this context, including subcontexts, within a range.
+	 * With {@link #NAME_INDEX} enabled this takes time logarithmic in the size of the context plus the number of names in the range.
+	 * Otherwise every name is scanned.
+	 * @param from the inclusive lower bound, or null for no lower bound
+	 * @param to the exclusive upper bound, or null for no upper bound
+	 * @return the names in the range, in order
+	 * @throws NamingException thrown if this context's snapshot record cannot be restored
+	 */
+	public String[] findNameRange(String from, String to) throws NamingException {
+		NameIndex index = nameIndex();
+		if(index!=null) return bound(index.range(from, to));
+		List<String> result = new ArrayList<String>();
+		for(String name: names()) {
+			if((from==null || name.compareTo(from) >= 0) && (to==null || name.compareTo(to) < 0)) result.add(name);
+		}
+		return sorted(result);
+	}
+	
+	/**
+	 * Returns the name index of this context, building it on first use
+	 * @return the name index, or null if it is not enabled
+	 * @throws NamingException thrown if this context's snapshot record cannot be restored
+	 */
+	protected NameIndex nameIndex() throws NamingException {
+		loadSnapshot();
+		if(!isNameIndexEnabled()) return null;
+		NameIndex index = nameIndex;
+		if(index==null) {
+			synchronized(this) {
+				index = nameIndex;
+				if(index==null) {
+					index = new NameIndex();
+					// published before it is filled, so changes made while filling it are applied to it
+					nameIndex = index;
+					for(String name: names()) {
+						index.add(name);
+					}
+				}
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Determines if the effective {@link #NAME_INDEX} environment property enables the name index
+	 * @return true if the name index is enabled
+	 */
+	protected boolean isNameIndexEnabled() {
+		return Boolean.valueOf(String.valueOf(getEnvironmentProperty(NAME_INDEX)));
+	}
+	
+	/**
+	 * Returns the names bound in this context, bindings first and then subcontexts, read through weakly consistent iterators
+	 * @return the names
+	 */
+	protected List<String> names() {
+		List<String> names = new ArrayList<String>(bindings.size() + children.size());
+		names.addAll(bindings.keySet());
+		names.addAll(children.keySet());
+		return names;
+	}
+	
+	/**
+	 * Filters out indexed names that are no longer bound
+	 * @param names The indexed names
+	 * @return the names still bound, in order
+	 */
+	protected String[] bound(List<String> names) {
+		List<String> result = new ArrayList<String>(names.size());
+		for(String name: names) {
+			if(bindings.containsKey(name) || children.containsKey(name)) result.add(name);
+		}
+		return result.toArray(new String[result.size()]);
+	}
+	
+	/**
+	 * Sorts scanned names
+	 * @param names The names
+	 * @return the names in order
+	 */
+	protected static String[] sorted(List<String> names) {
+		String[] result = names.toArray(new String[names.size()]);
+		Arrays.sort(result);
+		return result;
+	}
+	
+	/**
+	 * Returns the listing cursor registry of this context's tree, creating it on first use
+	 * @return the cursor registry
+	 */
+	protected CursorRegistry cursorRegistry() {
+		JMXNamingBindingContext root = rootContext;
+		CursorRegistry registry = root.cursorRegistry;
+		if(registry==null) {
+			synchronized(root) {
+				registry = root.cursorRegistry;
+				if(registry==null) {
+					registry = new CursorRegistry();
+					root.cursorRegistry = registry;
+				}
+			}
+		}
+		return registry;
+	}
+	
+	/**
+	 * Creates and binds a new context.
+	 * @param name the name of the context to create; may not be empty
+	 * @return the newly created context
+	 * @throws NameAlreadyBoundException if name is already bound
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public Context createSubcontext(String name) throws NamingException {
+		if(isAtomic(name)) {
+			return createSubcontextLocal(name);
+		}
+		return createSubcontext(new CompositeName(name));
+	}
+	
+	/**
+	 * Creates and binds a new context.
+	 * @param name the name of the context to create; may not be empty
+	 * @return the newly created context
+	 * @throws NameAlreadyBoundException if name is already bound
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public Context createSubcontext(Name name) throws NamingException {
+		int last = lastIndex(name);
+		return resolveContext(name, last).createSubcontextLocal(name.get(last));
+	}
+	
+	/**
+	 * Destroys the named context and removes it from the namespace.
+	 * This method is idempotent: destroying a name that is not bound has no effect.
+	 * @param name the name of the context to be destroyed; may not be empty
+	 * @throws NotContextException if the name is bound but does not name a context
+	 * @throws ContextNotEmptyException if the named context is not empty
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void destroySubcontext(String name) throws NamingException {
+		if(isAtomic(name)) {
+			destroySubcontextLocal(name);
+		} else {
+			destroySubcontext(new CompositeName(name));
+		}
+	}
+	
+	/**
+	 * Destroys the named context and removes it from the namespace.
+	 * This method is idempotent: destroying a name that is not bound has no effect.
+	 * @param name the name of the context to be destroyed; may not be empty
+	 * @throws NotContextException if the name is bound but does not name a context
+	 * @throws ContextNotEmptyException if the named context is not empty
+     * @throws	NamingException if a naming exception is encountered
+	 */
+	public void destroySubcontext(Name name) throws NamingException {
+		int last = lastIndex(name);
+		resolveContext(name, last).destroySubcontextLocal(name.get(last));
+	}
+	
+    // =================================================
+    //		Resolution and local binding ops
+    // =================================================
+	
+	/**
+	 * Resolves a string name relative to this context, bypassing the lookup cache
+	 * @param name The name to resolve. If empty, resolves to this context.
+	 * @return the bound value or context, with references not yet resolved (see {@link #lookupLocal(String)})
+	 * @throws NamingException thrown if the name cannot be resolved
+	 */
+	protected Object resolve(String name) throws NamingException {
+		if(isAtomic(name)) {
+			return lookupLocal(name);
+		}
+		return resolve(new CompositeName(name));
+	}
+	
+	/**
+	 * Resolves a name relative to this context, bypassing the lookup cache
+	 * @param name The name to resolve. If empty, resolves to this context.
+	 * @return the bound value or context, with references not yet resolved (see {@link #lookupLocal(String)})
+	 * @throws NamingException thrown if the name cannot be resolved
+	 */
+	protected Object resolve(Name name) throws NamingException {
+		if(name==null) throw new NamingException("Lookup name was null");
+		if(name.isEmpty()) return this;
+		int last = name.size()-1;
+		JMXNamingBindingContext ctx = this;
+		for(int i = 0; i < last; i++) {
+			String atom = name.get(i);
+			ctx.loadSnapshot();
+			JMXNamingBindingContext child = ctx.children.get(atom);
+			if(child==null) {
+				BoundLink link = ctx.linkOf(atom);
+				if(link!=null) return new BoundLink.LinkedName(link, name.getSuffix(i+1));
+				throw ctx.notContext(name, i);
+			}
+			ctx = child;
+		}
+		return ctx.lookupLocal(name.get(last));
+	}
+	
+	/**
+	 * Callback invoked after a binding or subcontext of this context is added, replaced, removed or renamed.
+	 * Invalidates the affected names (and every name beneath them) in the root lookup cache and queues 
+	 * the change for asynchronous notification if any listeners have been registered.
+	 * @param type The change type, one of {@link #NOTIF_TYPE_NEW_BINDING}, {@link #NOTIF_TYPE_REMOVED_BINDING} or {@link #NOTIF_TYPE_RENAMED_BINDING}
+	 * @param name The atomic name of the changed binding
+	 * @param newName The new atomic name for a rename, otherwise null
+	 */
+	protected void bindingChanged(String type, String name, String newName) {
+		invalidateBinding(name, newName);
+		BindingNotifier n = notifier;
+		if(n!=null) {
+			if(newName==null) {
+				n.enqueue(type, name);
+			} else {
+				n.enqueue(type, name, newName);
+			}
+		}
+	}
+	
+	/**
+	 * Brings everything derived from the bindings of this context up to date with a change to one or two of its names: 
+	 * the modification count, the name index, the bound references and the root lookup cache
+	 * @param name The atomic name of the changed binding
+	 * @param newName The new atomic name for a rename, otherwise null
+	 */
+	protected void invalidateBinding(String name, String newName) {
+		modificationCount.incrementAndGet();
+		nameChanged(name);
+		if(newName!=null) nameChanged(newName);
+		ConcurrentMap<String, ReferenceResolver.BoundReference> refs = references;
+		if(refs!=null) {
+			refs.remove(name);
+			if(newName!=null) refs.remove(newName);
+		}
+		LookupCache cache = rootContext.lookupCache;
+		if(cache!=null) {
+			cache.invalidate(pathOf(name));
+			if(newName!=null) cache.invalidate(pathOf(newName));
+		}
+	}
+	
+	/**
+	 * Callback invoked after a mutation of a name of this context has been undone, because its journal record failed to commit or it lost a race with a subcontext.
+	 * The mutation was briefly visible, so everything derived from the bindings is invalidated, but no notification is emitted.
+	 * @param name The atomic name
+	 */
+	protected void bindingReverted(String name) {
+		bindingVersion.incrementAndGet();
+		invalidateBinding(name, null);
+	}
+	
+	/**
+	 * Returns the journal undo action of a mutation of a binding of this context. The action puts the prior entry back if the 
+	 * name is still bound to the mutation's entry, and releases whichever of the two entries is left unbound.
+	 * @param name The atomic name of the binding
+	 * @param entry The entry the mutation bound, or null for an unbind
+	 * @param prior The entry the mutation replaced or removed, or null for a bind
+	 * @return the undo action
+	 */
+	protected Runnable restoring(final String name, final Object entry, final Object prior) {
+		return new Runnable() {
+			public void run() {
+				boolean undone;
+				if(entry==null) {
+					undone = bindings.putIfAbsent(name, prior)==null;
+				} else if(prior==null) {
+					undone = bindings.remove(name, entry);
+				} else {
+					undone = bindings.replace(name, entry, prior);
+				}
+				discard(undone ? entry : prior);
+				bindingReverted(name);
+			}
+		};
+	}
+	
+	/**
+	 * Returns the journal undo action of a move of a binding from this context to another name
+	 * @param oldName The atomic name of the binding in this context
+	 * @param entry The moved entry
+	 * @param target The context the binding was moved to
+	 * @param newName The atomic name of the binding in the target context
+	 * @return the undo action
+	 */
+	protected Runnable unmoving(final String oldName, final Object entry, final JMXNamingBindingContext target, final String newName) {
+		return new Runnable() {
+			public void run() {
+				if(target.bindings.remove(newName, entry) && bindings.putIfAbsent(oldName, entry)!=null) {
+					discard(entry);
+				}
+				target.bindingReverted(newName);
+				bindingReverted(oldName);
+			}
+		};
+	}
+	
+	/**
+	 * Returns the journal undo action of a change to the subcontext index of this context
+	 * @param from The atomic name the change indexed the subcontext under, or null if the change destroyed it
+	 * @param child The subcontext
+	 * @param to The atomic name the subcontext was indexed under before the change, or null if the change created it
+	 * @return the undo action
+	 */
+	protected Runnable reindexing(final String from, final JMXNamingBindingContext child, final String to) {
+		return new Runnable() {
+			public void run() {
+				if(from==null || children.remove(from, child)) {
+					if(to!=null) {
+						child.contextName = to;
+						children.putIfAbsent(to, child);
+					}
+				}
+				if(from!=null) bindingReverted(from);
+				if(to!=null) bindingReverted(to);
+			}
+		};
+	}
+	
+	/**
+	 * Callback invoked after a batch of bindings of this context have been added or removed.
+	 * Invalidates the affected names in the root lookup cache and queues one change for asynchronous notification.
+	 * @param type The change type, one of {@link #NOTIF_TYPE_NEW_BINDING} or {@link #NOTIF_TYPE_REMOVED_BINDING}
+	 * @param names The atomic names of the changed bindings
+	 */
+	protected void bindingsChanged(String type, String[] names) {
+		modificationCount.incrementAndGet();
+		for(String name: names) {
+			nameChanged(name);
+		}
+		ConcurrentMap<String, ReferenceResolver.BoundReference> refs = references;
+		if(refs!=null) {
+			for(String name: names) {
+				refs.remove(name);
+			}
+		}
+		LookupCache cache = rootContext.lookupCache;
+		if(cache!=null) {
+			for(String name: names) {
+				cache.invalidate(pathOf(name));
+			}
+		}
+		BindingNotifier n = notifier;
+		if(n!=null) {
+			n.enqueue(type, names);
+		}
+	}
+	
+	/**
+	 * Brings the name index, if any, up to date with a name of this context that has been bound, unbound or renamed.
+	 * The maps are rechecked after the index is updated and the update is repeated if the name changed meanwhile, 
+	 * so the last of several racing callers always leaves the index matching the maps.
+	 * @param name The atomic name
+	 */
+	protected void nameChanged(String name) {
+		NameIndex index = nameIndex;
+		if(index==null) return;
+		boolean bound = bindings.containsKey(name) || children.containsKey(name);
+		for(;;) {
+			if(bound) index.add(name);
+			else index.remove(name);
+			boolean recheck = bindings.containsKey(name) || children.containsKey(name);
+			if(recheck==bound) return;
+			bound = recheck;
+		}
+	}
+	
+	/**
+	 * Returns the full simple form compound name of an atomic name in this context
+	 * @param atom The atomic name
+	 * @return the full compound name from the root context
+	 */
+	protected String pathOf(String atom) {
+		if(parentContext==null) return atom;
+		StringBuilder b = new StringBuilder(atom);
+		for(JMXNamingBindingContext ctx = this; ctx.parentContext!=null; ctx = ctx.parentContext) {
+			b.insert(0, LookupCache.SEPARATOR).insert(0, ctx.contextName);
+		}
+		return b.toString();
+	}
+	
+	/**
+	 * Returns the atoms of the full name of an atomic name in this context
+	 * @param atom The atomic name
+	 * @return the atoms of the full name from the root context
+	 */
+	protected String[] pathAtomsOf(String atom) {
+		int depth = 0;
+		for(JMXNamingBindingContext ctx = this; ctx.parentContext!=null; ctx = ctx.parentContext) {
+			depth++;
+		}
+		String[] atoms = new String[depth + 1];
+		atoms[depth] = atom;
+		for(JMXNamingBindingContext ctx = this; ctx.parentContext!=null; ctx = ctx.parentContext) {
+			atoms[--depth] = ctx.contextName;
+		}
+		return atoms;
+	}
+	
+	/**
+	 * Walks the child context index from this context through the first <code>depth</code> components of the passed name.
+	 * Each component costs one map lookup: no MBeanServer queries and no name re-parsing.
+	 * @param name The name to resolve
+	 * @param depth The number of leading components that name contexts
+	 * @return the context named by the first <code>depth</code> components
+	 * @throws NameNotFoundException thrown if an intermediate component is not bound
+	 * @throws NotContextException thrown if an intermediate component is bound to something other than a context
+	 */
+	protected JMXNamingBindingContext resolveContext(Name name, int depth) throws NamingException {
+		JMXNamingBindingContext ctx = this;
+		for(int i = 0; i < depth; i++) {
+			String atom = name.get(i);
+			ctx.loadSnapshot();
+			JMXNamingBindingContext child = ctx.children.get(atom);
+			if(child==null) {
+				BoundLink link = ctx.linkOf(atom);
+				if(link==null) throw ctx.notContext(name, i);
+				child = link.getTargetContext();
+			}
+			ctx = child;
+		}
+		ctx.loadSnapshot();
+		return ctx;
+	}
+	
+	/**
+	 * Returns the bound link for an atomic name of this context
+	 * @param atom The atomic name
+	 * @return the bound link, or null if the name is not bound to a {@link LinkRef}
+	 * @throws NamingException thrown if the binding cannot be materialized
+	 */
+	protected BoundLink linkOf(String atom) throws NamingException {
+		Object entry = bindings.get(atom);
+		if(entry==null) return null;
+		Object value = bound(atom, entry);
+		return value instanceof BoundLink ? (BoundLink)value : null;
+	}
+	
+	/**
+	 * Creates the exception for an intermediate name component of this context that does not name a context
+	 * @param name The name being resolved
+	 * @param index The index of the component
+	 * @return the exception to throw
+	 * @throws NamingException thrown if this context's name cannot be determined
+	 */
+	protected NamingException notContext(Name name, int index) throws NamingException {
+		String atom = name.get(index);
+		NamingException ex = bindings.containsKey(atom) ?
+				new NotContextException("The name [" + atom + "] in context [" + getNameInNamespace() + "] is not a context") :
+				new NameNotFoundException("The context [" + atom + "] is not bound in context [" + getNameInNamespace() + "]");
+		ex.setRemainingName(name.getSuffix(index));
+		return ex;
+	}
+	
+	/**
+	 * Binds an atomic name in this context
+	 * @param name The atomic name to bind
+	 * @param value The value to bind, possibly null
+	 * @throws NameAlreadyBoundException thrown if the name is already bound to a value or a subcontext
+	 * @throws NamingException thrown if the name is invalid
+	 */
+	protected void bindLocal(String name, Object value) throws NamingException {
+		BindingJournal journal = rootContext.journal;
+		if(journal==null) {
+			claimLocal(name, value);
+		} else {
+			checkBindingName(name);
+			Object entry = store(value);
+			long sequence;
+			try {
+				ByteBuffer record = journal.encodeEntry(BindingJournal.OP_BIND, pathAtomsOf(name), entry);
+				synchronized(journal) {
+					journal.checkWritable();
+					claimEntry(name, entry);
+					sequence = journal.append(record, restoring(name, entry, null));
+				}
+			} catch (NamingException ne) {
+				discard(entry);
+				throw ne;
+			}
+			journal.await(sequence);
+		}
+		bindingChanged(NOTIF_TYPE_NEW_BINDING, name, null);
+	}
+	
+	/**
+	 * Binds an atomic name in this context without firing a change callback
+	 * @param name The atomic name to bind
+	 * @param value The value to bind, possibly null
+	 * @throws NameAlreadyBoundException thrown if the name is already bound to a value or a subcontext
+	 * @throws NamingException thrown if the name is invalid
+	 */
+	protected void claimLocal(String name, Object value) throws NamingException {
+		checkBindingName(name);
+		claimStored(name, store(value));
+	}
+	
+	/**
+	 * Binds a newly stored value to an already validated atomic name in this context without firing a change callback. 
+	 * The stored value is released if the name is already bound.
+	 * @param name The atomic name to bind
+	 * @param entry The stored form of the value
+	 * @throws NameAlreadyBoundException thrown if the name is already bound to a value or a subcontext
+	 */
+	protected void claimStored(String name, Object entry) throws NamingException {
+		try {
+			claimEntry(name, entry);
+		} catch (NameAlreadyBoundException e) {
+			discard(entry);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Binds the stored form of a value to an already validated atomic name in this context without firing a change callback
+	 * @param name The atomic name to bind
+	 * @param entry The stored form of the value
+	 * @throws NameAlreadyBoundException thrown if the name is already bound to a value or a subcontext
+	 */
+	protected void claimEntry(String name, Object entry) throws NamingException {
+		if(!tryClaim(name, entry)) {
+			throw new NameAlreadyBoundException("The binding named [" + name + "] is already bound in context [" + objectName + "]");
+		}
+		bindingVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Attempts to bind a stored value to an unbound atomic name in this context, 
+	 * with no version increment or change callback
+	 * @param name The atomic name to bind
+	 * @param entry The stored form of the value
+	 * @return true if the name was claimed, false if it is already bound to a value or a subcontext
+	 * @throws NamingException thrown if this context's snapshot record cannot be restored
+	 */
+	protected boolean tryClaim(String name, Object entry) throws NamingException {
+		loadSnapshot();
+		if(bindings.putIfAbsent(name, entry)!=null) return false;
+		// claimed the name, now check the subcontext index: of two racing claims at least one sees the other
+		if(children.containsKey(name)) {
+			bindings.remove(name, entry);
+			return false;
+		}
+		return true;
+	}
+	
+	// =================================================
+	//		Batch Ops
+	// =================================================
+	
+	/**
+	 * Binds a batch of names, all or nothing. The whole batch is validated before anything is bound, and if a concurrent
+	 * bind claims one of the names while the batch is being applied, the names already bound by the batch are unbound again.
+	 * Each affected context increments its MBeanInfo version once and emits one summary notification.
+	 * Lookups are not blocked while the batch is applied, so they may observe part of a batch that is then rolled back.
+	 * @param batch A map of values keyed by name. Names may be compound, but every context they name must already exist.
+	 * @throws NameAlreadyBoundException if any name in the batch is already bound
+	 * @throws NamingException if any name in the batch is invalid or cannot be resolved
+	 */
+	public void bindAll(Map<String, ?> batch) throws NamingException {
+		if(batch==null) throw new NamingException("Binding batch was null");
+		int size = batch.size();
+		if(size==0) return;
+		JMXNamingBindingContext[] targets = new JMXNamingBindingContext[size];
+		String[] atoms = new String[size];
+		Object[] entries = new Object[size];
+		int i = 0;
+		for(Map.Entry<String, ?> entry: batch.entrySet()) {
+			resolveBatchName(entry.getKey(), i, targets, atoms);
+			targets[i].loadSnapshot();
+			targets[i].checkBindingName(atoms[i]);
+			if(targets[i].bindings.containsKey(atoms[i]) || targets[i].children.containsKey(atoms[i])) {
+				throw new NameAlreadyBoundException("The binding named [" + entry.getKey() + "] is already bound in context [" + objectName + "]");
+			}
+			entries[i] = entry.getValue();
+			i++;
+		}
+		for(i = 0; i < size; i++) {
+			try {
+				entries[i] = targets[i].store(entries[i]);
+			} catch (NamingException ne) {
+				for(int j = 0; j < i; j++) discard(entries[j]);
+				throw ne;
+			}
+		}
+		BindingJournal journal = rootContext.journal;
+		int failed;
+		if(journal==null) {
+			failed = claimAll(targets, atoms, entries, size);
+		} else {
+			long sequence = 0L;
+			try {
+				ByteBuffer[] records = new ByteBuffer[size];
+				for(i = 0; i < size; i++) {
+					records[i] = journal.encodeEntry(BindingJournal.OP_BIND, targets[i].pathAtomsOf(atoms[i]), entries[i]);
+				}
+				synchronized(journal) {
+					journal.checkWritable();
+					failed = claimAll(targets, atoms, entries, size);
+					if(failed==-1) {
+						for(i = 0; i < size; i++) {
+							sequence = journal.append(records[i], targets[i].restoring(atoms[i], entries[i], null));
+						}
+					}
+				}
+			} catch (NamingException ne) {
+				for(i = 0; i < size; i++) discard(entries[i]);
+				throw ne;
+			}
+			if(failed==-1) journal.await(sequence);
+		}
+		if(failed!=-1) {
+			for(i = 0; i < size; i++) {
+				discard(entries[i]);
+			}
+			throw new NameAlreadyBoundException("The binding named [" + atoms[failed] + "] was concurrently bound in context [" + targets[failed].objectName + "]");
+		}
+		batchApplied(NOTIF_TYPE_NEW_BINDING, targets, atoms, size);
+	}
+	
+	/**
+	 * Claims every name of a validated batch, unbinding the names already claimed if one of them has been bound concurrently
+	 * @param targets The target context of each binding
+	 * @param atoms The atomic name of each binding
+	 * @param entries The stored form of each value
+	 * @param size The number of bindings
+	 * @return -1 if every name was claimed, otherwise the index of the name that could not be claimed
+	 * @throws NamingException thrown if a target's snapshot record cannot be restored. Callers load every target before claiming.
+	 */
+	protected static int claimAll(JMXNamingBindingContext[] targets, String[] atoms, Object[] entries, int size) throws NamingException {
+		for(int i = 0; i < size; i++) {
+			if(!targets[i].tryClaim(atoms[i], entries[i])) {
+				for(int j = 0; j < i; j++) {
+					targets[j].bindings.remove(atoms[j], entries[j]);
+				}
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Unbinds a batch of names. The whole batch is validated before anything is unbound. 
+	 * Names that are not bound are ignored. Each affected context increments its MBeanInfo version once and emits one summary notification.
+	 * @param names The names to unbind. Names may be compound, but every context they name must already exist.
+	 * @throws OperationNotSupportedException if any name in the batch names a subcontext
+	 * @throws NamingException if any name in the batch is invalid or cannot be resolved
+	 */
+	public void unbindAll(Collection<String> names) throws NamingException {
+		if(names==null) throw new NamingException("Unbinding batch was null");
+		int size = names.size();
+		if(size==0) return;
+		JMXNamingBindingContext[] targets = new JMXNamingBindingContext[size];
+		String[] atoms = new String[size];
+		int i = 0;
+		for(String name: names) {
+			resolveBatchName(name, i, targets, atoms);
+			targets[i].loadSnapshot();
+			if(targets[i].children.containsKey(atoms[i])) {
+				throw new OperationNotSupportedException("The name [" + name + "] is bound to a subcontext in context [" + objectName + "]");
+			}
+			i++;
+		}
+		int removed;
+		Object[] entries = new Object[size];
+		BindingJournal journal = rootContext.journal;
+		if(journal==null) {
+			removed = removeAll(targets, atoms, entries, null, size);
+		} else {
+			ByteBuffer[] records = new ByteBuffer[size];
+			for(i = 0; i < size; i++) {
+				records[i] = journal.encode(BindingJournal.OP_UNBIND, targets[i].pathAtomsOf(atoms[i]));
+			}
+			long sequence = 0L;
+			synchronized(journal) {
+				journal.checkWritable();
+				removed = removeAll(targets, atoms, entries, records, size);
+				for(i = 0; i < removed; i++) {
+					sequence = journal.append(records[i], targets[i].restoring(atoms[i], null, entries[i]));
+				}
+			}
+			if(removed > 0) journal.await(sequence);
+		}
+		for(i = 0; i < removed; i++) {
+			discard(entries[i]);
+		}
+		batchApplied(NOTIF_TYPE_REMOVED_BINDING, targets, atoms, removed);
+	}
+	
+	/**
+	 * Unbinds every name of a validated batch, compacting the arrays so the names actually unbound come first. 
+	 * The removed entries are not released, so that a journaled batch can still be undone.
+	 * @param targets The target context of each name
+	 * @param atoms The atomic names
+	 * @param entries The array to populate with the removed entries
+	 * @param records The journal record of each unbind, or null if the tree is not journaled
+	 * @param size The number of names
+	 * @return the number of names unbound
+	 */
+	protected static int removeAll(JMXNamingBindingContext[] targets, String[] atoms, Object[] entries, ByteBuffer[] records, int size) {
+		int removed = 0;
+		for(int i = 0; i < size; i++) {
+			Object entry = targets[i].bindings.remove(atoms[i]);
+			if(entry!=null) {
+				entries[removed] = entry;
+				targets[removed] = targets[i];
+				atoms[removed] = atoms[i];
+				if(records!=null) records[removed] = records[i];
+				removed++;
+			}
+		}
+		return removed;
+	}
+	
+	/**
+	 * Resolves a batch name to its target context and atomic name
+	 * @param name The name to resolve
+	 * @param index The index in the batch
+	 * @param targets The array of target contexts to populate
+	 * @param atoms The array of atomic names to populate
+	 * @throws NamingException thrown if the name is invalid or its context cannot be resolved
+	 */
+	protected void resolveBatchName(String name, int index, JMXNamingBindingContext[] targets, String[] atoms) throws NamingException {
+		if(isAtomic(name)) {
+			targets[index] = this;
+			atoms[index] = name;
+		} else {
+			Name compound = new CompositeName(name);
+			int last = lastIndex(compound);
+			targets[index] = resolveContext(compound, last);
+			atoms[index] = compound.get(last);
+		}
+	}
+	
+	/**
+	 * Completes an applied batch: increments each affected context's version once and fires one change callback per context
+	 * @param type The change type
+	 * @param targets The target context of each changed binding
+	 * @param atoms The atomic name of each changed binding
+	 * @param count The number of changed bindings at the head of the arrays
+	 */
+	protected void batchApplied(String type, JMXNamingBindingContext[] targets, String[] atoms, int count) {
+		Map<JMXNamingBindingContext, List<String>> byContext = new IdentityHashMap<JMXNamingBindingContext, List<String>>(4);
+		for(int i = 0; i < count; i++) {
+			List<String> names = byContext.get(targets[i]);
+			if(names==null) {
+				names = new ArrayList<String>();
+				byContext.put(targets[i], names);
+			}
+			names.add(atoms[i]);
+		}
+		for(Map.Entry<JMXNamingBindingContext, List<String>> entry: byContext.entrySet()) {
+			JMXNamingBindingContext ctx = entry.getKey();
+			ctx.bindingVersion.incrementAndGet();
+			ctx.bindingsChanged(type, entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+	}
+	
+	/**
+	 * Rebinds an atomic name in this context
+	 * @param name The atomic name to rebind
+	 * @param value The value to bind, possibly null
+	 * @throws OperationNotSupportedException thrown if the name is bound to a subcontext
+	 * @throws NamingException thrown if the name is invalid
+	 */
+	protected void rebindLocal(String name, Object value) throws NamingException {
+		loadSnapshot();
+		checkBindingName(name);
+		if(children.containsKey(name)) throw new OperationNotSupportedException("The name [" + name + "] is bound to a subcontext in context [" + objectName + "]");
+		Object entry = store(value);
+		BindingJournal journal = rootContext.journal;
+		Object prior;
+		if(journal==null) {
+			try {
+				prior = replaceLocal(name, entry);
+			} catch (NamingException ne) {
+				discard(entry);
+				throw ne;
+			}
+		} else {
+			long sequence;
+			try {
+				ByteBuffer record = journal.encodeEntry(BindingJournal.OP_REBIND, pathAtomsOf(name), entry);
+				synchronized(journal) {
+					journal.checkWritable();
+					prior = replaceLocal(name, entry);
+					sequence = journal.append(record, restoring(name, entry, prior));
+				}
+			} catch (NamingException ne) {
+				discard(entry);
+				throw ne;
+			}
+			journal.await(sequence);
+		}
+		discard(prior);
+		bindingReplaced(prior, entry);
+		bindingChanged(NOTIF_TYPE_NEW_BINDING, name, null);
+	}
+	
+	/**
+	 * Binds a stored value to an atomic name in this context, replacing any existing value, 
+	 * with no version increment or change callback
+	 * @param name The atomic name to bind
+	 * @param entry The stored form of the value
+	 * @return the stored form of the replaced value, or null if the name was not bound
+	 * @throws OperationNotSupportedException thrown if a subcontext with the name was created concurrently, in which case the prior value is restored
+	 */
+	protected Object replaceLocal(String name, Object entry) throws NamingException {
+		Object prior = bindings.put(name, entry);
+		// bound the name, now recheck the subcontext index: of a racing rebind and subcontext creation at least one sees the other
+		if(children.containsKey(name)) {
+			if(prior==null) bindings.remove(name, entry);
+			else bindings.replace(name, entry, prior);
+			bindingReverted(name);
+			throw new OperationNotSupportedException("The name [" + name + "] is bound to a subcontext in context [" + objectName + "]");
+		}
+		return prior;
+	}
+	
+	/**
+	 * Unbinds an atomic name in this context. If the name is bound to an empty subcontext, the subcontext is destroyed.
+	 * @param name The atomic name to unbind
+	 * @throws NamingException thrown if the name is invalid
 	 */
-	public JMXNamingBindingContext(JMXNamingBindingContext parentContext) {
-		this.parentContext = parentContext; 
-		initEnvironment();
+	protected void unbindLocal(String name) throws NamingException {
+		loadSnapshot();
+		if(name==null) throw new NamingException("Binding name was null");
+		BindingJournal journal = rootContext.journal;
+		Object entry;
+		if(journal==null) {
+			entry = bindings.remove(name);
+		} else {
+			ByteBuffer record = journal.encode(BindingJournal.OP_UNBIND, pathAtomsOf(name));
+			long sequence = 0L;
+			synchronized(journal) {
+				journal.checkWritable();
+				entry = bindings.remove(name);
+				if(entry!=null) sequence = journal.append(record, restoring(name, null, entry));
+			}
+			if(entry!=null) journal.await(sequence);
+		}
+		if(entry!=null) {
+			discard(entry);
+			bindingVersion.incrementAndGet();
+			bindingChanged(NOTIF_TYPE_REMOVED_BINDING, name, null);
+		} else if(children.containsKey(name)) {
+			destroySubcontextLocal(name);
+		}
 	}
 	
 	/**
-	 * Creates a new JMXNamingBindingContext with no parent (i.e. the root context)
+	 * Looks up an atomic name in this context. A reference binding is returned as its {@link ReferenceResolver.BoundReference}, 
+	 * or a {@link BoundLink} for a link, which is what the lookup cache holds, so that every lookup honours the reference's caching 
+	 * policy and sees the link's current target.
+	 * @param name The atomic name to look up
+	 * @return the bound value or subcontext
+	 * @throws NameNotFoundException thrown if the name is not bound
 	 */
-	public JMXNamingBindingContext() {
-		this(null); 
+	protected Object lookupLocal(String name) throws NamingException {
+		loadSnapshot();
+		Object entry = bindings.get(name);
+		if(entry!=null) return bound(name, entry);
+		JMXNamingBindingContext child = children.get(name);
+		if(child!=null) return child;
+		throw new NameNotFoundException("The name [" + name + "] is not bound in context [" + objectName + "]");
 	}
 	
 	/**
-	 * Initializes the environment for this context
+	 * Renames an atomic binding in this context
+	 * @param oldName The atomic name of the existing binding in this context
+	 * @param target The context the new name is bound in
+	 * @param newName The atomic new name
+	 * @throws NamingException thrown if the old name is not bound, the new name is already bound, or a subcontext is being moved to another parent
 	 */
-	protected void initEnvironment() {
-		if(parentContext!=null) {
-			environment.putAll(parentContext.environment);
+	protected void renameLocal(String oldName, JMXNamingBindingContext target, String newName) throws NamingException {
+		loadSnapshot();
+		Object entry = bindings.get(oldName);
+		BindingJournal journal = rootContext.journal;
+		if(entry!=null) {
+			target.checkBindingName(newName);
+			if(journal==null) {
+				moveLocal(oldName, entry, target, newName);
+			} else {
+				ByteBuffer record = journal.encodeRename(pathAtomsOf(oldName), target.pathAtomsOf(newName), entry);
+				long sequence;
+				synchronized(journal) {
+					journal.checkWritable();
+					moveLocal(oldName, entry, target, newName);
+					sequence = journal.append(record, unmoving(oldName, entry, target, newName));
+				}
+				journal.await(sequence);
+			}
+			bindingVersion.incrementAndGet();
+			if(target!=this) {
+				target.modificationCount.incrementAndGet();
+				target.nameChanged(newName);
+			}
+			bindingChanged(NOTIF_TYPE_RENAMED_BINDING, oldName, newName);
+			return;
+		}
+		JMXNamingBindingContext child = children.get(oldName);
+		if(child==null) throw new NameNotFoundException("The name [" + oldName + "] is not bound in context [" + objectName + "]");
+		if(target!=this) throw new OperationNotSupportedException("The subcontext [" + oldName + "] can only be renamed within its parent context");
+		checkBindingName(newName);
+		if(journal==null) {
+			renameChildLocal(oldName, child, newName);
 		} else {
-			
+			ByteBuffer record = journal.encodeRename(pathAtomsOf(oldName), pathAtomsOf(newName), null);
+			long sequence;
+			synchronized(journal) {
+				journal.checkWritable();
+				renameChildLocal(oldName, child, newName);
+				sequence = journal.append(record, reindexing(newName, child, oldName));
+			}
+			journal.await(sequence);
 		}
+		bindingChanged(NOTIF_TYPE_RENAMED_BINDING, oldName, newName);
 	}
 	
-    // =================================================
-    //		Context Ops
-    // =================================================
+	/**
+	 * Moves a stored binding from this context to a validated new name
+	 * @param oldName The atomic name of the existing binding in this context
+	 * @param entry The stored form of the binding
+	 * @param target The context the new name is bound in
+	 * @param newName The atomic new name
+	 * @throws NameAlreadyBoundException thrown if the new name is already bound
+	 * @throws NameNotFoundException thrown if the old name was concurrently unbound or rebound, in which case the new name is released
+	 */
+	protected void moveLocal(String oldName, Object entry, JMXNamingBindingContext target, String newName) throws NamingException {
+		target.claimEntry(newName, entry);
+		if(!bindings.remove(oldName, entry)) {
+			target.bindings.remove(newName, entry);
+			target.bindingReverted(newName);
+			throw new NameNotFoundException("The name [" + oldName + "] was concurrently changed in context [" + objectName + "]");
+		}
+	}
 	
-    /**
-     * Adds a new environment property to the environment of this
-     * context.  If the property already exists, its value is overwritten.
-     * See class description for more details on environment properties.
-     *
-     * @param propName
-     *		the name of the environment property to add; may not be null
-     * @param propVal
-     *		the value of the property to add; may not be null
-     * @return	the previous value of the property, or null if the property was
-     *		not in the environment before
-     * @throws	NamingException if a naming exception is encountered
-     *
-     * @see #getEnvironment()
-     * @see #removeFromEnvironment(String)
-     */
-    public Object addToEnvironment(String propName, Object propVal) throws NamingException {
-    	if(propName==null) throw new NamingException("Environment key was null");
-    	if(propVal==null) throw new NamingException("Environment value was null");
-    	return environment.put(propName, propVal);    	
-    }
-    
-    /**
-     * Closes this context.
-     * This method releases this context's resources immediately, instead of
-     * waiting for them to be released automatically by the garbage collector.
-     *
-     * <p> This method is idempotent:  invoking it on a context that has
-     * already been closed has no effect.  Invoking any other method
-     * on a closed context is not allowed, and results in undefined behaviour.
-     * 
-     * For JMXNamingBindingContext, this call has no effect when called locally,
-     * but if called on a remoted context, will close the underlying transport.
-     *
-     * @throws	NamingException if a naming exception is encountered
-     */
-    public void close() throws NamingException {
-    	
-    }
-    
-    
 	/**
-	 * Adds a new attribute to this context
-	 * @param name the name to bind; may not be empty
-	 * @param value the object to bind; possibly null 
-     * @throws	NameAlreadyBoundException if name is already bound
-     * @throws	InvalidAttributesException if object did not supply all mandatory attributes
-     * @throws	NamingException if a naming exception is encountered
+	 * Re-indexes a subcontext of this context under a validated new name
+	 * @param oldName The atomic name of the subcontext
+	 * @param child The subcontext
+	 * @param newName The atomic new name
+	 * @throws NameAlreadyBoundException thrown if the new name is already bound
 	 */
-	public void bind(String name, Object value) throws NameAlreadyBoundException, InvalidAttributesException, NamingException {
-		if(name==null) throw new NamingException("Binding name was null");
-		if(value==null) {
-			value = new NullValueBinding();
-		}
-		if(!bindings.containsKey(name)) {
-			synchronized(bindings) {
-				if(!bindings.containsKey(name)) {
-					bindings.put(name, value);
-					attrInfos.put(name, new MBeanAttributeInfo(
-							name, 
-							value==null ? Void.class.getName() : value.getClass().getName(),
-							"A JNDI Binding",
-							true, true, false
-					));
-				} else {
-					throw new NameAlreadyBoundException("The binding named [" + name + "] is already bound in context [" + objectName + "]");
-				}
-			}
+	protected void renameChildLocal(String oldName, JMXNamingBindingContext child, String newName) throws NamingException {
+		if(children.putIfAbsent(newName, child)!=null || bindings.containsKey(newName)) {
+			children.remove(newName, child);
+			throw new NameAlreadyBoundException("The binding named [" + newName + "] is already bound in context [" + objectName + "]");
+		}
+		child.contextName = newName;
+		children.remove(oldName, child);
+	}
+	
+	/**
+	 * Creates and indexes a new subcontext of this context
+	 * @param name The atomic name of the new subcontext
+	 * @return the new subcontext
+	 * @throws NameAlreadyBoundException thrown if the name is already bound to a value or a subcontext
+	 * @throws NamingException thrown if the name is invalid
+	 */
+	protected JMXNamingBindingContext createSubcontextLocal(String name) throws NamingException {
+		loadSnapshot();
+		checkBindingName(name);
+		JMXNamingBindingContext child = newSubcontext(name);
+		BindingJournal journal = rootContext.journal;
+		if(journal==null) {
+			indexChildLocal(name, child);
 		} else {
+			ByteBuffer record = journal.encode(BindingJournal.OP_CREATE_SUBCONTEXT, pathAtomsOf(name));
+			long sequence;
+			synchronized(journal) {
+				journal.checkWritable();
+				indexChildLocal(name, child);
+				sequence = journal.append(record, reindexing(name, child, null));
+			}
+			journal.await(sequence);
+		}
+		bindingChanged(NOTIF_TYPE_NEW_BINDING, name, null);
+		return child;
+	}
+	
+	/**
+	 * Indexes a new subcontext of this context under a validated name
+	 * @param name The atomic name of the subcontext
+	 * @param child The new subcontext
+	 * @throws NameAlreadyBoundException thrown if the name is already bound
+	 */
+	protected void indexChildLocal(String name, JMXNamingBindingContext child) throws NamingException {
+		if(children.putIfAbsent(name, child)!=null || bindings.containsKey(name)) {
+			children.remove(name, child);
 			throw new NameAlreadyBoundException("The binding named [" + name + "] is already bound in context [" + objectName + "]");
 		}
 	}
 	
 	/**
-	 * Adds a new attribute to this context
-	 * @param name the name to bind; may not be empty
-	 * @param value the object to bind; possibly null 
-     * @throws	NameAlreadyBoundException if name is already bound
-     * @throws	InvalidAttributesException if object did not supply all mandatory attributes
-     * @throws	NamingException if a naming exception is encountered
+	 * Creates a new unindexed subcontext instance. Subclasses can override to supply their own context type.
+	 * @param name The atomic name of the new subcontext
+	 * @return the new subcontext
 	 */
-	public void bind(Name name, Object value) throws NameAlreadyBoundException, InvalidAttributesException, NamingException {
-		if(name==null) throw new NamingException("Binding name was null");		
-		bind(name.get(name.size()-1), value);
+	protected JMXNamingBindingContext newSubcontext(String name) {
+		return new JMXNamingBindingContext(this, name);
+	}
+	
+	/**
+	 * Creates a new unindexed subcontext instance with initial environment overrides. Used when restoring a snapshot.
+	 * @param name The atomic name of the new subcontext
+	 * @param env The subcontext's own environment overrides
+	 * @return the new subcontext
+	 */
+	protected JMXNamingBindingContext newSubcontext(String name, Map<?, ?> env) {
+		return new JMXNamingBindingContext(this, name, env);
+	}
+	
+	/**
+	 * Materializes this context's bindings index and subcontexts if it was restored from a snapshot and has not been accessed yet.
+	 * A record that cannot be restored is left pending and nothing from it is applied.
+	 */
+	protected final void loadSnapshot() throws NamingException {
+		ContextSnapshot.Record record = pendingSnapshot;
+		if(record!=null) record.load(this);
+	}
+	
+	/**
+	 * Materializes this context's snapshot record for callers that cannot throw a NamingException, such as the DynamicMBean accessors
+	 * @throws IllegalStateException thrown if the record cannot be restored
+	 */
+	protected final void loadSnapshotUnchecked() {
+		try {
+			loadSnapshot();
+		} catch (NamingException ne) {
+			throw new IllegalStateException(ne.getMessage(), ne);
+		}
+	}
+	
+	/**
+	 * Destroys an empty subcontext of this context
+	 * @param name The atomic name of the subcontext
+	 * @throws NotContextException thrown if the name is bound to something other than a context
+	 * @throws ContextNotEmptyException thrown if the subcontext is not empty
+	 */
+	protected void destroySubcontextLocal(String name) throws NamingException {
+		loadSnapshot();
+		JMXNamingBindingContext child = children.get(name);
+		if(child==null) {
+			if(bindings.containsKey(name)) throw new NotContextException("The name [" + name + "] in context [" + objectName + "] is not a context");
+			return;
+		}
+		child.loadSnapshot();
+		if(!child.bindings.isEmpty() || !child.children.isEmpty()) throw new ContextNotEmptyException("The subcontext [" + name + "] is not empty");
+		BindingJournal journal = rootContext.journal;
+		boolean removed;
+		if(journal==null) {
+			removed = children.remove(name, child);
+		} else {
+			ByteBuffer record = journal.encode(BindingJournal.OP_DESTROY_SUBCONTEXT, pathAtomsOf(name));
+			long sequence = 0L;
+			synchronized(journal) {
+				journal.checkWritable();
+				removed = children.remove(name, child);
+				if(removed) sequence = journal.append(record, reindexing(null, child, name));
+			}
+			if(removed) journal.await(sequence);
+		}
+		if(removed) {
+			bindingChanged(NOTIF_TYPE_REMOVED_BINDING, name, null);
+		}
+	}
+	
+	/**
+	 * Determines if the passed string name can be used as an atomic name without parsing
+	 * @param name The name to test
+	 * @return true if the name is a non empty name with no composite name separators, quotes or escapes
+	 * @throws NamingException thrown if the name is null
+	 */
+	protected static boolean isAtomic(String name) throws NamingException {
+		if(name==null) throw new NamingException("Name was null");
+		int length = name.length();
+		if(length==0) return false;
+		for(int i = 0; i < length; i++) {
+			char c = name.charAt(i);
+			if(c=='/' || c=='\\' || c=='"' || c=='\'') return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the index of the last component of a name that must not be empty
+	 * @param name The name
+	 * @return the index of the last component
+	 * @throws InvalidNameException thrown if the name is empty
+	 * @throws NamingException thrown if the name is null
+	 */
+	protected static int lastIndex(Name name) throws NamingException {
+		if(name==null) throw new NamingException("Name was null");
+		if(name.isEmpty()) throw new InvalidNameException("Name was empty");
+		return name.size()-1;
+	}
+	
+	/**
+	 * Increments the binding version if a binding replacement changed the MBeanInfo
+	 * @param prior The replaced entry, or null if there was none
+	 * @param entry The new entry
+	 */
+	protected void bindingReplaced(Object prior, Object entry) {
+		if(prior==null || typeOf(prior)!=typeOf(entry)) {
+			bindingVersion.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Converts a value to the form stored in the bindings map
+	 * @param value The value to bind, possibly null
+	 * @return the stored form of the value
+	 */
+	protected static Object wrap(Object value) {
+		return value==null ? NullValueBinding.INSTANCE : value;
+	}
+	
+	/**
+	 * Converts a value to the form stored in this context's bindings map. A {@link Referenceable} is stored as its reference, 
+	 * and other values are moved off-heap if this context's off-heap tier accepts them.
+	 * @param value The value to bind, possibly null
+	 * @return the stored form of the value
+	 * @throws NamingException thrown if a referenceable value fails to supply its reference
+	 */
+	protected Object store(Object value) throws NamingException {
+		if(value instanceof Referenceable) {
+			Reference reference = ((Referenceable)value).getReference();
+			if(reference!=null) return reference;
+		}
+		int threshold = offHeapThreshold;
+		return value==null || threshold<=0 ? wrap(value) : offHeapStore().offload(value, threshold);
+	}
+	
+	/**
+	 * Converts a stored binding back to the bound value, materializing it if it is deferred
+	 * @param entry The stored form of a binding
+	 * @return the bound value, or null if null was bound
+	 * @throws NamingException thrown if a deferred binding cannot be materialized
+	 */
+	protected static Object unwrap(Object entry) throws NamingException {
+		// a deferred binding may resolve to another, as when a restored snapshot value is a lazy binding
+		while(entry instanceof DeferredBinding) {
+			entry = ((DeferredBinding)entry).resolve();
+		}
+		return entry==NullValueBinding.INSTANCE ? null : entry;
+	}
+	
+	/**
+	 * Converts a stored binding of this context to the form returned by a local lookup, materializing it if it is deferred
+	 * @param name The binding name
+	 * @param entry The stored form of the binding
+	 * @return the bound value, or the bound reference if the value is a {@link Reference}
+	 * @throws NamingException thrown if a deferred binding cannot be materialized
+	 */
+	protected Object bound(String name, Object entry) throws NamingException {
+		Object value = unwrap(entry);
+		return value instanceof Reference ? boundReference(name, (Reference)value) : value;
+	}
+	
+	/**
+	 * Converts a stored binding of this context back to the bound value, resolving references
+	 * @param name The binding name
+	 * @param entry The stored form of the binding
+	 * @return the bound value
+	 * @throws NamingException thrown if the binding cannot be materialized or resolved
+	 */
+	protected Object valueOf(String name, Object entry) throws NamingException {
+		return resolved(bound(name, entry));
+	}
+	
+	/**
+	 * Completes a lookup, resolving a bound reference into the object it describes
+	 * @param value The looked up value
+	 * @return the value or the referenced object
+	 * @throws NamingException thrown if a reference cannot be resolved
+	 */
+	protected static Object resolved(Object value) throws NamingException {
+		if(value instanceof ReferenceResolver.BoundReference) return ((ReferenceResolver.BoundReference)value).getObject();
+		return value instanceof BoundLink.LinkedName ? ((BoundLink.LinkedName)value).lookup() : value;
+	}
+	
+	/**
+	 * Completes a lookup that does not follow a terminal link, resolving anything else
+	 * @param value The looked up value
+	 * @return the terminal link, the value or the referenced object
+	 * @throws NamingException thrown if a reference or an intermediate link cannot be resolved
+	 */
+	protected static Object linked(Object value) throws NamingException {
+		if(value instanceof BoundLink) return ((BoundLink)value).getLink();
+		return value instanceof BoundLink.LinkedName ? ((BoundLink.LinkedName)value).lookupLink() : resolved(value);
+	}
+	
+	/**
+	 * Returns the bound reference for a reference binding of this context, reusing the one from an earlier lookup while the same reference is bound
+	 * @param name The binding name
+	 * @param reference The bound reference
+	 * @return the bound reference
+	 */
+	protected ReferenceResolver.BoundReference boundReference(String name, Reference reference) {
+		ConcurrentMap<String, ReferenceResolver.BoundReference> refs = references;
+		if(refs==null) {
+			synchronized(this) {
+				refs = references;
+				if(refs==null) {
+					refs = new ConcurrentHashMap<String, ReferenceResolver.BoundReference>();
+					references = refs;
+				}
+			}
+		}
+		ReferenceResolver.BoundReference bound = refs.get(name);
+		if(bound==null || bound.getReference()!=reference) {
+			bound = reference instanceof LinkRef ? new BoundLink(this, name, (LinkRef)reference) : new ReferenceResolver.BoundReference(this, name, reference);
+			refs.put(name, bound);
+		}
+		return bound;
+	}
+	
+	/**
+	 * Releases a stored binding that has been removed or replaced
+	 * @param entry The stored form of the binding, or null
+	 */
+	protected static void discard(Object entry) {
+		if(entry instanceof DeferredBinding) ((DeferredBinding)entry).release();
+	}
+	
+	/**
+	 * Returns the shared attribute metadata for a stored binding
+	 * @param entry The stored form of a binding
+	 * @return the binding's interned type
+	 */
+	protected static BindingType typeOf(Object entry) {
+		if(entry instanceof DeferredBinding) return BindingType.of(((DeferredBinding)entry).getBindingType());
+		if(entry instanceof Reference && ((Reference)entry).getClassName()!=null) return BindingType.of(((Reference)entry).getClassName());
+		return entry==NullValueBinding.INSTANCE ? NULL_BINDING_TYPE : BindingType.of(entry.getClass().getName());
+	}
+	
+	/**
+	 * Returns the value of a reserved context level attribute
+	 * @param attribute The attribute name
+	 * @return the attribute value or null if the name is not a context attribute
+	 */
+	protected Object getContextAttribute(String attribute) {
+		if(ATTR_MBEANINFO_VERSION.equals(attribute)) return bindingVersion.get();
+		if(ATTR_LOOKUP_CACHE_HITS.equals(attribute)) {
+			LookupCache cache = rootContext.lookupCache;
+			return cache==null ? 0L : cache.getHits();
+		}
+		if(ATTR_LOOKUP_CACHE_MISSES.equals(attribute)) {
+			LookupCache cache = rootContext.lookupCache;
+			return cache==null ? 0L : cache.getMisses();
+		}
+		if(ATTR_OFFHEAP_BYTES.equals(attribute)) {
+			OffHeapStore store = rootContext.offHeapStore;
+			return store==null ? 0L : store.getOffHeapBytes();
+		}
+		if(ATTR_OFFHEAP_RETAINED_BYTES.equals(attribute)) {
+			OffHeapStore store = rootContext.offHeapStore;
+			return store==null ? 0L : store.getRetainedBytes();
+		}
+		if(ATTR_OFFHEAP_DESERIALIZATIONS.equals(attribute)) {
+			OffHeapStore store = rootContext.offHeapStore;
+			return store==null ? 0L : store.getDeserializations();
+		}
+		return null;
+	}
+	
+	/**
+	 * Validates a name about to be bound
+	 * @param name The binding name
+	 * @throws NamingException thrown if the name is null or reserved for a context attribute
+	 */
+	protected void checkBindingName(String name) throws NamingException {
+		if(name==null) throw new NamingException("Binding name was null");
+		if(StandardMBeanFeatures.isContextAttribute(name)) throw new InvalidNameException("The name [" + name + "] is reserved for a context attribute");
+	}
+	
+	/**
+	 * Replaces this context with its compact serialized form, which is read back as a {@link ReadOnlyContext} snapshot of this context and its subcontexts
+	 * @return the serialized form
+	 * @throws ObjectStreamException never
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		return new SerializedContext(this);
+	}
+	
+	/**
+	 * Returns the current binding version of this context. 
+	 * The version is incremented every time the set of bindings changes, so remote clients 
+	 * can compare versions to determine if the MBeanInfo needs to be refetched.
+	 * @return the binding version
+	 */
+	public long getBindingVersion() {
+		return bindingVersion.get();
+	}
+	
+	/**
+	 * Returns the parent context
+	 * @return the parent context or null if this is the root context
+	 */
+	public JMXNamingBindingContext getParentContext() {
+		return parentContext;
 	}
 	
+	/**
+	 * <p>Title: CompositeNameParser</p>
+	 * <p>Description: The name parser shared by all JMXNaming contexts</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.JMXNamingBindingContext.CompositeNameParser</code></p>
+	 */
+	private static class CompositeNameParser implements NameParser {
+		@Override
+		public Name parse(String name) throws NamingException {
+			return new CompositeName(name);
+		}
+	}
 	
 	/**
 	 * <p>Title: NullValueBinding</p>
-	 * <p>Description: Represents a null value binding</p> 
+	 * <p>Description: Represents a null value binding. All null bindings share the single {@link #INSTANCE}.</p> 
 	 * <p>Company: Helios Development Group LLC</p>
 	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
 	 * @version $LastChangedRevision$
 	 * <p><code>org.helios.javax.naming.JMXNamingBindingContext.NullValueBinding</code></p>
 	 */
 	private static class NullValueBinding implements Externalizable {
+		/** The shared null binding sentinel */
+		static final NullValueBinding INSTANCE = new NullValueBinding();
+		
+		/**
+		 * Creates a new NullValueBinding. Public for externalization only.
+		 */
+		public NullValueBinding() {
+		}
+		
+		/**
+		 * Replaces a deserialized instance with the shared sentinel
+		 * @return the shared sentinel
+		 */
+		private Object readResolve() {
+			return INSTANCE;
+		}
 
 		@Override
 		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
@@ -285,7 +2286,24 @@ public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration
      * @see #setAttribute
      */
     public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
-    	return null;
+    	if(attribute!=null) {
+	    	Object entry;
+	    	try {
+	    		loadSnapshot();
+	    		entry = bindings.get(attribute);
+	    	} catch (NamingException ne) {
+	    		throw new MBeanException(ne, "Failed to restore the bindings of context [" + objectName + "]");
+	    	}
+	    	if(entry!=null) {
+	    		try {
+	    			return valueOf(attribute, entry);
+	    		} catch (NamingException ne) {
+	    			throw new MBeanException(ne, "Failed to resolve the binding [" + attribute + "] in context [" + objectName + "]");
+	    		}
+	    	}
+	    	if(StandardMBeanFeatures.isContextAttribute(attribute)) return getContextAttribute(attribute);
+    	}
+    	throw new AttributeNotFoundException("The name [" + attribute + "] is not bound in context [" + objectName + "]");
     }
     
     /**
@@ -302,7 +2320,50 @@ public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration
      * @see #getAttribute
      */
     public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
-    	
+    	if(attribute==null) throw new AttributeNotFoundException("The passed attribute was null");
+    	String name = attribute.getName();
+    	try {
+    		loadSnapshot();
+    	} catch (NamingException ne) {
+    		throw new MBeanException(ne, "Failed to restore the bindings of context [" + objectName + "]");
+    	}
+    	if(!bindings.containsKey(name)) throw new AttributeNotFoundException("The name [" + name + "] is not bound in context [" + objectName + "]");
+    	Object entry;
+    	try {
+    		entry = store(attribute.getValue());
+    	} catch (NamingException ne) {
+    		throw new MBeanException(ne, "Failed to store the binding [" + name + "] in context [" + objectName + "]");
+    	}
+    	BindingJournal journal = rootContext.journal;
+    	Object prior;
+    	if(journal==null) {
+    		prior = bindings.replace(name, entry);
+    	} else {
+    		long sequence = 0L;
+    		try {
+	    		ByteBuffer record = journal.encodeEntry(BindingJournal.OP_REBIND, pathAtomsOf(name), entry);
+	    		synchronized(journal) {
+	    			journal.checkWritable();
+	    			prior = bindings.replace(name, entry);
+	    			if(prior!=null) sequence = journal.append(record, restoring(name, entry, prior));
+	    		}
+    		} catch (NamingException ne) {
+    			discard(entry);
+    			throw new MBeanException(ne, "Failed to journal the binding [" + name + "] in context [" + objectName + "]");
+    		}
+    		try {
+    			if(prior!=null) journal.await(sequence);
+    		} catch (NamingException ne) {
+    			throw new MBeanException(ne, "Failed to journal the binding [" + name + "] in context [" + objectName + "]");
+    		}
+    	}
+    	if(prior==null) {
+    		discard(entry);
+    		throw new AttributeNotFoundException("The name [" + name + "] is not bound in context [" + objectName + "]");
+    	}
+    	discard(prior);
+    	bindingReplaced(prior, entry);
+    	bindingChanged(NOTIF_TYPE_NEW_BINDING, name, null);
     }
         
     /**
@@ -310,12 +2371,28 @@ public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration
      *
      * @param attributes A list of the attributes to be retrieved.
      *
-     * @return  The list of attributes retrieved.
+     * @return  The list of attributes retrieved. Names that are not bound are omitted.
      *
      * @see #setAttributes
      */
     public AttributeList getAttributes(String[] attributes) {
-    	return null;
+    	if(attributes==null || attributes.length==0) return new AttributeList(0);
+    	AttributeList list = new AttributeList(attributes.length);
+    	loadSnapshotUnchecked();
+    	for(String name: attributes) {
+    		if(name==null) continue;
+    		Object entry = bindings.get(name);
+    		if(entry!=null) {
+    			try {
+    				list.add(new Attribute(name, valueOf(name, entry)));
+    			} catch (NamingException ne) {
+    				// could not be materialized or resolved, so omitted
+    			}
+    		} else if(StandardMBeanFeatures.isContextAttribute(name)) {
+    			list.add(new Attribute(name, getContextAttribute(name)));
+    		}
+    	}
+    	return list;
     }
         
     /**
@@ -324,12 +2401,22 @@ public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration
      * @param attributes A list of attributes: The identification of the
      * attributes to be set and  the values they are to be set to.
      *
-     * @return  The list of attributes that were set, with their new values.
+     * @return  The list of attributes that were set, with their new values. Attributes that are not bound are omitted.
      *
      * @see #getAttributes
      */
     public AttributeList setAttributes(AttributeList attributes) {
-    	return null;
+    	if(attributes==null || attributes.isEmpty()) return new AttributeList(0);
+    	AttributeList list = new AttributeList(attributes.size());
+    	for(Attribute attribute: attributes.asList()) {
+    		try {
+    			setAttribute(attribute);
+    			list.add(attribute);
+    		} catch (Exception e) {
+    			// not bound, so not set
+    		}
+    	}
+    	return list;
     }
     
     /**
@@ -349,18 +2436,168 @@ public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration
      * @exception ReflectionException  Wraps a <CODE>java.lang.Exception</CODE> thrown while trying to invoke the method
      */
     public Object invoke(String actionName, Object params[], String signature[]) throws MBeanException, ReflectionException {
-    	return null;
+    	StandardMBeanFeatures.Operation operation = StandardMBeanFeatures.getOperation(actionName, signature);
+    	if(operation==null) {
+    		throw new ReflectionException(new NoSuchMethodException(actionName + Arrays.toString(signature)), "No operation [" + actionName + "] with signature " + Arrays.toString(signature) + " on context [" + objectName + "]");
+    	}
+    	// Adapting the parameters is checked up front, so exceptions from the operation body are never mistaken for bad parameters
+    	String invalid = operation.checkParameters(params);
+    	if(invalid!=null) {
+    		throw new ReflectionException(new IllegalArgumentException(invalid), "Invalid parameters for operation [" + actionName + "] on context [" + objectName + "]");
+    	}
+    	try {
+    		return operation.invoke(this, params);
+    	} catch (Exception e) {
+    		throw new MBeanException(e, "Operation [" + actionName + "] failed on context [" + objectName + "]");
+    	} catch (Error e) {
+    		throw e;
+    	} catch (Throwable t) {
+    		throw new MBeanException(new Exception(t), "Operation [" + actionName + "] failed on context [" + objectName + "]");
+    	}
     }
     
     /**
      * Provides the exposed attributes and actions of the Dynamic MBean using an MBeanInfo object.
+     * The returned MBeanInfo is an immutable snapshot which is only rebuilt when the binding version changes.
+     * A rebuild reuses the previous snapshot's attribute info of every binding whose name and {@link BindingType} are unchanged,
+     * so it only allocates attribute infos for the bindings added or retyped since.
      *
      * @return  An instance of <CODE>MBeanInfo</CODE> allowing all attributes and actions 
      * exposed by this Dynamic MBean to be retrieved.
      *
      */
     public MBeanInfo getMBeanInfo() {
-    	return StandardMBeanFeatures.buildMBeanInfo(attrInfos.values(), objectName, descriptor);
+    	loadSnapshotUnchecked();
+    	long version = bindingVersion.get();
+    	MBeanInfoSnapshot snapshot = infoSnapshot;
+    	if(snapshot!=null && snapshot.version==version) {
+    		return snapshot.info;
+    	}
+    	// Captured before reading the bindings, so a concurrent change leaves the snapshot stale rather than wrongly current
+    	MBeanAttributeInfo[] previous = snapshot==null ? NO_ATTRIBUTE_INFOS : snapshot.bindingInfos;
+    	List<MBeanAttributeInfo> attrInfos = new ArrayList<MBeanAttributeInfo>(bindings.size());
+    	int cursor = 0;
+    	for(Map.Entry<String, Object> entry: bindings.entrySet()) {
+    		String name = entry.getKey();
+    		BindingType type = typeOf(entry.getValue());
+    		// the bindings iterate in a stable order, so the previous info is at the cursor, or one past it if a binding was removed
+    		if(cursor < previous.length && type.describes(previous[cursor], name)) {
+    			attrInfos.add(previous[cursor++]);
+    		} else if(cursor + 1 < previous.length && type.describes(previous[cursor + 1], name)) {
+    			attrInfos.add(previous[cursor + 1]);
+    			cursor += 2;
+    		} else {
+    			attrInfos.add(type.toAttributeInfo(name));
+    		}
+    	}
+    	snapshot = new MBeanInfoSnapshot(version, attrInfos.toArray(new MBeanAttributeInfo[attrInfos.size()]), StandardMBeanFeatures.buildMBeanInfo(attrInfos, objectName, descriptor, version));
+    	infoSnapshot = snapshot;
+    	return snapshot.info;
+    }
+    
+	/**
+	 * <p>Title: MBeanInfoSnapshot</p>
+	 * <p>Description: An immutable MBeanInfo tagged with the binding version it was built from</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.JMXNamingBindingContext.MBeanInfoSnapshot</code></p>
+	 */
+	protected static final class MBeanInfoSnapshot {
+		/** The binding version the snapshot was built from */
+		final long version;
+		/** The binding attribute infos of the snapshot, in binding iteration order */
+		final MBeanAttributeInfo[] bindingInfos;
+		/** The snapshot MBeanInfo */
+		final MBeanInfo info;
+		
+		/**
+		 * Creates a new MBeanInfoSnapshot
+		 * @param version The binding version the snapshot was built from
+		 * @param bindingInfos The binding attribute infos of the snapshot, in binding iteration order
+		 * @param info The snapshot MBeanInfo
+		 */
+		MBeanInfoSnapshot(long version, MBeanAttributeInfo[] bindingInfos, MBeanInfo info) {
+			this.version = version;
+			this.bindingInfos = bindingInfos;
+			this.info = info;
+		}
+	}
+	
+	/** The binding attribute infos of a context with no previous MBeanInfo snapshot */
+	private static final MBeanAttributeInfo[] NO_ATTRIBUTE_INFOS = new MBeanAttributeInfo[0];
+
+    // =================================================
+    //		NotificationEmitter Ops
+    // =================================================
+    
+    /**
+     * Returns the notifier for this context, creating it if necessary
+     * @return the notifier
+     */
+    protected BindingNotifier notifier() {
+    	BindingNotifier n = notifier;
+    	if(n==null) {
+    		synchronized(this) {
+    			n = notifier;
+    			if(n==null) {
+    				n = new BindingNotifier(this);
+    				notifier = n;
+    			}
+    		}
+    	}
+    	return n;
+    }
+    
+    /**
+     * Adds a listener to this context's binding change notifications.
+     *
+     * @param listener The listener object which will handle the notifications emitted by the broadcaster.
+     * @param filter The filter object. If filter is null, no filtering will be performed before handling notifications.
+     * @param handback An opaque object to be sent back to the listener when a notification is emitted. 
+     *
+     * @exception IllegalArgumentException Listener parameter is null.
+     */
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+    	notifier().addNotificationListener(listener, filter, handback);
+    }
+    
+    /**
+     * Removes a listener from this context. If the listener has been registered with different handback objects 
+     * or notification filters, all entries corresponding to the listener will be removed.
+     *
+     * @param listener A listener that was previously added to this context.
+     *
+     * @exception ListenerNotFoundException The listener is not registered with this context.
+     */
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+    	BindingNotifier n = notifier;
+    	if(n==null) throw new ListenerNotFoundException("The listener is not registered with context [" + objectName + "]");
+    	n.removeNotificationListener(listener);
+    }
+    
+    /**
+     * Removes a listener from this context. The context must have a listener with exactly the given listener, filter, and handback parameters.
+     *
+     * @param listener A listener that was previously added to this context.
+     * @param filter The filter that was specified when the listener was added.
+     * @param handback The handback that was specified when the listener was added.
+     *
+     * @exception ListenerNotFoundException The listener is not registered with this context, or it is not registered with the given filter and handback.
+     */
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+    	BindingNotifier n = notifier;
+    	if(n==null) throw new ListenerNotFoundException("The listener is not registered with context [" + objectName + "]");
+    	n.removeNotificationListener(listener, filter, handback);
+    }
+    
+    /**
+     * Returns the notification types this context emits.
+     *
+     * @return the array of notification infos
+     */
+    public MBeanNotificationInfo[] getNotificationInfo() {
+    	return StandardMBeanFeatures.getNotificationInfos();
     }
 
     // =================================================
@@ -394,6 +2631,8 @@ public class JMXNamingBindingContext implements DynamicMBean, MBeanRegistration
     public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
     	this.server = server;
     	this.objectName = name;
+    	// the cached MBeanInfo description carries the ObjectName
+    	infoSnapshot = null;
     	return name;
     }
 
@@ -0,0 +1,135 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+
+import javax.naming.NamingException;
+
+/**
+ * <p>Title: LazyBinding</p>
+ * <p>Description: A binding whose value is built by a factory on first lookup. The factory runs exactly once, even under concurrent 
+ * lookups, unless it fails, in which case the next lookup runs it again. Once built, the value is read without locking. 
+ * Until then, the context's attribute metadata reports the declared type without building the value.</p>
+ * <p>Snapshots and the journal persist the binding itself rather than the value, so a lazy binding is still lazy after a restore. 
+ * This requires the factory to be serializable; otherwise the binding is skipped like any other non-serializable value.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.LazyBinding</code></p>
+ * @param <T> The declared type of the bound value
+ */
+public class LazyBinding<T> implements DeferredBinding, Serializable {
+	/**  */
+	private static final long serialVersionUID = -3216745022391874476L;
+	/** The declared type of the bound value */
+	private final Class<T> type;
+	/** The factory that builds the value */
+	private final Callable<? extends T> factory;
+	/** The built value */
+	private transient volatile T value = null;
+	/** Set once the value has been built. Written after the value, so a reader that sees it set also sees the value. */
+	private transient volatile boolean built = false;
+	
+	/**
+	 * Creates a new LazyBinding
+	 * @param type The declared type of the bound value
+	 * @param factory The factory that builds the value
+	 */
+	public LazyBinding(Class<T> type, Callable<? extends T> factory) {
+		if(type==null) throw new IllegalArgumentException("The declared type was null");
+		if(factory==null) throw new IllegalArgumentException("The factory was null");
+		this.type = type;
+		this.factory = factory;
+	}
+
+	/**
+	 * Returns the value, building it on the first call
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.DeferredBinding#resolve()
+	 */
+	@Override
+	public T resolve() throws NamingException {
+		if(built) return value;
+		synchronized(this) {
+			if(!built) {
+				T v;
+				try {
+					v = factory.call();
+				} catch (Exception e) {
+					NamingException ne = new NamingException("Failed to build the lazy binding of type [" + type.getName() + "]");
+					ne.setRootCause(e);
+					throw ne;
+				}
+				if(v!=null && !type.isInstance(v)) {
+					throw new NamingException("The lazy binding factory built a [" + v.getClass().getName() + "] which is not a [" + type.getName() + "]");
+				}
+				value = v;
+				built = true;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.DeferredBinding#getBindingType()
+	 */
+	@Override
+	public String getBindingType() {
+		return type.getName();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.DeferredBinding#release()
+	 */
+	@Override
+	public void release() {
+		/* No Op. The built value, if any, belongs to whoever looked it up. */
+	}
+	
+	/**
+	 * Indicates if the value has been built
+	 * @return true if the value has been built
+	 */
+	public boolean isBuilt() {
+		return built;
+	}
+	
+	/**
+	 * Returns the declared type of the bound value
+	 * @return the declared type
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+	
+	@Override
+	public String toString() {
+		return "LazyBinding [" + type.getName() + (built ? ", built" : "") + "]";
+	}
+}
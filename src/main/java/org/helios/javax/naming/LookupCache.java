@@ -0,0 +1,152 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: LookupCache</p>
+ * <p>Description: A cache of resolved values keyed by their full compound name, held by a root {@link JMXNamingBindingContext}.
+ * Entries are kept in name order so that a change to a binding invalidates the binding and every name beneath it with one range removal.</p>
+ * <p>Only names in simple form (no quotes, escapes or empty components) are cached, so the cache key is always the same
+ * string the context tree would produce for the binding's path.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.LookupCache</code></p>
+ */
+public class LookupCache {
+	/** The cached values keyed by full compound name */
+	protected final ConcurrentSkipListMap<String, Object> entries = new ConcurrentSkipListMap<String, Object>();
+	/** The invalidation epoch, incremented before each invalidation removes entries */
+	protected final AtomicLong epoch = new AtomicLong(0L);
+	/** The number of cache hits */
+	protected final AtomicLong hits = new AtomicLong(0L);
+	/** The number of cache misses */
+	protected final AtomicLong misses = new AtomicLong(0L);
+	
+	/** The composite name separator */
+	public static final char SEPARATOR = '/';
+	/** The character that sorts immediately after the separator */
+	private static final char AFTER_SEPARATOR = SEPARATOR + 1;
+	
+	/**
+	 * Returns the cached value for the passed name
+	 * @param name The full compound name
+	 * @return the cached value or null if the name is not cached
+	 */
+	public Object get(String name) {
+		Object value = entries.get(name);
+		if(value==null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns the current invalidation epoch. Callers read this before resolving a name and pass it to {@link #put(String, Object, long)}.
+	 * @return the current epoch
+	 */
+	public long epoch() {
+		return epoch.get();
+	}
+	
+	/**
+	 * Caches a resolved value. If an invalidation started after the passed epoch was read, 
+	 * the value may already be stale so it is withdrawn again.
+	 * @param name The full compound name
+	 * @param value The resolved value
+	 * @param resolvedEpoch The epoch read before the name was resolved
+	 */
+	public void put(String name, Object value, long resolvedEpoch) {
+		if(value==null || !isSimple(name)) return;
+		entries.put(name, value);
+		if(epoch.get()!=resolvedEpoch) {
+			entries.remove(name, value);
+		}
+	}
+	
+	/**
+	 * Invalidates the passed name and every name beneath it
+	 * @param name The full compound name of the changed binding or context
+	 */
+	public void invalidate(String name) {
+		epoch.incrementAndGet();
+		entries.remove(name);
+		entries.subMap(name + SEPARATOR, name + AFTER_SEPARATOR).clear();
+	}
+	
+	/**
+	 * Discards all cached entries
+	 */
+	public void clear() {
+		epoch.incrementAndGet();
+		entries.clear();
+	}
+	
+	/**
+	 * Returns the number of cache hits
+	 * @return the number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of cache misses
+	 * @return the number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Returns the number of cached entries
+	 * @return the number of cached entries
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+	
+	/**
+	 * Determines if the passed name is in simple form: non empty, with no quotes, escapes or empty components
+	 * @param name The name to test
+	 * @return true if the name is in simple form
+	 */
+	public static boolean isSimple(String name) {
+		int length = name.length();
+		if(length==0 || name.charAt(0)==SEPARATOR || name.charAt(length-1)==SEPARATOR) return false;
+		char prior = 0;
+		for(int i = 0; i < length; i++) {
+			char c = name.charAt(i);
+			if(c=='\\' || c=='"' || c=='\'' || (c==SEPARATOR && prior==SEPARATOR)) return false;
+			prior = c;
+		}
+		return true;
+	}
+}
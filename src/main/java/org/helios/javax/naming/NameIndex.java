@@ -0,0 +1,156 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Title: NameIndex</p>
+ * <p>Description: A sorted concurrent index of the names bound in one {@link JMXNamingBindingContext}, answering prefix, range and glob
+ * queries in time logarithmic in the size of the context plus the size of the range scanned. A glob scans the range of names starting 
+ * with its literal prefix (the part before the first wildcard), so globs with a long literal prefix are the cheapest.</p>
+ * <p>The index is maintained after each change to the context, so a name can briefly be indexed after it has been unbound.
+ * Callers filter results against the context.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.NameIndex</code></p>
+ */
+public class NameIndex {
+	/** The indexed names */
+	protected final ConcurrentSkipListSet<String> names = new ConcurrentSkipListSet<String>();
+	
+	/**
+	 * Adds a name to the index
+	 * @param name The name
+	 */
+	public void add(String name) {
+		names.add(name);
+	}
+	
+	/**
+	 * Removes a name from the index
+	 * @param name The name
+	 */
+	public void remove(String name) {
+		names.remove(name);
+	}
+	
+	/**
+	 * Returns the number of indexed names
+	 * @return the number of indexed names
+	 */
+	public int size() {
+		return names.size();
+	}
+	
+	/**
+	 * Returns the indexed names starting with a prefix, in order
+	 * @param prefix The prefix. An empty prefix matches every name.
+	 * @return the matching names
+	 */
+	public List<String> prefix(String prefix) {
+		List<String> result = new ArrayList<String>();
+		for(String name: names.tailSet(prefix, true)) {
+			if(!name.startsWith(prefix)) break;
+			result.add(name);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the indexed names in a range, in order
+	 * @param from The inclusive lower bound, or null for no lower bound
+	 * @param to The exclusive upper bound, or null for no upper bound
+	 * @return the names in the range
+	 */
+	public List<String> range(String from, String to) {
+		NavigableSet<String> range;
+		if(from==null) {
+			range = to==null ? names : names.headSet(to, false);
+		} else {
+			range = to==null ? names.tailSet(from, true) : from.compareTo(to) >= 0 ? new ConcurrentSkipListSet<String>() : names.subSet(from, true, to, false);
+		}
+		return new ArrayList<String>(range);
+	}
+	
+	/**
+	 * Returns the indexed names matching a glob, in order. <code>*</code> matches any run of characters and <code>?</code> matches any one character.
+	 * @param glob The glob
+	 * @return the matching names
+	 */
+	public List<String> glob(String glob) {
+		String prefix = literalPrefix(glob);
+		if(prefix.length()==glob.length()) {
+			List<String> result = new ArrayList<String>(1);
+			if(names.contains(glob)) result.add(glob);
+			return result;
+		}
+		Pattern pattern = compile(glob);
+		List<String> result = new ArrayList<String>();
+		for(String name: names.tailSet(prefix, true)) {
+			if(!name.startsWith(prefix)) break;
+			if(pattern.matcher(name).matches()) result.add(name);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the part of a glob before its first wildcard
+	 * @param glob The glob
+	 * @return the literal prefix
+	 */
+	public static String literalPrefix(String glob) {
+		for(int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if(c=='*' || c=='?') return glob.substring(0, i);
+		}
+		return glob;
+	}
+	
+	/**
+	 * Compiles a glob into a regular expression
+	 * @param glob The glob
+	 * @return the pattern
+	 */
+	public static Pattern compile(String glob) {
+		StringBuilder b = new StringBuilder(glob.length() + 16);
+		int literal = 0;
+		for(int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if(c=='*' || c=='?') {
+				if(i > literal) b.append(Pattern.quote(glob.substring(literal, i)));
+				b.append(c=='*' ? ".*" : ".");
+				literal = i + 1;
+			}
+		}
+		if(literal < glob.length()) b.append(Pattern.quote(glob.substring(literal)));
+		return Pattern.compile(b.toString(), Pattern.DOTALL);
+	}
+}
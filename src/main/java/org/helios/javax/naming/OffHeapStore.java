@@ -0,0 +1,410 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.Reference;
+
+/**
+ * <p>Title: OffHeapStore</p>
+ * <p>Description: An off-heap storage tier for large serializable binding values, shared by every context of a tree. Values whose 
+ * serialized form is at least the binding context's threshold are copied into direct {@link ByteBuffer} slabs and bound as an 
+ * {@link OffHeapValue}, which is deserialized on lookup. A small access ordered cache keeps the most recently used values on heap.</p>
+ * <p>Slabs are bump allocated and never overwritten, so a value stays readable through any view already taken of it. When releases
+ * leave a retired slab no more than a quarter live, its live values are copied into the current slab and the sparse slab is dropped,
+ * so its native memory is returned once the collector reclaims it.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.OffHeapStore</code></p>
+ */
+public class OffHeapStore {
+	/** The maximum number of deserialized values cached on heap */
+	protected volatile int cacheSize;
+	/** The slab currently being allocated from. Guarded by this store. */
+	protected Slab current = null;
+	/** The recently deserialized values, in access order. Guarded by the cache itself. */
+	protected final LinkedHashMap<OffHeapValue, Object> cache = new LinkedHashMap<OffHeapValue, Object>(16, 0.75f, true) {
+		private static final long serialVersionUID = 4016498342871385406L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<OffHeapValue, Object> eldest) {
+			return size() > cacheSize;
+		}
+	};
+	/** The serialized bytes of all live off-heap values */
+	protected final AtomicLong offHeapBytes = new AtomicLong(0L);
+	/** The capacity of all slabs holding live values, including the current slab */
+	protected final AtomicLong retainedBytes = new AtomicLong(0L);
+	/** The number of off-heap values deserialized */
+	protected final AtomicLong deserializations = new AtomicLong(0L);
+	/** The number of live values moved out of sparse slabs */
+	protected final AtomicLong relocations = new AtomicLong(0L);
+	
+	/** The size of a shared slab. Values larger than a slab get a dedicated buffer. */
+	public static final int SLAB_SIZE = 1 << 20;
+	/** The default number of deserialized values cached on heap */
+	public static final int DEFAULT_CACHE_SIZE = 16;
+	/** The initial size of the buffer a candidate is serialized into. It grows as needed. */
+	public static final int SERIALIZE_BUFFER_SIZE = 256;
+	
+	/**
+	 * Creates a new OffHeapStore
+	 * @param cacheSize The maximum number of deserialized values cached on heap
+	 */
+	public OffHeapStore(int cacheSize) {
+		configure(cacheSize);
+	}
+	
+	/**
+	 * Updates the store's cache size
+	 * @param cacheSize The maximum number of deserialized values cached on heap
+	 */
+	public void configure(int cacheSize) {
+		this.cacheSize = Math.max(0, cacheSize);
+		synchronized(cache) {
+			while(cache.size() > this.cacheSize) {
+				cache.remove(cache.keySet().iterator().next());
+			}
+		}
+	}
+	
+	/**
+	 * Moves a value off-heap if it is serializable and its serialized form meets the threshold
+	 * @param value The value to bind
+	 * @param threshold The minimum serialized size in bytes of a value stored off-heap. Zero or less keeps every value on heap.
+	 * @return an {@link OffHeapValue} or the passed value if it stays on heap
+	 */
+	public Object offload(Object value, int threshold) {
+		if(threshold<=0 || !isCandidate(value) || maxSerializedSize(value) < threshold) return value;
+		byte[] bytes;
+		try {
+			bytes = BinaryFormat.serialize(value, SERIALIZE_BUFFER_SIZE);
+			if(bytes.length < threshold) return value;
+		} catch (IOException e) {
+			// not serializable after all, so it stays on heap
+			return value;
+		}
+		OffHeapValue offHeap = new OffHeapValue(this, bytes.length, value.getClass().getName());
+		synchronized(this) {
+			place(offHeap, ByteBuffer.wrap(bytes));
+		}
+		offHeapBytes.addAndGet(bytes.length);
+		return offHeap;
+	}
+	
+	/**
+	 * Determines if a value could be stored off-heap. Boxed primitives and enums never meet any sensible threshold.
+	 * @param value The value
+	 * @return true if the value should be serialized and measured
+	 */
+	protected boolean isCandidate(Object value) {
+		if(!(value instanceof Serializable)) return false;
+		if(value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum) return false;
+		// references are resolved through a per-binding cache keyed by their identity, which a copy would defeat
+		return !(value instanceof DeferredBinding || value instanceof Reference);
+	}
+	
+	/**
+	 * Returns an upper bound of a candidate's serialized size that can be computed without serializing it, so strings and primitive 
+	 * arrays that cannot meet the threshold are kept on heap without being serialized
+	 * @param value The candidate value
+	 * @return the upper bound in bytes, or {@link Long#MAX_VALUE} if the size cannot be bounded cheaply
+	 */
+	protected static long maxSerializedSize(Object value) {
+		// stream header, type code and length, then at most 3 bytes per char in modified UTF-8
+		if(value instanceof String) return 16L + 3L * ((String)value).length();
+		Class<?> componentType = value.getClass().getComponentType();
+		if(componentType==null || !componentType.isPrimitive()) return Long.MAX_VALUE;
+		int elementSize;
+		if(componentType==long.class || componentType==double.class) elementSize = 8;
+		else if(componentType==int.class || componentType==float.class) elementSize = 4;
+		else if(componentType==short.class || componentType==char.class) elementSize = 2;
+		else elementSize = 1;
+		// stream header, type code, class descriptor and length, then the elements
+		return 64L + value.getClass().getName().length() + (long)Array.getLength(value) * elementSize;
+	}
+	
+	/**
+	 * Copies a value's serialized bytes into the current slab, or a dedicated buffer if they are larger than a slab. Called holding this store.
+	 * @param value The value being placed
+	 * @param bytes The serialized bytes
+	 */
+	protected void place(OffHeapValue value, ByteBuffer bytes) {
+		int length = bytes.remaining();
+		Slab target;
+		if(length > SLAB_SIZE) {
+			target = new Slab(length);
+			retainedBytes.addAndGet(length);
+		} else {
+			if(current==null || current.buffer.remaining() < length) {
+				Slab full = current;
+				current = new Slab(SLAB_SIZE);
+				retainedBytes.addAndGet(SLAB_SIZE);
+				if(full!=null) reclaim(full);
+			}
+			target = current;
+		}
+		int offset = target.buffer.position();
+		target.buffer.put(bytes);
+		target.values.add(value);
+		target.live += length;
+		value.placement = new Placement(target, offset);
+	}
+	
+	/**
+	 * Drops a retired slab with no live values, or moves the live values out of one that is no more than a quarter live.
+	 * Called holding this store.
+	 * @param slab The slab
+	 */
+	protected void reclaim(Slab slab) {
+		if(slab==current || slab.dropped) return;
+		if(slab.live > 0 && (slab.capacity() > SLAB_SIZE || slab.live > slab.capacity() / 4)) return;
+		slab.dropped = true;
+		OffHeapValue[] values = slab.values.toArray(new OffHeapValue[slab.values.size()]);
+		slab.values.clear();
+		slab.live = 0;
+		retainedBytes.addAndGet(-slab.capacity());
+		for(OffHeapValue value: values) {
+			place(value, value.bytes());
+			relocations.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Returns the deserialized form of an off-heap value, from the cache if it was recently used
+	 * @param value The off-heap value
+	 * @return the deserialized value
+	 * @throws NamingException thrown if the value cannot be deserialized
+	 */
+	protected Object read(OffHeapValue value) throws NamingException {
+		synchronized(cache) {
+			Object cached = cache.get(value);
+			if(cached!=null) return cached;
+		}
+		Object resolved;
+		try {
+			resolved = BinaryFormat.deserialize(value.bytes());
+		} catch (Exception e) {
+			NamingException ne = new NamingException("Failed to deserialize off-heap value of type [" + value.type + "]");
+			ne.setRootCause(e);
+			throw ne;
+		}
+		deserializations.incrementAndGet();
+		if(cacheSize > 0 && !value.released.get()) {
+			synchronized(cache) {
+				cache.put(value, resolved);
+			}
+		}
+		return resolved;
+	}
+	
+	/**
+	 * Accounts for a released off-heap value, evicts it from the cache and reclaims its slab if it is now sparse
+	 * @param value The released value
+	 */
+	protected void release(OffHeapValue value) {
+		offHeapBytes.addAndGet(-value.length);
+		synchronized(this) {
+			Slab slab = value.placement.slab;
+			if(slab.values.remove(value)) {
+				slab.live -= value.length;
+				reclaim(slab);
+			}
+		}
+		synchronized(cache) {
+			cache.remove(value);
+		}
+	}
+	
+	/**
+	 * Returns the serialized bytes of all live off-heap values
+	 * @return the off-heap byte count
+	 */
+	public long getOffHeapBytes() {
+		return offHeapBytes.get();
+	}
+	
+	/**
+	 * Returns the native memory held by slabs with live values, which is at least the live byte count
+	 * @return the retained off-heap byte count
+	 */
+	public long getRetainedBytes() {
+		return retainedBytes.get();
+	}
+	
+	/**
+	 * Returns the number of off-heap values deserialized
+	 * @return the deserialization count
+	 */
+	public long getDeserializations() {
+		return deserializations.get();
+	}
+	
+	/**
+	 * Returns the number of live values moved out of sparse slabs
+	 * @return the relocation count
+	 */
+	public long getRelocations() {
+		return relocations.get();
+	}
+	
+	/**
+	 * <p>Title: Slab</p>
+	 * <p>Description: A direct buffer and the live values placed in it. Guarded by the store.</p> 
+	 */
+	protected static final class Slab {
+		/** The slab's buffer */
+		final ByteBuffer buffer;
+		/** The live values placed in the slab */
+		final Set<OffHeapValue> values = new HashSet<OffHeapValue>();
+		/** The serialized bytes of the live values */
+		int live = 0;
+		/** Set once the slab has been reclaimed */
+		boolean dropped = false;
+		
+		/**
+		 * Creates a new Slab
+		 * @param capacity The slab capacity in bytes
+		 */
+		Slab(int capacity) {
+			buffer = ByteBuffer.allocateDirect(capacity);
+		}
+		
+		/**
+		 * Returns the slab capacity
+		 * @return the capacity in bytes
+		 */
+		int capacity() {
+			return buffer.capacity();
+		}
+	}
+	
+	/**
+	 * <p>Title: Placement</p>
+	 * <p>Description: Where a value's serialized bytes are held. Replaced as a whole when the value is relocated.</p> 
+	 */
+	protected static final class Placement {
+		/** The slab holding the serialized bytes */
+		final Slab slab;
+		/** The offset of the serialized bytes in the slab */
+		final int offset;
+		
+		/**
+		 * Creates a new Placement
+		 * @param slab The slab holding the serialized bytes
+		 * @param offset The offset of the serialized bytes in the slab
+		 */
+		Placement(Slab slab, int offset) {
+			this.slab = slab;
+			this.offset = offset;
+		}
+	}
+	
+	/**
+	 * <p>Title: OffHeapValue</p>
+	 * <p>Description: A binding whose serialized value is held in an off-heap slab</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.OffHeapStore.OffHeapValue</code></p>
+	 */
+	public static final class OffHeapValue implements DeferredBinding {
+		/** The store that allocated this value */
+		private final OffHeapStore store;
+		/** The length of the serialized bytes */
+		private final int length;
+		/** The value's class name */
+		private final String type;
+		/** Where the serialized bytes are currently held */
+		private volatile Placement placement = null;
+		/** Set once the binding has been removed */
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		
+		/**
+		 * Creates a new OffHeapValue, placed by the store
+		 * @param store The store that allocated this value
+		 * @param length The length of the serialized bytes
+		 * @param type The value's class name
+		 */
+		OffHeapValue(OffHeapStore store, int length, String type) {
+			this.store = store;
+			this.length = length;
+			this.type = type;
+		}
+
+		@Override
+		public Object resolve() throws NamingException {
+			return store.read(this);
+		}
+
+		@Override
+		public String getBindingType() {
+			return type;
+		}
+
+		@Override
+		public void release() {
+			if(released.compareAndSet(false, true)) {
+				store.release(this);
+			}
+		}
+		
+		/**
+		 * Returns a read-only view of the serialized value
+		 * @return the serialized bytes
+		 */
+		ByteBuffer bytes() {
+			Placement p = placement;
+			ByteBuffer buffer = p.slab.buffer.asReadOnlyBuffer();
+			buffer.limit(p.offset + length);
+			buffer.position(p.offset);
+			return buffer.slice();
+		}
+		
+		/**
+		 * Returns the length of the serialized value
+		 * @return the serialized length in bytes
+		 */
+		public int getLength() {
+			return length;
+		}
+		
+		@Override
+		public String toString() {
+			return "OffHeapValue [" + type + ", " + length + " bytes]";
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+
+/**
+ * <p>Title: ReadOnlyContext</p>
+ * <p>Description: A snapshot of a context tree as read from its {@link SerializedContext} form. Lookups, listings, attribute reads and
+ * environment changes work as on any context, but every operation that would change the bindings or subcontexts fails with an
+ * {@link OperationNotSupportedException}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.ReadOnlyContext</code></p>
+ */
+public class ReadOnlyContext extends JMXNamingBindingContext {
+	/**  */
+	private static final long serialVersionUID = -4662845836178945483L;
+	
+	/**
+	 * Creates a new root ReadOnlyContext
+	 * @param env The initial environment
+	 */
+	protected ReadOnlyContext(Hashtable<?, ?> env) {
+		super(null, null, env);
+	}
+	
+	/**
+	 * Creates a new ReadOnlyContext subcontext
+	 * @param parentContext The parent context
+	 * @param contextName The atomic name of this context in its parent
+	 * @param env The context's own environment overrides
+	 */
+	protected ReadOnlyContext(ReadOnlyContext parentContext, String contextName, Map<?, ?> env) {
+		super(parentContext, contextName, env);
+	}
+	
+	/**
+	 * Returns the exception thrown by every mutating operation
+	 * @return the exception to throw
+	 */
+	protected OperationNotSupportedException readOnly() {
+		return new OperationNotSupportedException("The context [" + objectName + "] is a read-only snapshot");
+	}
+	
+	@Override
+	protected ReadOnlyContext newSubcontext(String name, Map<?, ?> env) {
+		return new ReadOnlyContext(this, name, env);
+	}
+	
+	@Override
+	protected JMXNamingBindingContext newSubcontext(String name) {
+		return new ReadOnlyContext(this, name, null);
+	}
+
+	@Override
+	protected void bindLocal(String name, Object value) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	protected void rebindLocal(String name, Object value) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	protected void unbindLocal(String name) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	protected void renameLocal(String oldName, JMXNamingBindingContext target, String newName) throws NamingException {
+		throw readOnly();
+	}
+	
+	@Override
+	protected void claimEntry(String name, Object entry) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	protected JMXNamingBindingContext createSubcontextLocal(String name) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	protected void destroySubcontextLocal(String name) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	public void bindAll(Map<String, ?> batch) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	public void unbindAll(Collection<String> names) throws NamingException {
+		throw readOnly();
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+		throw new MBeanException(readOnly(), "The context [" + objectName + "] is a read-only snapshot");
+	}
+}
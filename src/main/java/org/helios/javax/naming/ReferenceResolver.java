@@ -0,0 +1,214 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+import javax.naming.NamingException;
+import javax.naming.RefAddr;
+import javax.naming.Reference;
+import javax.naming.spi.NamingManager;
+import javax.naming.spi.ObjectFactory;
+
+/**
+ * <p>Title: ReferenceResolver</p>
+ * <p>Description: Resolves the {@link Reference} bindings of a context tree into the objects they describe. Object factories
+ * are loaded and instantiated once per factory class and then reused, rather than on every lookup as {@link NamingManager} does.
+ * References with a factory codebase, or with no factory class at all, are still handed to {@link NamingManager}.</p>
+ * <p>Factory classes are loaded through the context class loader of the thread that first resolves a reference naming them,
+ * so the first factory loaded for a class name serves the whole tree.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.ReferenceResolver</code></p>
+ */
+public class ReferenceResolver {
+	/** The object factory instances keyed by factory class name */
+	protected final ConcurrentMap<String, ObjectFactory> factories = new ConcurrentHashMap<String, ObjectFactory>();
+	/** The number of object factories loaded */
+	protected final AtomicLong factoryLoads = new AtomicLong(0L);
+	/** The number of references resolved through a factory */
+	protected final AtomicLong resolutions = new AtomicLong(0L);
+	
+	/**
+	 * Resolves a reference into the object it describes
+	 * @param reference The reference
+	 * @param name The name of the binding relative to the naming context
+	 * @param nameCtx The context the reference is bound in
+	 * @param environment The environment of the context, which the factory must not modify
+	 * @return the object built by the reference's factory, or the reference itself if the factory declined it
+	 * @throws NamingException thrown if the factory cannot be loaded or fails
+	 */
+	public Object resolve(Reference reference, Name name, JMXNamingBindingContext nameCtx, Hashtable<?, ?> environment) throws NamingException {
+		String factoryClassName = reference.getFactoryClassName();
+		Object obj;
+		try {
+			if(factoryClassName==null || reference.getFactoryClassLocation()!=null) {
+				obj = NamingManager.getObjectInstance(reference, name, nameCtx, environment);
+			} else {
+				obj = factory(factoryClassName).getObjectInstance(reference, name, nameCtx, environment);
+			}
+		} catch (NamingException ne) {
+			throw ne;
+		} catch (Exception e) {
+			NamingException ne = new NamingException("Failed to resolve the reference [" + name + "] to a [" + reference.getClassName() + "]");
+			ne.setRootCause(e);
+			throw ne;
+		}
+		resolutions.incrementAndGet();
+		return obj==null ? reference : obj;
+	}
+	
+	/**
+	 * Returns the shared instance of an object factory, loading it on first use
+	 * @param factoryClassName The object factory class name
+	 * @return the object factory
+	 * @throws NamingException thrown if the factory class cannot be loaded or instantiated
+	 */
+	protected ObjectFactory factory(String factoryClassName) throws NamingException {
+		ObjectFactory factory = factories.get(factoryClassName);
+		if(factory!=null) return factory;
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			Class<?> clazz = loader==null ? Class.forName(factoryClassName) : Class.forName(factoryClassName, true, loader);
+			factory = (ObjectFactory)clazz.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			NamingException ne = new NamingException("Failed to load the object factory [" + factoryClassName + "]");
+			ne.setRootCause(e);
+			throw ne;
+		}
+		factoryLoads.incrementAndGet();
+		ObjectFactory prior = factories.putIfAbsent(factoryClassName, factory);
+		return prior==null ? factory : prior;
+	}
+	
+	/**
+	 * Returns the number of object factories loaded
+	 * @return the number of object factories loaded
+	 */
+	public long getFactoryLoads() {
+		return factoryLoads.get();
+	}
+	
+	/**
+	 * Returns the number of references resolved through a factory
+	 * @return the number of references resolved
+	 */
+	public long getResolutions() {
+		return resolutions.get();
+	}
+	
+	/**
+	 * Drops the cached object factories, so each is loaded again on its next use
+	 */
+	public void clear() {
+		factories.clear();
+	}
+	
+	/**
+	 * <p>Title: BoundReference</p>
+	 * <p>Description: A reference as bound to an atomic name in a context. A context keeps one per reference binding it has looked up,
+	 * so when caching is enabled the object built from the reference is reused until the binding changes.</p>
+	 * <p>Caching is enabled for all of a context's reference bindings with the {@link JMXNamingBindingContext#REFERENCE_CACHE} environment
+	 * property, and can be overridden for one binding with a {@link RefAddr} of the same type whose content is <code>true</code> or <code>false</code>.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.ReferenceResolver.BoundReference</code></p>
+	 */
+	public static class BoundReference {
+		/** The context the reference is bound in */
+		protected final JMXNamingBindingContext context;
+		/** The atomic name the reference is bound to */
+		protected final String name;
+		/** The bound reference */
+		protected final Reference reference;
+		/** The per binding cache override, or null to follow the context's environment */
+		private final Boolean cacheOverride;
+		/** The cached object, or null if it has not been built or caching is disabled */
+		private volatile Object object = null;
+		
+		/**
+		 * Creates a new BoundReference
+		 * @param context The context the reference is bound in
+		 * @param name The atomic name the reference is bound to
+		 * @param reference The bound reference
+		 */
+		BoundReference(JMXNamingBindingContext context, String name, Reference reference) {
+			this.context = context;
+			this.name = name;
+			this.reference = reference;
+			RefAddr addr = reference.get(JMXNamingBindingContext.REFERENCE_CACHE);
+			this.cacheOverride = addr==null || addr.getContent()==null ? null : Boolean.valueOf(addr.getContent().toString().trim());
+		}
+		
+		/**
+		 * Returns the object the reference describes, building it through its factory unless a cached object is available
+		 * @return the referenced object
+		 * @throws NamingException thrown if the reference cannot be resolved
+		 */
+		public Object getObject() throws NamingException {
+			JMXNamingBindingContext.EnvironmentSnapshot env = context.environmentSnapshot();
+			boolean cached = isCached(env.properties);
+			Object obj = object;
+			if(cached && obj!=null) return obj;
+			obj = context.referenceResolver.resolve(reference, new CompositeName().add(name), context, env.hashtable());
+			object = cached ? obj : null;
+			return obj;
+		}
+		
+		/**
+		 * Determines if the object built from the reference is cached
+		 * @return true if the object is cached
+		 */
+		public boolean isCached() {
+			return isCached(context.environmentSnapshot().properties);
+		}
+		
+		/**
+		 * Determines if the object built from the reference is cached under the passed environment
+		 * @param environment The flattened environment of the context
+		 * @return true if the object is cached
+		 */
+		protected boolean isCached(Map<Object, Object> environment) {
+			if(cacheOverride!=null) return cacheOverride;
+			return Boolean.valueOf(String.valueOf(environment.get(JMXNamingBindingContext.REFERENCE_CACHE)));
+		}
+		
+		/**
+		 * Returns the bound reference
+		 * @return the bound reference
+		 */
+		public Reference getReference() {
+			return reference;
+		}
+	}
+}
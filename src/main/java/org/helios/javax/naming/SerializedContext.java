@@ -0,0 +1,457 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingException;
+
+/**
+ * <p>Title: SerializedContext</p>
+ * <p>Description: The serialized form of a {@link JMXNamingBindingContext} and its subcontexts, written in place of the context by its 
+ * <code>writeReplace</code> and read back as a {@link ReadOnlyContext}.</p>
+ * <p>The encoding is a table of every distinct string used for names, type names and environment keys, followed by the context tree
+ * with each string written as a varint index into the table. Values with a registered {@link BindingCodec} are written by the codec, 
+ * values still held in serialized form (off-heap or not yet decoded from a snapshot) are copied as is with a varint length, and all 
+ * other values are written, in tree order, to one object stream that precedes the tree, so the stream header and the class descriptors
+ * of values of the same class are written once rather than once per value. As with snapshots, values that are not serializable are 
+ * skipped.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.SerializedContext</code></p>
+ */
+public class SerializedContext implements Externalizable {
+	/**  */
+	private static final long serialVersionUID = -8955717717780076820L;
+	/** The context to write */
+	private transient JMXNamingBindingContext context = null;
+	/** The context read */
+	private transient ReadOnlyContext restored = null;
+	
+	/** The format magic number */
+	public static final int MAGIC = 0x4A4D5843;
+	/** The format version */
+	public static final byte VERSION = 2;
+	/** The format version without an object stream section, still read */
+	public static final byte VERSION_1 = 1;
+	/** The value kind of a null value */
+	public static final byte KIND_NULL = 0;
+	/** The value kind of a value written by its codec */
+	public static final byte KIND_CODEC = 1;
+	/** The value kind of a Java serialized value */
+	public static final byte KIND_SERIALIZED = 2;
+	/** The value kind of an environment property removed from an inheriting context */
+	public static final byte KIND_REMOVED = 3;
+	/** The value kind of a value written to the shared object stream */
+	public static final byte KIND_OBJECT = 4;
+	
+	/**
+	 * Creates a new SerializedContext. Public for externalization only.
+	 */
+	public SerializedContext() {
+	}
+	
+	/**
+	 * Creates a new SerializedContext to write a context
+	 * @param context The context to write
+	 */
+	SerializedContext(JMXNamingBindingContext context) {
+		this.context = context;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		StringTable strings = new StringTable();
+		ObjectSection objects = new ObjectSection();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
+		DataOutputStream body = new DataOutputStream(baos);
+		try {
+			writeContext(body, context, context.environmentSnapshot().properties, strings, objects);
+		} catch (NamingException ne) {
+			NotSerializableException ex = new NotSerializableException("Failed to materialize a binding of context [" + context.contextName + "]");
+			ex.initCause(ne);
+			throw ex;
+		}
+		body.flush();
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		BinaryFormat.writeVarInt(out, strings.values.size());
+		for(String s: strings.values) {
+			BinaryFormat.writeString(out, s);
+		}
+		objects.writeTo(out);
+		out.write(baos.toByteArray());
+	}
+	
+	/**
+	 * Writes a context and its subcontexts
+	 * @param out The output to write to
+	 * @param ctx The context
+	 * @param env The environment to write for the context
+	 * @param strings The string table
+	 * @param objects The shared object stream
+	 * @throws IOException thrown on any IO error
+	 * @throws NamingException thrown if a deferred binding cannot be materialized
+	 */
+	protected void writeContext(DataOutputStream out, JMXNamingBindingContext ctx, Map<?, ?> env, StringTable strings, ObjectSection objects) throws IOException, NamingException {
+		ctx.loadSnapshot();
+		Map.Entry<?, ?>[] properties = env.entrySet().toArray(new Map.Entry<?, ?>[0]);
+		Value[] values = new Value[properties.length];
+		int size = 0;
+		for(int i = 0; i < properties.length; i++) {
+			if(!(properties[i].getKey() instanceof String)) continue;
+			Object value = properties[i].getValue();
+			values[i] = value==JMXNamingBindingContext.REMOVED_PROPERTY ? Value.REMOVED : Value.of(value, objects);
+			if(values[i]!=null) size++;
+		}
+		BinaryFormat.writeVarInt(out, size);
+		for(int i = 0; i < properties.length; i++) {
+			if(values[i]==null) continue;
+			BinaryFormat.writeVarInt(out, strings.indexOf((String)properties[i].getKey()));
+			values[i].write(out, strings);
+		}
+		Map.Entry<?, ?>[] bindings = ctx.bindings.entrySet().toArray(new Map.Entry<?, ?>[0]);
+		values = new Value[bindings.length];
+		size = 0;
+		for(int i = 0; i < bindings.length; i++) {
+			values[i] = Value.ofEntry(bindings[i].getValue(), objects);
+			if(values[i]!=null) size++;
+		}
+		BinaryFormat.writeVarInt(out, size);
+		for(int i = 0; i < bindings.length; i++) {
+			if(values[i]==null) continue;
+			BinaryFormat.writeVarInt(out, strings.indexOf((String)bindings[i].getKey()));
+			values[i].write(out, strings);
+		}
+		JMXNamingBindingContext[] children = ctx.children.values().toArray(new JMXNamingBindingContext[0]);
+		BinaryFormat.writeVarInt(out, children.length);
+		for(JMXNamingBindingContext child: children) {
+			BinaryFormat.writeVarInt(out, strings.indexOf(child.contextName));
+			writeContext(out, child, child.environment, strings, objects);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+	 */
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		if(in.readInt()!=MAGIC) throw new StreamCorruptedException("Not a serialized JMXNaming context");
+		byte version = in.readByte();
+		if(version!=VERSION && version!=VERSION_1) throw new StreamCorruptedException("Unsupported serialized context version [" + version + "]");
+		String[] strings = new String[BinaryFormat.readVarInt(in)];
+		for(int i = 0; i < strings.length; i++) {
+			strings[i] = BinaryFormat.readString(in);
+		}
+		ObjectInputStream objects = null;
+		if(version!=VERSION_1) {
+			byte[] section = new byte[BinaryFormat.readVarInt(in)];
+			in.readFully(section);
+			if(section.length>0) objects = BinaryFormat.objectInput(ByteBuffer.wrap(section));
+		}
+		restored = readContext(in, null, null, strings, objects);
+	}
+	
+	/**
+	 * Reads a context and its subcontexts
+	 * @param in The input to read from
+	 * @param parent The parent of the context, or null for the root
+	 * @param name The atomic name of the context, or null for the root
+	 * @param strings The string table
+	 * @param objects The shared object stream, or null if no value was written to it
+	 * @return the context read
+	 * @throws IOException thrown on any IO error
+	 * @throws ClassNotFoundException thrown if the class of a serialized value cannot be found
+	 */
+	protected ReadOnlyContext readContext(ObjectInput in, ReadOnlyContext parent, String name, String[] strings, ObjectInputStream objects) throws IOException, ClassNotFoundException {
+		int size = BinaryFormat.readVarInt(in);
+		Hashtable<Object, Object> env = new Hashtable<Object, Object>(Math.max(1, size * 2));
+		for(int i = 0; i < size; i++) {
+			String key = strings[BinaryFormat.readVarInt(in)];
+			byte kind = in.readByte();
+			Object value = kind==KIND_REMOVED ? JMXNamingBindingContext.REMOVED_PROPERTY : readValue(in, kind, strings, objects);
+			if(value!=null) env.put(key, value);
+		}
+		ReadOnlyContext ctx = parent==null ? new ReadOnlyContext(env) : parent.newSubcontext(name, env);
+		size = BinaryFormat.readVarInt(in);
+		for(int i = 0; i < size; i++) {
+			String binding = strings[BinaryFormat.readVarInt(in)];
+			ctx.bindings.put(binding, JMXNamingBindingContext.wrap(readValue(in, in.readByte(), strings, objects)));
+		}
+		size = BinaryFormat.readVarInt(in);
+		for(int i = 0; i < size; i++) {
+			String child = strings[BinaryFormat.readVarInt(in)];
+			ctx.children.put(child, readContext(in, ctx, child, strings, objects));
+		}
+		return ctx;
+	}
+	
+	/**
+	 * Reads a value following its kind
+	 * @param in The input to read from
+	 * @param kind The value kind
+	 * @param strings The string table
+	 * @param objects The shared object stream, or null if no value was written to it
+	 * @return the value
+	 * @throws IOException thrown on any IO error
+	 * @throws ClassNotFoundException thrown if the class of a serialized value cannot be found
+	 */
+	protected Object readValue(ObjectInput in, byte kind, String[] strings, ObjectInputStream objects) throws IOException, ClassNotFoundException {
+		switch(kind) {
+			case KIND_NULL:
+				return null;
+			case KIND_CODEC:
+				String type = strings[BinaryFormat.readVarInt(in)];
+				BindingCodec<?> codec = BindingCodecs.forClass(type);
+				if(codec==null) throw new InvalidObjectException("No codec is registered for [" + type + "]");
+				return codec.read(in);
+			case KIND_SERIALIZED:
+				byte[] bytes = new byte[BinaryFormat.readVarInt(in)];
+				in.readFully(bytes);
+				return BinaryFormat.deserialize(ByteBuffer.wrap(bytes));
+			case KIND_OBJECT:
+				if(objects==null) throw new StreamCorruptedException("No object stream was written");
+				return objects.readObject();
+			default:
+				throw new StreamCorruptedException("Unknown value kind [" + kind + "]");
+		}
+	}
+	
+	/**
+	 * Replaces this serialized form with the context read
+	 * @return the read-only context
+	 * @throws ObjectStreamException never
+	 */
+	protected Object readResolve() throws ObjectStreamException {
+		return restored;
+	}
+	
+	/**
+	 * <p>Title: StringTable</p>
+	 * <p>Description: The distinct strings written, in order of first use</p> 
+	 */
+	protected static class StringTable {
+		/** The string indexes */
+		private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		/** The strings in index order */
+		private final List<String> values = new ArrayList<String>();
+		
+		/**
+		 * Returns the index of a string, adding it to the table if it is new
+		 * @param s The string
+		 * @return the string's index
+		 */
+		int indexOf(String s) {
+			Integer index = indexes.get(s);
+			if(index==null) {
+				index = values.size();
+				indexes.put(s, index);
+				values.add(s);
+			}
+			return index;
+		}
+	}
+	
+	/**
+	 * <p>Title: ObjectSection</p>
+	 * <p>Description: The object stream shared by every value that has no codec and is not already serialized. A value that fails to 
+	 * serialize is cut from the stream and followed by a reset, so the writer's and the reader's handle tables stay in step.</p> 
+	 */
+	protected static class ObjectSection {
+		/** The stream bytes */
+		private final TruncatableOutputStream bytes = new TruncatableOutputStream();
+		/** The object stream, created on the first value */
+		private ObjectOutputStream oos = null;
+		
+		/**
+		 * Writes a value to the stream
+		 * @param value The value to write
+		 * @return true if the value was written, false if it is not serializable
+		 * @throws IOException thrown on any IO error
+		 */
+		boolean write(Object value) throws IOException {
+			if(oos==null) oos = new ObjectOutputStream(bytes);
+			oos.flush();
+			int mark = bytes.size();
+			try {
+				oos.writeObject(value);
+				return true;
+			} catch (NotSerializableException e) {
+				oos.flush();
+				bytes.truncate(mark);
+				oos.reset();
+				return false;
+			}
+		}
+		
+		/**
+		 * Writes the section, a varint length followed by the stream bytes
+		 * @param out The output to write to
+		 * @throws IOException thrown on any IO error
+		 */
+		void writeTo(ObjectOutput out) throws IOException {
+			if(oos!=null) oos.flush();
+			BinaryFormat.writeVarInt(out, bytes.size());
+			bytes.writeTo(out);
+		}
+	}
+	
+	/**
+	 * <p>Title: TruncatableOutputStream</p>
+	 * <p>Description: A byte array output stream that can be cut back to an earlier size</p> 
+	 */
+	private static class TruncatableOutputStream extends ByteArrayOutputStream {
+		/**
+		 * Creates a new TruncatableOutputStream
+		 */
+		TruncatableOutputStream() {
+			super(4096);
+		}
+		
+		/**
+		 * Cuts the stream back to an earlier size
+		 * @param size The size to cut back to
+		 */
+		void truncate(int size) {
+			count = size;
+		}
+		
+		/**
+		 * Writes the stream bytes
+		 * @param out The output to write to
+		 * @throws IOException thrown on any IO error
+		 */
+		void writeTo(ObjectOutput out) throws IOException {
+			out.write(buf, 0, count);
+		}
+	}
+	
+	/**
+	 * <p>Title: Value</p>
+	 * <p>Description: A value prepared for writing</p> 
+	 */
+	protected static class Value {
+		/** The written form of a null value */
+		static final Value NULL = new Value(KIND_NULL, null, null, null);
+		/** The written form of a removed environment property */
+		static final Value REMOVED = new Value(KIND_REMOVED, null, null, null);
+		/** The written form of a value written to the shared object stream */
+		static final Value OBJECT = new Value(KIND_OBJECT, null, null, null);
+		/** The value kind */
+		final byte kind;
+		/** The value, for a codec value */
+		final Object value;
+		/** The value's codec, for a codec value */
+		final BindingCodec<?> codec;
+		/** The serialized value, for a serialized value */
+		final byte[] bytes;
+		
+		/**
+		 * Creates a new Value
+		 * @param kind The value kind
+		 * @param value The value, for a codec value
+		 * @param codec The value's codec, for a codec value
+		 * @param bytes The serialized value, for a serialized value
+		 */
+		private Value(byte kind, Object value, BindingCodec<?> codec, byte[] bytes) {
+			this.kind = kind;
+			this.value = value;
+			this.codec = codec;
+			this.bytes = bytes;
+		}
+		
+		/**
+		 * Prepares a stored binding for writing. Values that are still serialized are copied as is.
+		 * @param entry The stored form of the binding
+		 * @param objects The shared object stream
+		 * @return the prepared value, or null if the value is not serializable
+		 * @throws IOException thrown on any IO error
+		 * @throws NamingException thrown if a deferred binding cannot be materialized
+		 */
+		static Value ofEntry(Object entry, ObjectSection objects) throws IOException, NamingException {
+			boolean serialized = entry instanceof OffHeapStore.OffHeapValue || (entry instanceof ContextSnapshot.MappedValue 
+					&& !((ContextSnapshot.MappedValue)entry).isMaterialized() && ContextSnapshot.tagOf(entry)==ContextSnapshot.TAG_SERIALIZED);
+			if(serialized) {
+				return new Value(KIND_SERIALIZED, null, null, ContextSnapshot.encode(entry, ContextSnapshot.TAG_SERIALIZED));
+			}
+			return of(ContextSnapshot.persistentValue(entry), objects);
+		}
+		
+		/**
+		 * Prepares a value for writing. Values without a codec are written to the shared object stream now, so values must be 
+		 * prepared in the order the tree is written.
+		 * @param value The value, possibly null
+		 * @param objects The shared object stream
+		 * @return the prepared value, or null if the value is not serializable
+		 * @throws IOException thrown on any IO error
+		 */
+		static Value of(Object value, ObjectSection objects) throws IOException {
+			if(value==null) return NULL;
+			BindingCodec<?> codec = BindingCodecs.forClass(value.getClass().getName());
+			if(codec!=null) return new Value(KIND_CODEC, value, codec, null);
+			return objects.write(value) ? OBJECT : null;
+		}
+		
+		/**
+		 * Writes the value
+		 * @param out The output to write to
+		 * @param strings The string table
+		 * @throws IOException thrown on any IO error
+		 */
+		void write(DataOutputStream out, StringTable strings) throws IOException {
+			out.writeByte(kind);
+			if(kind==KIND_CODEC) {
+				BinaryFormat.writeVarInt(out, strings.indexOf(codec.getType().getName()));
+				BindingCodecs.write(codec, out, value);
+			} else if(kind==KIND_SERIALIZED) {
+				BinaryFormat.writeVarInt(out, bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+}
@@ -24,9 +24,14 @@
  */
 package org.helios.javax.naming;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Vector;
@@ -52,10 +57,16 @@ import javax.naming.Context;
  * <p><code>org.helios.javax.naming.StandardMBeanFeatures</code></p>
  */
 public class StandardMBeanFeatures {
-	/** A map of OperationInfos keyed by method signature hash */
-	protected static final Map<Integer, MBeanOperationInfo> operationInfos = new HashMap<Integer, MBeanOperationInfo>();
-	/** A map of methods underlying each OperationInfo keyed by the method signature hash */
-	protected static final Map<Integer, Method> keyedMethods = new HashMap<Integer, Method>();
+	/** A map of OperationInfos keyed by operation name and signature */
+	protected static final Map<OperationKey, MBeanOperationInfo> operationInfos = new HashMap<OperationKey, MBeanOperationInfo>();
+	/** A map of methods underlying each OperationInfo keyed by operation name and signature */
+	protected static final Map<OperationKey, Method> keyedMethods = new HashMap<OperationKey, Method>();
+	/** The invoke dispatch table of operations keyed by operation name and signature */
+	protected static final Map<OperationKey, Operation> dispatchTable;
+	/** The names of the public JMXNamingBindingContext methods exposed as MBean operations in addition to the javax.naming.Context operations */
+	public static final String[] CONTEXT_OPERATIONS = {"bindAll", "unbindAll", "listPage", "closeCursor", "findNames", "findNameRange"};
+	/** The uniform type every dispatch handle is adapted to: <code>(Object target, Object[] params)Object</code> */
+	private static final MethodType DISPATCH_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
 	
 	/** A map of ConstructorInfos keyed by ctor signature hash */
 	protected static final Map<Integer, MBeanConstructorInfo> ctorInfos = new HashMap<Integer, MBeanConstructorInfo>();
@@ -64,32 +75,30 @@ public class StandardMBeanFeatures {
 	
 	/** A map of NotificationInfos keyed by notification type */
 	protected static final Vector<MBeanNotificationInfo> notifInfos = new Vector<MBeanNotificationInfo>();
+	
+	/** A map of the read only context level AttributeInfos keyed by attribute name */
+	protected static final Map<String, MBeanAttributeInfo> contextAttrInfos = new HashMap<String, MBeanAttributeInfo>();
+	
+	/** The shared ConstructorInfo array for every context MBeanInfo */
+	private static final MBeanConstructorInfo[] CTOR_INFOS;
+	/** The shared OperationInfo array for every context MBeanInfo */
+	private static final MBeanOperationInfo[] OP_INFOS;
+	/** The shared NotificationInfo array for every context MBeanInfo */
+	private static final MBeanNotificationInfo[] NOTIF_INFOS;
+	/** The descriptor field name carrying the MBeanInfo version */
+	public static final String MBEANINFO_VERSION_FIELD = "mbeanInfoVersion";
 
 	static {
+		Map<OperationKey, Operation> dispatch = new HashMap<OperationKey, Operation>();
 		for(Method method: Context.class.getDeclaredMethods()) {
-			int hash = hashMethod(method);
-			keyedMethods.put(hash, method);
-			Vector<MBeanParameterInfo> params = new Vector<MBeanParameterInfo>(method.getParameterTypes().length);
-			int cnt = 0;
-			for(Class<?> clazz: method.getParameterTypes()) {
-				params.add(new MBeanParameterInfo(
-						"p" + cnt, clazz.getName(), 
-						"MBeanParameter"
-				));
-				cnt++;
+			registerOperation(method, "javax.naming.Context Operation", dispatch);
+		}
+		for(Method method: JMXNamingBindingContext.class.getMethods()) {
+			for(String opName: CONTEXT_OPERATIONS) {
+				if(opName.equals(method.getName())) {
+					registerOperation(method, "JMXNaming Context Operation", dispatch);
+				}
 			}
-			operationInfos.put(hash, new MBeanOperationInfo(
-					method.getName(), "javax.naming.Context Operation",					
-					params.toArray(new MBeanParameterInfo[params.size()]),
-					method.getReturnType().getName(),
-					MBeanOperationInfo.UNKNOWN,
-					new ImmutableDescriptor(new String[]{
-							"method.signature", "method.hash"
-					}, new Object[]{
-							method.toGenericString(), hash
-					})
-					
-			));
 		}
 		Constructor<JMXNamingBindingContext>[] ctors = (Constructor<JMXNamingBindingContext>[])JMXNamingBindingContext.class.getDeclaredConstructors();
 		for(Constructor<JMXNamingBindingContext> ctor: ctors) {
@@ -117,6 +126,116 @@ public class StandardMBeanFeatures {
 		notifInfos.add(new MBeanNotificationInfo(new String[]{JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING}, Notification.class.getName(), "A notification emitted when a new name is bound to the context"));
 		notifInfos.add(new MBeanNotificationInfo(new String[]{JMXNamingBindingContext.NOTIF_TYPE_REMOVED_BINDING}, Notification.class.getName(), "A notification emitted when a bound name is removed from the context"));
 		notifInfos.add(new MBeanNotificationInfo(new String[]{JMXNamingBindingContext.NOTIF_TYPE_RENAMED_BINDING}, Notification.class.getName(), "A notification emitted when a bound name is renamed"));
+		contextAttrInfos.put(JMXNamingBindingContext.ATTR_MBEANINFO_VERSION, new MBeanAttributeInfo(
+				JMXNamingBindingContext.ATTR_MBEANINFO_VERSION, Long.class.getName(), 
+				"The version of this context's MBeanInfo, incremented whenever the set of bindings changes", 
+				true, false, false
+		));
+		contextAttrInfos.put(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_HITS, new MBeanAttributeInfo(
+				JMXNamingBindingContext.ATTR_LOOKUP_CACHE_HITS, Long.class.getName(), 
+				"The number of lookups served from the root context's resolved name cache", 
+				true, false, false
+		));
+		contextAttrInfos.put(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_MISSES, new MBeanAttributeInfo(
+				JMXNamingBindingContext.ATTR_LOOKUP_CACHE_MISSES, Long.class.getName(), 
+				"The number of lookups that missed the root context's resolved name cache", 
+				true, false, false
+		));
+		contextAttrInfos.put(JMXNamingBindingContext.ATTR_OFFHEAP_BYTES, new MBeanAttributeInfo(
+				JMXNamingBindingContext.ATTR_OFFHEAP_BYTES, Long.class.getName(), 
+				"The serialized size in bytes of the binding values this context's tree holds off-heap", 
+				true, false, false
+		));
+		contextAttrInfos.put(JMXNamingBindingContext.ATTR_OFFHEAP_RETAINED_BYTES, new MBeanAttributeInfo(
+				JMXNamingBindingContext.ATTR_OFFHEAP_RETAINED_BYTES, Long.class.getName(), 
+				"The native memory in bytes retained by the off-heap slabs of this context's tree", 
+				true, false, false
+		));
+		contextAttrInfos.put(JMXNamingBindingContext.ATTR_OFFHEAP_DESERIALIZATIONS, new MBeanAttributeInfo(
+				JMXNamingBindingContext.ATTR_OFFHEAP_DESERIALIZATIONS, Long.class.getName(), 
+				"The number of off-heap binding values deserialized on lookup", 
+				true, false, false
+		));
+		dispatchTable = Collections.unmodifiableMap(dispatch);
+		CTOR_INFOS = ctorInfos.values().toArray(new MBeanConstructorInfo[ctorInfos.size()]);
+		OP_INFOS = operationInfos.values().toArray(new MBeanOperationInfo[operationInfos.size()]);
+		NOTIF_INFOS = notifInfos.toArray(new MBeanNotificationInfo[notifInfos.size()]);
+	}
+	
+	/**
+	 * Registers an MBean operation backed by the passed method
+	 * @param method The method implementing the operation
+	 * @param description The operation description
+	 * @param dispatch The dispatch table being built
+	 */
+	private static void registerOperation(Method method, String description, Map<OperationKey, Operation> dispatch) {
+		int hash = hashMethod(method);
+		OperationKey key = new OperationKey(method);
+		keyedMethods.put(key, method);
+		dispatch.put(key, new Operation(dispatchHandle(method), method.getParameterTypes()));
+		Vector<MBeanParameterInfo> params = new Vector<MBeanParameterInfo>(method.getParameterTypes().length);
+		int cnt = 0;
+		for(Class<?> clazz: method.getParameterTypes()) {
+			params.add(new MBeanParameterInfo(
+					"p" + cnt, clazz.getName(), 
+					"MBeanParameter"
+			));
+			cnt++;
+		}
+		operationInfos.put(key, new MBeanOperationInfo(
+				method.getName(), description,					
+				params.toArray(new MBeanParameterInfo[params.size()]),
+				method.getReturnType().getName(),
+				MBeanOperationInfo.UNKNOWN,
+				new ImmutableDescriptor(new String[]{
+						"method.signature", "method.hash"
+				}, new Object[]{
+						method.toGenericString(), hash
+				})
+				
+		));
+	}
+	
+	/**
+	 * Creates the dispatch handle for an operation method, adapted to <code>(Object target, Object[] params)Object</code>
+	 * @param method The operation method
+	 * @return the dispatch handle
+	 */
+	private static MethodHandle dispatchHandle(Method method) {
+		try {
+			return MethodHandles.publicLookup().unreflect(method)
+				.asSpreader(Object[].class, method.getParameterTypes().length)
+				.asType(DISPATCH_TYPE);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException("Failed to create dispatch handle for [" + method.toGenericString() + "]", e);
+		}
+	}
+	
+	/**
+	 * Returns the dispatchable operation for the passed operation name and signature.
+	 * @param opName The operation name
+	 * @param signature The parameter type names of the operation
+	 * @return the operation or null if no operation matches
+	 */
+	public static Operation getOperation(String opName, String[] signature) {
+		return dispatchTable.get(new OperationKey(opName, signature));
+	}
+	
+	/**
+	 * Returns the notification infos for all contexts
+	 * @return a copy of the context notification infos
+	 */
+	public static MBeanNotificationInfo[] getNotificationInfos() {
+		return NOTIF_INFOS.clone();
+	}
+	
+	/**
+	 * Determines if the passed name is a reserved context level attribute name
+	 * @param name The name to test
+	 * @return true if the name is reserved, false otherwise
+	 */
+	public static boolean isContextAttribute(String name) {
+		return contextAttrInfos.containsKey(name);
 	}
 	
 	/**
@@ -140,6 +259,185 @@ public class StandardMBeanFeatures {
 		);
 	}
 	
+	/**
+	 * Builds a new immutable MBeanInfo snapshot for a JMXNamingBindingContext instance.
+	 * The context level attributes are appended to the binding attributes and the static constructor, 
+	 * operation and notification arrays are shared rather than copied. 
+	 * @param attrInfos An optionally empty or null collection of the context's binding attributes which must not change while the snapshot is built
+	 * @param name The ObjectName of the context
+	 * @param descriptor An optional descriptor to merge into the snapshot's descriptor
+	 * @param version The binding version the snapshot represents
+	 * @return an MBeanInfo
+	 */
+	public static MBeanInfo buildMBeanInfo(Collection<MBeanAttributeInfo> attrInfos, ObjectName name, Descriptor descriptor, long version) {
+		int bindingCount = attrInfos==null ? 0 : attrInfos.size();
+		MBeanAttributeInfo[] infos = new MBeanAttributeInfo[bindingCount + contextAttrInfos.size()];
+		int index = 0;
+		if(bindingCount>0) {
+			for(MBeanAttributeInfo info: attrInfos) {
+				infos[index++] = info;
+			}
+		}
+		for(MBeanAttributeInfo info: contextAttrInfos.values()) {
+			infos[index++] = info;
+		}
+		Descriptor versioned = new ImmutableDescriptor(new String[]{
+				"immutableInfo", MBEANINFO_VERSION_FIELD
+		}, new Object[]{
+				"false", version
+		});
+		return new MBeanInfo(JMXNamingBindingContext.class.getName(), "A jmxNaming JNDI Context [" + name + "]",
+				infos, CTOR_INFOS, OP_INFOS, NOTIF_INFOS,
+				descriptor != null ? ImmutableDescriptor.union(descriptor, versioned) : versioned
+		);
+	}
+	
+	/**
+	 * <p>Title: Operation</p>
+	 * <p>Description: A dispatchable MBean operation. Parameters are checked against the operation's parameter types 
+	 * before the dispatch handle is invoked, so any exception raised by {@link #invoke(Object, Object[])} was raised by the operation itself.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.StandardMBeanFeatures.Operation</code></p>
+	 */
+	public static final class Operation {
+		/** The dispatch handle, of type <code>(Object target, Object[] params)Object</code> */
+		private final MethodHandle handle;
+		/** The parameter types, with primitives replaced by their wrappers */
+		private final Class<?>[] parameterTypes;
+		/** Flags the primitive parameters, which cannot be passed a null */
+		private final boolean[] primitive;
+		
+		/**
+		 * Creates a new Operation
+		 * @param handle The dispatch handle, of type <code>(Object target, Object[] params)Object</code>
+		 * @param parameterTypes The parameter types of the operation method
+		 */
+		Operation(MethodHandle handle, Class<?>[] parameterTypes) {
+			this.handle = handle;
+			this.parameterTypes = new Class<?>[parameterTypes.length];
+			this.primitive = new boolean[parameterTypes.length];
+			for(int i = 0; i < parameterTypes.length; i++) {
+				primitive[i] = parameterTypes[i].isPrimitive();
+				this.parameterTypes[i] = primitive[i] ? MethodType.methodType(parameterTypes[i]).wrap().returnType() : parameterTypes[i];
+			}
+		}
+		
+		/**
+		 * Checks that the passed parameters can be passed to the operation
+		 * @param params The parameters. Null is equivalent to no parameters.
+		 * @return null if the parameters are acceptable, otherwise a description of the first mismatch
+		 */
+		public String checkParameters(Object[] params) {
+			int count = params==null ? 0 : params.length;
+			if(count!=parameterTypes.length) {
+				return "Expected " + parameterTypes.length + " parameters but got " + count;
+			}
+			for(int i = 0; i < count; i++) {
+				Object param = params[i];
+				if(param==null ? primitive[i] : !parameterTypes[i].isInstance(param)) {
+					return "Parameter " + i + " of type [" + (param==null ? "null" : param.getClass().getName()) + "] is not assignable to [" + parameterTypes[i].getName() + "]";
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Invokes the operation. The parameters should have been accepted by {@link #checkParameters(Object[])}.
+		 * @param target The context to invoke the operation on
+		 * @param params The parameters
+		 * @return the operation's return value
+		 * @throws Throwable thrown by the operation
+		 */
+		public Object invoke(Object target, Object[] params) throws Throwable {
+			return (Object)handle.invokeExact(target, params);
+		}
+	}
+	
+	/**
+	 * <p>Title: OperationKey</p>
+	 * <p>Description: A collision free dispatch key made of an operation name and its parameter type names</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.StandardMBeanFeatures.OperationKey</code></p>
+	 */
+	public static final class OperationKey {
+		/** An empty signature */
+		private static final String[] EMPTY_SIGNATURE = {};
+		/** The operation name */
+		private final String opName;
+		/** The parameter type names */
+		private final String[] signature;
+		/** The precomputed hash code */
+		private final int hashCode;
+		
+		/**
+		 * Creates a new OperationKey
+		 * @param opName The operation name
+		 * @param signature The parameter type names. Null is equivalent to an empty signature.
+		 */
+		public OperationKey(String opName, String[] signature) {
+			this.opName = opName;
+			this.signature = signature==null ? EMPTY_SIGNATURE : signature;
+			this.hashCode = 31 * (opName==null ? 0 : opName.hashCode()) + Arrays.hashCode(this.signature);
+		}
+		
+		/**
+		 * Creates a new OperationKey for a method
+		 * @param method The method
+		 */
+		public OperationKey(Method method) {
+			this(method.getName(), typeNames(method.getParameterTypes()));
+		}
+		
+		/**
+		 * Returns the names of the passed types
+		 * @param types The types
+		 * @return the type names
+		 */
+		private static String[] typeNames(Class<?>[] types) {
+			String[] names = new String[types.length];
+			for(int i = 0; i < types.length; i++) {
+				names[i] = types[i].getName();
+			}
+			return names;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof OperationKey)) return false;
+			OperationKey other = (OperationKey)obj;
+			return hashCode==other.hashCode 
+					&& (opName==null ? other.opName==null : opName.equals(other.opName)) 
+					&& Arrays.equals(signature, other.signature);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return opName + Arrays.toString(signature);
+		}
+	}
+	
 	/**
 	 * Generates a deterministic hash code for an MBeanOperationInfo's operation name and signature.
 	 * Intended to provide a lookup of the target MBeanOperationInfo from a DynamicMBean's invoke method.
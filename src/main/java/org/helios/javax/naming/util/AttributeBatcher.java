@@ -0,0 +1,250 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.RuntimeErrorException;
+
+/**
+ * <p>Title: AttributeBatcher</p>
+ * <p>Description: Merges single attribute reads of the same MBean made within a short window into one <code>getAttributes</code> call.
+ * The first reader of an MBean opens a batch and waits for the window to pass or the batch to fill, then reads every attribute 
+ * requested in the meantime and hands each waiting reader its own value.</p>
+ * <p>An attribute missing from the returned list is read again on its own, so that its reader gets the exception the MBean 
+ * actually raised for it, typically an {@link javax.management.AttributeNotFoundException}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.AttributeBatcher</code></p>
+ */
+public class AttributeBatcher {
+	/** The open batches keyed by the ObjectName they read */
+	protected final ConcurrentMap<ObjectName, Batch> batches = new ConcurrentHashMap<ObjectName, Batch>();
+	/** The window in ms a batch stays open */
+	protected final long window;
+	/** The number of distinct attributes that closes a batch early */
+	protected final int maxBatchSize;
+	/** The number of getAttributes calls issued */
+	protected final AtomicLong batchCount = new AtomicLong(0L);
+	/** The number of attribute reads served by batches */
+	protected final AtomicLong batchedReads = new AtomicLong(0L);
+	
+	/**
+	 * Creates a new AttributeBatcher
+	 * @param window The window in ms a batch stays open
+	 * @param maxBatchSize The number of distinct attributes that closes a batch early
+	 */
+	public AttributeBatcher(long window, int maxBatchSize) {
+		if(maxBatchSize < 1) throw new IllegalArgumentException("Invalid batch size [" + maxBatchSize + "]");
+		this.window = Math.max(0L, window);
+		this.maxBatchSize = maxBatchSize;
+	}
+	
+	/**
+	 * Reads an attribute as part of a batch
+	 * @param connection The connection to read with
+	 * @param name The MBean's ObjectName
+	 * @param attribute The attribute name
+	 * @return the attribute value
+	 * @throws Exception thrown by the connection for the batch or for this attribute
+	 */
+	public Object getAttribute(MBeanServerConnection connection, ObjectName name, String attribute) throws Exception {
+		batchedReads.incrementAndGet();
+		for(;;) {
+			Batch batch = batches.get(name);
+			if(batch==null) {
+				batch = new Batch(name);
+				batch.add(attribute);
+				if(batches.putIfAbsent(name, batch)==null) {
+					if(batch.isFull()) batches.remove(name, batch);
+					batch.run(connection);
+					return batch.get(connection, attribute);
+				}
+			} else if(batch.add(attribute)) {
+				if(batch.isFull()) batches.remove(name, batch);
+				return batch.get(connection, attribute);
+			} else {
+				batches.remove(name, batch);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the window in ms a batch stays open
+	 * @return the batch window
+	 */
+	public long getWindow() {
+		return window;
+	}
+	
+	/**
+	 * Returns the number of distinct attributes that closes a batch early
+	 * @return the maximum batch size
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+	
+	/**
+	 * Returns the number of getAttributes calls issued
+	 * @return the number of batches
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+	
+	/**
+	 * Returns the number of attribute reads served by batches
+	 * @return the number of batched reads
+	 */
+	public long getBatchedReads() {
+		return batchedReads.get();
+	}
+	
+	/**
+	 * <p>Title: Batch</p>
+	 * <p>Description: The attributes of one MBean requested within one window</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.util.AttributeBatcher.Batch</code></p>
+	 */
+	protected class Batch {
+		/** The ObjectName of the MBean read */
+		protected final ObjectName name;
+		/** The requested attribute names. Guarded by this. */
+		protected final Set<String> attributes = new LinkedHashSet<String>();
+		/** Indicates if the batch accepts no more attributes. Guarded by this. */
+		protected boolean closed = false;
+		/** Released when the batch fills up */
+		protected final CountDownLatch full = new CountDownLatch(1);
+		/** Released when the batch has been read */
+		protected final CountDownLatch done = new CountDownLatch(1);
+		/** The attribute values read */
+		protected volatile Map<String, Object> values = null;
+		/** The exception thrown by the batch read, with an Error wrapped in a {@link RuntimeErrorException} */
+		protected volatile Exception failure = null;
+		
+		/**
+		 * Creates a new Batch
+		 * @param name The ObjectName of the MBean read
+		 */
+		protected Batch(ObjectName name) {
+			this.name = name;
+		}
+		
+		/**
+		 * Adds an attribute to the batch
+		 * @param attribute The attribute name
+		 * @return false if the batch was already closed
+		 */
+		protected synchronized boolean add(String attribute) {
+			if(closed) return false;
+			attributes.add(attribute);
+			if(attributes.size() >= maxBatchSize) {
+				closed = true;
+				full.countDown();
+			}
+			return true;
+		}
+		
+		/**
+		 * Indicates if the batch was closed by filling up
+		 * @return true if the batch is full
+		 */
+		protected boolean isFull() {
+			return full.getCount()==0L;
+		}
+		
+		/**
+		 * Closes the batch
+		 * @return the requested attribute names
+		 */
+		protected synchronized String[] close() {
+			closed = true;
+			return attributes.toArray(new String[attributes.size()]);
+		}
+		
+		/**
+		 * Waits for the window to pass or the batch to fill, then reads the batch. Called by the reader that opened the batch.
+		 * @param connection The connection to read with
+		 */
+		protected void run(MBeanServerConnection connection) {
+			try {
+				if(window > 0L) full.await(window, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			String[] names = close();
+			batches.remove(name, this);
+			try {
+				batchCount.incrementAndGet();
+				AttributeList list = connection.getAttributes(name, names);
+				Map<String, Object> read = new HashMap<String, Object>(list.size());
+				for(Object attr: list) {
+					read.put(((Attribute)attr).getName(), ((Attribute)attr).getValue());
+				}
+				values = read;
+			} catch (Exception e) {
+				failure = e;
+			} catch (Error e) {
+				// every waiting reader must see a failure, or it would find neither values nor a failure
+				failure = new RuntimeErrorException(e, "Batch read of [" + name + "] failed");
+			} catch (Throwable t) {
+				failure = new Exception("Batch read of [" + name + "] failed", t);
+			} finally {
+				done.countDown();
+			}
+		}
+		
+		/**
+		 * Waits for the batch to be read and returns one attribute's value
+		 * @param connection The connection to read a missing attribute with
+		 * @param attribute The attribute name
+		 * @return the attribute value
+		 * @throws Exception thrown by the batch read, or by the read of a missing attribute
+		 */
+		protected Object get(MBeanServerConnection connection, String attribute) throws Exception {
+			done.await();
+			if(failure!=null) throw failure;
+			Map<String, Object> read = values;
+			if(read.containsKey(attribute)) return read.get(attribute);
+			return connection.getAttribute(name, attribute);
+		}
+	}
+}
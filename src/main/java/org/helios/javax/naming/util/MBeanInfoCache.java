@@ -0,0 +1,256 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Descriptor;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+import org.helios.javax.naming.StandardMBeanFeatures;
+
+/**
+ * <p>Title: MBeanInfoCache</p>
+ * <p>Description: A bounded, least recently used cache of MBeanInfos keyed by ObjectName, used by a {@link NamingMBeanServerConnection}.
+ * Entries are invalidated when their MBean is registered or unregistered, and optionally expire after a time to live.</p>
+ * <p>An MBeanInfo whose descriptor declares it mutable (<code>immutableInfo=false</code>) and carries an <code>mbeanInfoVersion</code>
+ * field, as a JMXNaming context's does, is only served while the MBean still reports the same version, which the connection checks 
+ * with a small attribute read instead of refetching the whole MBeanInfo.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.MBeanInfoCache</code></p>
+ */
+public class MBeanInfoCache implements RegistrationTracker.Subscriber {
+	/** The cached entries in access order */
+	protected final LinkedHashMap<ObjectName, Entry> entries;
+	/** The maximum number of entries */
+	protected final int maxSize;
+	/** The time to live of an entry in ms, or zero for no expiry */
+	protected final long ttl;
+	/** The invalidation epoch, incremented before each invalidation */
+	protected final AtomicLong epoch = new AtomicLong(0L);
+	/** The number of cache hits */
+	protected final AtomicLong hits = new AtomicLong(0L);
+	/** The number of cache misses */
+	protected final AtomicLong misses = new AtomicLong(0L);
+	
+	/**
+	 * Creates a new MBeanInfoCache
+	 * @param maxSize The maximum number of entries
+	 * @param ttl The time to live of an entry in ms, or zero for no expiry
+	 */
+	public MBeanInfoCache(int maxSize, long ttl) {
+		if(maxSize < 1) throw new IllegalArgumentException("Invalid cache size [" + maxSize + "]");
+		this.maxSize = maxSize;
+		this.ttl = Math.max(0L, ttl);
+		entries = new LinkedHashMap<ObjectName, Entry>(Math.min(maxSize, 1024), 0.75f, true) {
+			private static final long serialVersionUID = -2290874526381453734L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ObjectName, Entry> eldest) {
+				return size() > MBeanInfoCache.this.maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the cached entry for an MBean, counting a miss if there is none or it has expired
+	 * @param name The MBean's ObjectName
+	 * @return the entry or null
+	 */
+	public Entry get(ObjectName name) {
+		Entry entry;
+		synchronized(entries) {
+			entry = entries.get(name);
+			if(entry!=null && ttl > 0L && System.currentTimeMillis() - entry.timestamp > ttl) {
+				entries.remove(name);
+				entry = null;
+			}
+		}
+		if(entry==null) misses.incrementAndGet();
+		return entry;
+	}
+	
+	/**
+	 * Counts a hit on an entry returned by {@link #get(ObjectName)} that was still current
+	 */
+	public void hit() {
+		hits.incrementAndGet();
+	}
+	
+	/**
+	 * Counts a miss on an entry returned by {@link #get(ObjectName)} that was no longer current, and drops it
+	 * @param name The MBean's ObjectName
+	 * @param entry The stale entry
+	 */
+	public void stale(ObjectName name, Entry entry) {
+		misses.incrementAndGet();
+		synchronized(entries) {
+			if(entries.get(name)==entry) entries.remove(name);
+		}
+	}
+	
+	/**
+	 * Returns the current invalidation epoch. Callers read this before fetching an MBeanInfo and pass it to {@link #put(ObjectName, MBeanInfo, long)}.
+	 * @return the current epoch
+	 */
+	public long epoch() {
+		return epoch.get();
+	}
+	
+	/**
+	 * Caches an MBeanInfo, unless an invalidation started after the passed epoch was read
+	 * @param name The MBean's ObjectName
+	 * @param info The MBeanInfo
+	 * @param fetchEpoch The epoch read before the MBeanInfo was fetched
+	 */
+	public void put(ObjectName name, MBeanInfo info, long fetchEpoch) {
+		Entry entry = new Entry(info);
+		synchronized(entries) {
+			if(epoch.get()==fetchEpoch) entries.put(name, entry);
+		}
+	}
+	
+	/**
+	 * Drops the cached MBeanInfo of an MBean
+	 * @param name The MBean's ObjectName
+	 */
+	public void invalidate(ObjectName name) {
+		epoch.incrementAndGet();
+		synchronized(entries) {
+			entries.remove(name);
+		}
+	}
+	
+	/**
+	 * Drops every cached MBeanInfo
+	 */
+	public void clear() {
+		epoch.incrementAndGet();
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.util.RegistrationTracker.Subscriber#registered(javax.management.ObjectName)
+	 */
+	@Override
+	public void registered(ObjectName name) {
+		invalidate(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.util.RegistrationTracker.Subscriber#unregistered(javax.management.ObjectName)
+	 */
+	@Override
+	public void unregistered(ObjectName name) {
+		invalidate(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.util.RegistrationTracker.Subscriber#reset()
+	 */
+	@Override
+	public void reset() {
+		clear();
+	}
+	
+	/**
+	 * Returns the number of cached MBeanInfos
+	 * @return the number of cached MBeanInfos
+	 */
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+	
+	/**
+	 * Returns the number of cache hits
+	 * @return the number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of cache misses
+	 * @return the number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * <p>Title: Entry</p>
+	 * <p>Description: A cached MBeanInfo</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.util.MBeanInfoCache.Entry</code></p>
+	 */
+	public static final class Entry {
+		/** The cached MBeanInfo */
+		final MBeanInfo info;
+		/** The MBeanInfo version the MBean must still report, or null if the MBeanInfo is not versioned */
+		final Object version;
+		/** The time the entry was cached */
+		final long timestamp = System.currentTimeMillis();
+		
+		/**
+		 * Creates a new Entry
+		 * @param info The cached MBeanInfo
+		 */
+		Entry(MBeanInfo info) {
+			this.info = info;
+			Descriptor descriptor = info.getDescriptor();
+			this.version = descriptor!=null && "false".equals(String.valueOf(descriptor.getFieldValue("immutableInfo"))) ? 
+					descriptor.getFieldValue(StandardMBeanFeatures.MBEANINFO_VERSION_FIELD) : null;
+		}
+		
+		/**
+		 * Returns the cached MBeanInfo
+		 * @return the cached MBeanInfo
+		 */
+		public MBeanInfo getInfo() {
+			return info;
+		}
+		
+		/**
+		 * Returns the MBeanInfo version the MBean must still report
+		 * @return the version, or null if the MBeanInfo is not versioned
+		 */
+		public Object getVersion() {
+			return version;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+
+/**
+ * <p>Title: NameMirror</p>
+ * <p>Description: A local copy of the set of MBeans registered in a {@link NamingMBeanServerConnection}'s MBeanServer, 
+ * seeded by one full query and then kept current by MBeanServerDelegate registration notifications, so that 
+ * <code>queryNames</code> and <code>queryMBeans</code> calls without a query expression can be answered by matching 
+ * ObjectName patterns locally.</p>
+ * <p>The class name of an MBean registered after the seed is not carried by its notification. A <code>queryMBeans</code> call 
+ * matching any such MBean is sent to the server as one query, whose result fills in the missing class names. A mirror with a refresh interval is reseeded once it is older than the interval, 
+ * and any mirror is reseeded after a {@link #reset()}, which its connection issues when registration events may have been missed.</p> 
+ * <p>A query only answers if the mirror was current and not reseeded or invalidated for the whole of its scan. Otherwise it returns 
+ * null and the caller must ask the server.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.NameMirror</code></p>
+ */
+public class NameMirror implements RegistrationTracker.Subscriber {
+	/** The mirrored MBeans, with a null class name for MBeans whose class has not been looked up yet */
+	protected final Map<ObjectName, ObjectInstance> instances = new ConcurrentHashMap<ObjectName, ObjectInstance>();
+	/** The interval in ms after which the mirror is reseeded, or zero to never reseed */
+	protected final long refreshInterval;
+	/** The time the mirror was last seeded, or zero if it is not seeded */
+	protected volatile long seeded = 0L;
+	/** Serializes seed queries */
+	protected final Object seedLock = new Object();
+	/** The registration events received while a seed query is running, replayed over its result. Guarded by this. */
+	protected List<Object[]> pending = null;
+	/** The number of queries answered locally */
+	protected final AtomicLong localQueries = new AtomicLong(0L);
+	/** The number of seed queries */
+	protected final AtomicLong seeds = new AtomicLong(0L);
+	/** Incremented by each invalidation and each reseed, so a seed query overtaken by an invalidation is discarded and a scan 
+	 * overlapping either is not trusted. Written while holding this. */
+	protected volatile long generation = 0L;
+	
+	/**
+	 * Creates a new NameMirror
+	 * @param refreshInterval The interval in ms after which the mirror is reseeded, or zero to never reseed
+	 */
+	public NameMirror(long refreshInterval) {
+		this.refreshInterval = Math.max(0L, refreshInterval);
+	}
+	
+	/**
+	 * Indicates if the mirror is seeded and not older than its refresh interval
+	 * @return true if the mirror can answer queries
+	 */
+	public boolean isCurrent() {
+		long at = seeded;
+		return at!=0L && (refreshInterval==0L || System.currentTimeMillis() - at < refreshInterval);
+	}
+	
+	/**
+	 * Seeds the mirror from a full query of the passed connection, unless another thread seeded it while this one waited
+	 * @param connection The connection to query
+	 * @throws IOException thrown on a communication failure
+	 */
+	public void seed(MBeanServerConnection connection) throws IOException {
+		synchronized(seedLock) {
+			if(isCurrent()) return;
+			long started;
+			synchronized(this) {
+				pending = new ArrayList<Object[]>();
+				started = generation;
+			}
+			Set<ObjectInstance> all = null;
+			try {
+				all = connection.queryMBeans(null, null);
+				seeds.incrementAndGet();
+			} finally {
+				synchronized(this) {
+					// a seed overtaken by an invalidation may have missed the events that caused it, so its result is discarded
+					if(all!=null && generation==started) {
+						generation++;
+						instances.clear();
+						for(ObjectInstance instance: all) {
+							instances.put(instance.getObjectName(), instance);
+						}
+						for(Object[] event: pending) {
+							apply((ObjectName)event[0], (Boolean)event[1]);
+						}
+						seeded = System.currentTimeMillis();
+					}
+					pending = null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Marks the mirror as stale, so that the next query reseeds it
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		seeded = 0L;
+		instances.clear();
+	}
+	
+	/**
+	 * Returns the names of the mirrored MBeans matching the passed pattern
+	 * @param pattern The ObjectName pattern, or null for all names
+	 * @return a set of matching ObjectNames, or null if the mirror was not current throughout the scan
+	 */
+	public Set<ObjectName> queryNames(ObjectName pattern) {
+		long started = generation;
+		if(!isCurrent()) return null;
+		Set<ObjectName> names = new HashSet<ObjectName>();
+		for(ObjectName name: instances.keySet()) {
+			if(pattern==null || pattern.apply(name)) names.add(name);
+		}
+		if(!unchangedSince(started)) return null;
+		localQueries.incrementAndGet();
+		return names;
+	}
+	
+	/**
+	 * Determines if the mirror is current and has not been invalidated or reseeded since the passed generation
+	 * @param started The generation read before a scan
+	 * @return true if the scan can be trusted
+	 */
+	protected boolean unchangedSince(long started) {
+		return isCurrent() && generation==started;
+	}
+	
+	/**
+	 * Returns the mirrored MBeans matching the passed pattern. If any match has a class name not yet known, the pattern is 
+	 * queried once through the passed connection instead, and the class names in its result are mirrored.
+	 * @param pattern The ObjectName pattern, or null for all names
+	 * @param connection The connection to query when class names are unknown
+	 * @return a set of matching ObjectInstances, or null if the mirror was not current throughout the scan
+	 * @throws IOException thrown on a communication failure
+	 */
+	public Set<ObjectInstance> queryMBeans(ObjectName pattern, MBeanServerConnection connection) throws IOException {
+		long started = generation;
+		if(!isCurrent()) return null;
+		Set<ObjectInstance> matches = new HashSet<ObjectInstance>();
+		boolean unknown = false;
+		for(ObjectInstance instance: instances.values()) {
+			if(pattern!=null && !pattern.apply(instance.getObjectName())) continue;
+			if(instance.getClassName()==null) {
+				unknown = true;
+				break;
+			}
+			matches.add(instance);
+		}
+		if(unknown) {
+			Set<ObjectInstance> queried = connection.queryMBeans(pattern, null);
+			for(ObjectInstance known: queried) {
+				ObjectInstance mirrored = instances.get(known.getObjectName());
+				if(mirrored!=null && mirrored.getClassName()==null) instances.replace(known.getObjectName(), mirrored, known);
+			}
+			return queried;
+		}
+		if(!unchangedSince(started)) return null;
+		localQueries.incrementAndGet();
+		return matches;
+	}
+	
+	/**
+	 * Applies a registration event to the mirror
+	 * @param name The ObjectName of the MBean
+	 * @param registered true if the MBean was registered, false if it was unregistered
+	 */
+	protected void apply(ObjectName name, boolean registered) {
+		if(registered) {
+			instances.put(name, new ObjectInstance(name, null));
+		} else {
+			instances.remove(name);
+		}
+	}
+	
+	/**
+	 * Applies a registration event, or queues it for replay if a seed query is running
+	 * @param name The ObjectName of the MBean
+	 * @param registered true if the MBean was registered, false if it was unregistered
+	 */
+	protected synchronized void event(ObjectName name, boolean registered) {
+		if(pending!=null) {
+			pending.add(new Object[]{name, registered});
+		} else {
+			apply(name, registered);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.util.RegistrationTracker.Subscriber#registered(javax.management.ObjectName)
+	 */
+	@Override
+	public void registered(ObjectName name) {
+		event(name, true);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.util.RegistrationTracker.Subscriber#unregistered(javax.management.ObjectName)
+	 */
+	@Override
+	public void unregistered(ObjectName name) {
+		event(name, false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.helios.javax.naming.util.RegistrationTracker.Subscriber#reset()
+	 */
+	@Override
+	public void reset() {
+		invalidate();
+	}
+	
+	/**
+	 * Returns the number of mirrored MBeans
+	 * @return the number of mirrored MBeans
+	 */
+	public int size() {
+		return instances.size();
+	}
+	
+	/**
+	 * Returns the number of queries answered locally
+	 * @return the number of queries answered locally
+	 */
+	public long getLocalQueries() {
+		return localQueries.get();
+	}
+	
+	/**
+	 * Returns the number of seed queries sent to the server
+	 * @return the number of seed queries
+	 */
+	public long getSeeds() {
+		return seeds.get();
+	}
+}
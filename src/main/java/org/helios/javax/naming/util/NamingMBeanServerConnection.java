@@ -24,21 +24,42 @@
  */
 package org.helios.javax.naming.util;
 
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanInfo;
 import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
 import javax.management.NotificationFilter;
 import javax.management.NotificationListener;
 import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import javax.management.QueryExp;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.remote.JMXConnector;
+
+import org.helios.javax.naming.BinaryFormat;
+import org.helios.javax.naming.JMXNamingBindingContext;
 
 
 /**
@@ -52,6 +73,20 @@ import javax.management.QueryExp;
 public class NamingMBeanServerConnection implements MBeanServerConnection {
 	/** The inner MBeanServer delegate */
 	protected final MBeanServerConnection innerConnection;	
+	/** The MBeanServerDelegate listener shared by the client side caches */
+	protected final RegistrationTracker registrationTracker;
+	/** Coalesces identical concurrent reads */
+	protected final SingleFlight singleFlight = new SingleFlight();
+	/** Incremented as each write through this connection completes, so a read started after a write never joins a read started before it */
+	protected final AtomicLong writeEpoch = new AtomicLong(0L);
+	/** The attribute read batcher, or null if attribute reads are not batched */
+	protected volatile AttributeBatcher attributeBatcher = null;
+	/** The executor the asynchronous methods run on, or null for the default */
+	protected volatile Executor asyncExecutor = null;
+	/** The MBeanInfo cache, or null if MBeanInfos are not cached */
+	protected volatile MBeanInfoCache mbeanInfoCache = null;
+	/** The mirror of registered MBeans, or null if queries are not mirrored */
+	protected volatile NameMirror nameMirror = null;
 	/** A map of RuntimeMBeanServerConnections keyed by their delegate MBeanServerConnections */
 	protected static final Map<MBeanServerConnection, NamingMBeanServerConnection> instances = new ConcurrentHashMap<MBeanServerConnection, NamingMBeanServerConnection>();
 	
@@ -81,6 +116,401 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
 	 */
 	protected NamingMBeanServerConnection(MBeanServerConnection innerConnection) {
 		this.innerConnection = innerConnection;
+		registrationTracker = new RegistrationTracker(innerConnection);
+	}
+	
+	/**
+	 * Watches the connector the inner connection was obtained from. When it reports lost notifications, fails, closes or reconnects, 
+	 * the MBeanInfo cache and the name mirror are reset, since registration events they depend on may have been missed.
+	 * @param connector The connector
+	 */
+	public void watch(JMXConnector connector) {
+		if(connector==null) throw new IllegalArgumentException("The passed connector was null", new Throwable());
+		registrationTracker.watch(connector);
+	}
+	
+	/**
+	 * Discards the MBeanInfo cache and the name mirror contents, for callers that know registration events have been missed
+	 */
+	public void resetClientCaches() {
+		registrationTracker.reset();
+	}
+	
+	/**
+	 * Enables caching of MBeanInfos on this connection, replacing any existing cache.
+	 * Cached MBeanInfos are dropped when their MBean is registered or unregistered.
+	 * @param maxSize The maximum number of cached MBeanInfos
+	 * @param ttl The time to live of a cached MBeanInfo in ms, or zero for no expiry
+	 * @return the new cache
+	 */
+	public synchronized MBeanInfoCache enableMBeanInfoCache(int maxSize, long ttl) {
+		MBeanInfoCache cache = new MBeanInfoCache(maxSize, ttl);
+		registrationTracker.subscribe(cache);
+		disableMBeanInfoCache();
+		mbeanInfoCache = cache;
+		return cache;
+	}
+	
+	/**
+	 * Disables caching of MBeanInfos on this connection
+	 */
+	public synchronized void disableMBeanInfoCache() {
+		MBeanInfoCache cache = mbeanInfoCache;
+		if(cache!=null) {
+			mbeanInfoCache = null;
+			registrationTracker.unsubscribe(cache);
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * Returns the MBeanInfo cache
+	 * @return the MBeanInfo cache, or null if MBeanInfos are not cached
+	 */
+	public MBeanInfoCache getMBeanInfoCache() {
+		return mbeanInfoCache;
+	}
+	
+	/**
+	 * Enables a local mirror of the registered MBeans, replacing any existing mirror. <code>queryNames</code> and <code>queryMBeans</code>
+	 * calls without a query expression are then answered from the mirror, which is seeded by the first such call.
+	 * Relying on registration notifications alone is only allowed when none can be lost unnoticed: the inner connection is an 
+	 * in-process MBeanServer, or the connector it came from is {@link #watch(JMXConnector) watched}.
+	 * @param refreshInterval The interval in ms after which the mirror is reseeded, or zero to rely on registration notifications alone
+	 * @return the new mirror
+	 * @throws IllegalArgumentException thrown if the interval is zero and lost notifications could go unnoticed
+	 */
+	public synchronized NameMirror enableNameMirror(long refreshInterval) {
+		if(refreshInterval<=0L && !(innerConnection instanceof MBeanServer) && !registrationTracker.isWatched()) {
+			throw new IllegalArgumentException("A mirror of a remote connection needs a refresh interval unless its connector is watched");
+		}
+		NameMirror mirror = new NameMirror(refreshInterval);
+		registrationTracker.subscribe(mirror);
+		disableNameMirror();
+		nameMirror = mirror;
+		return mirror;
+	}
+	
+	/**
+	 * Disables the local mirror of the registered MBeans
+	 */
+	public synchronized void disableNameMirror() {
+		NameMirror mirror = nameMirror;
+		if(mirror!=null) {
+			nameMirror = null;
+			registrationTracker.unsubscribe(mirror);
+			mirror.invalidate();
+		}
+	}
+	
+	/**
+	 * Returns the local mirror of the registered MBeans
+	 * @return the mirror, or null if queries are not mirrored
+	 */
+	public NameMirror getNameMirror() {
+		return nameMirror;
+	}
+	
+	/**
+	 * Enables batching of single attribute reads, replacing any existing batcher. Reads of different attributes of the same MBean made 
+	 * within the window are issued as one <code>getAttributes</code> call.
+	 * @param window The window in ms a batch stays open for more reads
+	 * @param maxBatchSize The number of distinct attributes that issues a batch before its window has passed
+	 * @return the new batcher
+	 */
+	public AttributeBatcher enableAttributeBatching(long window, int maxBatchSize) {
+		AttributeBatcher batcher = new AttributeBatcher(window, maxBatchSize);
+		attributeBatcher = batcher;
+		return batcher;
+	}
+	
+	/**
+	 * Disables batching of single attribute reads
+	 */
+	public void disableAttributeBatching() {
+		attributeBatcher = null;
+	}
+	
+	/**
+	 * Returns the attribute read batcher
+	 * @return the batcher, or null if attribute reads are not batched
+	 */
+	public AttributeBatcher getAttributeBatcher() {
+		return attributeBatcher;
+	}
+	
+	/**
+	 * Returns the number of remote reads saved by sharing an identical read already in flight
+	 * @return the number of saved calls
+	 */
+	public long getSavedCalls() {
+		return singleFlight.getSavedCalls();
+	}
+	
+	/**
+	 * Sets the executor the asynchronous methods run on
+	 * @param executor The executor, or null for the default, which runs each call on its own virtual thread where the runtime supports them
+	 */
+	public void setAsyncExecutor(Executor executor) {
+		asyncExecutor = executor;
+	}
+	
+	/**
+	 * Returns the executor the asynchronous methods run on
+	 * @return the executor
+	 */
+	public Executor getAsyncExecutor() {
+		Executor executor = asyncExecutor;
+		return executor!=null ? executor : DefaultAsyncExecutor.EXECUTOR;
+	}
+	
+	/**
+	 * Asynchronously reads an attribute. See {@link #getAttribute(ObjectName, String)}.
+	 * @param name The MBean's ObjectName
+	 * @param attribute The attribute name
+	 * @return a future completed with the attribute value, or exceptionally with a {@link NamingMBeanServerException}
+	 */
+	public CompletableFuture<Object> getAttributeAsync(final ObjectName name, final String attribute) {
+		return async(new Callable<Object>() {
+			public Object call() {
+				return getAttribute(name, attribute);
+			}
+		});
+	}
+	
+	/**
+	 * Asynchronously reads attributes. See {@link #getAttributes(ObjectName, String[])}.
+	 * @param name The MBean's ObjectName
+	 * @param attributes The attribute names
+	 * @return a future completed with the attributes read, or exceptionally with a {@link NamingMBeanServerException}
+	 */
+	public CompletableFuture<AttributeList> getAttributesAsync(final ObjectName name, final String[] attributes) {
+		return async(new Callable<AttributeList>() {
+			public AttributeList call() {
+				return getAttributes(name, attributes);
+			}
+		});
+	}
+	
+	/**
+	 * Asynchronously invokes an operation. See {@link #invoke(ObjectName, String, Object[], String[])}.
+	 * @param name The MBean's ObjectName
+	 * @param operationName The operation name
+	 * @param params The operation arguments
+	 * @param signature The operation signature
+	 * @return a future completed with the operation's return value, or exceptionally with a {@link NamingMBeanServerException}
+	 */
+	public CompletableFuture<Object> invokeAsync(final ObjectName name, final String operationName, final Object[] params, final String[] signature) {
+		return async(new Callable<Object>() {
+			public Object call() {
+				return invoke(name, operationName, params, signature);
+			}
+		});
+	}
+	
+	/**
+	 * Asynchronously queries MBean names. See {@link #queryNames(ObjectName, QueryExp)}.
+	 * @param name The ObjectName pattern, or null for all names
+	 * @param query The query expression, or null for none
+	 * @return a future completed with the matching names, or exceptionally with a {@link NamingMBeanServerException}
+	 */
+	public CompletableFuture<Set<ObjectName>> queryNamesAsync(final ObjectName name, final QueryExp query) {
+		return async(new Callable<Set<ObjectName>>() {
+			public Set<ObjectName> call() {
+				return queryNames(name, query);
+			}
+		});
+	}
+	
+	/**
+	 * Asynchronously reads an MBeanInfo. See {@link #getMBeanInfo(ObjectName)}.
+	 * @param name The MBean's ObjectName
+	 * @return a future completed with the MBeanInfo, or exceptionally with a {@link NamingMBeanServerException}
+	 */
+	public CompletableFuture<MBeanInfo> getMBeanInfoAsync(final ObjectName name) {
+		return async(new Callable<MBeanInfo>() {
+			public MBeanInfo call() {
+				return getMBeanInfo(name);
+			}
+		});
+	}
+	
+	/**
+	 * Runs a call on the async executor
+	 * @param call The call, which throws only {@link NamingMBeanServerException}s
+	 * @return a future completed with the call's result, or exceptionally with a {@link NamingMBeanServerException}
+	 */
+	protected <T> CompletableFuture<T> async(final Callable<T> call) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			getAsyncExecutor().execute(new Runnable() {
+				public void run() {
+					try {
+						future.complete(call.call());
+					} catch (Throwable t) {
+						future.completeExceptionally(t instanceof NamingMBeanServerException ? t : new NamingMBeanServerException("Asynchronous call failed", t));
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new NamingMBeanServerException("Asynchronous call rejected", e));
+		}
+		return future;
+	}
+	
+	/**
+	 * <p>Title: DefaultAsyncExecutor</p>
+	 * <p>Description: Lazily creates the default async executor: a virtual thread per task executor where the runtime supports it,
+	 * otherwise a cached pool of daemon threads.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.util.NamingMBeanServerConnection.DefaultAsyncExecutor</code></p>
+	 */
+	private static class DefaultAsyncExecutor {
+		/** The default async executor */
+		static final Executor EXECUTOR = create();
+		
+		/**
+		 * Creates the default async executor
+		 * @return the default async executor
+		 */
+		private static Executor create() {
+			try {
+				return (Executor)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				return Executors.newCachedThreadPool(new ThreadFactory() {
+					final AtomicInteger serial = new AtomicInteger(0);
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "JMXNamingAsync#" + serial.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+		}
+	}
+	
+	/**
+	 * Reads an attribute from the inner connection, as part of a batch if batching is enabled. An identical read in flight that was 
+	 * started since the last write through this connection is shared, and a caller joining it receives its own copy of the value.
+	 * @param name The MBean's ObjectName
+	 * @param attribute The attribute name
+	 * @return the attribute value
+	 * @throws Exception thrown by the inner connection
+	 */
+	protected Object remoteGetAttribute(final ObjectName name, final String attribute) throws Exception {
+		return singleFlight.call(Arrays.asList("getAttribute", name, attribute, writeEpoch.get()), new Callable<Object>() {
+			public Object call() throws Exception {
+				AttributeBatcher batcher = attributeBatcher;
+				if(batcher!=null) return batcher.getAttribute(innerConnection, name, attribute);
+				return innerConnection.getAttribute(name, attribute);
+			}
+		}, VALUE_COPIER);
+	}
+	
+	/**
+	 * Reads attributes from the inner connection, sharing an identical read in flight that was started since the last write through this connection
+	 * @param name The MBean's ObjectName
+	 * @param attributes The attribute names
+	 * @return a list of the attributes read, private to the caller
+	 * @throws Exception thrown by the inner connection
+	 */
+	protected AttributeList remoteGetAttributes(final ObjectName name, final String[] attributes) throws Exception {
+		return singleFlight.call(Arrays.asList("getAttributes", name, attributes==null ? null : Arrays.asList(attributes), writeEpoch.get()), new Callable<AttributeList>() {
+			public AttributeList call() throws Exception {
+				return innerConnection.getAttributes(name, attributes);
+			}
+		}, LIST_COPIER);
+	}
+	
+	/**
+	 * Reads an MBeanInfo from the inner connection, sharing an identical read in flight that was started in the same MBeanInfo cache epoch and write epoch,
+	 * so that a read started before an invalidation is never cached after it
+	 * @param name The MBean's ObjectName
+	 * @param epoch The MBeanInfo cache epoch read before the call, or -1 if MBeanInfos are not cached
+	 * @return the MBeanInfo
+	 * @throws Exception thrown by the inner connection
+	 */
+	protected MBeanInfo remoteGetMBeanInfo(final ObjectName name, long epoch) throws Exception {
+		return singleFlight.call(Arrays.asList("getMBeanInfo", name, epoch, writeEpoch.get()), new Callable<MBeanInfo>() {
+			public MBeanInfo call() throws Exception {
+				return innerConnection.getMBeanInfo(name);
+			}
+		});
+	}
+	
+	/**
+	 * Checks the registration of an MBean with the inner connection, sharing an identical check in flight that was started since the last write
+	 * @param name The MBean's ObjectName
+	 * @return true if the MBean is registered
+	 * @throws Exception thrown by the inner connection
+	 */
+	protected boolean remoteIsRegistered(final ObjectName name) throws Exception {
+		return singleFlight.call(Arrays.asList("isRegistered", name, writeEpoch.get()), new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				return innerConnection.isRegistered(name);
+			}
+		});
+	}
+	
+	/**
+	 * Starts a new write epoch once a write through this connection has completed, successfully or not
+	 */
+	protected void writeCompleted() {
+		writeEpoch.incrementAndGet();
+	}
+	
+	/** The attribute value classes that are immutable and shared without copying */
+	protected static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+			String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+			BigInteger.class, BigDecimal.class, ObjectName.class, CompositeDataSupport.class
+	));
+	
+	/** Copies a shared attribute value for a caller that joined a read in flight */
+	protected static final SingleFlight.Copier<Object> VALUE_COPIER = new SingleFlight.Copier<Object>() {
+		public Object copy(Object result) {
+			return copyValue(result);
+		}
+	};
+	
+	/** Copies a shared attribute list, and the values in it, for a caller that joined a read in flight */
+	protected static final SingleFlight.Copier<AttributeList> LIST_COPIER = new SingleFlight.Copier<AttributeList>() {
+		public AttributeList copy(AttributeList result) {
+			AttributeList copy = new AttributeList(result.size());
+			for(Attribute attribute: result.asList()) {
+				Object value = attribute.getValue();
+				Object copied = copyValue(value);
+				if(copied==null && value!=null) return null;
+				copy.add(new Attribute(attribute.getName(), copied));
+			}
+			return copy;
+		}
+	};
+	
+	/**
+	 * Copies an attribute value so that a caller sharing a read cannot see another caller's changes to it. Immutable values are returned as is,
+	 * arrays of immutable or primitive components are cloned and other serializable values are copied by serialization.
+	 * @param value The value
+	 * @return the copy, the value itself if it is immutable, or null if it cannot be copied
+	 */
+	protected static Object copyValue(Object value) {
+		if(value==null || value instanceof Enum || IMMUTABLE_TYPES.contains(value.getClass())) return value;
+		Class<?> component = value.getClass().getComponentType();
+		if(component!=null && (component.isPrimitive() || IMMUTABLE_TYPES.contains(component))) {
+			int length = Array.getLength(value);
+			Object copy = Array.newInstance(component, length);
+			System.arraycopy(value, 0, copy, 0, length);
+			return copy;
+		}
+		if(value instanceof Serializable) {
+			try {
+				return BinaryFormat.deserialize(ByteBuffer.wrap(BinaryFormat.serialize(value, 256)));
+			} catch (Exception e) {
+				return null;
+			}
+		}
+		return null;
 	}
 	
     /**
@@ -113,6 +543,8 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		return innerConnection.createMBean(className, name);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [createMBean(String className, ObjectName name)]", e);    		
+    	} finally {
+    		writeCompleted();
     	}
     }
 
@@ -148,6 +580,8 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		return innerConnection.createMBean(className, name, loaderName);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [createMBean(String className, ObjectName name, ObjectName loaderName)]", e);    		
+    	} finally {
+    		writeCompleted();
     	}
     }
 
@@ -183,7 +617,9 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		return innerConnection.createMBean(className, name, params, signature);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [createMBean(String className, ObjectName name, Object params[], String signature[])]", e);    		
-    	}    	
+    	} finally {
+    		writeCompleted();
+    	}
     }
 
     /**
@@ -217,7 +653,9 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		return innerConnection.createMBean(className, name, loaderName, params, signature);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [createMBean(String className, ObjectName name, ObjectName loaderName, Object params[], String signature[])]", e);    		
-    	}    	    	
+    	} finally {
+    		writeCompleted();
+    	}
     }
 
     /**
@@ -234,7 +672,9 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		innerConnection.unregisterMBean(name);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [unregisterMBean(ObjectName name)]", e);    		
-    	}    	    	
+    	} finally {
+    		writeCompleted();
+    	}
     }
 
     /**
@@ -283,7 +723,14 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
      *
      */
     public Set<ObjectInstance> queryMBeans(ObjectName name, QueryExp query) {
+    	NameMirror mirror = nameMirror;
     	try {
+    		if(mirror!=null && query==null) {
+    			if(!mirror.isCurrent()) mirror.seed(innerConnection);
+    			// null if the mirror was reset or reseeded while it answered
+    			Set<ObjectInstance> instances = mirror.queryMBeans(name, innerConnection);
+    			if(instances!=null) return instances;
+    		}
     		return innerConnection.queryMBeans(name, query);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [queryMBeans(ObjectName name, QueryExp query)]", e);    		
@@ -314,7 +761,14 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
      * returned.
      */
     public Set<ObjectName> queryNames(ObjectName name, QueryExp query) {
+    	NameMirror mirror = nameMirror;
     	try {
+    		if(mirror!=null && query==null) {
+    			if(!mirror.isCurrent()) mirror.seed(innerConnection);
+    			// null if the mirror was reset or reseeded while it answered
+    			Set<ObjectName> names = mirror.queryNames(name);
+    			if(names!=null) return names;
+    		}
     		return innerConnection.queryNames(name, query);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [queryNames(ObjectName name, QueryExp query)]", e);    		
@@ -336,7 +790,7 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
      */
     public boolean isRegistered(ObjectName name) {
     	try {
-    		return innerConnection.isRegistered(name);    		
+    		return remoteIsRegistered(name);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [isRegistered(ObjectName name)]", e);    		
     	}    	    	    	
@@ -373,7 +827,7 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
      */
     public Object getAttribute(ObjectName name, String attribute) {
     	try {
-    		return innerConnection.getAttribute(name, attribute);    		
+    		return remoteGetAttribute(name, attribute);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [getAttribute(ObjectName name, String attribute)]", e);    		
     	}    	    	    	    	    	
@@ -394,7 +848,7 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
      */
     public AttributeList getAttributes(ObjectName name, String[] attributes) {
     	try {
-    		return innerConnection.getAttributes(name, attributes);    		
+    		return remoteGetAttributes(name, attributes);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [getAttributes(ObjectName name, String[] attributes)]", e);    		
     	}    	    	    	    	    	    	
@@ -416,7 +870,9 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		innerConnection.setAttribute(name, attribute);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [setAttribute(ObjectName name, Attribute attribute)]", e);    		
-    	}    	    	    	    	    	    	    	
+    	} finally {
+    		writeCompleted();
+    	}
     }
 
 
@@ -440,7 +896,9 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		return innerConnection.setAttributes(name, attributes);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [setAttributes(ObjectName name,AttributeList attributes)]", e);    		
-    	}    	    	    	    	    	    	    	
+    	} finally {
+    		writeCompleted();
+    	}
     }
 	
 
@@ -466,7 +924,9 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
     		return innerConnection.invoke(name, operationName, params, signature);    		
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [invoke(ObjectName name, String operationName,Object params[], String signature[])]", e);    		
-    	}    	    	    	    	    	    	    	    	
+    	} finally {
+    		writeCompleted();
+    	}
     }
  
 
@@ -692,8 +1152,21 @@ public class NamingMBeanServerConnection implements MBeanServerConnection {
      *
      */
     public MBeanInfo getMBeanInfo(ObjectName name) {
+    	MBeanInfoCache cache = mbeanInfoCache;
     	try {
-    		return innerConnection.getMBeanInfo(name);    		
+    		if(cache==null) return remoteGetMBeanInfo(name, -1L);
+    		MBeanInfoCache.Entry entry = cache.get(name);
+    		if(entry!=null) {
+    			if(entry.getVersion()==null || entry.getVersion().equals(remoteGetAttribute(name, JMXNamingBindingContext.ATTR_MBEANINFO_VERSION))) {
+    				cache.hit();
+    				return entry.getInfo();
+    			}
+    			cache.stale(name, entry);
+    		}
+    		long epoch = cache.epoch();
+    		MBeanInfo info = remoteGetMBeanInfo(name, epoch);
+    		cache.put(name, info, epoch);
+    		return info;
     	} catch (Exception e) {
     		throw new NamingMBeanServerException("Failed to invoke [getMBeanInfo(ObjectName name)]", e);    		
     	}    	    	    	    	    	    	    	    	    	    	    	    	
@@ -0,0 +1,178 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+
+/**
+ * <p>Title: RegistrationTracker</p>
+ * <p>Description: The single listener a {@link NamingMBeanServerConnection} registers with the {@link MBeanServerDelegate} of its inner
+ * connection, fanning MBean registration and unregistration notifications out to the client side caches that depend on them. 
+ * The listener is registered when the first subscriber is added and removed with the last one.</p>
+ * <p>Registration events can be missed, when a remote connector drops notifications or reconnects. A tracker watching the 
+ * connector then resets every subscriber, and {@link #reset()} does the same for callers that detect a loss themselves.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.RegistrationTracker</code></p>
+ */
+public class RegistrationTracker implements NotificationListener {
+	/** The connection the listener is registered with */
+	protected final MBeanServerConnection connection;
+	/** The subscribers */
+	protected final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+	/** The connectors watched for lost notifications and reconnects */
+	protected final List<JMXConnector> connectors = new CopyOnWriteArrayList<JMXConnector>();
+	
+	/**
+	 * Creates a new RegistrationTracker
+	 * @param connection The connection to listen to
+	 */
+	public RegistrationTracker(MBeanServerConnection connection) {
+		this.connection = connection;
+	}
+	
+	/**
+	 * Adds a subscriber, registering the delegate listener if it is the first one
+	 * @param subscriber The subscriber
+	 * @throws NamingMBeanServerException thrown if the delegate listener cannot be registered
+	 */
+	public synchronized void subscribe(Subscriber subscriber) {
+		if(subscribers.contains(subscriber)) return;
+		if(subscribers.isEmpty()) {
+			MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+			filter.enableAllObjectNames();
+			try {
+				connection.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+			} catch (Exception e) {
+				throw new NamingMBeanServerException("Failed to register the MBeanServerDelegate listener", e);
+			}
+		}
+		subscribers.add(subscriber);
+	}
+	
+	/**
+	 * Removes a subscriber, removing the delegate listener if it was the last one
+	 * @param subscriber The subscriber
+	 */
+	public synchronized void unsubscribe(Subscriber subscriber) {
+		if(!subscribers.remove(subscriber) || !subscribers.isEmpty()) return;
+		try {
+			connection.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+		} catch (Exception e) {
+			// the connection is gone, and the listener with it
+		}
+	}
+
+	/**
+	 * Watches the connector the tracked connection was obtained from, resetting the subscribers when it reports lost notifications, 
+	 * fails, closes or opens again
+	 * @param connector The connector
+	 */
+	public void watch(JMXConnector connector) {
+		if(connectors.contains(connector)) return;
+		connector.addConnectionNotificationListener(this, null, null);
+		connectors.add(connector);
+	}
+	
+	/**
+	 * Indicates if a connector is watched for lost notifications
+	 * @return true if a connector is watched
+	 */
+	public boolean isWatched() {
+		return !connectors.isEmpty();
+	}
+	
+	/**
+	 * Tells every subscriber that registration events may have been missed
+	 */
+	public void reset() {
+		for(Subscriber subscriber: subscribers) {
+			subscriber.reset();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification, java.lang.Object)
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if(notification instanceof JMXConnectionNotification) {
+			// lost notifications, a failure, a close or a reopen: nothing derived from earlier events can be trusted
+			reset();
+			return;
+		}
+		if(!(notification instanceof MBeanServerNotification)) return;
+		ObjectName name = ((MBeanServerNotification)notification).getMBeanName();
+		if(MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType())) {
+			for(Subscriber subscriber: subscribers) {
+				subscriber.registered(name);
+			}
+		} else if(MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(notification.getType())) {
+			for(Subscriber subscriber: subscribers) {
+				subscriber.unregistered(name);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: Subscriber</p>
+	 * <p>Description: A receiver of MBean registration events</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.util.RegistrationTracker.Subscriber</code></p>
+	 */
+	public static interface Subscriber {
+		/**
+		 * Called when an MBean is registered
+		 * @param name The MBean's ObjectName
+		 */
+		public void registered(ObjectName name);
+		
+		/**
+		 * Called when an MBean is unregistered
+		 * @param name The MBean's ObjectName
+		 */
+		public void unregistered(ObjectName name);
+		
+		/**
+		 * Called when registration events may have been missed. Everything derived from earlier events must be discarded.
+		 */
+		public void reset();
+	}
+}
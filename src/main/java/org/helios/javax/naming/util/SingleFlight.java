@@ -0,0 +1,141 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: SingleFlight</p>
+ * <p>Description: Coalesces identical concurrent calls. The first caller for a key runs the call on its own thread, and callers 
+ * arriving with the same key while it is in flight wait for it and share its result or exception instead of making their own.
+ * Callers that must not share a mutable result pass a {@link Copier}, and each joining caller then receives its own copy.
+ * Nothing is cached once the call completes.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.SingleFlight</code></p>
+ */
+public class SingleFlight {
+	/** The calls in flight keyed by their call keys */
+	protected final ConcurrentMap<Object, FutureTask<?>> flights = new ConcurrentHashMap<Object, FutureTask<?>>();
+	/** The number of calls saved by joining a call in flight */
+	protected final AtomicLong savedCalls = new AtomicLong(0L);
+	
+	/**
+	 * Runs the passed call, or joins an identical call already in flight and shares its result
+	 * @param key The call key, equal for calls that may share a result
+	 * @param callable The call
+	 * @return the result of the call
+	 * @throws Exception the exception thrown by the call
+	 */
+	public <T> T call(Object key, Callable<T> callable) throws Exception {
+		return call(key, callable, null);
+	}
+	
+	/**
+	 * Runs the passed call, or joins an identical call already in flight and receives a copy of its result
+	 * @param key The call key, equal for calls that may share a result
+	 * @param callable The call
+	 * @param copier Copies a non-null result for a joining caller, or null to share the result itself
+	 * @return the result of the call
+	 * @throws Exception the exception thrown by the call
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T call(Object key, Callable<T> callable, Copier<T> copier) throws Exception {
+		FutureTask<T> task = new FutureTask<T>(callable);
+		FutureTask<T> flight = (FutureTask<T>)flights.putIfAbsent(key, task);
+		if(flight==null) {
+			try {
+				task.run();
+			} finally {
+				flights.remove(key, task);
+			}
+			return get(task);
+		}
+		T result = get(flight);
+		if(result!=null && copier!=null) {
+			result = copier.copy(result);
+			// an uncopyable result is not shared, so the joining caller makes its own call
+			if(result==null) return callable.call();
+		}
+		savedCalls.incrementAndGet();
+		return result;
+	}
+	
+	/**
+	 * Waits for a call and returns its result, rethrowing the exception the call threw
+	 * @param flight The call
+	 * @return the result of the call
+	 * @throws Exception the exception thrown by the call
+	 */
+	protected static <T> T get(FutureTask<T> flight) throws Exception {
+		try {
+			return flight.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) throw (Exception)cause;
+			if(cause instanceof Error) throw (Error)cause;
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns the number of calls in flight
+	 * @return the number of calls in flight
+	 */
+	public int getInFlight() {
+		return flights.size();
+	}
+	
+	/**
+	 * Returns the number of calls saved by joining a call in flight
+	 * @return the number of saved calls
+	 */
+	public long getSavedCalls() {
+		return savedCalls.get();
+	}
+	
+	/**
+	 * <p>Title: Copier</p>
+	 * <p>Description: Copies the result of a call for a caller that joined it in flight</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * @version $LastChangedRevision$
+	 * <p><code>org.helios.javax.naming.util.SingleFlight.Copier</code></p>
+	 */
+	public static interface Copier<T> {
+		/**
+		 * Copies a shared result
+		 * @param result The non-null result of the call
+		 * @return a result private to the joining caller, the passed result if it is immutable, or null if it cannot be copied
+		 */
+		public T copy(T result);
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Title: BindContentionBenchmark</p>
+ * <p>Description: Measures bind, rebind and unbind throughput into one context as the number of writer threads grows, 
+ * modelling the registration storm at boot. Run with <code>main</code>. It is not a unit test and surefire does not run it.</p>
+ * <p>Usage: <code>BindContentionBenchmark [namesPerThread] [maxThreads]</code></p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindContentionBenchmark</code></p>
+ */
+public class BindContentionBenchmark {
+	/** The number of unmeasured warmup runs per thread count */
+	public static final int WARMUP_RUNS = 3;
+	/** The number of measured runs per thread count */
+	public static final int MEASURED_RUNS = 5;
+	
+	/**
+	 * Runs the benchmark
+	 * @param args The number of names each thread binds (default 20000) and the maximum thread count (default 16)
+	 * @throws Exception thrown on any error
+	 */
+	public static void main(String[] args) throws Exception {
+		int namesPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		System.out.println("threads\tops/s (best)\tops/s (mean)");
+		for(int threads = 1; threads <= maxThreads; threads <<= 1) {
+			for(int i = 0; i < WARMUP_RUNS; i++) run(threads, namesPerThread);
+			double best = 0, total = 0;
+			for(int i = 0; i < MEASURED_RUNS; i++) {
+				double opsPerSec = run(threads, namesPerThread);
+				best = Math.max(best, opsPerSec);
+				total += opsPerSec;
+			}
+			System.out.println(String.format("%d\t%.0f\t%.0f", threads, best, total / MEASURED_RUNS));
+		}
+	}
+	
+	/**
+	 * Runs one measurement: each thread binds, rebinds and unbinds its own names in one shared context
+	 * @param threads The number of writer threads
+	 * @param namesPerThread The number of names each thread binds
+	 * @return the throughput in operations per second
+	 * @throws Exception thrown if a writer fails
+	 */
+	protected static double run(int threads, final int namesPerThread) throws Exception {
+		final JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		for(int t = 0; t < threads; t++) {
+			final String prefix = "t" + t + ".";
+			new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for(int i = 0; i < namesPerThread; i++) ctx.bind(prefix + i, Integer.valueOf(i));
+						for(int i = 0; i < namesPerThread; i++) ctx.rebind(prefix + i, Long.valueOf(i));
+						for(int i = 0; i < namesPerThread; i++) ctx.unbind(prefix + i);
+					} catch (Exception e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		if(failure.get()!=null) throw failure.get();
+		return 3.0 * threads * namesPerThread / (elapsed / 1e9);
+	}
+}
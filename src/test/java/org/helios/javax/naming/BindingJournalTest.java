@@ -0,0 +1,214 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: BindingJournalTest</p>
+ * <p>Description: Verifies that mutations whose journal records fail to commit are undone in memory</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingJournalTest</code></p>
+ */
+public class BindingJournalTest {
+	/** The journal directory */
+	protected File directory;
+	/** The journal under test */
+	protected BindingJournal journal;
+	/** The journaled root context */
+	protected JMXNamingBindingContext root;
+	
+	/**
+	 * Opens a journal in a fresh directory and binds a baseline tree
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void open() throws Exception {
+		directory = File.createTempFile("journal", "");
+		directory.delete();
+		journal = BindingJournal.open(directory, BindingJournal.SyncPolicy.NEVER, 0L, 0L);
+		root = journal.getContext();
+		root.bind("kept", "original");
+		root.createSubcontext("sub");
+	}
+	
+	/**
+	 * Closes the journal and deletes its directory
+	 * @throws Exception thrown on any error
+	 */
+	@After
+	public void close() throws Exception {
+		try { journal.close(); } catch (NamingException ne) { /* failed journals may not flush */ }
+		File[] files = directory.listFiles();
+		if(files!=null) for(File file: files) file.delete();
+		directory.delete();
+	}
+	
+	/**
+	 * Closes the journal channel so that the next write fails
+	 * @throws Exception thrown on any error
+	 */
+	protected void breakChannel() throws Exception {
+		journal.channel.close();
+	}
+	
+	/**
+	 * Asserts that a name is not bound in the root
+	 * @param name The name
+	 * @throws Exception thrown on any error
+	 */
+	protected void assertUnbound(String name) throws Exception {
+		try {
+			root.lookup(name);
+			fail("[" + name + "] should not be bound");
+		} catch (NameNotFoundException nne) {
+			/* expected */
+		}
+	}
+	
+	/**
+	 * A bind whose record fails to commit is not left bound
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void failedBindIsUndone() throws Exception {
+		breakChannel();
+		try {
+			root.bind("added", "value");
+			fail("bind should have failed");
+		} catch (NamingException expected) {
+			/* expected */
+		}
+		assertUnbound("added");
+		assertEquals("original", root.lookup("kept"));
+	}
+	
+	/**
+	 * A rebind whose record fails to commit restores the prior value
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void failedRebindRestoresPrior() throws Exception {
+		assertEquals("original", root.lookup("kept"));
+		breakChannel();
+		try {
+			root.rebind("kept", "replaced");
+			fail("rebind should have failed");
+		} catch (NamingException expected) {
+			/* expected */
+		}
+		assertEquals("original", root.lookup("kept"));
+	}
+	
+	/**
+	 * An unbind whose record fails to commit restores the binding
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void failedUnbindRestoresBinding() throws Exception {
+		breakChannel();
+		try {
+			root.unbind("kept");
+			fail("unbind should have failed");
+		} catch (NamingException expected) {
+			/* expected */
+		}
+		assertEquals("original", root.lookup("kept"));
+	}
+	
+	/**
+	 * A rename whose record fails to commit moves the binding back
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void failedRenameMovesBack() throws Exception {
+		breakChannel();
+		try {
+			root.rename("kept", "moved");
+			fail("rename should have failed");
+		} catch (NamingException expected) {
+			/* expected */
+		}
+		assertEquals("original", root.lookup("kept"));
+		assertUnbound("moved");
+	}
+	
+	/**
+	 * Subcontext creation and destruction whose records fail to commit are undone
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void failedSubcontextChangesAreUndone() throws Exception {
+		breakChannel();
+		try {
+			root.createSubcontext("other");
+			fail("createSubcontext should have failed");
+		} catch (NamingException expected) {
+			/* expected */
+		}
+		assertUnbound("other");
+		assertFalse(root.children.containsKey("other"));
+	}
+	
+	/**
+	 * After a failure the journal rejects further writes and the tree recovered from disk matches memory
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void recoveredTreeMatchesMemory() throws Exception {
+		breakChannel();
+		try {
+			root.rebind("kept", "replaced");
+			fail("rebind should have failed");
+		} catch (NamingException expected) {
+			/* expected */
+		}
+		try {
+			root.bind("later", "value");
+			fail("a failed journal should reject writes");
+		} catch (NamingException expected) {
+			/* expected */
+		}
+		assertUnbound("later");
+		journal.close();
+		journal = BindingJournal.open(directory, BindingJournal.SyncPolicy.NEVER, 0L, 0L);
+		root = journal.getContext();
+		assertEquals("original", root.lookup("kept"));
+		assertEquals(JMXNamingBindingContext.class, root.lookup("sub").getClass());
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: BindingNotifierTest</p>
+ * <p>Description: Verifies the order of coalesced binding notifications and that a saturated shared pool never delivers on the caller</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BindingNotifierTest</code></p>
+ */
+public class BindingNotifierTest {
+	/** A context to emit for */
+	protected final JMXNamingBindingContext context = new JMXNamingBindingContext();
+	
+	/**
+	 * A listener that blocks the delivering thread on its first notification until released, then records every notification
+	 */
+	protected static class BlockingListener implements NotificationListener {
+		/** Counted down once the first notification arrived */
+		final CountDownLatch blocked = new CountDownLatch(1);
+		/** Counted down to let delivery continue */
+		final CountDownLatch release = new CountDownLatch(1);
+		/** The received notifications, rendered as type and names */
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		/** Counted down as notifications arrive */
+		final CountDownLatch arrived;
+		
+		/**
+		 * Creates a new BlockingListener
+		 * @param expected The number of notifications expected
+		 */
+		BlockingListener(int expected) {
+			arrived = new CountDownLatch(expected);
+		}
+		
+		public void handleNotification(Notification notification, Object handback) {
+			if(blocked.getCount() > 0) {
+				blocked.countDown();
+				try { release.await(10, TimeUnit.SECONDS); } catch (InterruptedException ie) { /* No Op */ }
+			}
+			received.add(notification.getType() + Arrays.toString((String[])notification.getUserData()));
+			arrived.countDown();
+		}
+	}
+	
+	/**
+	 * Changes queued behind a slow delivery are coalesced only while consecutive changes have the same type
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void coalescingKeepsCrossTypeOrder() throws Exception {
+		BindingNotifier notifier = new BindingNotifier(context);
+		BlockingListener listener = new BlockingListener(4);
+		notifier.addNotificationListener(listener, null, null);
+		notifier.enqueue(JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING, "x");
+		assertTrue(listener.blocked.await(10, TimeUnit.SECONDS));
+		notifier.enqueue(JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING, "a");
+		notifier.enqueue(JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING, "b");
+		notifier.enqueue(JMXNamingBindingContext.NOTIF_TYPE_REMOVED_BINDING, "a");
+		notifier.enqueue(JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING, "a");
+		listener.release.countDown();
+		assertTrue(listener.arrived.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(
+				JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING + "[x]",
+				JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING + "[a, b]",
+				JMXNamingBindingContext.NOTIF_TYPE_REMOVED_BINDING + "[a]",
+				JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING + "[a]"
+		), listener.received);
+	}
+	
+	/**
+	 * While blocked listeners saturate the shared pool, enqueuing returns promptly without running listener code, 
+	 * and the rejected changes are delivered once the pool drains
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void saturatedPoolNeverDeliversOnTheCaller() throws Exception {
+		int threads = Integer.getInteger(BindingNotifier.NOTIFIER_THREADS, BindingNotifier.DEFAULT_NOTIFIER_THREADS);
+		List<BlockingListener> blockers = new ArrayList<BlockingListener>();
+		try {
+			for(int i = 0; i < threads; i++) {
+				BindingNotifier notifier = new BindingNotifier(context);
+				BlockingListener blocker = new BlockingListener(1);
+				blockers.add(blocker);
+				notifier.addNotificationListener(blocker, null, null);
+				notifier.enqueue(JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING, "blocker" + i);
+				assertTrue(blocker.blocked.await(10, TimeUnit.SECONDS));
+			}
+			final Thread caller = Thread.currentThread();
+			final AtomicBoolean inline = new AtomicBoolean(false);
+			// enough notifiers to overflow the task queue behind the blocked pool threads
+			int fillers = Integer.getInteger(BindingNotifier.NOTIFIER_QUEUE_SIZE, BindingNotifier.DEFAULT_NOTIFIER_QUEUE_SIZE) + 16;
+			final CountDownLatch delivered = new CountDownLatch(fillers);
+			NotificationListener listener = new NotificationListener() {
+				public void handleNotification(Notification notification, Object handback) {
+					if(Thread.currentThread()==caller) inline.set(true);
+					delivered.countDown();
+				}
+			};
+			long start = System.nanoTime();
+			for(int i = 0; i < fillers; i++) {
+				BindingNotifier notifier = new BindingNotifier(context);
+				notifier.addNotificationListener(listener, null, null);
+				notifier.enqueue(JMXNamingBindingContext.NOTIF_TYPE_NEW_BINDING, "filler" + i);
+			}
+			assertTrue("enqueuing blocked behind the listeners", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+			assertEquals("a change was delivered while the pool was blocked", fillers, delivered.getCount());
+			for(BlockingListener blocker: blockers) blocker.release.countDown();
+			assertTrue("rejected changes were not delivered", delivered.await(30, TimeUnit.SECONDS));
+			assertTrue("a change was delivered on the enqueuing thread", !inline.get());
+		} finally {
+			for(BlockingListener blocker: blockers) blocker.release.countDown();
+		}
+	}
+}
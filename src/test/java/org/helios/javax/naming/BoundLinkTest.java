@@ -0,0 +1,157 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.naming.LinkLoopException;
+import javax.naming.LinkRef;
+import javax.naming.NameNotFoundException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: BoundLinkTest</p>
+ * <p>Description: Verifies that bound links are followed, detect loops, resolve relative names and stay current as their targets change</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.BoundLinkTest</code></p>
+ */
+public class BoundLinkTest {
+	
+	/**
+	 * Creates a root context with the subcontext <code>a</code> and the binding <code>a/x</code>
+	 * @param lookupCache true to enable the lookup cache
+	 * @return the root context
+	 * @throws Exception thrown on any error
+	 */
+	protected static JMXNamingBindingContext tree(boolean lookupCache) throws Exception {
+		JMXNamingBindingContext root = new JMXNamingBindingContext();
+		if(lookupCache) root.addToEnvironment(JMXNamingBindingContext.LOOKUP_CACHE, "true");
+		root.createSubcontext("a");
+		root.bind("a/x", "one");
+		return root;
+	}
+	
+	/**
+	 * Links that lead back to themselves, directly or through other links, fail with a LinkLoopException
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void cyclesThrowLinkLoopException() throws Exception {
+		JMXNamingBindingContext root = tree(false);
+		root.bind("self", new LinkRef("self"));
+		root.bind("l1", new LinkRef("a/l2"));
+		root.bind("a/l2", new LinkRef("./l3"));
+		root.bind("a/l3", new LinkRef("l1"));
+		for(String name: new String[]{"self", "l1", "a/l2", "a/l3"}) {
+			try {
+				root.lookup(name);
+				fail("[" + name + "] should loop");
+			} catch (LinkLoopException expected) {}
+		}
+		root.rebind("a/l3", new LinkRef("a/x"));
+		assertEquals("one", root.lookup("l1"));
+	}
+	
+	/**
+	 * A memoized target is followed again once a context read on the way to it changes, including the target context being replaced
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void memoizedTargetFollowsChanges() throws Exception {
+		JMXNamingBindingContext root = tree(false);
+		root.bind("value", new LinkRef("a/x"));
+		root.bind("context", new LinkRef("a"));
+		assertEquals("one", root.lookup("value"));
+		Object a = root.lookup("context");
+		assertSame(a, root.lookup("context"));
+		root.rebind("a/x", "two");
+		assertEquals("two", root.lookup("value"));
+		root.unbind("a/x");
+		try {
+			root.lookup("value");
+			fail("the link target should be gone");
+		} catch (NameNotFoundException expected) {}
+		root.destroySubcontext("a");
+		root.createSubcontext("a").bind("x", "three");
+		Object replaced = root.lookup("context");
+		assertNotSame(a, replaced);
+		assertSame(root.lookup("a"), replaced);
+		assertEquals("three", root.lookup("value"));
+	}
+	
+	/**
+	 * Link names starting with <code>./</code> resolve from the link's own context, all others from the root
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void relativeLinksResolveFromTheirContext() throws Exception {
+		JMXNamingBindingContext root = tree(false);
+		root.bind("x", "root");
+		root.bind("a/relative", new LinkRef("./x"));
+		root.bind("a/absolute", new LinkRef("x"));
+		root.bind("a/here", new LinkRef("."));
+		assertEquals("one", root.lookup("a/relative"));
+		assertEquals("root", root.lookup("a/absolute"));
+		assertSame(root.lookup("a"), root.lookup("a/here"));
+		JMXNamingBindingContext a = (JMXNamingBindingContext)root.lookup("a");
+		assertEquals("one", a.lookup("relative"));
+		assertEquals("root", a.lookup("absolute"));
+		assertEquals("./x", ((LinkRef)root.lookupLink("a/relative")).getLinkName());
+	}
+	
+	/**
+	 * A name whose intermediate component is a link resolves the rest of the name from the link's current target, 
+	 * with and without the lookup cache
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void lookupsThroughIntermediateLinks() throws Exception {
+		for(boolean cached: new boolean[]{false, true}) {
+			JMXNamingBindingContext root = tree(cached);
+			root.bind("la", new LinkRef("a"));
+			root.bind("a/ly", new LinkRef("./x"));
+			assertEquals("one", root.lookup("la/x"));
+			assertEquals("one", root.lookup("la/ly"));
+			assertTrue(root.lookupLink("la/ly") instanceof LinkRef);
+			root.rebind("a/x", "two");
+			assertEquals("two", root.lookup("la/x"));
+			assertEquals("two", root.lookup("la/ly"));
+			root.createSubcontext("b").bind("x", "other");
+			root.rebind("la", new LinkRef("b"));
+			assertEquals("other", root.lookup("la/x"));
+			try {
+				root.lookup("la/ly");
+				fail("[la/ly] should not be bound once the link leads to b");
+			} catch (NameNotFoundException expected) {}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: CompactBindingStoreTest</p>
+ * <p>Description: Verifies the compact binding store across incremental resizes</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.CompactBindingStoreTest</code></p>
+ */
+public class CompactBindingStoreTest {
+	
+	/**
+	 * Fills a store until a resize is in progress
+	 * @param store The store
+	 * @param expected The map to record the bindings in
+	 */
+	protected static void fillUntilResizing(CompactBindingStore store, Map<String, Object> expected) {
+		for(int i = 0; store.state.next==null; i++) {
+			store.put("k" + i, Integer.valueOf(i));
+			expected.put("k" + i, Integer.valueOf(i));
+		}
+	}
+	
+	/**
+	 * Collects the bindings returned by an iterator, failing on a duplicate key
+	 * @param it The iterator
+	 * @return the bindings
+	 */
+	protected static Map<String, Object> collect(Iterator<Map.Entry<String, Object>> it) {
+		Map<String, Object> seen = new HashMap<String, Object>();
+		while(it.hasNext()) {
+			Map.Entry<String, Object> entry = it.next();
+			assertNull("Duplicate " + entry.getKey(), seen.put(entry.getKey(), entry.getValue()));
+		}
+		return seen;
+	}
+	
+	/**
+	 * Creating an iterator during a resize leaves the resize in progress, and the iterator returns every binding once,
+	 * including those only in the new table
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void iteratesBothTablesDuringResize() throws Exception {
+		CompactBindingStore store = new CompactBindingStore(1024);
+		Map<String, Object> expected = new HashMap<String, Object>();
+		fillUntilResizing(store, expected);
+		// bindings added after the resize started only live in the new table
+		store.put("added", "value");
+		expected.put("added", "value");
+		assertNotNull(store.state.next);
+		Iterator<Map.Entry<String, Object>> it = store.entrySet().iterator();
+		assertNotNull("Iterator creation completed the resize", store.state.next);
+		assertEquals(expected, collect(it));
+	}
+	
+	/**
+	 * Bindings changed while an iterator created during a resize is in use are neither duplicated nor lost when unchanged
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void iteratorSurvivesResizeCompletion() throws Exception {
+		CompactBindingStore store = new CompactBindingStore(1024);
+		Map<String, Object> expected = new HashMap<String, Object>();
+		fillUntilResizing(store, expected);
+		Iterator<Map.Entry<String, Object>> it = store.entrySet().iterator();
+		// enough writes to complete the resize, all to keys not bound before the iterator was created
+		int writes = 0;
+		while(store.state.next!=null) {
+			store.put("late" + writes, Integer.valueOf(writes));
+			writes++;
+		}
+		assertTrue(writes > 0);
+		Map<String, Object> seen = collect(it);
+		for(Map.Entry<String, Object> entry: expected.entrySet()) {
+			assertEquals(entry.getValue(), seen.get(entry.getKey()));
+		}
+		for(String key: seen.keySet()) {
+			assertTrue(key, expected.containsKey(key) || key.startsWith("late"));
+		}
+	}
+	
+	/**
+	 * Lock-free reads of a key never return the value of another key that held the same slot while the read was in progress,
+	 * even when the key is back in the slot by the time the read checks it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void readsNeverReturnAnotherKeysValue() throws Exception {
+		final CompactBindingStore store = new CompactBindingStore(2);
+		final String x = "x";
+		String other = null;
+		for(int i = 0; other==null; i++) {
+			if((CompactBindingStore.hash("y" + i) & 1)==(CompactBindingStore.hash(x) & 1)) other = "y" + i;
+		}
+		final String y = other;
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final Object[] wrong = new Object[1];
+		Thread reader = new Thread() {
+			public void run() {
+				while(!stop.get()) {
+					Object value = store.get(x);
+					if(value!=null && value!=x) {
+						wrong[0] = value;
+						return;
+					}
+				}
+			}
+		};
+		reader.start();
+		try {
+			// x and y take turns in one slot
+			for(int i = 0; i < 2000000 && wrong[0]==null; i++) {
+				store.put(x, x);
+				store.remove(x);
+				store.put(y, y);
+				store.remove(y);
+			}
+		} finally {
+			stop.set(true);
+			reader.join();
+		}
+		assertNull("Read the value of " + y + " for " + x, wrong[0]);
+		assertEquals(2, store.capacity());
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.naming.CompositeName;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NotContextException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: ContextResolutionTest</p>
+ * <p>Description: Verifies the resolution of compound names through the per-context child index</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.ContextResolutionTest</code></p>
+ */
+public class ContextResolutionTest {
+	
+	/**
+	 * Creates a root context with the subcontexts <code>a</code>, <code>a/b</code> and <code>a/b/c</code>
+	 * @return the root context
+	 * @throws Exception thrown on any error
+	 */
+	protected static JMXNamingBindingContext tree() throws Exception {
+		JMXNamingBindingContext root = new JMXNamingBindingContext();
+		root.createSubcontext("a");
+		root.createSubcontext("a/b");
+		root.createSubcontext("a/b/c");
+		return root;
+	}
+	
+	/**
+	 * Compound names bind and resolve across the context tree, from the root and relative to a subcontext
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void compoundNamesResolveAcrossTheTree() throws Exception {
+		JMXNamingBindingContext root = tree();
+		root.bind("a/b/c/x", "deep");
+		JMXNamingBindingContext a = root.children.get("a");
+		JMXNamingBindingContext c = a.children.get("b").children.get("c");
+		assertEquals("deep", root.lookup("a/b/c/x"));
+		assertEquals("deep", root.lookup(new CompositeName("a/b/c/x")));
+		assertEquals("deep", a.lookup("b/c/x"));
+		assertEquals("deep", c.lookup("x"));
+		assertSame(c, root.lookup("a/b/c"));
+		root.rebind("a/b/c/x", "rebound");
+		assertEquals("rebound", c.lookup("x"));
+		root.unbind("a/b/c/x");
+		assertTrue(!c.bindings.containsKey("x"));
+	}
+	
+	/**
+	 * A missing intermediate context is reported as a NameNotFoundException carrying the unresolved part of the name
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void missingIntermediateIsNotFound() throws Exception {
+		JMXNamingBindingContext root = tree();
+		try {
+			root.lookup("a/missing/x");
+			fail("Expected NameNotFoundException");
+		} catch (NameNotFoundException nnfe) {
+			assertEquals(new CompositeName("missing/x"), nnfe.getRemainingName());
+		}
+		try {
+			root.bind("a/missing/x", "value");
+			fail("Expected NameNotFoundException");
+		} catch (NameNotFoundException nnfe) {
+			// expected
+		}
+	}
+	
+	/**
+	 * An intermediate component bound to a value is reported as a NotContextException
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void boundIntermediateIsNotAContext() throws Exception {
+		JMXNamingBindingContext root = tree();
+		root.bind("a/v", "value");
+		try {
+			root.lookup("a/v/x");
+			fail("Expected NotContextException");
+		} catch (NotContextException nce) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Of two creations of the same subcontext racing each other exactly one wins, and compound names resolve through the winner
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void racingSubcontextCreationsIndexOneChild() throws Exception {
+		final JMXNamingBindingContext root = new JMXNamingBindingContext();
+		for(int round = 0; round < JMXNamingBindingContextTest.ROUNDS; round++) {
+			Throwable[] failures = JMXNamingBindingContextTest.race(new JMXNamingBindingContextTest.Task() {
+				public void run() throws Exception {
+					root.createSubcontext("s");
+				}
+			}, new JMXNamingBindingContextTest.Task() {
+				public void run() throws Exception {
+					root.createSubcontext("s");
+				}
+			});
+			assertTrue("round " + round, (failures[0]==null) != (failures[1]==null));
+			Throwable failure = failures[0]==null ? failures[1] : failures[0];
+			assertTrue(String.valueOf(failure), failure instanceof NameAlreadyBoundException);
+			root.bind("s/x", "value");
+			assertEquals("value", root.children.get("s").lookup("x"));
+			root.unbind("s/x");
+			root.destroySubcontext("s");
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: ContextSnapshotTest</p>
+ * <p>Description: Verifies snapshot round trips and that a snapshot record is restored all or nothing</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.ContextSnapshotTest</code></p>
+ */
+public class ContextSnapshotTest {
+	
+	/**
+	 * A written snapshot restores the same tree and leaves no temporary file behind
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void roundTrip() throws Exception {
+		File file = File.createTempFile("snapshot", ".bin");
+		try {
+			JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+			ctx.bind("a", "alpha");
+			ctx.createSubcontext("sub").bind("b", Integer.valueOf(2));
+			assertEquals(2L, ContextSnapshot.write(ctx, file));
+			assertFalse(new File(file.getPath() + ".tmp").exists());
+			JMXNamingBindingContext restored = ContextSnapshot.restore(file);
+			assertEquals("alpha", restored.lookup("a"));
+			assertEquals(Integer.valueOf(2), restored.lookup("sub/b"));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * A record whose subcontext cannot be decoded throws a NamingException, applies nothing and stays pending, 
+	 * so a retry does not apply any binding twice
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void failedLoadAppliesNothing() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		// a subcontext environment with one entry whose value tag is unknown
+		int envOffset = 0;
+		BinaryFormat.writeVarInt(out, 1);
+		BinaryFormat.writeString(out, "key");
+		out.writeByte(99);
+		BinaryFormat.writeVarInt(out, 0);
+		int recordOffset = out.size();
+		BinaryFormat.writeVarInt(out, 1);
+		BinaryFormat.writeString(out, "a");
+		BinaryFormat.writeString(out, String.class.getName());
+		byte[] value = "alpha".getBytes(BinaryFormat.UTF8);
+		out.writeByte(ContextSnapshot.TAG_STRING);
+		BinaryFormat.writeVarInt(out, value.length);
+		out.write(value);
+		BinaryFormat.writeVarInt(out, 1);
+		BinaryFormat.writeString(out, "sub");
+		BinaryFormat.writeVarLong(out, envOffset);
+		out.flush();
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		ContextSnapshot.Record record = new ContextSnapshot.Record(ByteBuffer.wrap(bytes.toByteArray()), recordOffset);
+		ctx.pendingSnapshot = record;
+		for(int attempt = 0; attempt < 2; attempt++) {
+			try {
+				ctx.loadSnapshot();
+				fail("the record should not load");
+			} catch (NamingException ne) {
+				assertNotNull(ne.getRootCause());
+			}
+			assertTrue(ctx.bindings.isEmpty());
+			assertTrue(ctx.children.isEmpty());
+			assertSame(record, ctx.pendingSnapshot);
+		}
+		try {
+			ctx.lookup("a");
+			fail("the lookup should fail");
+		} catch (NamingException expected) {
+			assertFalse(expected instanceof NameNotFoundException);
+		}
+	}
+}
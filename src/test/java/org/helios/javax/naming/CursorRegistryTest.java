@@ -0,0 +1,96 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import javax.naming.LimitExceededException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: CursorRegistryTest</p>
+ * <p>Description: Verifies the sweeping and capping of listing cursors</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.CursorRegistryTest</code></p>
+ */
+public class CursorRegistryTest {
+	
+	/**
+	 * Creates a context with a few bindings, so a listing one name per page leaves its cursor open
+	 * @return the context
+	 * @throws Exception thrown on any error
+	 */
+	protected static JMXNamingBindingContext context() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		for(int i = 0; i < 5; i++) ctx.bind("b" + i, "value" + i);
+		return ctx;
+	}
+	
+	/**
+	 * Idle cursors are swept when another cursor is paged or closed, not only when one is opened
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void sweepsIdleCursorsOnPageAndClose() throws Exception {
+		JMXNamingBindingContext ctx = context();
+		CursorRegistry registry = new CursorRegistry();
+		String active = registry.page(ctx, null, 1, 60000, 10).getCursor();
+		String other = registry.page(ctx, null, 1, 60000, 10).getCursor();
+		registry.page(ctx, null, 1, 1, 10);
+		assertEquals(3, registry.getOpenCursors());
+		Thread.sleep(20);
+		registry.page(ctx, active, 1, 60000, 10);
+		assertEquals(2, registry.getOpenCursors());
+		registry.page(ctx, null, 1, 1, 10);
+		Thread.sleep(20);
+		registry.close(other);
+		assertEquals(1, registry.getOpenCursors());
+	}
+	
+	/**
+	 * Opening a cursor beyond the limit fails until a cursor is closed
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void capsOpenCursors() throws Exception {
+		JMXNamingBindingContext ctx = context();
+		CursorRegistry registry = new CursorRegistry();
+		String first = registry.page(ctx, null, 1, 60000, 2).getCursor();
+		registry.page(ctx, null, 1, 60000, 2);
+		try {
+			registry.page(ctx, null, 1, 60000, 2);
+			fail("Expected LimitExceededException");
+		} catch (LimitExceededException lee) {
+			assertEquals(2, registry.getOpenCursors());
+		}
+		registry.close(first);
+		assertNotNull(registry.page(ctx, null, 1, 60000, 2).getCursor());
+	}
+}
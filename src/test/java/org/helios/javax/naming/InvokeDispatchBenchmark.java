@@ -0,0 +1,152 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Title: InvokeDispatchBenchmark</p>
+ * <p>Description: Compares the cost of the MBean <code>invoke</code> dispatch through the precompiled method handle table 
+ * with the reflective dispatch it replaced (a {@link StandardMBeanFeatures#hashOperation(String, String...)} keyed lookup followed by 
+ * {@link Method#invoke(Object, Object...)}), with a bare <code>Method.invoke</code>, and with a direct call as the baseline. 
+ * Run with <code>main</code>. It is not a unit test and surefire does not run it.</p>
+ * <p>Usage: <code>InvokeDispatchBenchmark [calls]</code></p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.InvokeDispatchBenchmark</code></p>
+ */
+public class InvokeDispatchBenchmark {
+	/** The number of unmeasured warmup runs */
+	public static final int WARMUP_RUNS = 10;
+	/** The number of measured runs */
+	public static final int MEASURED_RUNS = 10;
+	/** The signature of the operation invoked */
+	public static final String[] SIGNATURE = {String.class.getName()};
+	
+	/**
+	 * Runs the benchmark
+	 * @param args The number of calls per run (default 1000000)
+	 * @throws Exception thrown on any error
+	 */
+	public static void main(String[] args) throws Exception {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		ctx.bind("value", Integer.valueOf(42));
+		Method method = JMXNamingBindingContext.class.getMethod("lookup", String.class);
+		Map<Integer, Method> methods = new HashMap<Integer, Method>();
+		methods.put(StandardMBeanFeatures.hashOperation("lookup", SIGNATURE), method);
+		Object[] params = {"value"};
+		for(int i = 0; i < WARMUP_RUNS; i++) {
+			dispatch(ctx, params, calls);
+			hashed(ctx, methods, params, calls);
+			reflect(ctx, method, params, calls);
+			direct(ctx, calls);
+		}
+		long dispatch = Long.MAX_VALUE, hashed = Long.MAX_VALUE, reflect = Long.MAX_VALUE, direct = Long.MAX_VALUE;
+		for(int i = 0; i < MEASURED_RUNS; i++) {
+			dispatch = Math.min(dispatch, dispatch(ctx, params, calls));
+			hashed = Math.min(hashed, hashed(ctx, methods, params, calls));
+			reflect = Math.min(reflect, reflect(ctx, method, params, calls));
+			direct = Math.min(direct, direct(ctx, calls));
+		}
+		System.out.println("path\tns/op");
+		System.out.println(String.format("invoke (MethodHandle)\t%.1f", (double)dispatch / calls));
+		System.out.println(String.format("hashOperation + Method.invoke\t%.1f", (double)hashed / calls));
+		System.out.println(String.format("Method.invoke\t%.1f", (double)reflect / calls));
+		System.out.println(String.format("direct\t%.1f", (double)direct / calls));
+	}
+	
+	/**
+	 * Calls the operation through the context's MBean invoke
+	 * @param ctx The context
+	 * @param params The operation parameters
+	 * @param calls The number of calls
+	 * @return the elapsed time in ns
+	 * @throws Exception thrown on any error
+	 */
+	protected static long dispatch(JMXNamingBindingContext ctx, Object[] params, int calls) throws Exception {
+		long sink = 0;
+		long begin = System.nanoTime();
+		for(int i = 0; i < calls; i++) sink += ctx.invoke("lookup", params, SIGNATURE).hashCode();
+		long elapsed = System.nanoTime() - begin;
+		if(sink==42) System.out.println();
+		return elapsed;
+	}
+	
+	/**
+	 * Looks up the operation by its signature hash and calls it reflectively, as the dispatch table replaced did
+	 * @param ctx The context
+	 * @param methods The operation methods keyed by signature hash
+	 * @param params The operation parameters
+	 * @param calls The number of calls
+	 * @return the elapsed time in ns
+	 * @throws Exception thrown on any error
+	 */
+	protected static long hashed(JMXNamingBindingContext ctx, Map<Integer, Method> methods, Object[] params, int calls) throws Exception {
+		long sink = 0;
+		long begin = System.nanoTime();
+		for(int i = 0; i < calls; i++) sink += methods.get(StandardMBeanFeatures.hashOperation("lookup", SIGNATURE)).invoke(ctx, params).hashCode();
+		long elapsed = System.nanoTime() - begin;
+		if(sink==42) System.out.println();
+		return elapsed;
+	}
+	
+	/**
+	 * Calls the operation reflectively
+	 * @param ctx The context
+	 * @param method The operation method
+	 * @param params The operation parameters
+	 * @param calls The number of calls
+	 * @return the elapsed time in ns
+	 * @throws Exception thrown on any error
+	 */
+	protected static long reflect(JMXNamingBindingContext ctx, Method method, Object[] params, int calls) throws Exception {
+		long sink = 0;
+		long begin = System.nanoTime();
+		for(int i = 0; i < calls; i++) sink += method.invoke(ctx, params).hashCode();
+		long elapsed = System.nanoTime() - begin;
+		if(sink==42) System.out.println();
+		return elapsed;
+	}
+	
+	/**
+	 * Calls the operation directly
+	 * @param ctx The context
+	 * @param calls The number of calls
+	 * @return the elapsed time in ns
+	 * @throws Exception thrown on any error
+	 */
+	protected static long direct(JMXNamingBindingContext ctx, int calls) throws Exception {
+		long sink = 0;
+		long begin = System.nanoTime();
+		for(int i = 0; i < calls; i++) sink += ctx.lookup("value").hashCode();
+		long elapsed = System.nanoTime() - begin;
+		if(sink==42) System.out.println();
+		return elapsed;
+	}
+}
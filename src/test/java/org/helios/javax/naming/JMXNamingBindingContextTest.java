@@ -0,0 +1,391 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameClassPair;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: JMXNamingBindingContextTest</p>
+ * <p>Description: Races concurrent mutations of one context and checks the invariants they must preserve</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.JMXNamingBindingContextTest</code></p>
+ */
+public class JMXNamingBindingContextTest {
+	/** The number of rounds each race is run for */
+	public static final int ROUNDS = 2000;
+	
+	/**
+	 * Runs two tasks released at the same instant and waits for both
+	 * @param first The first task
+	 * @param second The second task
+	 * @return the failures of the two tasks, null where a task completed normally
+	 * @throws InterruptedException thrown if interrupted while waiting
+	 */
+	protected static Throwable[] race(final Task first, final Task second) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final Task[] tasks = {first, second};
+		final Throwable[] failures = new Throwable[2];
+		Thread[] threads = new Thread[2];
+		for(int i = 0; i < 2; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						tasks[index].run();
+					} catch (Throwable t) {
+						failures[index] = t;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for(Thread thread: threads) thread.join();
+		return failures;
+	}
+	
+	/**
+	 * <p>Title: Task</p>
+	 * <p>Description: One side of a race</p> 
+	 */
+	protected static interface Task {
+		/**
+		 * Runs the task
+		 * @throws Exception thrown on any error
+		 */
+		public void run() throws Exception;
+	}
+	
+	/**
+	 * Determines if a name is bound in a context
+	 * @param ctx The context
+	 * @param name The name
+	 * @return true if the name is bound
+	 * @throws NamingException thrown on any error other than the name not being bound
+	 */
+	protected static boolean isBound(JMXNamingBindingContext ctx, String name) throws NamingException {
+		try {
+			ctx.lookup(name);
+			return true;
+		} catch (NameNotFoundException nne) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Counts the names listed in a context
+	 * @param ctx The context
+	 * @return the number of times each name was listed
+	 * @throws NamingException thrown on any error
+	 */
+	protected static Map<String, Integer> listed(JMXNamingBindingContext ctx) throws NamingException {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		NamingEnumeration<NameClassPair> names = ctx.list("");
+		while(names.hasMore()) {
+			String name = names.next().getName();
+			Integer count = counts.get(name);
+			counts.put(name, count==null ? 1 : count + 1);
+		}
+		return counts;
+	}
+	
+	/**
+	 * Finds the attribute info of a binding in the context's current MBeanInfo
+	 * @param ctx The context
+	 * @param name The binding name
+	 * @return the attribute info or null if there is none
+	 * @throws Exception thrown on any error
+	 */
+	protected static MBeanAttributeInfo attributeInfo(JMXNamingBindingContext ctx, String name) throws Exception {
+		for(MBeanAttributeInfo info: ctx.getMBeanInfo().getAttributes()) {
+			if(info.getName().equals(name)) return info;
+		}
+		return null;
+	}
+	
+	/**
+	 * A rebuilt MBeanInfo reuses the attribute infos of unchanged bindings and rebuilds retyped ones
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void mbeanInfoReusesUnchangedAttributeInfos() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		for(int i = 0; i < 100; i++) ctx.bind("b" + i, "value" + i);
+		MBeanAttributeInfo kept = attributeInfo(ctx, "b10");
+		MBeanAttributeInfo retyped = attributeInfo(ctx, "b20");
+		ctx.unbind("b50");
+		ctx.bind("c0", "value");
+		ctx.rebind("b20", Integer.valueOf(20));
+		assertSame(kept, attributeInfo(ctx, "b10"));
+		assertNotSame(retyped, attributeInfo(ctx, "b20"));
+		assertEquals(Integer.class.getName(), attributeInfo(ctx, "b20").getType());
+		assertEquals(null, attributeInfo(ctx, "b50"));
+		assertTrue(attributeInfo(ctx, "c0")!=null);
+	}
+	
+	/**
+	 * Parameters that do not match the operation signature are reported as a ReflectionException
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void invokeRejectsMismatchedParameters() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		String[] signature = {String.class.getName(), int.class.getName()};
+		Object[][] invalid = {{"c", "ten"}, {"c", null}, {"c"}, null};
+		for(Object[] params: invalid) {
+			try {
+				ctx.invoke("listPage", params, signature);
+				fail("Expected ReflectionException for " + (params==null ? null : Arrays.toString(params)));
+			} catch (ReflectionException re) {
+				assertTrue(re.getTargetException() instanceof IllegalArgumentException);
+			}
+		}
+		assertTrue(ctx.invoke("listPage", new Object[]{null, Integer.valueOf(10)}, signature) instanceof BindingPage);
+	}
+	
+	/**
+	 * Exceptions thrown by the operation body are wrapped in an MBeanException, even when they are runtime exceptions 
+	 * of the kinds raised by bad parameters
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void invokeWrapsOperationExceptionsInMBeanException() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		try {
+			ctx.invoke("lookup", new Object[]{"missing"}, new String[]{String.class.getName()});
+			fail("Expected MBeanException");
+		} catch (MBeanException me) {
+			assertTrue(me.getTargetException() instanceof NameNotFoundException);
+		}
+		// a raw map slips a non String key past the signature check, so the body throws the ClassCastException
+		Map batch = new HashMap();
+		batch.put(Integer.valueOf(1), "value");
+		try {
+			ctx.invoke("bindAll", new Object[]{batch}, new String[]{Map.class.getName()});
+			fail("Expected MBeanException");
+		} catch (MBeanException me) {
+			assertTrue(me.getTargetException() instanceof ClassCastException);
+		}
+	}
+	
+	/**
+	 * Of two binds of the same name racing each other exactly one wins, and the name is bound to the winner's value
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void racingBindsOfOneNameHaveOneWinner() throws Exception {
+		final JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		for(int round = 0; round < ROUNDS; round++) {
+			Throwable[] failures = race(new Task() {
+				public void run() throws Exception {
+					ctx.bind("a", "first");
+				}
+			}, new Task() {
+				public void run() throws Exception {
+					ctx.bind("a", "second");
+				}
+			});
+			assertTrue("round " + round, (failures[0]==null) != (failures[1]==null));
+			Throwable failure = failures[0]==null ? failures[1] : failures[0];
+			assertTrue(String.valueOf(failure), failure instanceof NameAlreadyBoundException);
+			assertEquals(failures[0]==null ? "first" : "second", ctx.lookup("a"));
+			ctx.unbind("a");
+		}
+	}
+	
+	/**
+	 * Every binding is visible to lookups and in the MBeanInfo as soon as its concurrent bind returns
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void concurrentBindsArePublishedWithTheirAttributeInfo() throws Exception {
+		final JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		final int perThread = 200;
+		Throwable[] failures = race(new Task() {
+			public void run() throws Exception {
+				for(int i = 0; i < perThread; i++) {
+					ctx.bind("x" + i, Integer.valueOf(i));
+					assertEquals(Integer.valueOf(i), ctx.getAttribute("x" + i));
+					assertEquals(Integer.class.getName(), attributeInfo(ctx, "x" + i).getType());
+				}
+			}
+		}, new Task() {
+			public void run() throws Exception {
+				for(int i = 0; i < perThread; i++) {
+					ctx.bind("y" + i, "value" + i);
+					ctx.unbind("y" + i);
+					assertFalse(isBound(ctx, "y" + i));
+					assertEquals(null, attributeInfo(ctx, "y" + i));
+				}
+			}
+		});
+		assertEquals(null, failures[0]);
+		assertEquals(null, failures[1]);
+		assertEquals(perThread, ctx.bindings.size());
+	}
+	
+	/**
+	 * A rebind racing the creation of a subcontext with the same name never leaves the name bound both ways
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void rebindRacingCreateSubcontextNeverBindsBothWays() throws Exception {
+		final JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		for(int round = 0; round < ROUNDS * 10; round++) {
+			race(new Task() {
+				public void run() throws Exception {
+					ctx.rebind("a", "value");
+				}
+			}, new Task() {
+				public void run() throws Exception {
+					ctx.createSubcontext("a");
+				}
+			});
+			assertFalse("round " + round, ctx.bindings.containsKey("a") && ctx.children.containsKey("a"));
+			try { ctx.unbind("a"); } catch (NamingException ne) { /* neither won */ }
+			assertFalse(ctx.bindings.containsKey("a") || ctx.children.containsKey("a"));
+		}
+	}
+	
+	/**
+	 * The name index matches the bindings after a bind races an unbind of the same name
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void nameIndexMatchesBindingsAfterRace() throws Exception {
+		Hashtable<String, Object> env = new Hashtable<String, Object>();
+		env.put(JMXNamingBindingContext.NAME_INDEX, "true");
+		final JMXNamingBindingContext ctx = new JMXNamingBindingContext(env);
+		ctx.findNames("*");
+		for(int round = 0; round < ROUNDS * 5; round++) {
+			if(round % 2==0) ctx.rebind("a", "value");
+			race(new Task() {
+				public void run() throws Exception {
+					ctx.rebind("a", "value");
+				}
+			}, new Task() {
+				public void run() throws Exception {
+					ctx.unbind("a");
+				}
+			});
+			assertEquals("round " + round, ctx.bindings.containsKey("a"), ctx.nameIndex.names.contains("a"));
+		}
+	}
+	
+	/**
+	 * A rename that loses a race with a rebind of its old name fails and leaves the new name unbound
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void renameRacingRebindNeverLeavesBothNames() throws Exception {
+		final JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		for(int round = 0; round < ROUNDS; round++) {
+			ctx.bind("a", "first");
+			Throwable[] failures = race(new Task() {
+				public void run() throws Exception {
+					ctx.rename("a", "b");
+				}
+			}, new Task() {
+				public void run() throws Exception {
+					ctx.rebind("a", "second");
+				}
+			});
+			assertEquals(null, failures[1]);
+			if(failures[0]!=null) {
+				assertTrue(failures[0] instanceof NameNotFoundException);
+				assertFalse("round " + round, isBound(ctx, "b"));
+				assertEquals("second", ctx.lookup("a"));
+			} else {
+				assertTrue("round " + round, isBound(ctx, "b"));
+			}
+			try { ctx.unbind("a"); } catch (NameNotFoundException nne) { /* moved */ }
+			try { ctx.unbind("b"); } catch (NameNotFoundException nne) { /* not moved */ }
+		}
+	}
+	
+	/**
+	 * Names bound for the whole of an enumeration are listed exactly once while other names are bound, unbound and 
+	 * created as subcontexts around it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void enumerationListsStableNamesOnce() throws Exception {
+		final JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		for(int i = 0; i < 500; i++) ctx.bind("s" + i, Integer.valueOf(i));
+		ctx.createSubcontext("sub");
+		for(int round = 0; round < ROUNDS / 20; round++) {
+			final Map<String, Integer>[] counts = new Map[1];
+			Throwable[] failures = race(new Task() {
+				public void run() throws Exception {
+					counts[0] = listed(ctx);
+				}
+			}, new Task() {
+				public void run() throws Exception {
+					for(int i = 0; i < 200; i++) {
+						ctx.bind("t" + i, "churn");
+						ctx.createSubcontext("c" + i);
+					}
+					for(int i = 0; i < 200; i++) {
+						ctx.unbind("t" + i);
+						ctx.destroySubcontext("c" + i);
+					}
+				}
+			});
+			assertEquals(null, failures[0]);
+			assertEquals(null, failures[1]);
+			for(int i = 0; i < 500; i++) {
+				assertEquals("s" + i, Integer.valueOf(1), counts[0].get("s" + i));
+			}
+			assertEquals(Integer.valueOf(1), counts[0].get("sub"));
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanAttributeInfo;
+import javax.naming.NamingException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: LazyBindingTest</p>
+ * <p>Description: Verifies that a lazy binding builds its value exactly once, retries a failed build and reports its declared type unbuilt</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.LazyBindingTest</code></p>
+ */
+public class LazyBindingTest {
+	/** The number of threads looking up a lazy binding at once */
+	public static final int THREADS = 8;
+	/** The number of concurrent lookup rounds */
+	public static final int ROUNDS = 200;
+	
+	/**
+	 * Concurrent first lookups all see one value, built by one factory call
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void concurrentLookupsBuildOnce() throws Exception {
+		for(int round = 0; round < ROUNDS; round++) {
+			final JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+			final CountingFactory factory = new CountingFactory(0);
+			ctx.bindLazy("x", StringBuilder.class, factory);
+			final CountDownLatch start = new CountDownLatch(1);
+			final Object[] values = new Object[THREADS];
+			final Throwable[] failures = new Throwable[THREADS];
+			Thread[] threads = new Thread[THREADS];
+			for(int i = 0; i < THREADS; i++) {
+				final int index = i;
+				threads[i] = new Thread() {
+					public void run() {
+						try {
+							start.await();
+							values[index] = ctx.lookup("x");
+						} catch (Throwable t) {
+							failures[index] = t;
+						}
+					}
+				};
+				threads[i].start();
+			}
+			start.countDown();
+			for(Thread thread: threads) thread.join();
+			for(int i = 0; i < THREADS; i++) {
+				assertNull(failures[i]);
+				assertSame(values[0], values[i]);
+			}
+			assertEquals(1, factory.calls.get());
+		}
+	}
+	
+	/**
+	 * A failed build is reported and not memoized, so the next lookup runs the factory again
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void failedBuildIsRetried() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		CountingFactory factory = new CountingFactory(2);
+		ctx.bindLazy("x", StringBuilder.class, factory);
+		LazyBinding<?> binding = (LazyBinding<?>)ctx.bindings.get("x");
+		for(int attempt = 1; attempt <= 2; attempt++) {
+			try {
+				ctx.lookup("x");
+				fail("the build should fail");
+			} catch (NamingException expected) {
+				assertTrue(expected.getRootCause() instanceof IllegalStateException);
+			}
+			assertFalse(binding.isBuilt());
+			assertEquals(attempt, factory.calls.get());
+		}
+		Object value = ctx.lookup("x");
+		assertTrue(binding.isBuilt());
+		assertSame(value, ctx.lookup("x"));
+		assertEquals(3, factory.calls.get());
+	}
+	
+	/**
+	 * The attribute metadata reports the declared type without building the value
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void mbeanInfoReportsDeclaredTypeUnbuilt() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		CountingFactory factory = new CountingFactory(0);
+		ctx.bindLazy("x", CharSequence.class, factory);
+		MBeanAttributeInfo info = JMXNamingBindingContextTest.attributeInfo(ctx, "x");
+		assertEquals(CharSequence.class.getName(), info.getType());
+		assertEquals(0, factory.calls.get());
+		assertFalse(((LazyBinding<?>)ctx.bindings.get("x")).isBuilt());
+		ctx.lookup("x");
+		assertEquals(CharSequence.class.getName(), JMXNamingBindingContextTest.attributeInfo(ctx, "x").getType());
+		assertEquals(1, factory.calls.get());
+	}
+	
+	/**
+	 * <p>Title: CountingFactory</p>
+	 * <p>Description: A factory that counts its calls, fails a given number of times first and is slow enough to widen races</p> 
+	 */
+	static class CountingFactory implements Callable<StringBuilder> {
+		/** The number of calls */
+		final AtomicInteger calls = new AtomicInteger();
+		/** The number of calls that fail */
+		final int failures;
+		
+		/**
+		 * Creates a new CountingFactory
+		 * @param failures The number of calls that fail before one succeeds
+		 */
+		CountingFactory(int failures) {
+			this.failures = failures;
+		}
+		
+		@Override
+		public StringBuilder call() throws Exception {
+			int call = calls.incrementAndGet();
+			Thread.yield();
+			if(call <= failures) throw new IllegalStateException("Failure " + call);
+			return new StringBuilder("built");
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.naming.NameNotFoundException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: LookupCacheTest</p>
+ * <p>Description: Verifies the resolved name lookup cache, its subtree invalidation, its epoch guard and its hit and miss attributes</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.LookupCacheTest</code></p>
+ */
+public class LookupCacheTest {
+	
+	/**
+	 * Creates a root context with the lookup cache enabled
+	 * @return the root context
+	 * @throws Exception thrown on any error
+	 */
+	protected static JMXNamingBindingContext cachedRoot() throws Exception {
+		JMXNamingBindingContext root = new JMXNamingBindingContext();
+		root.addToEnvironment(JMXNamingBindingContext.LOOKUP_CACHE, "true");
+		assertTrue(root.lookupCache!=null);
+		return root;
+	}
+	
+	/**
+	 * Asserts that a name is not bound
+	 * @param ctx The context to look the name up in
+	 * @param name The name
+	 * @throws Exception thrown on any error other than the name not being bound
+	 */
+	protected static void assertNotBound(JMXNamingBindingContext ctx, String name) throws Exception {
+		try {
+			ctx.lookup(name);
+			fail("[" + name + "] should not be bound");
+		} catch (NameNotFoundException expected) {}
+	}
+	
+	/**
+	 * Renaming a context drops every cached name beneath its old name
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void renameInvalidatesSubtree() throws Exception {
+		JMXNamingBindingContext root = cachedRoot();
+		root.createSubcontext("a");
+		root.createSubcontext("a/b");
+		root.bind("a/b/x", "deep");
+		root.bind("ab", "sibling");
+		root.lookup("a");
+		Object b = root.lookup("a/b");
+		assertEquals("deep", root.lookup("a/b/x"));
+		assertEquals("sibling", root.lookup("ab"));
+		assertEquals(4, root.lookupCache.getSize());
+		root.rename("a", "z");
+		assertNotBound(root, "a");
+		assertNotBound(root, "a/b");
+		assertNotBound(root, "a/b/x");
+		assertSame(b, root.lookup("z/b"));
+		assertEquals("deep", root.lookup("z/b/x"));
+		// the sibling shares the old name's prefix but is not beneath it
+		assertTrue(root.lookupCache.entries.containsKey("ab"));
+	}
+	
+	/**
+	 * Destroying a context drops its cached entry, so a context created again at the same name is the one resolved
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void destroyInvalidatesContext() throws Exception {
+		JMXNamingBindingContext root = cachedRoot();
+		root.createSubcontext("a");
+		root.createSubcontext("a/b");
+		root.bind("a/b/x", "deep");
+		Object b = root.lookup("a/b");
+		assertEquals("deep", root.lookup("a/b/x"));
+		root.unbind("a/b/x");
+		assertNotBound(root, "a/b/x");
+		root.destroySubcontext("a/b");
+		assertNotBound(root, "a/b");
+		Object recreated = root.createSubcontext("a/b");
+		assertNotSame(b, recreated);
+		assertSame(recreated, root.lookup("a/b"));
+		assertTrue(!root.lookupCache.entries.containsKey("a/b/x"));
+	}
+	
+	/**
+	 * A value resolved before an invalidation started is withdrawn when it is put
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void putAfterInvalidationIsWithdrawn() throws Exception {
+		LookupCache cache = new LookupCache();
+		long epoch = cache.epoch();
+		cache.invalidate("a");
+		cache.put("a/b", "stale", epoch);
+		assertNull(cache.entries.get("a/b"));
+		cache.put("a/b", "fresh", cache.epoch());
+		assertEquals("fresh", cache.entries.get("a/b"));
+	}
+	
+	/**
+	 * Lookups racing rebinds never leave a superseded value cached
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void lookupsRacingRebindsLeaveNoStaleEntry() throws Exception {
+		final JMXNamingBindingContext root = cachedRoot();
+		root.createSubcontext("a");
+		for(int round = 0; round < JMXNamingBindingContextTest.ROUNDS; round++) {
+			final Integer last = Integer.valueOf(round * 10 + 9);
+			root.rebind("a/x", Integer.valueOf(round * 10));
+			Throwable[] failures = JMXNamingBindingContextTest.race(new JMXNamingBindingContextTest.Task() {
+				public void run() throws Exception {
+					for(int i = 0; i < 10; i++) root.lookup("a/x");
+				}
+			}, new JMXNamingBindingContextTest.Task() {
+				public void run() throws Exception {
+					for(int i = last.intValue() - 9; i <= last.intValue(); i++) root.rebind("a/x", Integer.valueOf(i));
+				}
+			});
+			assertNull(failures[0]);
+			assertNull(failures[1]);
+			assertEquals(last, root.lookup("a/x"));
+		}
+	}
+	
+	/**
+	 * The hit and miss attributes count cached lookups from any context of the tree, and read zero while the cache is disabled
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void hitAndMissAttributes() throws Exception {
+		JMXNamingBindingContext root = new JMXNamingBindingContext();
+		JMXNamingBindingContext a = (JMXNamingBindingContext)root.createSubcontext("a");
+		root.bind("a/x", "value");
+		root.lookup("a/x");
+		assertEquals(Long.valueOf(0L), root.getAttribute(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_HITS));
+		assertEquals(Long.valueOf(0L), root.getAttribute(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_MISSES));
+		root.addToEnvironment(JMXNamingBindingContext.LOOKUP_CACHE, "true");
+		root.lookup("a/x");
+		root.lookup("a/x");
+		root.lookup("a/x");
+		assertEquals(Long.valueOf(2L), root.getAttribute(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_HITS));
+		assertEquals(Long.valueOf(1L), root.getAttribute(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_MISSES));
+		assertEquals(Long.valueOf(2L), a.getAttribute(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_HITS));
+		assertEquals(Long.valueOf(1L), a.getAttribute(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_MISSES));
+		root.removeFromEnvironment(JMXNamingBindingContext.LOOKUP_CACHE);
+		assertNull(root.lookupCache);
+		assertEquals(Long.valueOf(0L), root.getAttribute(JMXNamingBindingContext.ATTR_LOOKUP_CACHE_HITS));
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.util.Random;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+
+/**
+ * <p>Title: LookupDepthBenchmark</p>
+ * <p>Description: Measures the cost of looking up compound names at depth 1, 5 and 10 in a tree holding 100k bindings, 
+ * for both string and pre-parsed names. Run with <code>main</code>. It is not a unit test and surefire does not run it.</p>
+ * <p>Usage: <code>LookupDepthBenchmark [bindings] [lookups]</code></p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.LookupDepthBenchmark</code></p>
+ */
+public class LookupDepthBenchmark {
+	/** The name depths measured */
+	public static final int[] DEPTHS = {1, 5, 10};
+	/** The number of leaf contexts the bindings are spread over below depth 1 */
+	public static final int LEAF_CONTEXTS = 100;
+	/** The number of unmeasured warmup runs per depth */
+	public static final int WARMUP_RUNS = 5;
+	/** The number of measured runs per depth */
+	public static final int MEASURED_RUNS = 5;
+	
+	/**
+	 * Runs the benchmark
+	 * @param args The total number of bindings (default 100000) and the number of lookups per run (default 1000000)
+	 * @throws Exception thrown on any error
+	 */
+	public static void main(String[] args) throws Exception {
+		int bindings = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		System.out.println("depth\tns/op (String)\tns/op (Name)");
+		for(int depth: DEPTHS) {
+			JMXNamingBindingContext root = new JMXNamingBindingContext();
+			String[] names = populate(root, depth, bindings);
+			Random random = new Random(depth);
+			String[] stringNames = new String[lookups];
+			Name[] parsedNames = new Name[lookups];
+			for(int i = 0; i < lookups; i++) {
+				stringNames[i] = names[random.nextInt(names.length)];
+				parsedNames[i] = new CompositeName(stringNames[i]);
+			}
+			for(int i = 0; i < WARMUP_RUNS; i++) {
+				lookupStrings(root, stringNames);
+				lookupNames(root, parsedNames);
+			}
+			long stringNanos = Long.MAX_VALUE, nameNanos = Long.MAX_VALUE;
+			for(int i = 0; i < MEASURED_RUNS; i++) {
+				stringNanos = Math.min(stringNanos, lookupStrings(root, stringNames));
+				nameNanos = Math.min(nameNanos, lookupNames(root, parsedNames));
+			}
+			System.out.println(String.format("%d\t%.1f\t%.1f", depth, (double)stringNanos / lookups, (double)nameNanos / lookups));
+		}
+	}
+	
+	/**
+	 * Binds the passed number of names at the passed depth, spread over {@link #LEAF_CONTEXTS} contexts unless the depth is 1
+	 * @param root The root context
+	 * @param depth The number of components in each bound name
+	 * @param bindings The number of bindings
+	 * @return the bound names
+	 * @throws Exception thrown on any error
+	 */
+	protected static String[] populate(JMXNamingBindingContext root, int depth, int bindings) throws Exception {
+		int leaves = depth==1 ? 1 : LEAF_CONTEXTS;
+		String[] prefixes = new String[leaves];
+		for(int leaf = 0; leaf < leaves; leaf++) {
+			StringBuilder b = new StringBuilder();
+			for(int level = 1; level < depth; level++) {
+				b.append(level==1 ? "p" + leaf : "l" + level);
+				root.createSubcontext(b.toString());
+				b.append('/');
+			}
+			prefixes[leaf] = b.toString();
+		}
+		String[] names = new String[bindings];
+		for(int i = 0; i < bindings; i++) {
+			names[i] = prefixes[i % leaves] + "b" + i;
+			root.bind(names[i], Integer.valueOf(i));
+		}
+		return names;
+	}
+	
+	/**
+	 * Looks up every passed string name
+	 * @param root The root context
+	 * @param names The names
+	 * @return the elapsed time in ns
+	 * @throws Exception thrown on any error
+	 */
+	protected static long lookupStrings(JMXNamingBindingContext root, String[] names) throws Exception {
+		long sink = 0;
+		long begin = System.nanoTime();
+		for(String name: names) sink += root.lookup(name).hashCode();
+		long elapsed = System.nanoTime() - begin;
+		if(sink==42) System.out.println();
+		return elapsed;
+	}
+	
+	/**
+	 * Looks up every passed parsed name
+	 * @param root The root context
+	 * @param names The names
+	 * @return the elapsed time in ns
+	 * @throws Exception thrown on any error
+	 */
+	protected static long lookupNames(JMXNamingBindingContext root, Name[] names) throws Exception {
+		long sink = 0;
+		long begin = System.nanoTime();
+		for(Name name: names) sink += root.lookup(name).hashCode();
+		long elapsed = System.nanoTime() - begin;
+		if(sink==42) System.out.println();
+		return elapsed;
+	}
+}
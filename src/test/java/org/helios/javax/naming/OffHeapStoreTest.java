@@ -0,0 +1,142 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: OffHeapStoreTest</p>
+ * <p>Description: Verifies the shared off-heap store, its slab reclamation and the propagation of threshold changes</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.OffHeapStoreTest</code></p>
+ */
+public class OffHeapStoreTest {
+	
+	/**
+	 * Creates a serializable value of roughly the passed size
+	 * @param size The size in bytes
+	 * @param fill The byte to fill it with
+	 * @return the value
+	 */
+	protected static byte[] value(int size, int fill) {
+		byte[] bytes = new byte[size];
+		Arrays.fill(bytes, (byte)fill);
+		return bytes;
+	}
+	
+	/**
+	 * Every context of a tree shares the root's store, and a threshold set on the root reaches subcontexts created before it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void storeIsSharedAndThresholdReachesChildren() throws Exception {
+		JMXNamingBindingContext root = new JMXNamingBindingContext();
+		JMXNamingBindingContext child = (JMXNamingBindingContext)root.createSubcontext("child");
+		child.bind("before", value(4096, 1));
+		assertTrue(child.bindings.get("before") instanceof byte[]);
+		root.addToEnvironment(JMXNamingBindingContext.OFFHEAP_THRESHOLD, "1024");
+		child.bind("after", value(4096, 2));
+		assertTrue(child.bindings.get("after") instanceof OffHeapStore.OffHeapValue);
+		assertNull(child.offHeapStore);
+		assertEquals(Long.valueOf(root.offHeapStore.getOffHeapBytes()), child.getAttribute(JMXNamingBindingContext.ATTR_OFFHEAP_BYTES));
+		assertTrue(Arrays.equals(value(4096, 2), (byte[])child.lookup("after")));
+		root.removeFromEnvironment(JMXNamingBindingContext.OFFHEAP_THRESHOLD);
+		child.bind("disabled", value(4096, 3));
+		assertTrue(child.bindings.get("disabled") instanceof byte[]);
+		assertTrue(Arrays.equals(value(4096, 2), (byte[])child.lookup("after")));
+	}
+	
+	/**
+	 * Releasing most values of a retired slab moves the survivors out of it and drops it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void sparseSlabsAreReclaimed() throws Exception {
+		OffHeapStore store = new OffHeapStore(0);
+		List<OffHeapStore.OffHeapValue> values = new ArrayList<OffHeapStore.OffHeapValue>();
+		for(int i = 0; i < 40; i++) {
+			values.add((OffHeapStore.OffHeapValue)store.offload(value(64 * 1024, i), 1));
+		}
+		long retained = store.getRetainedBytes();
+		assertTrue(retained >= 3L * OffHeapStore.SLAB_SIZE);
+		for(int i = 0; i < 40; i++) {
+			if(i % 8!=0) values.get(i).release();
+		}
+		assertTrue(store.getRelocations() > 0);
+		assertTrue(store.getRetainedBytes() < retained);
+		assertTrue(store.getRetainedBytes() >= store.getOffHeapBytes());
+		for(int i = 0; i < 40; i += 8) {
+			assertTrue(Arrays.equals(value(64 * 1024, i), (byte[])values.get(i).resolve()));
+		}
+	}
+	
+	/**
+	 * A value larger than a slab gets a dedicated buffer that is dropped when the value is released
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void dedicatedBuffersAreDroppedOnRelease() throws Exception {
+		OffHeapStore store = new OffHeapStore(0);
+		OffHeapStore.OffHeapValue big = (OffHeapStore.OffHeapValue)store.offload(value(OffHeapStore.SLAB_SIZE * 2, 7), 1);
+		assertTrue(store.getRetainedBytes() >= big.getLength());
+		big.release();
+		assertEquals(0L, store.getOffHeapBytes());
+		assertEquals(0L, store.getRetainedBytes());
+		assertSame(null, store.current);
+	}
+	
+	/**
+	 * The size bound used to keep small strings and primitive arrays on heap without serializing them is never below their 
+	 * serialized size, so the prefilter never keeps a value on heap that meets the threshold
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void sizeBoundCoversSerializedSize() throws Exception {
+		StringBuilder wide = new StringBuilder();
+		for(int i = 0; i < 1000; i++) wide.append('\u20AC');
+		Object[] values = {"", "ascii", wide.toString(), new byte[0], new byte[1000], new boolean[1000], new char[1000], 
+				new short[1000], new int[1000], new float[1000], new long[1000], new double[1000]};
+		for(Object value: values) {
+			int size = BinaryFormat.serialize(value, 64).length;
+			assertTrue(value.getClass().getName() + " of " + size + " bytes", OffHeapStore.maxSerializedSize(value) >= size);
+			OffHeapStore store = new OffHeapStore(0);
+			assertTrue(store.offload(value, size) instanceof OffHeapStore.OffHeapValue);
+			assertSame(value, store.offload(value, (int)OffHeapStore.maxSerializedSize(value) + 1));
+		}
+		assertEquals(Long.MAX_VALUE, OffHeapStore.maxSerializedSize(new Object[0]));
+		assertEquals(Long.MAX_VALUE, OffHeapStore.maxSerializedSize(new ArrayList<Object>()));
+	}
+}
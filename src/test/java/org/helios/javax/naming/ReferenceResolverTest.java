@@ -0,0 +1,97 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.Reference;
+import javax.naming.spi.ObjectFactory;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: ReferenceResolverTest</p>
+ * <p>Description: Verifies that reference bindings are resolved through shared factories with the context's environment</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.ReferenceResolverTest</code></p>
+ */
+public class ReferenceResolverTest {
+	/** The environment property the test factory echoes */
+	public static final String ECHO_PROPERTY = "test.echo";
+	
+	/**
+	 * <p>Title: EchoFactory</p>
+	 * <p>Description: An object factory that builds a new string from the environment's echo property on every call</p> 
+	 */
+	public static class EchoFactory implements ObjectFactory {
+		public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) throws Exception {
+			return new String(String.valueOf(environment.get(ECHO_PROPERTY)));
+		}
+	}
+	
+	/**
+	 * Resolves a reference with the environment inherited from an ancestor, and loads its factory once
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void resolvesWithInheritedEnvironment() throws Exception {
+		Hashtable<String, Object> env = new Hashtable<String, Object>();
+		env.put(ECHO_PROPERTY, "hello");
+		JMXNamingBindingContext root = new JMXNamingBindingContext(env);
+		JMXNamingBindingContext child = (JMXNamingBindingContext)root.createSubcontext("child");
+		child.bind("ref", new Reference(String.class.getName(), EchoFactory.class.getName(), null));
+		Object first = child.lookup("ref");
+		assertEquals("hello", first);
+		assertNotSame(first, child.lookup("ref"));
+		root.addToEnvironment(ECHO_PROPERTY, "changed");
+		assertEquals("changed", child.lookup("ref"));
+		assertEquals(1L, root.referenceResolver.getFactoryLoads());
+	}
+	
+	/**
+	 * With reference caching enabled the resolved object is reused until the environment disables caching
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void cachesResolvedObjectsWhenEnabled() throws Exception {
+		Hashtable<String, Object> env = new Hashtable<String, Object>();
+		env.put(ECHO_PROPERTY, "cached");
+		env.put(JMXNamingBindingContext.REFERENCE_CACHE, "true");
+		JMXNamingBindingContext root = new JMXNamingBindingContext(env);
+		root.bind("ref", new Reference(String.class.getName(), EchoFactory.class.getName(), null));
+		Object first = root.lookup("ref");
+		assertSame(first, root.lookup("ref"));
+		root.addToEnvironment(JMXNamingBindingContext.REFERENCE_CACHE, "false");
+		assertNotSame(first, root.lookup("ref"));
+	}
+}
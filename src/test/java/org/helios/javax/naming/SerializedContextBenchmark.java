@@ -0,0 +1,147 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * <p>Title: SerializedContextBenchmark</p>
+ * <p>Description: Compares the size and the write and read times of a context serialized through its {@link SerializedContext} form 
+ * against default Java serialization of the same bindings held in nested hash maps. A third of the bindings are strings, a third integers 
+ * and a third instances of one serializable class with no codec. Run with <code>main</code>. It is not a unit test and surefire does 
+ * not run it.</p>
+ * <p>Usage: <code>SerializedContextBenchmark [bindings]</code></p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.SerializedContextBenchmark</code></p>
+ */
+public class SerializedContextBenchmark {
+	/** The number of subcontexts the bindings are spread over */
+	public static final int SUBCONTEXTS = 10;
+	/** The number of unmeasured warmup runs */
+	public static final int WARMUP_RUNS = 20;
+	/** The number of measured runs */
+	public static final int MEASURED_RUNS = 20;
+	
+	/**
+	 * Runs the benchmark
+	 * @param args The total number of bindings (default 10000)
+	 * @throws Exception thrown on any error
+	 */
+	public static void main(String[] args) throws Exception {
+		int bindings = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		JMXNamingBindingContext root = new JMXNamingBindingContext();
+		HashMap<String, Object> map = new HashMap<String, Object>();
+		for(int sub = 0; sub < SUBCONTEXTS; sub++) {
+			root.createSubcontext("s" + sub);
+			map.put("s" + sub, new HashMap<String, Object>());
+		}
+		for(int i = 0; i < bindings; i++) {
+			Object value = i % 3==0 ? "value-" + i : i % 3==1 ? Integer.valueOf(i) : new Sample(i, "sample-" + i);
+			root.bind("s" + (i % SUBCONTEXTS) + "/b" + i, value);
+			@SuppressWarnings("unchecked")
+			HashMap<String, Object> sub = (HashMap<String, Object>)map.get("s" + (i % SUBCONTEXTS));
+			sub.put("b" + i, value);
+		}
+		for(int i = 0; i < WARMUP_RUNS; i++) {
+			read(write(root));
+			read(write(map));
+		}
+		long contextWrite = Long.MAX_VALUE, contextRead = Long.MAX_VALUE, mapWrite = Long.MAX_VALUE, mapRead = Long.MAX_VALUE;
+		byte[] contextBytes = null, mapBytes = null;
+		for(int i = 0; i < MEASURED_RUNS; i++) {
+			long begin = System.nanoTime();
+			contextBytes = write(root);
+			contextWrite = Math.min(contextWrite, System.nanoTime() - begin);
+			contextRead = Math.min(contextRead, read(contextBytes));
+			begin = System.nanoTime();
+			mapBytes = write(map);
+			mapWrite = Math.min(mapWrite, System.nanoTime() - begin);
+			mapRead = Math.min(mapRead, read(mapBytes));
+		}
+		System.out.println("form\tbytes\twrite us\tread us");
+		System.out.println(String.format("SerializedContext\t%d\t%.1f\t%.1f", contextBytes.length, contextWrite / 1000d, contextRead / 1000d));
+		System.out.println(String.format("HashMap\t%d\t%.1f\t%.1f", mapBytes.length, mapWrite / 1000d, mapRead / 1000d));
+	}
+	
+	/**
+	 * Java serializes an object
+	 * @param value The object to serialize
+	 * @return the serialized bytes
+	 * @throws Exception thrown on any error
+	 */
+	protected static byte[] write(Object value) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(value);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Reads back a serialized object
+	 * @param bytes The serialized bytes
+	 * @return the elapsed time in ns
+	 * @throws Exception thrown on any error
+	 */
+	protected static long read(byte[] bytes) throws Exception {
+		long begin = System.nanoTime();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		Object sink = in.readObject();
+		in.close();
+		long elapsed = System.nanoTime() - begin;
+		if(sink.hashCode()==42) System.out.println();
+		return elapsed;
+	}
+	
+	/**
+	 * <p>Title: Sample</p>
+	 * <p>Description: A serializable binding value with no codec</p> 
+	 */
+	static class Sample implements Serializable {
+		/**  */
+		private static final long serialVersionUID = 8442630411956373514L;
+		/** The sample id */
+		final int id;
+		/** The sample label */
+		final String label;
+		
+		/**
+		 * Creates a new Sample
+		 * @param id The sample id
+		 * @param label The sample label
+		 */
+		Sample(int id, String label) {
+			this.id = id;
+			this.label = label;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.OperationNotSupportedException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: SerializedContextTest</p>
+ * <p>Description: Verifies that a context serialized through its {@link SerializedContext} form reads back as an equal {@link ReadOnlyContext}</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.SerializedContextTest</code></p>
+ */
+public class SerializedContextTest {
+	
+	/**
+	 * Serializes a context and reads it back
+	 * @param ctx The context to serialize
+	 * @return the context read back
+	 * @throws Exception thrown on any error
+	 */
+	static ReadOnlyContext roundTrip(JMXNamingBindingContext ctx) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(ctx);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			return (ReadOnlyContext)in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Codec values, object stream values and nested subcontexts read back equal, and a value bound twice reads back as one instance
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void roundTripsTree() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		Point shared = new Point(1, 2);
+		ctx.bind("s", "alpha");
+		ctx.bind("i", Integer.valueOf(-7));
+		ctx.bind("p", shared);
+		ctx.bind("q", shared);
+		ctx.bind("n", null);
+		ctx.createSubcontext("sub").bind("r", new Point(3, 4));
+		ctx.createSubcontext("sub/deeper").bind("l", Long.valueOf(Long.MIN_VALUE));
+		ReadOnlyContext restored = roundTrip(ctx);
+		assertEquals("alpha", restored.lookup("s"));
+		assertEquals(Integer.valueOf(-7), restored.lookup("i"));
+		assertEquals(shared, restored.lookup("p"));
+		assertSame(restored.lookup("p"), restored.lookup("q"));
+		assertNull(restored.lookup("n"));
+		assertEquals(new Point(3, 4), restored.lookup("sub/r"));
+		assertEquals(Long.valueOf(Long.MIN_VALUE), restored.lookup("sub/deeper/l"));
+		assertTrue(restored.lookup("sub/deeper") instanceof ReadOnlyContext);
+	}
+	
+	/**
+	 * A value with a registered codec is written and read by the codec
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void registeredCodecIsUsed() throws Exception {
+		final AtomicInteger writes = new AtomicInteger();
+		final AtomicInteger reads = new AtomicInteger();
+		BindingCodecs.register(new BindingCodec<Point>() {
+			public Class<Point> getType() { return Point.class; }
+			public void write(DataOutput out, Point value) throws IOException { writes.incrementAndGet(); out.writeInt(value.x); out.writeInt(value.y); }
+			public Point read(DataInput in) throws IOException { reads.incrementAndGet(); return new Point(in.readInt(), in.readInt()); }
+		});
+		try {
+			JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+			ctx.bind("a", new Point(5, 6));
+			ctx.createSubcontext("sub").bind("b", new Point(7, 8));
+			ReadOnlyContext restored = roundTrip(ctx);
+			assertEquals(new Point(5, 6), restored.lookup("a"));
+			assertEquals(new Point(7, 8), restored.lookup("sub/b"));
+			assertEquals(2, writes.get());
+			assertEquals(2, reads.get());
+		} finally {
+			BindingCodecs.unregister(Point.class);
+		}
+	}
+	
+	/**
+	 * A property removed from a subcontext stays removed there and present in its parent
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void environmentTombstonesRoundTrip() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		ctx.addToEnvironment("inherited", "yes");
+		ctx.addToEnvironment("kept", Integer.valueOf(1));
+		JMXNamingBindingContext sub = (JMXNamingBindingContext)ctx.createSubcontext("sub");
+		sub.removeFromEnvironment("inherited");
+		sub.addToEnvironment("own", new Point(0, 1));
+		ReadOnlyContext restored = roundTrip(ctx);
+		assertEquals("yes", restored.getEnvironment().get("inherited"));
+		ReadOnlyContext restoredSub = (ReadOnlyContext)restored.lookup("sub");
+		assertFalse(restoredSub.getEnvironment().containsKey("inherited"));
+		assertEquals(Integer.valueOf(1), restoredSub.getEnvironment().get("kept"));
+		assertEquals(new Point(0, 1), restoredSub.getEnvironment().get("own"));
+	}
+	
+	/**
+	 * Every mutating operation on the context read back is rejected
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void readBackIsReadOnly() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		ctx.bind("a", "alpha");
+		ctx.createSubcontext("sub");
+		ReadOnlyContext restored = roundTrip(ctx);
+		try { restored.bind("b", "beta"); fail("bind should be rejected"); } catch (OperationNotSupportedException expected) {}
+		try { restored.rebind("a", "beta"); fail("rebind should be rejected"); } catch (OperationNotSupportedException expected) {}
+		try { restored.unbind("a"); fail("unbind should be rejected"); } catch (OperationNotSupportedException expected) {}
+		try { restored.rename("a", "b"); fail("rename should be rejected"); } catch (OperationNotSupportedException expected) {}
+		try { restored.createSubcontext("other"); fail("createSubcontext should be rejected"); } catch (OperationNotSupportedException expected) {}
+		try { restored.destroySubcontext("sub"); fail("destroySubcontext should be rejected"); } catch (OperationNotSupportedException expected) {}
+		try { ((ReadOnlyContext)restored.lookup("sub")).bind("c", "gamma"); fail("bind in a subcontext should be rejected"); } catch (OperationNotSupportedException expected) {}
+		assertEquals("alpha", restored.lookup("a"));
+	}
+	
+	/**
+	 * Values that are not serializable, even part way through an object graph, are skipped without disturbing the values around them
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void nonSerializableValuesAreSkipped() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		Point shared = new Point(1, 1);
+		ctx.bind("a", shared);
+		ctx.bind("b", new Holder(shared, new Object()));
+		ctx.bind("c", new Object());
+		ctx.bind("d", new Holder(shared, new Point(2, 2)));
+		ReadOnlyContext restored = roundTrip(ctx);
+		assertEquals(shared, restored.lookup("a"));
+		for(String name: new String[]{"b", "c"}) {
+			try {
+				restored.lookup(name);
+				fail("[" + name + "] should have been skipped");
+			} catch (NameNotFoundException expected) {}
+		}
+		Holder d = (Holder)restored.lookup("d");
+		assertEquals(new Point(2, 2), d.value);
+		assertEquals(shared, d.point);
+	}
+	
+	/**
+	 * <p>Title: Point</p>
+	 * <p>Description: A serializable value with no codec</p> 
+	 */
+	static class Point implements Serializable {
+		/**  */
+		private static final long serialVersionUID = 3121462427744829301L;
+		/** The x coordinate */
+		final int x;
+		/** The y coordinate */
+		final int y;
+		
+		/**
+		 * Creates a new Point
+		 * @param x The x coordinate
+		 * @param y The y coordinate
+		 */
+		Point(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Point && ((Point)obj).x==x && ((Point)obj).y==y;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * x + y;
+		}
+	}
+	
+	/**
+	 * <p>Title: Holder</p>
+	 * <p>Description: A serializable value whose second field may not be serializable</p> 
+	 */
+	static class Holder implements Serializable {
+		/**  */
+		private static final long serialVersionUID = -2771466541734806425L;
+		/** A serializable point */
+		final Point point;
+		/** Any value */
+		final Object value;
+		
+		/**
+		 * Creates a new Holder
+		 * @param point A serializable point
+		 * @param value Any value
+		 */
+		Holder(Point point, Object value) {
+			this.point = point;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.RuntimeErrorException;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: AttributeBatcherTest</p>
+ * <p>Description: Verifies that concurrent single attribute reads are merged and that a failed batch fails every reader</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.AttributeBatcherTest</code></p>
+ */
+public class AttributeBatcherTest {
+	/** The MBean read */
+	protected final ObjectName name;
+	/** The number of getAttributes calls the stub connection received */
+	protected final AtomicInteger batchCalls = new AtomicInteger(0);
+	/** The number of getAttribute calls the stub connection received */
+	protected final AtomicInteger singleCalls = new AtomicInteger(0);
+	
+	/**
+	 * Creates a new AttributeBatcherTest
+	 * @throws Exception thrown on any error
+	 */
+	public AttributeBatcherTest() throws Exception {
+		name = new ObjectName("test:type=Batched");
+	}
+	
+	/**
+	 * Returns a stub connection whose attributes are named <code>a0</code> to <code>a9</code> and valued with their index
+	 * @param error An error the batch read throws, or null
+	 * @return the connection
+	 */
+	protected MBeanServerConnection connection(final Error error) {
+		return (MBeanServerConnection)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MBeanServerConnection.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if("getAttributes".equals(method.getName())) {
+					batchCalls.incrementAndGet();
+					if(error!=null) throw error;
+					AttributeList list = new AttributeList();
+					for(String attribute: (String[])args[1]) {
+						if(attribute.matches("a\\d")) list.add(new Attribute(attribute, Integer.valueOf(attribute.substring(1))));
+					}
+					return list;
+				}
+				if("getAttribute".equals(method.getName())) {
+					singleCalls.incrementAndGet();
+					throw new AttributeNotFoundException((String)args[1]);
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+	
+	/**
+	 * Reads attributes concurrently through a batcher
+	 * @param batcher The batcher
+	 * @param connection The connection
+	 * @param attributes The attributes to read, one per thread
+	 * @return the value or exception of each read
+	 * @throws Exception thrown on any error
+	 */
+	protected Object[] readAll(final AttributeBatcher batcher, final MBeanServerConnection connection, final String...attributes) throws Exception {
+		final Object[] results = new Object[attributes.length];
+		Thread[] threads = new Thread[attributes.length];
+		for(int i = 0; i < attributes.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = batcher.getAttribute(connection, name, attributes[index]);
+					} catch (Throwable t) {
+						results[index] = t;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for(Thread t: threads) t.join();
+		return results;
+	}
+	
+	/**
+	 * Reads made within one window are served by one getAttributes call, each reader receiving its own value
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void readsInOneWindowAreMerged() throws Exception {
+		AttributeBatcher batcher = new AttributeBatcher(60000L, 3);
+		Object[] results = readAll(batcher, connection(null), "a1", "a2", "a3");
+		assertEquals(1, batchCalls.get());
+		assertEquals(Integer.valueOf(1), results[0]);
+		assertEquals(Integer.valueOf(2), results[1]);
+		assertEquals(Integer.valueOf(3), results[2]);
+		assertEquals(1L, batcher.getBatchCount());
+	}
+	
+	/**
+	 * An attribute missing from the batch is read on its own, so its reader gets the MBean's own exception
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void missingAttributeIsReadAlone() throws Exception {
+		AttributeBatcher batcher = new AttributeBatcher(0L, 10);
+		Object[] results = readAll(batcher, connection(null), "missing");
+		assertTrue(results[0] instanceof AttributeNotFoundException);
+		assertEquals(1, singleCalls.get());
+	}
+	
+	/**
+	 * An Error thrown by the batch read reaches every reader, wrapped, instead of leaving them with no value and no failure
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void errorFailsEveryReader() throws Exception {
+		AttributeBatcher batcher = new AttributeBatcher(60000L, 2);
+		Object[] results = readAll(batcher, connection(new StackOverflowError()), "a1", "a2");
+		assertEquals(1, batchCalls.get());
+		for(Object result: results) {
+			assertTrue(String.valueOf(result), result instanceof RuntimeErrorException);
+			assertTrue(((RuntimeErrorException)result).getTargetError() instanceof StackOverflowError);
+		}
+	}
+}
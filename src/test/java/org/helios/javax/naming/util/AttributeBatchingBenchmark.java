@@ -0,0 +1,231 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * <p>Title: AttributeBatchingBenchmark</p>
+ * <p>Description: Measures the throughput and latency percentiles of concurrent single attribute reads of one MBean over a 
+ * loopback RMI connector, with and without attribute batching. Each reader thread reads its own attribute. Run with <code>main</code>. 
+ * It is not a unit test and surefire does not run it.</p>
+ * <p>Usage: <code>AttributeBatchingBenchmark [threads] [readsPerThread] [windowMs]</code></p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.AttributeBatchingBenchmark</code></p>
+ */
+public class AttributeBatchingBenchmark {
+	/** The number of unmeasured warmup runs per mode */
+	public static final int WARMUP_RUNS = 2;
+	/** The number of measured runs per mode */
+	public static final int MEASURED_RUNS = 3;
+	
+	/**
+	 * <p>Title: Counters</p>
+	 * <p>Description: An MBean whose attributes <code>a0</code> to <code>a{n-1}</code> are valued with their index</p> 
+	 */
+	public static class Counters implements DynamicMBean {
+		/** The MBean info */
+		final MBeanInfo info;
+		
+		/**
+		 * Creates a new Counters
+		 * @param count The number of attributes
+		 */
+		public Counters(int count) {
+			MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[count];
+			for(int i = 0; i < count; i++) attrs[i] = new MBeanAttributeInfo("a" + i, Integer.class.getName(), "Counter " + i, true, false, false);
+			info = new MBeanInfo(getClass().getName(), "Benchmark counters", attrs, null, null, null);
+		}
+		
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			if(attribute==null || !attribute.startsWith("a")) throw new AttributeNotFoundException(attribute);
+			try {
+				return Integer.valueOf(attribute.substring(1));
+			} catch (NumberFormatException nfe) {
+				throw new AttributeNotFoundException(attribute);
+			}
+		}
+		
+		public AttributeList getAttributes(String[] attributes) {
+			AttributeList list = new AttributeList();
+			for(String attribute: attributes) {
+				try {
+					list.add(new Attribute(attribute, getAttribute(attribute)));
+				} catch (AttributeNotFoundException anfe) {
+					// omitted, as a standard MBean does
+				}
+			}
+			return list;
+		}
+		
+		public void setAttribute(Attribute attribute) {
+			throw new UnsupportedOperationException();
+		}
+		
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+		
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException();
+		}
+		
+		public MBeanInfo getMBeanInfo() {
+			return info;
+		}
+	}
+	
+	/**
+	 * Runs the benchmark
+	 * @param args The number of reader threads (default 32), reads per thread (default 2000) and the batching window in ms (default 1)
+	 * @throws Exception thrown on any error
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int reads = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		long window = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		ObjectName name = new ObjectName("benchmark:type=Counters");
+		server.registerMBean(new Counters(threads), name);
+		JMXConnectorServer connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1"), null, server);
+		connectorServer.start();
+		JMXConnector connector = JMXConnectorFactory.connect(connectorServer.getAddress());
+		try {
+			NamingMBeanServerConnection connection = NamingMBeanServerConnection.getInstance(connector.getMBeanServerConnection());
+			System.out.println("mode\treads/s\tp50 us\tp99 us\tp99.9 us\treads per batch");
+			for(int batched = 0; batched < 2; batched++) {
+				AttributeBatcher batcher = null;
+				if(batched==1) batcher = connection.enableAttributeBatching(window, threads);
+				else connection.disableAttributeBatching();
+				for(int i = 0; i < WARMUP_RUNS; i++) run(connection, name, threads, reads);
+				for(int i = 0; i < MEASURED_RUNS; i++) {
+					long batchesBefore = batcher==null ? 0L : batcher.getBatchCount();
+					long readsBefore = batcher==null ? 0L : batcher.getBatchedReads();
+					Result result = run(connection, name, threads, reads);
+					long batches = batcher==null ? 0L : batcher.getBatchCount() - batchesBefore;
+					long batchedReads = batcher==null ? 0L : batcher.getBatchedReads() - readsBefore;
+					System.out.println(String.format("%s\t%.0f\t%.0f\t%.0f\t%.0f\t%.1f", batcher==null ? "unbatched" : "batched", 
+							result.readsPerSecond, result.percentile(0.5) / 1e3, result.percentile(0.99) / 1e3, result.percentile(0.999) / 1e3,
+							batches==0 ? 1.0 : (double)batchedReads / batches));
+				}
+			}
+		} finally {
+			connector.close();
+			connectorServer.stop();
+		}
+	}
+	
+	/**
+	 * <p>Title: Result</p>
+	 * <p>Description: The throughput and sorted read latencies of one run</p> 
+	 */
+	protected static class Result {
+		/** The throughput in reads per second */
+		final double readsPerSecond;
+		/** The sorted read latencies in ns */
+		final long[] latencies;
+		
+		/**
+		 * Creates a new Result
+		 * @param readsPerSecond The throughput in reads per second
+		 * @param latencies The read latencies in ns, which are sorted in place
+		 */
+		Result(double readsPerSecond, long[] latencies) {
+			this.readsPerSecond = readsPerSecond;
+			Arrays.sort(latencies);
+			this.latencies = latencies;
+		}
+		
+		/**
+		 * Returns a latency percentile
+		 * @param fraction The percentile as a fraction
+		 * @return the latency in ns
+		 */
+		double percentile(double fraction) {
+			return latencies[Math.min(latencies.length - 1, (int)(fraction * latencies.length))];
+		}
+	}
+	
+	/**
+	 * Runs one measurement: each thread reads its own attribute the passed number of times
+	 * @param connection The connection
+	 * @param name The MBean read
+	 * @param threads The number of reader threads
+	 * @param reads The reads per thread
+	 * @return the result
+	 * @throws Exception thrown if a reader fails
+	 */
+	protected static Result run(final NamingMBeanServerConnection connection, final ObjectName name, int threads, final int reads) throws Exception {
+		final long[] latencies = new long[threads * reads];
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		for(int t = 0; t < threads; t++) {
+			final int index = t;
+			new Thread() {
+				public void run() {
+					try {
+						String attribute = "a" + index;
+						start.await();
+						for(int i = 0; i < reads; i++) {
+							long begin = System.nanoTime();
+							if(((Integer)connection.getAttribute(name, attribute)).intValue()!=index) throw new IllegalStateException("Read another reader's value");
+							latencies[index * reads + i] = System.nanoTime() - begin;
+						}
+					} catch (Exception e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		if(failure.get()!=null) throw failure.get();
+		return new Result((double)latencies.length / (elapsed / 1e9), latencies);
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectionNotification;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: NameMirrorTest</p>
+ * <p>Description: Verifies that a name mirror is reseeded after registration events may have been missed</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.NameMirrorTest</code></p>
+ */
+public class NameMirrorTest {
+	/** The mirrored MBean server */
+	protected MBeanServer server;
+	/** A pattern matching the test MBeans */
+	protected ObjectName pattern;
+	
+	/**
+	 * <p>Title: DummyMBean</p>
+	 * <p>Description: The empty management interface of {@link Dummy}</p> 
+	 */
+	public static interface DummyMBean {
+		/* No Op */
+	}
+	
+	/**
+	 * <p>Title: Dummy</p>
+	 * <p>Description: An MBean with nothing to manage</p> 
+	 */
+	public static class Dummy implements DummyMBean {
+		/* No Op */
+	}
+	
+	/**
+	 * Creates the MBean server
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void create() throws Exception {
+		server = MBeanServerFactory.newMBeanServer();
+		pattern = new ObjectName("test:*");
+		server.registerMBean(new Dummy(), new ObjectName("test:name=first"));
+	}
+	
+	/**
+	 * Returns a connection to the test server that is not an MBeanServer, as a remote connection would be
+	 * @param beforeQuery run before each queryMBeans call, or null
+	 * @return the connection
+	 */
+	protected MBeanServerConnection remote(final Runnable beforeQuery) {
+		return (MBeanServerConnection)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MBeanServerConnection.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(beforeQuery!=null && "queryMBeans".equals(method.getName())) beforeQuery.run();
+				try {
+					return method.invoke(server, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * A reset mirror is reseeded by the next query and picks up registrations it missed
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void resetForcesReseed() throws Exception {
+		NameMirror mirror = new NameMirror(0L);
+		mirror.seed(server);
+		assertEquals(1, mirror.queryNames(pattern).size());
+		server.registerMBean(new Dummy(), new ObjectName("test:name=missed"));
+		assertEquals(1, mirror.queryNames(pattern).size());
+		mirror.reset();
+		assertFalse(mirror.isCurrent());
+		mirror.seed(server);
+		assertEquals(2, mirror.queryNames(pattern).size());
+		assertEquals(2L, mirror.getSeeds());
+	}
+	
+	/**
+	 * A seed overtaken by a reset does not mark the mirror current
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void seedOvertakenByResetIsNotCurrent() throws Exception {
+		final NameMirror mirror = new NameMirror(0L);
+		mirror.seed(remote(new Runnable() {
+			public void run() {
+				mirror.reset();
+			}
+		}));
+		assertFalse(mirror.isCurrent());
+		mirror.seed(server);
+		assertTrue(mirror.isCurrent());
+	}
+	
+	/**
+	 * A connection notification received by the tracker resets the mirror of the connection
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void lostNotificationsResetTheMirror() throws Exception {
+		NamingMBeanServerConnection connection = NamingMBeanServerConnection.getInstance(server);
+		NameMirror mirror = connection.enableNameMirror(0L);
+		try {
+			assertEquals(1, connection.queryNames(pattern, null).size());
+			assertTrue(mirror.isCurrent());
+			connection.registrationTracker.handleNotification(new JMXConnectionNotification(
+					JMXConnectionNotification.NOTIFS_LOST, this, "test", 1L, "lost", Long.valueOf(1L)), null);
+			assertFalse(mirror.isCurrent());
+			assertEquals(1, connection.queryNames(pattern, null).size());
+			assertTrue(mirror.isCurrent());
+		} finally {
+			connection.disableNameMirror();
+		}
+	}
+	
+	/**
+	 * Queries racing resets of the mirror are either answered from a current mirror or sent to the server, never answered 
+	 * from a mirror emptied by the reset
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void queriesRacingResetsAreNeverEmpty() throws Exception {
+		final NamingMBeanServerConnection connection = NamingMBeanServerConnection.getInstance(server);
+		final NameMirror mirror = connection.enableNameMirror(0L);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		Thread resetter = new Thread() {
+			public void run() {
+				while(!stop.get()) mirror.reset();
+			}
+		};
+		resetter.start();
+		try {
+			for(int i = 0; i < 20000; i++) {
+				assertEquals("query " + i, 1, connection.queryNames(pattern, null).size());
+				assertEquals("query " + i, 1, connection.queryMBeans(pattern, null).size());
+			}
+		} finally {
+			stop.set(true);
+			resetter.join();
+			connection.disableNameMirror();
+		}
+	}
+	
+	/**
+	 * A seed overtaken by a reset leaves the mirror empty rather than filled with the stale result
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void seedOvertakenByResetIsDiscarded() throws Exception {
+		final NameMirror mirror = new NameMirror(0L);
+		mirror.seed(remote(new Runnable() {
+			public void run() {
+				mirror.reset();
+			}
+		}));
+		assertEquals(0, mirror.size());
+		assertEquals(null, mirror.queryNames(pattern));
+	}
+	
+	/**
+	 * MBeans registered after the seed cost one server query between them, which fills in their class names for later local queries
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void unknownClassNamesAreFilledByOneQuery() throws Exception {
+		final AtomicInteger queries = new AtomicInteger(0);
+		MBeanServerConnection connection = remote(new Runnable() {
+			public void run() {
+				queries.incrementAndGet();
+			}
+		});
+		NameMirror mirror = new NameMirror(0L);
+		mirror.seed(connection);
+		for(int i = 0; i < 20; i++) {
+			ObjectName name = new ObjectName("test:name=late" + i);
+			server.registerMBean(new Dummy(), name);
+			mirror.registered(name);
+		}
+		queries.set(0);
+		Set<ObjectInstance> instances = mirror.queryMBeans(pattern, connection);
+		assertEquals(21, instances.size());
+		assertEquals(1, queries.get());
+		for(ObjectInstance instance: mirror.instances.values()) {
+			if(pattern.apply(instance.getObjectName())) assertEquals(Dummy.class.getName(), instance.getClassName());
+		}
+		long local = mirror.getLocalQueries();
+		assertEquals(21, mirror.queryMBeans(pattern, connection).size());
+		assertEquals(1, queries.get());
+		assertEquals(local + 1, mirror.getLocalQueries());
+	}
+	
+	/**
+	 * A remote connection that is not watched needs a refresh interval
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void unwatchedRemoteMirrorNeedsRefreshInterval() throws Exception {
+		NamingMBeanServerConnection connection = NamingMBeanServerConnection.getInstance(remote(null));
+		try {
+			connection.enableNameMirror(0L);
+			fail("a zero refresh interval should be rejected");
+		} catch (IllegalArgumentException expected) {
+			/* expected */
+		}
+		connection.enableNameMirror(60000L);
+		connection.disableNameMirror();
+	}
+}
@@ -0,0 +1,430 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.helios.javax.naming.JMXNamingBindingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Title: NamingMBeanServerConnectionTest</p>
+ * <p>Description: Verifies that coalesced reads through a NamingMBeanServerConnection never return values older than a completed write,
+ * that its MBeanInfo cache never serves an MBeanInfo its MBean no longer has, and that its asynchronous calls run on the configured 
+ * executor and fail through their futures</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.NamingMBeanServerConnectionTest</code></p>
+ */
+public class NamingMBeanServerConnectionTest {
+	/** The MBean server wrapped by the connection */
+	protected MBeanServer server;
+	/** The connection under test */
+	protected NamingMBeanServerConnection connection;
+	/** The test MBean */
+	protected Gauge gauge;
+	/** The test MBean's ObjectName */
+	protected ObjectName objectName;
+	
+	/**
+	 * <p>Title: GaugeMBean</p>
+	 * <p>Description: The management interface of {@link Gauge}</p> 
+	 */
+	public static interface GaugeMBean {
+		/**
+		 * Returns the value
+		 * @return the value
+		 */
+		public int[] getValue();
+		/**
+		 * Sets the value
+		 * @param value the value
+		 */
+		public void setValue(int[] value);
+	}
+	
+	/**
+	 * <p>Title: Gauge</p>
+	 * <p>Description: An MBean whose first read blocks after reading the value until released</p> 
+	 */
+	public static class Gauge implements GaugeMBean {
+		/** The value */
+		volatile int[] value = {1};
+		/** Set once a read has blocked */
+		final AtomicBoolean blocked = new AtomicBoolean(false);
+		/** Counted down once the first read has read the value */
+		final CountDownLatch reading = new CountDownLatch(1);
+		/** Counted down to let the first read complete */
+		final CountDownLatch release = new CountDownLatch(1);
+		/** The thread of the last read */
+		volatile Thread reader = null;
+		
+		public int[] getValue() {
+			reader = Thread.currentThread();
+			int[] read = value;
+			if(blocked.compareAndSet(false, true)) {
+				reading.countDown();
+				try { release.await(10, TimeUnit.SECONDS); } catch (InterruptedException ie) { /* No Op */ }
+			}
+			return read;
+		}
+		
+		public void setValue(int[] value) {
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * Registers the test MBean in a new MBean server
+	 * @throws Exception thrown on any error
+	 */
+	@Before
+	public void register() throws Exception {
+		server = MBeanServerFactory.newMBeanServer();
+		gauge = new Gauge();
+		objectName = new ObjectName("test:type=Gauge");
+		server.registerMBean(gauge, objectName);
+		connection = NamingMBeanServerConnection.getInstance(server);
+	}
+	
+	/**
+	 * Releases any read still blocked
+	 */
+	@After
+	public void release() {
+		gauge.release.countDown();
+	}
+	
+	/**
+	 * Reads the test attribute on a new thread
+	 * @param results Where the thread stores its result
+	 * @param index The index of the thread's result
+	 * @return the started thread
+	 */
+	protected Thread read(final Object[] results, final int index) {
+		Thread t = new Thread() {
+			public void run() {
+				results[index] = connection.getAttribute(objectName, "Value");
+			}
+		};
+		t.start();
+		return t;
+	}
+	
+	/**
+	 * A read started after a write completes does not join a read that started before it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void readAfterWriteIsNotCoalescedWithEarlierRead() throws Exception {
+		Object[] results = new Object[2];
+		Thread before = read(results, 0);
+		assertTrue(gauge.reading.await(10, TimeUnit.SECONDS));
+		connection.setAttribute(objectName, new Attribute("Value", new int[]{2}));
+		Thread after = read(results, 1);
+		after.join(10000);
+		gauge.release.countDown();
+		before.join();
+		assertEquals(1, ((int[])results[0])[0]);
+		assertEquals(2, ((int[])results[1])[0]);
+	}
+	
+	/**
+	 * Callers that share a read each receive their own copy of a mutable value
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void sharedReadsReturnCopies() throws Exception {
+		Object[] results = new Object[2];
+		Thread first = read(results, 0);
+		assertTrue(gauge.reading.await(10, TimeUnit.SECONDS));
+		Thread second = read(results, 1);
+		long deadline = System.currentTimeMillis() + 10000;
+		// parked on the first read's flight
+		while(second.getState()!=Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		gauge.release.countDown();
+		first.join();
+		second.join();
+		assertNotSame(results[0], results[1]);
+		assertEquals(1, ((int[])results[1])[0]);
+	}
+	
+	/**
+	 * Returns the failure of a future that completed exceptionally
+	 * @param future The future
+	 * @return the failure
+	 * @throws Exception thrown if the future does not fail in time
+	 */
+	protected static Throwable failure(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("the future should fail");
+			return null;
+		} catch (ExecutionException ee) {
+			return ee.getCause();
+		}
+	}
+	
+	/**
+	 * Asynchronous calls run on the configured executor
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void asyncCallsRunOnConfiguredExecutor() throws Exception {
+		gauge.release.countDown();
+		final Thread[] worker = new Thread[1];
+		final AtomicInteger executions = new AtomicInteger();
+		ExecutorService pool = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				worker[0] = new Thread(r, "AsyncTestWorker");
+				worker[0].setDaemon(true);
+				return worker[0];
+			}
+		});
+		try {
+			final Executor executor = pool;
+			connection.setAsyncExecutor(new Executor() {
+				public void execute(Runnable command) {
+					executions.incrementAndGet();
+					executor.execute(command);
+				}
+			});
+			assertEquals(1, ((int[])connection.getAttributeAsync(objectName, "Value").get(10, TimeUnit.SECONDS))[0]);
+			assertSame(worker[0], gauge.reader);
+			assertEquals(Gauge.class.getName(), connection.getMBeanInfoAsync(objectName).get(10, TimeUnit.SECONDS).getClassName());
+			assertTrue(connection.queryNamesAsync(objectName, null).get(10, TimeUnit.SECONDS).contains(objectName));
+			assertEquals(3, executions.get());
+		} finally {
+			connection.setAsyncExecutor(null);
+			pool.shutdownNow();
+		}
+		assertNotNull(connection.getAsyncExecutor());
+	}
+	
+	/**
+	 * A failed asynchronous call completes its future with a NamingMBeanServerException
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void asyncFailuresAreNamingMBeanServerExceptions() throws Exception {
+		gauge.release.countDown();
+		assertTrue(failure(connection.getAttributeAsync(objectName, "Missing")) instanceof NamingMBeanServerException);
+		ObjectName missing = new ObjectName("test:type=Missing");
+		assertTrue(failure(connection.getMBeanInfoAsync(missing)) instanceof NamingMBeanServerException);
+		assertTrue(failure(connection.invokeAsync(missing, "op", new Object[0], new String[0])) instanceof NamingMBeanServerException);
+	}
+	
+	/**
+	 * An executor that rejects the call yields a future that has already failed, instead of throwing to the caller
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void rejectedAsyncCallsFailTheFuture() throws Exception {
+		connection.setAsyncExecutor(new Executor() {
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("saturated");
+			}
+		});
+		try {
+			CompletableFuture<Object> future = connection.getAttributeAsync(objectName, "Value");
+			assertTrue(future.isCompletedExceptionally());
+			Throwable t = failure(future);
+			assertTrue(t instanceof NamingMBeanServerException);
+			assertTrue(t.getCause() instanceof RejectedExecutionException);
+			assertNull(gauge.reader);
+		} finally {
+			connection.setAsyncExecutor(null);
+		}
+	}
+	
+	/**
+	 * Finds an attribute in an MBeanInfo
+	 * @param info The MBeanInfo
+	 * @param name The attribute name
+	 * @return the attribute info or null if there is none
+	 */
+	protected static MBeanAttributeInfo attributeInfo(MBeanInfo info, String name) {
+		for(MBeanAttributeInfo attr: info.getAttributes()) {
+			if(attr.getName().equals(name)) return attr;
+		}
+		return null;
+	}
+	
+	/**
+	 * A cached MBeanInfo is dropped when its MBean is unregistered, and the MBean registered in its place is fetched
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void mbeanInfoCacheDropsReregisteredMBeans() throws Exception {
+		MBeanInfoCache cache = connection.enableMBeanInfoCache(16, 0L);
+		try {
+			assertEquals(Gauge.class.getName(), connection.getMBeanInfo(objectName).getClassName());
+			assertEquals(Gauge.class.getName(), connection.getMBeanInfo(objectName).getClassName());
+			assertEquals(1L, cache.getHits());
+			assertEquals(1L, cache.getMisses());
+			server.unregisterMBean(objectName);
+			assertEquals(0, cache.size());
+			server.registerMBean(new JMXNamingBindingContext(), objectName);
+			assertEquals(JMXNamingBindingContext.class.getName(), connection.getMBeanInfo(objectName).getClassName());
+			assertEquals(2L, cache.getMisses());
+		} finally {
+			connection.disableMBeanInfoCache();
+		}
+	}
+	
+	/**
+	 * A cached MBeanInfo is fetched again once its time to live has passed
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void mbeanInfoCacheEntriesExpire() throws Exception {
+		MBeanInfoCache cache = connection.enableMBeanInfoCache(16, 50L);
+		try {
+			connection.getMBeanInfo(objectName);
+			connection.getMBeanInfo(objectName);
+			assertEquals(1L, cache.getHits());
+			Thread.sleep(100L);
+			assertNull(cache.get(objectName));
+			connection.getMBeanInfo(objectName);
+			assertEquals(1L, cache.getHits());
+			assertEquals(3L, cache.getMisses());
+			assertEquals(1, cache.size());
+		} finally {
+			connection.disableMBeanInfoCache();
+		}
+	}
+	
+	/**
+	 * The cache holds at most its maximum size, evicting the least recently used MBeanInfo
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void mbeanInfoCacheEvictsLeastRecentlyUsed() throws Exception {
+		ObjectName[] names = new ObjectName[5];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = new ObjectName("test:type=Gauge,index=" + i);
+			server.registerMBean(new Gauge(), names[i]);
+		}
+		MBeanInfoCache cache = connection.enableMBeanInfoCache(3, 0L);
+		try {
+			for(ObjectName name: names) connection.getMBeanInfo(name);
+			assertEquals(3, cache.size());
+			assertNull(cache.get(names[0]));
+			assertNull(cache.get(names[1]));
+			// touching index 2 makes index 3 the eldest, so fetching index 0 evicts it
+			assertNotNull(cache.get(names[2]));
+			connection.getMBeanInfo(names[0]);
+			assertEquals(3, cache.size());
+			assertNull(cache.get(names[3]));
+			assertNotNull(cache.get(names[2]));
+			assertNotNull(cache.get(names[4]));
+			assertNotNull(cache.get(names[0]));
+		} finally {
+			connection.disableMBeanInfoCache();
+		}
+	}
+	
+	/**
+	 * An MBeanInfo fetched before an invalidation started is not cached
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void mbeanInfoFetchRacingInvalidationIsNotCached() throws Exception {
+		MBeanInfoCache cache = connection.enableMBeanInfoCache(16, 0L);
+		try {
+			long epoch = cache.epoch();
+			MBeanInfo info = server.getMBeanInfo(objectName);
+			server.unregisterMBean(objectName);
+			cache.put(objectName, info, epoch);
+			assertEquals(0, cache.size());
+			server.registerMBean(new Gauge(), objectName);
+			cache.put(objectName, info, epoch);
+			assertEquals(0, cache.size());
+			connection.getMBeanInfo(objectName);
+			assertEquals(1, cache.size());
+		} finally {
+			connection.disableMBeanInfoCache();
+		}
+	}
+	
+	/**
+	 * A cached mutable MBeanInfo is served while its MBean reports the same version, and fetched again once the version changes
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void versionedMBeanInfoIsRevalidated() throws Exception {
+		JMXNamingBindingContext ctx = new JMXNamingBindingContext();
+		ObjectName name = new ObjectName("test:type=Context");
+		server.registerMBean(ctx, name);
+		ctx.bind("x", "value");
+		MBeanInfoCache cache = connection.enableMBeanInfoCache(16, 0L);
+		try {
+			MBeanInfo info = connection.getMBeanInfo(name);
+			assertNotNull(attributeInfo(info, "x"));
+			assertNotNull(cache.get(name).getVersion());
+			assertTrue(info==connection.getMBeanInfo(name));
+			assertEquals(1L, cache.getHits());
+			ctx.bind("y", Integer.valueOf(1));
+			info = connection.getMBeanInfo(name);
+			assertNotNull(attributeInfo(info, "y"));
+			assertEquals(1L, cache.getHits());
+			assertEquals(Integer.class.getName(), attributeInfo(info, "y").getType());
+			assertTrue(info==connection.getMBeanInfo(name));
+			assertEquals(2L, cache.getHits());
+		} finally {
+			connection.disableMBeanInfoCache();
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package org.helios.javax.naming.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * <p>Title: SingleFlightTest</p>
+ * <p>Description: Verifies that identical concurrent calls are coalesced and that joining callers receive copies when asked</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * @version $LastChangedRevision$
+ * <p><code>org.helios.javax.naming.util.SingleFlightTest</code></p>
+ */
+public class SingleFlightTest {
+	/** The single flight under test */
+	protected final SingleFlight flight = new SingleFlight();
+	/** The number of times the call ran */
+	protected final AtomicInteger calls = new AtomicInteger(0);
+	/** Counted down once the call is running */
+	protected final CountDownLatch running = new CountDownLatch(1);
+	/** Counted down to let the call complete */
+	protected final CountDownLatch release = new CountDownLatch(1);
+	
+	/**
+	 * Returns a call that blocks until released and returns a new list
+	 * @return the call
+	 */
+	protected Callable<List<String>> blockingCall() {
+		return new Callable<List<String>>() {
+			public List<String> call() throws Exception {
+				calls.incrementAndGet();
+				running.countDown();
+				release.await(10, TimeUnit.SECONDS);
+				List<String> result = new ArrayList<String>();
+				result.add("value");
+				return result;
+			}
+		};
+	}
+	
+	/**
+	 * Runs a call on a new thread
+	 * @param copier The copier to pass, or null
+	 * @param results Where the thread stores its result
+	 * @param index The index of the thread's result
+	 * @return the started thread
+	 */
+	protected Thread start(final SingleFlight.Copier<List<String>> copier, final Object[] results, final int index) {
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					results[index] = flight.call("key", blockingCall(), copier);
+				} catch (Exception e) {
+					results[index] = e;
+				}
+			}
+		};
+		t.start();
+		return t;
+	}
+	
+	/**
+	 * Waits until a thread is parked, which for these tests means it has joined the call in flight
+	 * @param t The thread
+	 * @throws InterruptedException thrown if interrupted while waiting
+	 */
+	protected static void awaitParked(Thread t) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while(t.getState()!=Thread.State.WAITING && t.getState()!=Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+	
+	/**
+	 * A caller arriving while an identical call is in flight shares its result
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void joinerSharesResult() throws Exception {
+		Object[] results = new Object[2];
+		Thread leader = start(null, results, 0);
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+		Thread joiner = start(null, results, 1);
+		awaitParked(joiner);
+		release.countDown();
+		leader.join();
+		joiner.join();
+		assertEquals(1, calls.get());
+		assertSame(results[0], results[1]);
+		assertEquals(1L, flight.getSavedCalls());
+		assertEquals(0, flight.getInFlight());
+	}
+	
+	/**
+	 * With a copier, a joining caller receives its own copy of the result
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void joinerReceivesCopy() throws Exception {
+		Object[] results = new Object[2];
+		SingleFlight.Copier<List<String>> copier = new SingleFlight.Copier<List<String>>() {
+			public List<String> copy(List<String> result) {
+				return new ArrayList<String>(result);
+			}
+		};
+		Thread leader = start(copier, results, 0);
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+		Thread joiner = start(copier, results, 1);
+		awaitParked(joiner);
+		release.countDown();
+		leader.join();
+		joiner.join();
+		assertEquals(1, calls.get());
+		assertNotSame(results[0], results[1]);
+		assertEquals(results[0], results[1]);
+	}
+	
+	/**
+	 * A joining caller whose copier cannot copy the result makes its own call
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void uncopyableResultIsNotShared() throws Exception {
+		Object[] results = new Object[2];
+		SingleFlight.Copier<List<String>> copier = new SingleFlight.Copier<List<String>>() {
+			public List<String> copy(List<String> result) {
+				return null;
+			}
+		};
+		Thread leader = start(copier, results, 0);
+		assertTrue(running.await(10, TimeUnit.SECONDS));
+		Thread joiner = start(copier, results, 1);
+		awaitParked(joiner);
+		release.countDown();
+		leader.join();
+		joiner.join();
+		assertEquals(2, calls.get());
+		assertNotSame(results[0], results[1]);
+		assertEquals(0L, flight.getSavedCalls());
+	}
+	
+	/**
+	 * An exception thrown by the call is rethrown to every caller
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void exceptionIsRethrown() throws Exception {
+		try {
+			flight.call("key", new Callable<Object>() {
+				public Object call() throws Exception {
+					throw new IllegalStateException("boom");
+				}
+			});
+		} catch (IllegalStateException expected) {
+			assertEquals("boom", expected.getMessage());
+		}
+		assertEquals(0, flight.getInFlight());
+	}
+}